@@ -7,14 +7,17 @@ import java.util.Map;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Fieldable;
-import org.codehaus.jackson.annotate.JsonAnyGetter;
 import org.codehaus.jackson.annotate.JsonIgnore;
+import org.codehaus.jackson.map.annotate.JsonSerialize;
 
 /**
+ * A document read from one of the entity indexes. Only the stored fields that were requested when searching are
+ * available. Documents are written out as JSON by {@link EntityDocSerializer}.
  * 
  * @author chrisburrell
  * 
  */
+@JsonSerialize(using = EntityDocSerializer.class)
 public class EntityDoc implements Serializable {
     private static final long serialVersionUID = -8509022678959062751L;
     private final Document doc;
@@ -37,12 +40,19 @@ public class EntityDoc implements Serializable {
         return this.doc.get(fieldName);
     }
 
+    /**
+     * @return the underlying document
+     */
+    Document getDocument() {
+        return this.doc;
+    }
+
     /**
      * Returns all fields as a map
      * 
      * @return the map of values
      */
-    @JsonAnyGetter
+    @JsonIgnore
     public Map<String, String> getAllFields() {
         final List<Fieldable> fields = this.doc.getFields();
         final Map<String, String> allFields = new HashMap<String, String>(fields.size());
@@ -0,0 +1,49 @@
+package com.tyndalehouse.step.core.data;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.lucene.document.Fieldable;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.JsonSerializer;
+import org.codehaus.jackson.map.SerializerProvider;
+
+/**
+ * Writes the stored fields of an {@link EntityDoc} straight to the JSON output, rather than copying them into a map
+ * first. Where a field is stored more than once, only the last value is written, as was the case when documents were
+ * serialized as maps.
+ *
+ * @author chrisburrell
+ */
+public class EntityDocSerializer extends JsonSerializer<EntityDoc> {
+    @Override
+    public void serialize(final EntityDoc value, final JsonGenerator jgen, final SerializerProvider provider)
+            throws IOException {
+        final List<Fieldable> fields = value.getDocument().getFields();
+        final int size = fields.size();
+
+        jgen.writeStartObject();
+        for (int ii = 0; ii < size; ii++) {
+            final Fieldable field = fields.get(ii);
+            if (!isRepeatedLater(fields, ii)) {
+                jgen.writeStringField(field.name(), field.stringValue());
+            }
+        }
+        jgen.writeEndObject();
+    }
+
+    /**
+     * @param fields   the fields of the document
+     * @param position the position of the field being written
+     * @return true if a field of the same name follows the current one
+     */
+    private boolean isRepeatedLater(final List<Fieldable> fields, final int position) {
+        final String name = fields.get(position).name();
+        for (int ii = position + 1; ii < fields.size(); ii++) {
+            if (name.equals(fields.get(ii).name())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -5,8 +5,11 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import com.tyndalehouse.step.core.data.common.TermMatcher;
 import com.tyndalehouse.step.core.data.common.TermsAndMaxCount;
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.queryParser.QueryParser.Operator;
 import org.apache.lucene.search.BooleanQuery;
@@ -48,6 +51,17 @@ public interface EntityIndexReader extends Closeable {
      */
     EntityDoc[] searchExactTermBySingleField(String fieldName, int max, String... values);
 
+    /**
+     * Searches by a single field for multiple values, only loading some of the stored fields of each document
+     *
+     * @param fieldName    the field name
+     * @param max          the number of results to return
+     * @param fieldsToLoad the stored fields to load, or null to load them all
+     * @param values       the list of values to be retrieved
+     * @return the scored documents
+     */
+    EntityDoc[] searchExactTermBySingleField(String fieldName, int max, FieldSelector fieldsToLoad, String... values);
+
     /**
      * Searches by a single field for multiple values, expecting each value to return just one result
      *
@@ -57,6 +71,18 @@ public interface EntityIndexReader extends Closeable {
      */
     EntityDoc[] searchUniqueBySingleField(String fieldName, String... values);
 
+    /**
+     * Searches by a single field for multiple values, expecting each value to return just one result. Only the
+     * requested stored fields are read from the index, which saves reading large fields, such as full definitions,
+     * when only a gloss is needed.
+     *
+     * @param fieldName    the field name
+     * @param fieldsToLoad the stored fields to load, or null to load them all
+     * @param values       the list of values to be retrieved
+     * @return the scored documents
+     */
+    EntityDoc[] searchUniqueBySingleField(String fieldName, FieldSelector fieldsToLoad, String... values);
+
     /**
      * Searches for a particular value across multiple fields
      *
@@ -171,6 +197,18 @@ public interface EntityIndexReader extends Closeable {
      */
     EntityDoc[] search(Query query, int max, Sort sortField, Filter filter);
 
+    /**
+     * Searches with a given query, only loading some of the stored fields of each document
+     *
+     * @param query        the query
+     * @param max          the max number of results
+     * @param sortField    the field to sort by
+     * @param filter       the filter to search with
+     * @param fieldsToLoad the stored fields to load, or null to load them all
+     * @return the entity documents that have been found
+     */
+    EntityDoc[] search(Query query, int max, Sort sortField, Filter filter, FieldSelector fieldsToLoad);
+
     /**
      * Searches with a given query
      *
@@ -290,6 +328,30 @@ public interface EntityIndexReader extends Closeable {
      */
     TermsAndMaxCount findSetOfTermsWithCounts(boolean exact, boolean trackMax, String searchTerm, int maxReturned, String... fieldNames);
 
+    /**
+     * Returns all terms of a field that are accepted by a matcher
+     *
+     * @param fieldName the name of the field
+     * @param matcher   the matcher deciding which terms are wanted
+     * @return the set of matching terms
+     */
+    Set<String> findMatchingTerms(String fieldName, TermMatcher matcher);
+
+    /**
+     * Loads documents by their id in the index, for callers that have worked out which documents they want
+     * without running a query
+     *
+     * @param docIds       the ids of the documents in the index
+     * @param fieldsToLoad the stored fields to load, or null to load them all
+     * @return the documents, in the order of the ids
+     */
+    EntityDoc[] getDocuments(int[] docIds, FieldSelector fieldsToLoad);
+
+    /**
+     * @return the reader of the underlying index, or null if the index has not been created yet
+     */
+    IndexReader getIndexReader();
+
     /**
      * Give a querySyntax and get results back
      *
@@ -0,0 +1,23 @@
+package com.tyndalehouse.step.core.data.common;
+
+import java.util.Collection;
+
+/**
+ * Decides which terms of an index's term dictionary are wanted, without having to list them all in a query. The
+ * matcher also gives the prefixes that any wanted term starts with, so that only those parts of the dictionary need
+ * reading.
+ *
+ * @author chrisburrell
+ */
+public interface TermMatcher {
+    /**
+     * @return the prefixes of all terms that can match, possibly containing complete terms
+     */
+    Collection<String> getPrefixes();
+
+    /**
+     * @param term a term from the dictionary
+     * @return true if the term is wanted
+     */
+    boolean matches(String term);
+}
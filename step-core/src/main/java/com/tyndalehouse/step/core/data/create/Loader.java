@@ -42,6 +42,8 @@ import javax.inject.Provider;
 
 import com.tyndalehouse.step.core.exceptions.StepInternalException;
 import com.tyndalehouse.step.core.service.AppManagerService;
+import com.tyndalehouse.step.core.service.helpers.AlternativeTranslationsIndexStore;
+import com.tyndalehouse.step.core.service.helpers.SubjectReferenceIndexStore;
 import com.tyndalehouse.step.core.utils.StringUtils;
 import org.crosswire.common.progress.JobManager;
 import org.crosswire.common.progress.WorkEvent;
@@ -60,6 +62,7 @@ import com.tyndalehouse.step.core.data.loaders.TimelineStreamingCsvModuleLoader;
 import com.tyndalehouse.step.core.models.ClientSession;
 import com.tyndalehouse.step.core.service.jsword.JSwordModuleService;
 import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
+import com.tyndalehouse.step.core.service.jsword.helpers.IndexBuildScheduler;
 
 /**
  * The object that will be responsible for loading all the data into Lucene and downloading key versions of
@@ -75,6 +78,9 @@ public class Loader {
     private final Properties coreProperties;
     private final JSwordModuleService jswordModule;
     private final EntityManager entityManager;
+    private final SubjectReferenceIndexStore subjectReferences;
+    private final AlternativeTranslationsIndexStore alternativeTranslationReferences;
+    private final IndexBuildScheduler indexBuilds;
 
     private final BlockingQueue<String> progress = new LinkedBlockingQueue<String>();
     private final Set<String> appSpecificModules = new HashSet<String>();
@@ -95,17 +101,27 @@ public class Loader {
      * @param coreProperties        the step core properties
      * @param entityManager         the entity manager
      * @param clientSessionProvider the client session provider
+     * @param subjectReferences     the precomputed subjects of each verse, rebuilt with the nave index
+     * @param alternativeTranslationReferences the precomputed alternative translations of each verse, rebuilt with
+     *                              their index
+     * @param indexBuilds           the scheduler of index builds, giving the order in which modules are indexed
      */
     @Inject
     public Loader(final JSwordPassageService jsword, final JSwordModuleService jswordModule,
                   @Named("StepCoreProperties") final Properties coreProperties, final EntityManager entityManager,
                   final Provider<ClientSession> clientSessionProvider,
-                  AppManagerService appManager
+                  AppManagerService appManager,
+                  final SubjectReferenceIndexStore subjectReferences,
+                  final AlternativeTranslationsIndexStore alternativeTranslationReferences,
+                  final IndexBuildScheduler indexBuilds
     ) {
         this.jsword = jsword;
         this.jswordModule = jswordModule;
         this.coreProperties = coreProperties;
         this.entityManager = entityManager;
+        this.subjectReferences = subjectReferences;
+        this.alternativeTranslationReferences = alternativeTranslationReferences;
+        this.indexBuilds = indexBuilds;
         this.clientSessionProvider = clientSessionProvider;
         this.runningAppVersion = coreProperties.getProperty(AppManagerService.APP_VERSION);
         this.appManager = appManager;
@@ -135,13 +151,13 @@ public class Loader {
                 // that we need
                 this.jswordModule.reloadInstallers();
 
-                final List<Book> availableModules = this.jswordModule.getAllModules(-1, BookCategory.BIBLE,
-                        BookCategory.COMMENTARY);
+                final List<Book> availableModules = new ArrayList<Book>(this.jswordModule.getAllModules(-1,
+                        BookCategory.BIBLE, BookCategory.COMMENTARY));
                 final String[] initials = new String[availableModules.size()];
 
-                // This may put too much stress on smaller systems, since indexing for all modules in
-                // package
-                // would result as happening at the same times
+                // indexes are queued, and only built a few at a time, see IndexBuildScheduler. Modules are
+                // installed in the order they are to be indexed, so that the core versions are searchable first
+                this.indexBuilds.sortByPriority(availableModules);
                 this.totalItems += availableModules.size() * 2;
                 for (int ii = 0; ii < availableModules.size(); ii++) {
                     final Book b = availableModules.get(ii);
@@ -286,7 +302,9 @@ public class Loader {
 
         LOGGER.debug("Writing Alternative Versions index");
         final int close = writer.close();
-        LOGGER.debug("Writing Alternative Versions index");
+
+        LOGGER.debug("Precomputing Alternative Versions by reference");
+        this.alternativeTranslationReferences.rebuildIndex(this.entityManager.getReader("alternativeTranslations"));
 
         this.addUpdate("install_alternative_meanings_complete", close);
         return close;
@@ -309,6 +327,9 @@ public class Loader {
 
         LOGGER.debug("Writing Nave index");
         final int close = writer.close();
+
+        LOGGER.debug("Precomputing Nave subjects by reference");
+        this.subjectReferences.rebuildNaveIndex(this.entityManager.getReader("nave"));
         LOGGER.debug("End Nave");
 
         this.addUpdate("install_subject_search_complete", close);
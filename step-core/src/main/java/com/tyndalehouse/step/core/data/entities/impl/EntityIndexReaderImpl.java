@@ -11,11 +11,16 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import com.tyndalehouse.step.core.data.common.TermMatcher;
 import com.tyndalehouse.step.core.data.common.TermsAndMaxCount;
 import com.tyndalehouse.step.core.utils.LuceneUtils;
+import com.tyndalehouse.step.core.utils.StageTimer;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.TermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryParser.MultiFieldQueryParser;
 import org.apache.lucene.queryParser.ParseException;
@@ -46,6 +51,7 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
     private IndexSearcher searcher;
     private Directory directory;
     private final EntityConfiguration config;
+    private final StageTimer queryTimer;
     private boolean memoryMapped;
 
     /**
@@ -56,6 +62,7 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
      */
     public EntityIndexReaderImpl(final EntityConfiguration config, final boolean memoryMapped) {
         this.config = config;
+        this.queryTimer = new StageTimer(EntityIndexReaderImpl.class, "query", config.getName());
         this.memoryMapped = memoryMapped;
         initialise();
     }
@@ -67,6 +74,7 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
      */
     EntityIndexReaderImpl(final EntityConfiguration config) {
         this.config = config;
+        this.queryTimer = new StageTimer(EntityIndexReaderImpl.class, "query", config.getName());
     }
 
     @Override
@@ -128,14 +136,26 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
     @Override
     public EntityDoc[] searchExactTermBySingleField(final String fieldName, final int max,
                                                     final String... values) {
+        return searchExactTermBySingleField(fieldName, max, null, values);
+    }
+
+    @Override
+    public EntityDoc[] searchExactTermBySingleField(final String fieldName, final int max,
+                                                    final FieldSelector fieldsToLoad, final String... values) {
         final Query query = getQuery(fieldName, values);
-        return search(query, max, null, null);
+        return search(query, max, null, null, fieldsToLoad);
     }
 
     @Override
     public EntityDoc[] searchUniqueBySingleField(final String fieldName, final String... values) {
+        return searchUniqueBySingleField(fieldName, null, values);
+    }
+
+    @Override
+    public EntityDoc[] searchUniqueBySingleField(final String fieldName, final FieldSelector fieldsToLoad,
+                                                 final String... values) {
         final Query query = getQuery(fieldName, values);
-        return search(query, values.length, null, null);
+        return search(query, values.length, null, null, fieldsToLoad);
     }
 
     @Override
@@ -201,6 +221,7 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
 
         parser.setDefaultOperator(useOrOperatorBetweenValues ? Operator.OR : Operator.AND);
 
+        final StageTimer.Context queryTime = this.queryTimer.time(value);
         try {
             if (queryRemainder != null) {
                 final StringBuilder sb = new StringBuilder(value.length() + queryRemainder.length() + 1);
@@ -229,6 +250,8 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
         } catch (final IOException e) {
             throw new StepInternalException(
                     "Unable to search given query: " + parsed != null ? parsed.toString() : "<unknown>", e);
+        } finally {
+            queryTime.stop();
         }
     }
 
@@ -261,6 +284,30 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
         return hits;
     }
 
+    @Override
+    public Set<String> findMatchingTerms(final String fieldName, final TermMatcher matcher) {
+        return LuceneUtils.getAllTermsMatching(this.searcher, fieldName, matcher);
+    }
+
+    @Override
+    public EntityDoc[] getDocuments(final int[] docIds, final FieldSelector fieldsToLoad) {
+        try {
+            final EntityDoc[] docs = new EntityDoc[docIds.length];
+            for (int ii = 0; ii < docIds.length; ii++) {
+                docs[ii] = new EntityDoc(loadDocument(docIds[ii], fieldsToLoad));
+            }
+            return docs;
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to load documents", e);
+        }
+    }
+
+    @Override
+    public IndexReader getIndexReader() {
+        final IndexSearcher currentSearcher = this.searcher;
+        return currentSearcher == null ? null : currentSearcher.getIndexReader();
+    }
+
     /**
      * Extracts all the results
      *
@@ -272,7 +319,7 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
             final ScoreDoc[] scoreDocs = results.scoreDocs;
             final EntityDoc[] docs = new EntityDoc[scoreDocs.length];
             for (int ii = 0; ii < scoreDocs.length; ii++) {
-                docs[ii] = new EntityDoc(this.searcher.doc(scoreDocs[ii].doc));
+                docs[ii] = new EntityDoc(loadDocument(scoreDocs[ii].doc, null));
             }
             return docs;
         } catch (final IOException e) {
@@ -281,6 +328,21 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
 
     }
 
+    /**
+     * Loads the stored fields of a document
+     *
+     * @param docId        the id of the document in the index
+     * @param fieldsToLoad the stored fields to load, or null to load them all
+     * @return the document
+     * @throws IOException if the document could not be read
+     */
+    private Document loadDocument(final int docId, final FieldSelector fieldsToLoad) throws IOException {
+        if (fieldsToLoad == null) {
+            return this.searcher.doc(docId);
+        }
+        return this.searcher.doc(docId, fieldsToLoad);
+    }
+
     @Override
     public EntityDoc[] search(final String defaultField, final String querySyntax) {
         final QueryParser parser = getQueryParser(defaultField);
@@ -299,12 +361,15 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
     @Override
     public EntityDoc[] search(final Query query) {
         final AllResultsCollector collector = new AllResultsCollector();
+        final StageTimer.Context queryTime = this.queryTimer.time(query);
         try {
             LOGGER.debug("Search query is [{}], with filter [{}]", query);
             this.searcher.search(query, collector);
             return extractDocIds(collector);
         } catch (final IOException e) {
             throw new StepInternalException("Unable to search", e);
+        } finally {
+            queryTime.stop();
         }
     }
 
@@ -319,7 +384,7 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
             final List<Integer> docIds = collector.getDocIds();
             final EntityDoc[] docs = new EntityDoc[docIds.size()];
             for (int ii = 0; ii < docIds.size(); ii++) {
-                docs[ii] = new EntityDoc(this.searcher.doc(docIds.get(ii)));
+                docs[ii] = new EntityDoc(loadDocument(docIds.get(ii), null));
             }
             return docs;
         } catch (final IOException e) {
@@ -329,7 +394,14 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
 
     @Override
     public EntityDoc[] search(final Query query, final int max, final Sort sortField, final Filter filter) {
+        return search(query, max, sortField, filter, null);
+    }
+
+    @Override
+    public EntityDoc[] search(final Query query, final int max, final Sort sortField, final Filter filter,
+                              final FieldSelector fieldsToLoad) {
         LOGGER.debug("Search query is [{}]", query);
+        final StageTimer.Context queryTime = this.queryTimer.time(query);
         try {
             final TopDocs search;
             if (sortField != null) {
@@ -340,12 +412,14 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
 
             final EntityDoc[] results = new EntityDoc[search.scoreDocs.length];
             for (int ii = 0; ii < search.scoreDocs.length; ii++) {
-                results[ii] = new EntityDoc(this.searcher.doc(search.scoreDocs[ii].doc));
+                results[ii] = new EntityDoc(loadDocument(search.scoreDocs[ii].doc, fieldsToLoad));
             }
 
             return results;
         } catch (final IOException e) {
             throw new StepInternalException("Failed to search", e);
+        } finally {
+            queryTime.stop();
         }
     }
 
@@ -456,11 +530,14 @@ public class EntityIndexReaderImpl implements EntityIndexReader {
 
     @Override
     public EntityDoc[] search(BooleanQuery query, Filter filter, TopFieldCollector collector) {
+        final StageTimer.Context queryTime = this.queryTimer.time(query);
         try {
             this.searcher.search(query, filter, collector);
             return extractDocIds(collector.topDocs());
         } catch (IOException e) {
             throw new StepInternalException(e.getMessage(), e);
+        } finally {
+            queryTime.stop();
         }
     }
 
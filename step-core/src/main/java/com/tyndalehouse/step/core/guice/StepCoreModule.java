@@ -111,6 +111,7 @@ public class StepCoreModule extends AbstractStepGuiceModule {
         bind(ReferenceSuggestionServiceImpl.class).asEagerSingleton();
         bind(TextSuggestionServiceImpl.class).asEagerSingleton();
         bind(ConfigValueInterceptor.class).to(StepConfigValueInterceptor.class).asEagerSingleton();
+        bind(PassageCacheWarmUp.class).asEagerSingleton();
 
         // others that can wait
         bind(JSwordAnalysisService.class).to(JSwordAnalysisServiceImpl.class);
@@ -2,13 +2,16 @@ package com.tyndalehouse.step.core.models;
 
 import com.tyndalehouse.step.core.service.impl.SearchType;
 
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Parent class sharing to share some common properties between lookups for passages and searches
  * @author chrisburrell
  */
-public abstract class AbstractComplexSearch {
+public abstract class AbstractComplexSearch implements Serializable {
+    private static final long serialVersionUID = 8123061958410350424L;
     private String title;
     private long time;
     private String signature;
@@ -19,6 +22,30 @@ public abstract class AbstractComplexSearch {
     private List<SearchToken> searchTokens;
     private long timeTookTotal;
 
+    /**
+     * An empty search
+     */
+    protected AbstractComplexSearch() {
+        // nothing to set
+    }
+
+    /**
+     * Copies the common properties of another search, the search tokens being copied into a list of their own
+     *
+     * @param other the search to copy
+     */
+    protected AbstractComplexSearch(final AbstractComplexSearch other) {
+        this.title = other.title;
+        this.time = other.time;
+        this.signature = other.signature;
+        this.searchType = other.searchType;
+        this.masterVersion = other.masterVersion;
+        this.extraVersions = other.extraVersions;
+        this.interlinearMode = other.interlinearMode;
+        this.searchTokens = other.searchTokens == null ? null : new ArrayList<SearchToken>(other.searchTokens);
+        this.timeTookTotal = other.timeTookTotal;
+    }
+
     public void setSearchType(final SearchType searchType) {
         this.searchType = searchType;
     }
@@ -3,13 +3,16 @@ package com.tyndalehouse.step.core.models;
 import org.codehaus.jackson.annotate.JsonIgnore;
 import org.crosswire.jsword.passage.Key;
 
+import java.io.Serializable;
+
 /**
  * Wraps around an OSIS Key
  * 
  * @author chrisburrell
  * 
  */
-public class KeyWrapper {
+public class KeyWrapper implements Serializable {
+    private static final long serialVersionUID = 2218371839585737146L;
     private String osisKeyId;
     private String name;
     private boolean lastChapter;
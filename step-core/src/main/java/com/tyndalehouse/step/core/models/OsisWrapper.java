@@ -33,6 +33,8 @@
 package com.tyndalehouse.step.core.models;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -96,6 +98,68 @@ public class OsisWrapper extends AbstractComplexSearch implements Serializable {
         super.setSearchType(SearchType.PASSAGE);
     }
 
+    /**
+     * Copies a passage, so that the copy can be altered without affecting the original. The lists and maps are
+     * copied, as are the options removed. The text, key, chapters and lexicon suggestions are shared, since they are
+     * never altered once the passage is rendered.
+     *
+     * @param other the passage to copy
+     */
+    public OsisWrapper(final OsisWrapper other) {
+        super(other);
+        this.value = other.value;
+        this.key = other.key;
+        this.reference = other.reference;
+        this.longName = other.longName;
+        this.osisId = other.osisId;
+        this.languageCode = other.languageCode == null ? null : other.languageCode.clone();
+        this.previousChapter = other.previousChapter;
+        this.nextChapter = other.nextChapter;
+        this.fragment = other.fragment;
+        this.multipleRanges = other.multipleRanges;
+        this.startRange = other.startRange;
+        this.endRange = other.endRange;
+        this.strongNumbers = copyStrongNumbers(other.strongNumbers);
+        this.options = other.options;
+        this.selectedOptions = other.selectedOptions;
+        this.removedOptions = copyRemovedOptions(other.removedOptions);
+    }
+
+    /**
+     * @param strongNumbers the strong numbers of a passage, may be null
+     * @return a copy of the map and of each of its lists
+     */
+    private static Map<String, List<LexiconSuggestion>> copyStrongNumbers(
+            final Map<String, List<LexiconSuggestion>> strongNumbers) {
+        if (strongNumbers == null) {
+            return null;
+        }
+
+        final Map<String, List<LexiconSuggestion>> copy = new LinkedHashMap<String, List<LexiconSuggestion>>(
+                strongNumbers.size() * 2);
+        for (final Map.Entry<String, List<LexiconSuggestion>> entry : strongNumbers.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue() == null ? null
+                    : new ArrayList<LexiconSuggestion>(entry.getValue()));
+        }
+        return copy;
+    }
+
+    /**
+     * @param removedOptions the options removed from a passage, may be null
+     * @return a copy of the list and of each of the options
+     */
+    private static List<TrimmedLookupOption> copyRemovedOptions(final List<TrimmedLookupOption> removedOptions) {
+        if (removedOptions == null) {
+            return null;
+        }
+
+        final List<TrimmedLookupOption> copy = new ArrayList<TrimmedLookupOption>(removedOptions.size());
+        for (final TrimmedLookupOption option : removedOptions) {
+            copy.add(option == null ? null : new TrimmedLookupOption(option.getExplanation(), option.getOption()));
+        }
+        return copy;
+    }
+
     /**
      * @return the value to be returned
      */
@@ -32,13 +32,16 @@
  ******************************************************************************/
 package com.tyndalehouse.step.core.models;
 
+import java.io.Serializable;
+
 /**
  * An option that was removed because it was incompatible with how a passage was being looked up
  * 
  * @author chrisburrell
  * 
  */
-public class TrimmedLookupOption {
+public class TrimmedLookupOption implements Serializable {
+    private static final long serialVersionUID = -3394869213406405183L;
     private String explanation;
     private LookupOption option;
 
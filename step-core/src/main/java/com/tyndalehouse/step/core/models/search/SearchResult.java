@@ -26,6 +26,7 @@ public class SearchResult extends AbstractComplexSearch implements Serializable
     private int pageSize;
     private int pageNumber;
     private String searchRestriction;
+    private boolean masterVersionOnly;
 
     /**
      * @return the query
@@ -193,4 +194,18 @@ public class SearchResult extends AbstractComplexSearch implements Serializable
     public void setSearchRestriction(String searchRestriction) {
         this.searchRestriction = searchRestriction;
     }
+
+    /**
+     * @return true if the search was too expensive to run against all versions, and only searched the first
+     */
+    public boolean isMasterVersionOnly() {
+        return masterVersionOnly;
+    }
+
+    /**
+     * @param masterVersionOnly true if only the first version was searched
+     */
+    public void setMasterVersionOnly(final boolean masterVersionOnly) {
+        this.masterVersionOnly = masterVersionOnly;
+    }
 }
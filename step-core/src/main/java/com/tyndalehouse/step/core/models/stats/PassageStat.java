@@ -52,12 +52,22 @@ public class PassageStat {
      * @param word the word
      */
     public void addWord(final String word) {
+        addWord(word, 1);
+    }
+
+    /**
+     * Adds several occurrences of the word to the current stats
+     *
+     * @param word        the word
+     * @param occurrences the number of occurrences
+     */
+    public void addWord(final String word, final int occurrences) {
         Integer counts = this.stats.get(word);
         if (counts == null) {
             counts = 0;
         }
 
-        this.stats.put(word, counts + 1);
+        this.stats.put(word, counts + occurrences);
     }
 
     /**
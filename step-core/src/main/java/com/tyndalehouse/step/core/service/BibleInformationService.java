@@ -74,6 +74,22 @@ public interface BibleInformationService {
     OsisWrapper getPassageText(String version, String reference, String lookupOptions,
             String interlinearVersion, String interlinearMode);
 
+    /**
+     * As per {@link #getPassageText(String, String, String, String, String)}, the passage being rendered in the given
+     * locale rather than the locale of the client session, so that it can be rendered outside of a request.
+     * 
+     * @param version the initials that identify the bible version
+     * @param reference the reference
+     * @param lookupOptions options to set for retrieval
+     * @param interlinearVersion version to use as the interlinear
+     * @param interlinearMode indicates if we are interested in interleaving, proper interlinear, comparing,
+     *            etc.
+     * @param locale the locale of book names and explanations
+     * @return the HTML string passed back for consumption
+     */
+    OsisWrapper getPassageText(String version, String reference, String lookupOptions,
+            String interlinearVersion, String interlinearMode, Locale locale);
+
     /**
      * This method selects passage text and forms XML for the client. This is done server side so that the
      * client does not need to render each div individually.
@@ -7,6 +7,7 @@ import com.tyndalehouse.step.core.models.TrimmedLookupOption;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 
 /**
@@ -54,6 +55,24 @@ public interface PassageOptionsValidationService {
     Set<LookupOption> trim(List<LookupOption> options, String version, List<String> extraVersions,
                            InterlinearMode mode, InterlinearMode finalMode, List<TrimmedLookupOption> trimmingExplanations);
 
+    /**
+     * As per {@link #trim(List, String, List, InterlinearMode, InterlinearMode, List)}, the explanations being in the
+     * given locale rather than the locale of the client session, so that it can be called outside of a request
+     *
+     * @param options              the options
+     * @param version              the version that is being selected
+     * @param extraVersions        the secondary selected versions
+     * @param mode                 the original display mode
+     * @param finalMode            the final display mode
+     * @param locale               the language of the explanations
+     * @param trimmingExplanations can be null, if provided then it is populated with the reasons why an option has been
+     *                             removed
+     * @return a new list of options where both list have been intersected.
+     */
+    Set<LookupOption> trim(List<LookupOption> options, String version, List<String> extraVersions,
+                           InterlinearMode mode, InterlinearMode finalMode, Locale locale,
+                           List<TrimmedLookupOption> trimmingExplanations);
+
     /**
      * Determine display mode: which if NONE and there are interlinear options, we override to interlinear. If we're not
      * explaining options (but rather getting the full list of options), then we simply return the passed in display
@@ -0,0 +1,93 @@
+package com.tyndalehouse.step.core.service.helpers;
+
+import com.tyndalehouse.step.core.data.EntityIndexReader;
+import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+import org.apache.lucene.index.IndexReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+
+/**
+ * Keeps the {@link VerseReferenceIndex} of the alternative translations, so that the entries of a passage are a
+ * range scan over verse ordinals rather than a Lucene query with a clause per verse. The index is rebuilt by the
+ * loader whenever the entity index is written. It is small, and quick to build from the entity index, so it is only
+ * kept in memory and built again the first time it is asked for after a restart.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class AlternativeTranslationsIndexStore {
+    public static final String REFERENCE_VERSION = "ESV-THE";
+    private static final Logger LOGGER = LoggerFactory.getLogger(AlternativeTranslationsIndexStore.class);
+    private static final String REFERENCE_FIELD = "reference";
+    private final JSwordVersificationService versificationService;
+    private volatile VerseReferenceIndex index;
+
+    /**
+     * @param versificationService the versification service, giving the versification of the references
+     */
+    @Inject
+    public AlternativeTranslationsIndexStore(final JSwordVersificationService versificationService) {
+        this.versificationService = versificationService;
+    }
+
+    /**
+     * @param alternativeTranslations the reader of the alternative translations entity index
+     * @return the index of the alternative translations, or null if it cannot be built
+     */
+    public VerseReferenceIndex getIndex(final EntityIndexReader alternativeTranslations) {
+        final IndexReader reader = alternativeTranslations.getIndexReader();
+        if (reader == null) {
+            return null;
+        }
+
+        final VerseReferenceIndex current = this.index;
+        if (current != null && current.getMaxDoc() == reader.maxDoc()) {
+            return current;
+        }
+
+        synchronized (this) {
+            if (this.index == null || this.index.getMaxDoc() != reader.maxDoc()) {
+                this.index = build(reader);
+            }
+            return this.index;
+        }
+    }
+
+    /**
+     * Rebuilds the index, once the alternative translations entity index has been written
+     *
+     * @param alternativeTranslations the reader of the alternative translations entity index
+     */
+    public synchronized void rebuildIndex(final EntityIndexReader alternativeTranslations) {
+        this.index = null;
+        final IndexReader reader = alternativeTranslations.getIndexReader();
+        if (reader == null) {
+            LOGGER.warn("Alternative translations index is not readable, references will not be precomputed");
+            return;
+        }
+        this.index = build(reader);
+    }
+
+    /**
+     * @param reader the reader of the alternative translations entity index
+     * @return the index, or null if the entity index cannot be read
+     */
+    private VerseReferenceIndex build(final IndexReader reader) {
+        final long start = System.currentTimeMillis();
+        try {
+            final String versification = this.versificationService
+                    .getVersificationForVersion(REFERENCE_VERSION).getName();
+            final VerseReferenceIndex built = VerseReferenceIndex.build(reader, REFERENCE_FIELD, versification);
+            LOGGER.info("Built references of [{}] alternative translations in [{}] ms", built.getNumEntries(),
+                    System.currentTimeMillis() - start);
+            return built;
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to build alternative translation references", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.tyndalehouse.step.core.service.helpers;
+
+import com.tyndalehouse.step.core.utils.IOUtils;
+import org.apache.lucene.index.IndexReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Keeps data that is expensive to work out from a module or an index, e.g. the histograms of each chapter. Values are
+ * built in the background, one at a time, the first time they are asked for, and written to a directory in the STEP
+ * home so that they survive a restart. Until a value is available, callers are expected to work it out as they did
+ * before.
+ * <p/>
+ * Each value is kept along with the signature of what it was built from, e.g. the version of a module or of a Lucene
+ * index. A value whose signature no longer matches, in memory or on disk, is built again. A value being built when it
+ * is invalidated is discarded rather than kept.
+ *
+ * @param <V> the type of the values
+ * @author chrisburrell
+ */
+public class BackgroundBuiltStore<V extends Serializable> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BackgroundBuiltStore.class);
+    private final String name;
+    private final File storeDirectory;
+    private final Map<String, Entry<V>> entries = new ConcurrentHashMap<String, Entry<V>>();
+    private final Set<String> pending = new HashSet<String>();
+    private final Map<String, Integer> invalidations = new HashMap<String, Integer>();
+    private final ExecutorService builder;
+
+    /**
+     * @param name           the name of the store, naming its thread and used in logs
+     * @param storeDirectory the directory in which values are kept, or null to keep them in memory only
+     */
+    public BackgroundBuiltStore(final String name, final File storeDirectory) {
+        this.name = name;
+        this.storeDirectory = storeDirectory;
+        this.builder = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, name + "-builder");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @param reader the reader of a Lucene index
+     * @return a signature that changes whenever the index is written to
+     */
+    public static String getSignature(final IndexReader reader) {
+        return reader.maxDoc() + "-" + reader.getVersion();
+    }
+
+    /**
+     * @param key       the key of the value
+     * @param signature the signature of what the value is built from
+     * @param build     builds the value, if it can't be read from disk
+     * @return the value, or null if it is not available yet, in which case it is loaded or built in the background
+     */
+    public V get(final String key, final String signature, final Callable<V> build) {
+        final Entry<V> entry = this.entries.get(key);
+        if (entry != null && entry.signature.equals(signature)) {
+            return entry.value;
+        }
+
+        scheduleBuild(key, signature, build);
+        return null;
+    }
+
+    /**
+     * Builds a value straight away, e.g. once the data it is built from has just been written
+     *
+     * @param key       the key of the value
+     * @param signature the signature of what the value is built from
+     * @param build     builds the value
+     * @return the value
+     * @throws Exception if the value cannot be built
+     */
+    // CHECKSTYLE:OFF the builder is free to throw whatever its source throws
+    public V rebuild(final String key, final String signature, final Callable<V> build) throws Exception {
+        // CHECKSTYLE:ON
+        final int invalidation = getInvalidation(key);
+        final V value = build.call();
+        publish(key, signature, value, invalidation, true);
+        return value;
+    }
+
+    /**
+     * Loads or builds a value in the background, unless this is already happening
+     *
+     * @param key       the key of the value
+     * @param signature the signature of what the value is built from
+     * @param build     builds the value
+     */
+    private void scheduleBuild(final String key, final String signature, final Callable<V> build) {
+        synchronized (this.pending) {
+            if (!this.pending.add(key)) {
+                return;
+            }
+        }
+
+        final int invalidation = getInvalidation(key);
+        this.builder.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    V value = read(key, signature);
+                    final boolean built = value == null;
+                    if (built) {
+                        final long start = System.currentTimeMillis();
+                        value = build.call();
+                        LOGGER.info("Built [{}] of [{}] in [{}] ms", name, key, System.currentTimeMillis() - start);
+                    }
+                    publish(key, signature, value, invalidation, built);
+                    // CHECKSTYLE:OFF one value that can't be built shouldn't stop the others
+                } catch (final Exception e) {
+                    // CHECKSTYLE:ON
+                    LOGGER.warn("Unable to build [{}] of [{}]", name, key, e);
+                } finally {
+                    synchronized (pending) {
+                        pending.remove(key);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Keeps a value, unless it was invalidated while it was being built
+     *
+     * @param key          the key of the value
+     * @param signature    the signature of what the value was built from
+     * @param value        the value
+     * @param invalidation the number of times the key had been invalidated when the build started
+     * @param write        true to write the value to disk
+     */
+    private void publish(final String key, final String signature, final V value, final int invalidation,
+                         final boolean write) {
+        synchronized (this.invalidations) {
+            if (invalidation != getInvalidation(key)) {
+                LOGGER.debug("Discarding [{}] of [{}], invalidated while being built", this.name, key);
+                return;
+            }
+
+            if (write) {
+                write(key, signature, value);
+            }
+            this.entries.put(key, new Entry<V>(signature, value));
+        }
+    }
+
+    /**
+     * Drops a value, from memory and disk, along with any value being built for the key
+     *
+     * @param key the key of the value
+     */
+    public void invalidate(final String key) {
+        synchronized (this.invalidations) {
+            this.invalidations.put(key, getInvalidation(key) + 1);
+            this.entries.remove(key);
+
+            final File file = getFile(key);
+            if (file != null && file.exists()) {
+                deleteFile(file);
+            }
+        }
+    }
+
+    /**
+     * @param key the key of the value
+     * @return the number of times the key has been invalidated
+     */
+    private int getInvalidation(final String key) {
+        synchronized (this.invalidations) {
+            final Integer invalidation = this.invalidations.get(key);
+            return invalidation == null ? 0 : invalidation;
+        }
+    }
+
+    /**
+     * @param key       the key of the value
+     * @param signature the signature of what the value is built from
+     * @return the value kept from a previous run, or null if there is none or it was built from something else
+     */
+    @SuppressWarnings("unchecked")
+    private V read(final String key, final String signature) {
+        final File file = getFile(key);
+        if (file == null || !file.exists()) {
+            return null;
+        }
+
+        ObjectInputStream in = null;
+        try {
+            in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (!signature.equals(in.readObject())) {
+                LOGGER.debug("[{}] is out of date", file);
+                return null;
+            }
+            return (V) in.readObject();
+        } catch (final IOException | ClassNotFoundException e) {
+            LOGGER.warn("Unable to read [{}], it will be rebuilt", file, e);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * @param key       the key of the value
+     * @param signature the signature of what the value was built from
+     * @param value     the value to keep for the next run
+     */
+    private void write(final String key, final String signature, final V value) {
+        final File file = getFile(key);
+        if (file == null) {
+            return;
+        }
+
+        ObjectOutputStream out = null;
+        boolean written = false;
+        try {
+            out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeObject(signature);
+            out.writeObject(value);
+            written = true;
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to write [{}]", file, e);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+
+        if (!written && file.exists()) {
+            // don't leave a partial file behind to be read on the next run
+            deleteFile(file);
+        }
+    }
+
+    /**
+     * @param file the file to delete
+     */
+    private void deleteFile(final File file) {
+        if (!file.delete()) {
+            LOGGER.warn("Unable to delete [{}]", file);
+        }
+    }
+
+    /**
+     * @param key the key of the value
+     * @return the file holding the value, or null if values are only kept in memory
+     */
+    private File getFile(final String key) {
+        if (this.storeDirectory == null) {
+            return null;
+        }
+        return new File(this.storeDirectory, key + ".ser");
+    }
+
+    /**
+     * A value along with the signature of what it was built from
+     *
+     * @param <V> the type of the value
+     */
+    private static final class Entry<V> {
+        private final String signature;
+        private final V value;
+
+        /**
+         * @param signature the signature of what the value was built from
+         * @param value     the value
+         */
+        private Entry(final String signature, final V value) {
+            this.signature = signature;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.tyndalehouse.step.core.service.helpers;
+
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.book.BookMetaData;
+import org.crosswire.jsword.book.Books;
+import org.crosswire.jsword.book.BooksEvent;
+import org.crosswire.jsword.book.BooksListener;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Resolves the names by which versions are known in STEP, i.e. module initials or STEP short names, to the installed
+ * book and its versification. Looking a book up in JSword walks the list of installed books under a lock, and finding
+ * its versification is another synchronized lookup, both done many times per request. Instead, a snapshot of every
+ * installed book is taken up front, and replaced by a new snapshot whenever a module is installed or removed. Snapshots
+ * are never changed once published, so lookups need no locking. Names not found in the snapshot, e.g. the full name of
+ * a module, are looked up in JSword as before.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class BookRegistry implements BooksListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BookRegistry.class);
+    private final VersionResolver versionResolver;
+    private volatile Snapshot snapshot;
+
+    /**
+     * @param versionResolver resolves STEP short names to module initials
+     */
+    @Inject
+    public BookRegistry(final VersionResolver versionResolver) {
+        this(versionResolver, true);
+        Books.installed().addBooksListener(this);
+    }
+
+    /**
+     * @param versionResolver resolves STEP short names to module initials
+     * @param build           true to take the first snapshot straight away
+     */
+    BookRegistry(final VersionResolver versionResolver, final boolean build) {
+        this.versionResolver = versionResolver;
+        this.snapshot = build ? buildSnapshot() : new Snapshot(Collections.<String, BookHandle>emptyMap());
+    }
+
+    /**
+     * @param version the initials or STEP short name of the version
+     * @return the handle of the book, or null if no such book is installed
+     */
+    public BookHandle getHandle(final String version) {
+        final BookHandle handle = this.snapshot.handles.get(version.toLowerCase(Locale.ENGLISH));
+        if (handle != null) {
+            return handle;
+        }
+
+        final Book book = Books.installed().getBook(this.versionResolver.getLongName(version));
+        return book == null ? null : new BookHandle(book, resolveVersification(book));
+    }
+
+    /**
+     * @param version the initials or STEP short name of the version
+     * @return the book, or null if no such book is installed
+     */
+    public Book getBook(final String version) {
+        final BookHandle handle = getHandle(version);
+        return handle == null ? null : handle.getBook();
+    }
+
+    /**
+     * @param book the book
+     * @return the versification of the book, or the default versification if it doesn't have one
+     */
+    public Versification getVersification(final Book book) {
+        final BookHandle handle = this.snapshot.handles.get(book.getInitials().toLowerCase(Locale.ENGLISH));
+        if (handle != null && handle.getBook() == book) {
+            return handle.getVersification();
+        }
+        return resolveVersification(book);
+    }
+
+    @Override
+    public void bookAdded(final BooksEvent ev) {
+        rebuild();
+    }
+
+    @Override
+    public void bookRemoved(final BooksEvent ev) {
+        rebuild();
+    }
+
+    /**
+     * Takes a new snapshot of the installed books and publishes it
+     */
+    synchronized void rebuild() {
+        this.snapshot = buildSnapshot();
+        LOGGER.debug("Book registry now has [{}] names", this.snapshot.handles.size());
+    }
+
+    /**
+     * @return a snapshot of the installed books
+     */
+    private Snapshot buildSnapshot() {
+        final List<Book> books = Books.installed().getBooks();
+        final Map<String, BookHandle> handles = new HashMap<String, BookHandle>(books.size() * 4);
+        for (final Book book : books) {
+            final String initials = book.getInitials();
+            final String shortName = getShortName(book);
+            final BookHandle handle = new BookHandle(book, resolveVersification(book));
+
+            // STEP short names take precedence over module initials, so initials used as
+            // a short name for another module are left for the resolver to deal with
+            if (initials.equalsIgnoreCase(this.versionResolver.getLongName(initials))) {
+                putIfAbsent(handles, initials.toLowerCase(Locale.ENGLISH), handle);
+            }
+            if (!shortName.equalsIgnoreCase(initials)) {
+                handles.put(shortName.toLowerCase(Locale.ENGLISH), handle);
+            }
+        }
+        return new Snapshot(Collections.unmodifiableMap(handles));
+    }
+
+    /**
+     * Keeps the first book found for a name, as JSword does
+     *
+     * @param handles the handles
+     * @param name    the name
+     * @param handle  the handle
+     */
+    private static void putIfAbsent(final Map<String, BookHandle> handles, final String name,
+                                    final BookHandle handle) {
+        if (!handles.containsKey(name)) {
+            handles.put(name, handle);
+        }
+    }
+
+    /**
+     * @param book the book
+     * @return the STEP short name of the book
+     */
+    private String getShortName(final Book book) {
+        return this.versionResolver.getShortName(book.getInitials());
+    }
+
+    /**
+     * @param book the book
+     * @return the versification of the book, or the default versification if it doesn't have one
+     */
+    private static Versification resolveVersification(final Book book) {
+        final Versification versification = Versifications.instance().getVersification(
+                (String) book.getBookMetaData().getProperty(BookMetaData.KEY_VERSIFICATION));
+
+        if (versification == null) {
+            return Versifications.instance().getVersification(Versifications.DEFAULT_V11N);
+        }
+        return versification;
+    }
+
+    /**
+     * The books installed at one point in time
+     */
+    private static final class Snapshot {
+        private final Map<String, BookHandle> handles;
+
+        /**
+         * @param handles the handles of the books, by lower-cased initials and short names
+         */
+        private Snapshot(final Map<String, BookHandle> handles) {
+            this.handles = handles;
+        }
+    }
+
+    /**
+     * A book along with what is resolved from it on most requests
+     */
+    public static final class BookHandle {
+        private final Book book;
+        private final Versification versification;
+
+        /**
+         * @param book          the book
+         * @param versification the versification of the book
+         */
+        BookHandle(final Book book, final Versification versification) {
+            this.book = book;
+            this.versification = versification;
+        }
+
+        /**
+         * @return the book
+         */
+        public Book getBook() {
+            return this.book;
+        }
+
+        /**
+         * @return the versification of the book
+         */
+        public Versification getVersification() {
+            return this.versification;
+        }
+    }
+}
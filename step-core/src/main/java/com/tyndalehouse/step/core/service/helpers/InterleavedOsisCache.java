@@ -0,0 +1,180 @@
+package com.tyndalehouse.step.core.service.helpers;
+
+import com.tyndalehouse.step.core.service.jsword.helpers.OsisEventBuffer;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.book.Books;
+import org.crosswire.jsword.book.BooksEvent;
+import org.crosswire.jsword.book.BooksListener;
+import org.crosswire.jsword.passage.Key;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Keeps the merged OSIS of interleaved and compared passages, keyed by the set of versions, the reference and whether
+ * the versions are compared. The same merged OSIS is rendered with different options and display modes, and is the
+ * most expensive part of rendering several versions. The cache is bounded by the size of the recorded events it
+ * holds, the least recently used being dropped first. Entries are invalidated whenever a module they were read from
+ * is installed or removed.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class InterleavedOsisCache implements BooksListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(InterleavedOsisCache.class);
+    private static final char KEY_SEPARATOR = '|';
+    private static final Counter HITS = Metrics.newCounter(InterleavedOsisCache.class, "hits");
+    private static final Counter MISSES = Metrics.newCounter(InterleavedOsisCache.class, "misses");
+    private final long maxSize;
+    private final LinkedHashMap<String, CachedOsis> entries = new LinkedHashMap<String, CachedOsis>(64, 0.75f, true);
+    private long currentSize;
+
+    /**
+     * @param maxSize the size of the recorded events kept in memory, in chars, 0 to disable the cache
+     */
+    @Inject
+    public InterleavedOsisCache(@Named("app.interleavedOsisCache.maxChars") final long maxSize) {
+        this.maxSize = maxSize;
+        if (maxSize > 0) {
+            Books.installed().addBooksListener(this);
+        }
+    }
+
+    /**
+     * @return true if merged OSIS is kept at all
+     */
+    public boolean isEnabled() {
+        return this.maxSize > 0;
+    }
+
+    /**
+     * @param books   the books being merged, in order
+     * @param key     the passage
+     * @param compare true if the versions are compared
+     * @return the key of the merged OSIS
+     */
+    public static String getKey(final Book[] books, final Key key, final boolean compare) {
+        final StringBuilder cacheKey = new StringBuilder(64);
+        for (final Book b : books) {
+            cacheKey.append(b.getInitials()).append(',');
+        }
+        cacheKey.append(KEY_SEPARATOR).append(key.getOsisRef());
+        cacheKey.append(KEY_SEPARATOR).append(compare);
+        return cacheKey.toString();
+    }
+
+    /**
+     * @param key the key of the merged OSIS
+     * @return the merged OSIS, or null if it isn't cached
+     */
+    public OsisEventBuffer get(final String key) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        final CachedOsis cached;
+        synchronized (this) {
+            cached = this.entries.get(key);
+        }
+
+        if (cached == null) {
+            MISSES.inc();
+            return null;
+        }
+        HITS.inc();
+        return cached.osis;
+    }
+
+    /**
+     * Keeps the merged OSIS, which must no longer be modified
+     *
+     * @param key   the key of the merged OSIS
+     * @param books the books it was read from
+     * @param osis  the merged OSIS
+     */
+    public void put(final String key, final Book[] books, final OsisEventBuffer osis) {
+        final long size = osis.getSize();
+        if (!isEnabled() || size > this.maxSize) {
+            return;
+        }
+
+        final Set<String> modules = new HashSet<String>(books.length * 2);
+        for (final Book b : books) {
+            modules.add(b.getInitials().toLowerCase(Locale.ENGLISH));
+        }
+
+        synchronized (this) {
+            final CachedOsis previous = this.entries.put(key, new CachedOsis(osis, modules, size));
+            if (previous != null) {
+                this.currentSize -= previous.size;
+            }
+            this.currentSize += size;
+
+            final Iterator<CachedOsis> eldest = this.entries.values().iterator();
+            while (this.currentSize > this.maxSize && eldest.hasNext()) {
+                this.currentSize -= eldest.next().size;
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all merged OSIS read from the given module
+     *
+     * @param initials the initials of the module
+     */
+    public void invalidate(final String initials) {
+        final String module = initials.toLowerCase(Locale.ENGLISH);
+        synchronized (this) {
+            final Iterator<CachedOsis> cached = this.entries.values().iterator();
+            while (cached.hasNext()) {
+                final CachedOsis osis = cached.next();
+                if (osis.modules.contains(module)) {
+                    this.currentSize -= osis.size;
+                    cached.remove();
+                }
+            }
+        }
+        LOGGER.debug("Invalidated merged OSIS read from [{}]", initials);
+    }
+
+    @Override
+    public void bookAdded(final BooksEvent ev) {
+        invalidate(ev.getBook().getInitials());
+    }
+
+    @Override
+    public void bookRemoved(final BooksEvent ev) {
+        invalidate(ev.getBook().getInitials());
+    }
+
+    /**
+     * A merged OSIS, with the modules it was read from
+     */
+    private static final class CachedOsis {
+        private final OsisEventBuffer osis;
+        private final Set<String> modules;
+        private final long size;
+
+        /**
+         * @param osis    the merged OSIS
+         * @param modules the modules, in lower case
+         * @param size    the size of the recorded events
+         */
+        private CachedOsis(final OsisEventBuffer osis, final Set<String> modules, final long size) {
+            this.osis = osis;
+            this.modules = modules;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package com.tyndalehouse.step.core.service.helpers;
+
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.crosswire.jsword.index.lucene.LuceneIndex;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * An inverted index of the strong numbers of each verse of a module, restricted to the strong numbers that are rare
+ * enough to say something about a verse. Each strong number is weighted by its inverse document frequency, and each
+ * verse keeps its signature, i.e. the list of strong numbers it contains, so that the verses related to a passage can
+ * be found by walking the postings of the passage's strong numbers, most significant first.
+ *
+ * @author chrisburrell
+ */
+public final class RelatedVersesIndex implements Serializable {
+    private static final long serialVersionUID = -2064573386108129441L;
+    private static final int MIN_SHARED_STRONGS = 2;
+    private final String[] verses;
+    private final float[] weights;
+    private final int[][] postings;
+    private final int[][] signatures;
+    private transient Map<String, Integer> verseOrdinals;
+
+    /**
+     * @param verses     the osis references of the verses, indexed by verse ordinal
+     * @param weights    the weight of each strong number, indexed by strong ordinal
+     * @param postings   the ordinals of the verses containing each strong number, in ascending order
+     * @param signatures the ordinals of the strong numbers found in each verse
+     */
+    private RelatedVersesIndex(final String[] verses, final float[] weights, final int[][] postings,
+                               final int[][] signatures) {
+        this.verses = verses;
+        this.weights = weights;
+        this.postings = postings;
+        this.signatures = signatures;
+        indexVerses();
+    }
+
+    /**
+     * Builds the index from the Lucene index of a module
+     *
+     * @param reader      the reader of the module's Lucene index
+     * @param maxDocFreq  strong numbers found in that many verses or more are too common to be kept
+     * @return the index
+     * @throws IOException if the Lucene index cannot be read
+     */
+    public static RelatedVersesIndex build(final IndexReader reader, final int maxDocFreq) throws IOException {
+        final int maxDoc = reader.maxDoc();
+        final MapFieldSelector keyOnly = new MapFieldSelector(LuceneIndex.FIELD_KEY);
+        final int[] verseOrdinalByDoc = new int[maxDoc];
+        final List<String> verses = new ArrayList<String>(maxDoc);
+        for (int doc = 0; doc < maxDoc; doc++) {
+            verseOrdinalByDoc[doc] = -1;
+            if (!reader.isDeleted(doc)) {
+                final String key = reader.document(doc, keyOnly).get(LuceneIndex.FIELD_KEY);
+                if (key != null) {
+                    verseOrdinalByDoc[doc] = verses.size();
+                    verses.add(key);
+                }
+            }
+        }
+
+        final int numVerses = verses.size();
+        final List<int[]> postings = new ArrayList<int[]>(8192);
+        final List<Float> weights = new ArrayList<Float>(8192);
+        final int[] signatureSizes = new int[numVerses];
+        final TermEnum terms = reader.terms(new Term(LuceneIndex.FIELD_STRONG, ""));
+        final TermDocs termDocs = reader.termDocs();
+        try {
+            do {
+                final Term term = terms.term();
+                if (term == null || !LuceneIndex.FIELD_STRONG.equals(term.field())) {
+                    break;
+                }
+
+                final int docFreq = terms.docFreq();
+                if (docFreq >= maxDocFreq) {
+                    continue;
+                }
+
+                final int[] posting = readPosting(termDocs, term, docFreq, verseOrdinalByDoc);
+                if (posting.length < MIN_SHARED_STRONGS) {
+                    // a strong number found in a single verse can't relate it to another
+                    continue;
+                }
+
+                for (final int verse : posting) {
+                    signatureSizes[verse]++;
+                }
+                postings.add(posting);
+                weights.add((float) Math.log((double) numVerses / posting.length));
+            } while (terms.next());
+        } finally {
+            terms.close();
+            termDocs.close();
+        }
+
+        return new RelatedVersesIndex(verses.toArray(new String[numVerses]), toFloatArray(weights),
+                postings.toArray(new int[postings.size()][]), invert(postings, signatureSizes));
+    }
+
+    /**
+     * @param termDocs          the term docs of the index
+     * @param term              the strong number
+     * @param docFreq           the number of documents containing the strong number
+     * @param verseOrdinalByDoc the verse ordinal of each Lucene document
+     * @return the ordinals of the verses containing the strong number, in ascending order
+     * @throws IOException if the Lucene index cannot be read
+     */
+    private static int[] readPosting(final TermDocs termDocs, final Term term, final int docFreq,
+                                     final int[] verseOrdinalByDoc) throws IOException {
+        final int[] posting = new int[docFreq];
+        int size = 0;
+        termDocs.seek(term);
+        while (termDocs.next() && size < posting.length) {
+            final int verse = verseOrdinalByDoc[termDocs.doc()];
+            if (verse != -1) {
+                posting[size++] = verse;
+            }
+        }
+        return size == posting.length ? posting : Arrays.copyOf(posting, size);
+    }
+
+    /**
+     * @param postings       the verses of each strong number
+     * @param signatureSizes the number of strong numbers in each verse
+     * @return the strong numbers of each verse
+     */
+    private static int[][] invert(final List<int[]> postings, final int[] signatureSizes) {
+        final int[][] signatures = new int[signatureSizes.length][];
+        for (int ii = 0; ii < signatures.length; ii++) {
+            signatures[ii] = new int[signatureSizes[ii]];
+        }
+
+        final int[] filled = new int[signatureSizes.length];
+        for (int strong = 0; strong < postings.size(); strong++) {
+            for (final int verse : postings.get(strong)) {
+                signatures[verse][filled[verse]++] = strong;
+            }
+        }
+        return signatures;
+    }
+
+    /**
+     * @param values the boxed values
+     * @return the values as an array
+     */
+    private static float[] toFloatArray(final List<Float> values) {
+        final float[] array = new float[values.size()];
+        for (int ii = 0; ii < array.length; ii++) {
+            array[ii] = values.get(ii);
+        }
+        return array;
+    }
+
+    /**
+     * Finds the verses sharing the most significant strong numbers with a passage. A verse needs to share at least
+     * two strong numbers with the passage to be considered. The strong numbers of the passage are walked in order of
+     * decreasing weight, and once enough verses have been found that no unseen verse could overtake them, only the
+     * scores of the verses already found are updated.
+     *
+     * @param passageVerses the osis references of the verses of the passage
+     * @param max           the maximum number of verses to return
+     * @return the osis references of the related verses, most related first
+     */
+    public List<String> getRelatedVerses(final List<String> passageVerses, final int max) {
+        final int[] strongs = getStrongsByWeight(passageVerses);
+        if (strongs.length < MIN_SHARED_STRONGS || max <= 0) {
+            return new ArrayList<String>(0);
+        }
+
+        // the most that a verse could still gain from the strong numbers left to walk
+        final float[] remaining = new float[strongs.length + 1];
+        for (int ii = strongs.length - 1; ii >= 0; ii--) {
+            remaining[ii] = remaining[ii + 1] + this.weights[strongs[ii]];
+        }
+
+        final float[] scores = new float[this.verses.length];
+        final byte[] shared = new byte[this.verses.length];
+        final int[] candidates = new int[this.verses.length];
+        int numCandidates = 0;
+        boolean admitting = true;
+
+        for (int ii = 0; ii < strongs.length; ii++) {
+            if (admitting && countAtLeast(candidates, numCandidates, scores, shared, remaining[ii]) >= max) {
+                admitting = false;
+            }
+
+            final float weight = this.weights[strongs[ii]];
+            for (final int verse : this.postings[strongs[ii]]) {
+                if (shared[verse] == 0) {
+                    if (!admitting) {
+                        continue;
+                    }
+                    candidates[numCandidates++] = verse;
+                }
+                scores[verse] += weight;
+                if (shared[verse] < Byte.MAX_VALUE) {
+                    shared[verse]++;
+                }
+            }
+        }
+
+        return getTopVerses(candidates, numCandidates, scores, shared, max);
+    }
+
+    /**
+     * @param candidates    the verses found so far
+     * @param numCandidates the number of verses found so far
+     * @param scores        the score of each verse
+     * @param shared        the number of strong numbers each verse shares with the passage
+     * @param threshold     the minimum score
+     * @return the number of verses which qualify and score at least the threshold
+     */
+    private static int countAtLeast(final int[] candidates, final int numCandidates, final float[] scores,
+                                    final byte[] shared, final float threshold) {
+        int count = 0;
+        for (int ii = 0; ii < numCandidates; ii++) {
+            final int verse = candidates[ii];
+            if (shared[verse] >= MIN_SHARED_STRONGS && scores[verse] >= threshold) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param candidates    the verses found
+     * @param numCandidates the number of verses found
+     * @param scores        the score of each verse
+     * @param shared        the number of strong numbers each verse shares with the passage
+     * @param max           the maximum number of verses to return
+     * @return the osis references of the best verses, best first
+     */
+    private List<String> getTopVerses(final int[] candidates, final int numCandidates, final float[] scores,
+                                      final byte[] shared, final int max) {
+        final PriorityQueue<ScoredVerse> best = new PriorityQueue<ScoredVerse>(max + 1);
+        for (int ii = 0; ii < numCandidates; ii++) {
+            final int verse = candidates[ii];
+            if (shared[verse] < MIN_SHARED_STRONGS) {
+                continue;
+            }
+
+            if (best.size() < max) {
+                best.add(new ScoredVerse(verse, scores[verse]));
+            } else if (scores[verse] > best.peek().score) {
+                best.poll();
+                best.add(new ScoredVerse(verse, scores[verse]));
+            }
+        }
+
+        final String[] top = new String[best.size()];
+        for (int ii = top.length - 1; ii >= 0; ii--) {
+            top[ii] = this.verses[best.poll().verse];
+        }
+        return Arrays.asList(top);
+    }
+
+    /**
+     * @param passageVerses the osis references of the verses of a passage
+     * @return the distinct strong numbers of the passage, most significant first
+     */
+    private int[] getStrongsByWeight(final List<String> passageVerses) {
+        final List<Integer> strongs = new ArrayList<Integer>(32);
+        final boolean[] seen = new boolean[this.weights.length];
+        for (final String verse : passageVerses) {
+            final Integer ordinal = this.verseOrdinals.get(verse);
+            if (ordinal == null) {
+                continue;
+            }
+
+            for (final int strong : this.signatures[ordinal]) {
+                if (!seen[strong]) {
+                    seen[strong] = true;
+                    strongs.add(strong);
+                }
+            }
+        }
+
+        final Integer[] sorted = strongs.toArray(new Integer[strongs.size()]);
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer o1, final Integer o2) {
+                return Float.compare(weights[o2], weights[o1]);
+            }
+        });
+
+        final int[] result = new int[sorted.length];
+        for (int ii = 0; ii < sorted.length; ii++) {
+            result[ii] = sorted[ii];
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of verses in the index
+     */
+    public int getNumVerses() {
+        return this.verses.length;
+    }
+
+    /**
+     * Looks up verses by their osis reference
+     */
+    private void indexVerses() {
+        this.verseOrdinals = new HashMap<String, Integer>(this.verses.length * 2);
+        for (int ii = 0; ii < this.verses.length; ii++) {
+            this.verseOrdinals.put(this.verses[ii], ii);
+        }
+    }
+
+    /**
+     * @param in the stream the index is read from
+     * @throws IOException            if the stream cannot be read
+     * @throws ClassNotFoundException if the stream does not contain an index
+     */
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        indexVerses();
+    }
+
+    /**
+     * A verse and its score, ordered by score
+     */
+    private static final class ScoredVerse implements Comparable<ScoredVerse> {
+        private final int verse;
+        private final float score;
+
+        /**
+         * @param verse the verse ordinal
+         * @param score the score
+         */
+        ScoredVerse(final int verse, final float score) {
+            this.verse = verse;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(final ScoredVerse o) {
+            return Float.compare(this.score, o.score);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.tyndalehouse.step.core.service.helpers;
+
+import com.tyndalehouse.step.core.utils.IOUtils;
+import org.apache.lucene.search.IndexSearcher;
+import org.crosswire.jsword.book.Books;
+import org.crosswire.jsword.book.BooksEvent;
+import org.crosswire.jsword.book.BooksListener;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.File;
+import java.util.concurrent.Callable;
+
+/**
+ * Keeps the {@link RelatedVersesIndex} of each module. Indexes are built in the background from the module's Lucene
+ * index the first time they are asked for, and kept between runs, see {@link BackgroundBuiltStore}. Until an index
+ * is available, callers are expected to query Lucene directly. An index is built again whenever its module is
+ * installed or removed, or its Lucene index is rebuilt.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class RelatedVersesIndexStore implements BooksListener {
+    private static final String STORE_DIRECTORY = "related-verses";
+    private final boolean enabled;
+    private final int maxDocFreq;
+    private final BackgroundBuiltStore<RelatedVersesIndex> indexes;
+
+    /**
+     * @param appHome    the home of the application, in which the indexes are kept
+     * @param enabled    true to precompute related verses, false to always query Lucene
+     * @param maxDocFreq strong numbers found in that many verses or more are too common to relate verses
+     */
+    @Inject
+    public RelatedVersesIndexStore(@Named("app.home") final String appHome,
+                                   @Named("app.relatedVerses.precomputed") final boolean enabled,
+                                   @Named("app.relatedVerses.maxDocFreq") final int maxDocFreq) {
+        this(enabled ? IOUtils.getHomeDirectory(appHome, STORE_DIRECTORY) : null, enabled, maxDocFreq);
+        Books.installed().addBooksListener(this);
+    }
+
+    /**
+     * @param storeDirectory the directory in which indexes are kept, or null to keep them in memory only
+     * @param enabled        true to precompute related verses
+     * @param maxDocFreq     strong numbers found in that many verses or more are too common to relate verses
+     */
+    RelatedVersesIndexStore(final File storeDirectory, final boolean enabled, final int maxDocFreq) {
+        this.enabled = enabled;
+        this.maxDocFreq = maxDocFreq;
+        this.indexes = new BackgroundBuiltStore<RelatedVersesIndex>(STORE_DIRECTORY, storeDirectory);
+    }
+
+    /**
+     * @return the cut-off above which strong numbers are considered too common to relate verses
+     */
+    public int getMaxDocFreq() {
+        return this.maxDocFreq;
+    }
+
+    /**
+     * @param initials the initials of the module
+     * @param searcher the searcher over the module's Lucene index, used to build the index if required
+     * @return the index of the module, or null if it is not available yet
+     */
+    public RelatedVersesIndex getIndex(final String initials, final IndexSearcher searcher) {
+        if (!this.enabled) {
+            return null;
+        }
+
+        final String signature = BackgroundBuiltStore.getSignature(searcher.getIndexReader()) + "-" + this.maxDocFreq;
+        return this.indexes.get(initials, signature, new Callable<RelatedVersesIndex>() {
+            @Override
+            public RelatedVersesIndex call() throws Exception {
+                return RelatedVersesIndex.build(searcher.getIndexReader(), maxDocFreq);
+            }
+        });
+    }
+
+    /**
+     * Drops the index of a module
+     *
+     * @param initials the initials of the module
+     */
+    void invalidate(final String initials) {
+        this.indexes.invalidate(initials);
+    }
+
+    @Override
+    public void bookAdded(final BooksEvent ev) {
+        invalidate(ev.getBook().getInitials());
+    }
+
+    @Override
+    public void bookRemoved(final BooksEvent ev) {
+        invalidate(ev.getBook().getInitials());
+    }
+}
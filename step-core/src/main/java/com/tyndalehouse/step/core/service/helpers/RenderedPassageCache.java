@@ -0,0 +1,481 @@
+package com.tyndalehouse.step.core.service.helpers;
+
+import com.tyndalehouse.step.core.models.OsisWrapper;
+import com.tyndalehouse.step.core.utils.IOUtils;
+import com.tyndalehouse.step.core.utils.StringUtils;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
+import org.crosswire.jsword.book.Books;
+import org.crosswire.jsword.book.BooksEvent;
+import org.crosswire.jsword.book.BooksListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps rendered passages, keyed by the normalised request that produced them, i.e. the version, reference, options,
+ * extra versions, display mode and locale, book names and explanations being in the user's language. The cache is
+ * bounded by the number of characters of rendered text it holds, the least recently used passages being spilled to
+ * disk if enabled, or dropped otherwise. Passages are invalidated
+ * whenever a module they were rendered from is installed or removed.
+ * <p/>
+ * The number of times each request is made is also counted, so that the most popular passages can be rendered ahead
+ * of time.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class RenderedPassageCache implements BooksListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RenderedPassageCache.class);
+    private static final char KEY_SEPARATOR = '|';
+    private static final String CHINESE = "zh";
+    private static final String SPILL_DIRECTORY = "passage-cache";
+    private static final int MAX_TRACKED_REQUESTS = 10000;
+    private static final Counter HITS = Metrics.newCounter(RenderedPassageCache.class, "hits");
+    private static final Counter DISK_HITS = Metrics.newCounter(RenderedPassageCache.class, "disk-hits");
+    private static final Counter MISSES = Metrics.newCounter(RenderedPassageCache.class, "misses");
+    private final long maxChars;
+    private final int maxSpilledEntries;
+    private final File spillDirectory;
+    private final VersionResolver resolver;
+    private final LinkedHashMap<String, CachedPassage> passages = new LinkedHashMap<String, CachedPassage>(256, 0.75f, true);
+    private final Map<String, Set<String>> spilledPassages = new LinkedHashMap<String, Set<String>>(256, 0.75f, true);
+    private final Map<String, Integer> requestCounts = new HashMap<String, Integer>(1024);
+    private long currentChars;
+
+    /**
+     * @param appHome           the home of the application, in which passages are spilled
+     * @param maxChars          the number of characters of rendered text kept in memory, 0 to disable the cache
+     * @param spill             true to spill passages that no longer fit in memory to disk
+     * @param maxSpilledEntries the number of passages kept on disk
+     * @param resolver          resolves the names of the versions
+     */
+    @Inject
+    public RenderedPassageCache(@Named("app.home") final String appHome,
+                                @Named("app.passageCache.maxChars") final long maxChars,
+                                @Named("app.passageCache.spill") final boolean spill,
+                                @Named("app.passageCache.spillMaxEntries") final int maxSpilledEntries,
+                                final VersionResolver resolver) {
+        this(maxChars, spill ? IOUtils.getHomeDirectory(appHome, SPILL_DIRECTORY) : null, maxSpilledEntries, resolver);
+        Books.installed().addBooksListener(this);
+    }
+
+    /**
+     * @param maxChars          the number of characters of rendered text kept in memory, 0 to disable the cache
+     * @param spillDirectory    the directory in which passages are spilled, or null to not spill
+     * @param maxSpilledEntries the number of passages kept on disk
+     * @param resolver          resolves the names of the versions
+     */
+    RenderedPassageCache(final long maxChars, final File spillDirectory, final int maxSpilledEntries,
+                         final VersionResolver resolver) {
+        this.maxChars = maxChars;
+        this.spillDirectory = spillDirectory;
+        this.maxSpilledEntries = maxSpilledEntries;
+        this.resolver = resolver;
+        clearSpillDirectory();
+    }
+
+    /**
+     * Passages spilled by a previous run may have been rendered from modules that have since changed
+     */
+    private void clearSpillDirectory() {
+        if (this.spillDirectory == null) {
+            return;
+        }
+
+        final File[] files = this.spillDirectory.listFiles();
+        if (files != null) {
+            for (final File f : files) {
+                if (!f.delete()) {
+                    LOGGER.warn("Unable to delete [{}]", f);
+                }
+            }
+        }
+    }
+
+    /**
+     * Normalises a passage request into a key. The key can be split back into its parts with {@link #splitKey(String)}.
+     * Callers are expected to pass the reference as an OSIS reference, the options once trimmed and the display mode
+     * once defaulted, so that requests rendering the same passage share the same key. Only the language of the locale
+     * is kept, except for Chinese, which is written differently by country.
+     *
+     * @param version            the version
+     * @param reference          the reference
+     * @param options            the options, in any order
+     * @param interlinearVersion the extra versions
+     * @param interlinearMode    the display mode
+     * @param locale             the locale the passage is rendered in
+     * @return the key
+     */
+    public static String getKey(final String version, final String reference, final String options,
+                                 final String interlinearVersion, final String interlinearMode, final Locale locale) {
+        final char[] sortedOptions = StringUtils.getNonNullString(options, "").toCharArray();
+        Arrays.sort(sortedOptions);
+
+        final StringBuilder key = new StringBuilder(64);
+        key.append(StringUtils.getNonNullString(version, "").trim()).append(KEY_SEPARATOR);
+        key.append(StringUtils.getNonNullString(reference, "").trim()).append(KEY_SEPARATOR);
+        key.append(sortedOptions).append(KEY_SEPARATOR);
+        key.append(StringUtils.getNonNullString(interlinearVersion, "").replace(" ", "")).append(KEY_SEPARATOR);
+        key.append(StringUtils.getNonNullString(interlinearMode, "").trim()).append(KEY_SEPARATOR);
+        key.append(getLanguageTag(locale));
+        return key.toString();
+    }
+
+    /**
+     * @param locale the locale the passage is rendered in, may be null
+     * @return the part of the locale that changes the rendered passage
+     */
+    private static String getLanguageTag(final Locale locale) {
+        if (locale == null) {
+            return "";
+        }
+        if (CHINESE.equals(locale.getLanguage()) && StringUtils.isNotBlank(locale.getCountry())) {
+            return locale.getLanguage() + '-' + locale.getCountry();
+        }
+        return locale.getLanguage();
+    }
+
+    /**
+     * @param key a key obtained from {@link #getKey(String, String, String, String, String, Locale)}
+     * @return the version, reference, options, extra versions, display mode and language tag of the locale, blank
+     *         or missing parts being null
+     */
+    public static String[] splitKey(final String key) {
+        final String[] parts = new String[6];
+        int start = 0;
+        for (int ii = 0; ii < parts.length; ii++) {
+            int end = key.indexOf(KEY_SEPARATOR, start);
+            if (end == -1 || ii == parts.length - 1) {
+                end = key.length();
+            }
+            final String part = start <= end ? key.substring(start, end).trim() : "";
+            parts[ii] = part.length() == 0 ? null : part;
+            start = end + 1;
+        }
+        return parts;
+    }
+
+    /**
+     * Retrieves a copy of a rendered passage, which the caller is free to alter
+     *
+     * @param key the key of the passage
+     * @return the passage, or null if it isn't cached
+     */
+    public OsisWrapper get(final String key) {
+        if (this.maxChars <= 0) {
+            return null;
+        }
+
+        countRequest(key);
+        CachedPassage cached;
+        synchronized (this) {
+            cached = this.passages.get(key);
+        }
+
+        if (cached != null) {
+            HITS.inc();
+            return new OsisWrapper(cached.getPassage());
+        }
+
+        cached = readSpilled(key);
+        if (cached != null) {
+            DISK_HITS.inc();
+            store(key, cached);
+            return new OsisWrapper(cached.getPassage());
+        }
+
+        MISSES.inc();
+        return null;
+    }
+
+    /**
+     * Keeps a copy of the rendered passage
+     *
+     * @param key      the key of the passage
+     * @param versions the versions the passage was rendered from
+     * @param passage  the passage
+     */
+    public void put(final String key, final List<String> versions, final OsisWrapper passage) {
+        if (this.maxChars <= 0 || passage == null || passage.getValue() == null
+                || passage.getValue().length() > this.maxChars) {
+            return;
+        }
+
+        final Set<String> modules = new HashSet<String>(versions.size() * 2);
+        for (final String v : versions) {
+            modules.add(this.resolver.getLongName(v.trim()).toLowerCase(Locale.ENGLISH));
+        }
+        store(key, new CachedPassage(new OsisWrapper(passage), modules));
+    }
+
+    /**
+     * Stores the passage in memory, spilling the least recently used passages if need be
+     *
+     * @param key    the key of the passage
+     * @param cached the cached passage
+     */
+    private void store(final String key, final CachedPassage cached) {
+        final List<Map.Entry<String, CachedPassage>> evicted = new ArrayList<Map.Entry<String, CachedPassage>>();
+        synchronized (this) {
+            final CachedPassage previous = this.passages.put(key, cached);
+            if (previous != null) {
+                this.currentChars -= previous.getSize();
+            }
+            this.currentChars += cached.getSize();
+
+            final Iterator<Map.Entry<String, CachedPassage>> eldest = this.passages.entrySet().iterator();
+            while (this.currentChars > this.maxChars && eldest.hasNext()) {
+                final Map.Entry<String, CachedPassage> entry = eldest.next();
+                eldest.remove();
+                this.currentChars -= entry.getValue().getSize();
+                evicted.add(entry);
+            }
+        }
+
+        for (final Map.Entry<String, CachedPassage> entry : evicted) {
+            spill(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Removes all passages rendered from the given module
+     *
+     * @param initials the initials of the module
+     */
+    public void invalidate(final String initials) {
+        final String module = initials.toLowerCase(Locale.ENGLISH);
+        final List<String> spilledKeys = new ArrayList<String>();
+        synchronized (this) {
+            final Iterator<CachedPassage> cached = this.passages.values().iterator();
+            while (cached.hasNext()) {
+                final CachedPassage passage = cached.next();
+                if (passage.getModules().contains(module)) {
+                    this.currentChars -= passage.getSize();
+                    cached.remove();
+                }
+            }
+
+            final Iterator<Map.Entry<String, Set<String>>> spilled = this.spilledPassages.entrySet().iterator();
+            while (spilled.hasNext()) {
+                final Map.Entry<String, Set<String>> entry = spilled.next();
+                if (entry.getValue().contains(module)) {
+                    spilledKeys.add(entry.getKey());
+                    spilled.remove();
+                }
+            }
+        }
+
+        for (final String key : spilledKeys) {
+            deleteSpilled(key);
+        }
+        LOGGER.debug("Invalidated passages rendered from [{}]", initials);
+    }
+
+    /**
+     * @param max the maximum number of requests to return
+     * @return the keys of the most requested passages, most requested first
+     */
+    public List<String> getMostRequested(final int max) {
+        final List<Map.Entry<String, Integer>> counts;
+        synchronized (this.requestCounts) {
+            counts = new ArrayList<Map.Entry<String, Integer>>(this.requestCounts.entrySet());
+        }
+
+        Collections.sort(counts, new Comparator<Map.Entry<String, Integer>>() {
+            @Override
+            public int compare(final Map.Entry<String, Integer> o1, final Map.Entry<String, Integer> o2) {
+                return o2.getValue().compareTo(o1.getValue());
+            }
+        });
+
+        final List<String> keys = new ArrayList<String>(Math.min(max, counts.size()));
+        for (int ii = 0; ii < counts.size() && ii < max; ii++) {
+            keys.add(counts.get(ii).getKey());
+        }
+        return keys;
+    }
+
+    /**
+     * @param key the key of the request
+     */
+    private void countRequest(final String key) {
+        synchronized (this.requestCounts) {
+            final Integer count = this.requestCounts.get(key);
+            if (count != null) {
+                this.requestCounts.put(key, count + 1);
+            } else if (this.requestCounts.size() < MAX_TRACKED_REQUESTS) {
+                this.requestCounts.put(key, 1);
+            }
+        }
+    }
+
+    @Override
+    public void bookAdded(final BooksEvent ev) {
+        invalidate(ev.getBook().getInitials());
+    }
+
+    @Override
+    public void bookRemoved(final BooksEvent ev) {
+        invalidate(ev.getBook().getInitials());
+    }
+
+    /**
+     * Writes the passage to disk, if spilling is enabled
+     *
+     * @param key    the key of the passage
+     * @param cached the passage
+     */
+    private void spill(final String key, final CachedPassage cached) {
+        if (this.spillDirectory == null || this.maxSpilledEntries <= 0) {
+            return;
+        }
+
+        ObjectOutputStream out = null;
+        try {
+            out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(getSpillFile(key))));
+            out.writeObject(key);
+            out.writeObject(cached.getPassage());
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to spill passage [{}] to disk", key, e);
+            return;
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+
+        final List<String> dropped = new ArrayList<String>();
+        synchronized (this) {
+            this.spilledPassages.put(key, cached.getModules());
+            final Iterator<String> eldest = this.spilledPassages.keySet().iterator();
+            while (this.spilledPassages.size() > this.maxSpilledEntries && eldest.hasNext()) {
+                dropped.add(eldest.next());
+                eldest.remove();
+            }
+        }
+
+        for (final String droppedKey : dropped) {
+            deleteSpilled(droppedKey);
+        }
+    }
+
+    /**
+     * Reads a passage back from disk. The passage is removed from the disk, since it is about to go back in memory.
+     *
+     * @param key the key of the passage
+     * @return the passage, or null if it wasn't spilled
+     */
+    private CachedPassage readSpilled(final String key) {
+        final Set<String> modules;
+        synchronized (this) {
+            modules = this.spilledPassages.remove(key);
+        }
+        if (modules == null) {
+            return null;
+        }
+
+        final File spillFile = getSpillFile(key);
+        ObjectInputStream in = null;
+        try {
+            in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(spillFile)));
+            if (!key.equals(in.readObject())) {
+                return null;
+            }
+            return new CachedPassage((OsisWrapper) in.readObject(), modules);
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to read spilled passage [{}]", key, e);
+            return null;
+        } catch (final ClassNotFoundException e) {
+            LOGGER.warn("Unable to read spilled passage [{}]", key, e);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(in);
+            deleteSpilled(key);
+        }
+    }
+
+    /**
+     * @param key the key of the spilled passage to delete
+     */
+    private void deleteSpilled(final String key) {
+        final File spillFile = getSpillFile(key);
+        if (spillFile.exists() && !spillFile.delete()) {
+            LOGGER.warn("Unable to delete [{}]", spillFile);
+        }
+    }
+
+    /**
+     * @param key the key of the passage
+     * @return the file in which the passage is spilled. The key is written in the file, in case of hash collisions.
+     */
+    private File getSpillFile(final String key) {
+        return new File(this.spillDirectory, Integer.toHexString(key.hashCode()) + ".ser");
+    }
+
+    /**
+     * @return the number of characters of rendered text held in memory
+     */
+    synchronized long getCurrentChars() {
+        return this.currentChars;
+    }
+
+    /**
+     * A rendered passage, along with the modules it was rendered from
+     */
+    private static final class CachedPassage {
+        private final OsisWrapper passage;
+        private final Set<String> modules;
+
+        /**
+         * @param passage the passage
+         * @param modules the lower-cased initials of the modules the passage was rendered from
+         */
+        CachedPassage(final OsisWrapper passage, final Set<String> modules) {
+            this.passage = passage;
+            this.modules = modules;
+        }
+
+        /**
+         * @return the passage
+         */
+        OsisWrapper getPassage() {
+            return this.passage;
+        }
+
+        /**
+         * @return the modules the passage was rendered from
+         */
+        Set<String> getModules() {
+            return this.modules;
+        }
+
+        /**
+         * @return the size of the passage, in characters
+         */
+        long getSize() {
+            return this.passage.getValue().length();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.tyndalehouse.step.core.service.helpers;
+
+import com.tyndalehouse.step.core.data.EntityIndexReader;
+import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
+import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+import com.tyndalehouse.step.core.utils.IOUtils;
+import org.apache.lucene.index.IndexReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.File;
+import java.util.concurrent.Callable;
+
+/**
+ * Keeps the {@link VerseReferenceIndex} of the Nave subjects. The index is rebuilt by the loader whenever the Nave
+ * entity index is written, and kept between runs, see {@link BackgroundBuiltStore}. An installation whose Nave index
+ * predates the reference index gets it built in the background the first time it is asked for. The index holds
+ * Lucene document ids, so it is only used with the version of the Nave index it was built from. Until the index is
+ * available, callers are expected to query Lucene directly.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class SubjectReferenceIndexStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SubjectReferenceIndexStore.class);
+    private static final String STORE_DIRECTORY = "subject-references";
+    private static final String NAVE = "nave";
+    private static final String NAVE_EXPANDED_REFERENCES = "expandedReferences";
+    private static final String[] NAVE_SORT_FIELDS = new String[]{"root", "fullHeader"};
+    private final boolean enabled;
+    private final JSwordVersificationService versificationService;
+    private final BackgroundBuiltStore<VerseReferenceIndex> indexes;
+
+    /**
+     * @param appHome              the home of the application, in which the index is kept
+     * @param enabled              true to precompute the subjects of each verse, false to always query Lucene
+     * @param versificationService the versification service, giving the versification of the Nave references
+     */
+    @Inject
+    public SubjectReferenceIndexStore(@Named("app.home") final String appHome,
+                                      @Named("app.subjects.precomputed") final boolean enabled,
+                                      final JSwordVersificationService versificationService) {
+        this(enabled ? IOUtils.getHomeDirectory(appHome, STORE_DIRECTORY) : null, enabled, versificationService);
+    }
+
+    /**
+     * @param storeDirectory       the directory in which the index is kept, or null to keep it in memory only
+     * @param enabled              true to precompute the subjects of each verse
+     * @param versificationService the versification service
+     */
+    SubjectReferenceIndexStore(final File storeDirectory, final boolean enabled,
+                               final JSwordVersificationService versificationService) {
+        this.enabled = enabled;
+        this.versificationService = versificationService;
+        this.indexes = new BackgroundBuiltStore<VerseReferenceIndex>(STORE_DIRECTORY, storeDirectory);
+    }
+
+    /**
+     * @param naves the reader of the Nave entity index, used to build the index if required
+     * @return the index of the Nave subjects, or null if it is not available yet
+     */
+    public VerseReferenceIndex getNaveIndex(final EntityIndexReader naves) {
+        if (!this.enabled) {
+            return null;
+        }
+
+        final IndexReader reader = naves.getIndexReader();
+        if (reader == null) {
+            return null;
+        }
+
+        final String versification = getVersification();
+        final VerseReferenceIndex index = this.indexes.get(NAVE, getSignature(reader, versification),
+                getBuilder(reader, versification));
+
+        // the index must cover exactly the documents it is about to be used with
+        return index != null && index.getMaxDoc() == reader.maxDoc() ? index : null;
+    }
+
+    /**
+     * Rebuilds the index of the Nave subjects, once the Nave entity index has been written
+     *
+     * @param naves the reader of the Nave entity index
+     */
+    public void rebuildNaveIndex(final EntityIndexReader naves) {
+        if (!this.enabled) {
+            return;
+        }
+
+        this.indexes.invalidate(NAVE);
+        final IndexReader reader = naves.getIndexReader();
+        if (reader == null) {
+            LOGGER.warn("Nave index is not readable, subject references will not be precomputed");
+            return;
+        }
+
+        final String versification = getVersification();
+        try {
+            this.indexes.rebuild(NAVE, getSignature(reader, versification), getBuilder(reader, versification));
+            // CHECKSTYLE:OFF a failure here simply means subjects keep being searched through Lucene
+        } catch (final Exception e) {
+            // CHECKSTYLE:ON
+            LOGGER.warn("Unable to build subject references", e);
+        }
+    }
+
+    /**
+     * @return the name of the versification in which Nave references are expanded, i.e. that of the reference book
+     */
+    private String getVersification() {
+        return this.versificationService.getVersificationForVersion(JSwordPassageService.REFERENCE_BOOK).getName();
+    }
+
+    /**
+     * @param reader        the reader of the Nave entity index
+     * @param versification the versification of the references
+     * @return the signature of what the index is built from
+     */
+    private static String getSignature(final IndexReader reader, final String versification) {
+        return BackgroundBuiltStore.getSignature(reader) + "-" + versification;
+    }
+
+    /**
+     * @param reader        the reader of the Nave entity index
+     * @param versification the versification of the references
+     * @return builds the index
+     */
+    private static Callable<VerseReferenceIndex> getBuilder(final IndexReader reader, final String versification) {
+        return new Callable<VerseReferenceIndex>() {
+            @Override
+            public VerseReferenceIndex call() throws Exception {
+                final VerseReferenceIndex index = VerseReferenceIndex.build(reader, NAVE_EXPANDED_REFERENCES,
+                        versification, NAVE_SORT_FIELDS);
+                LOGGER.debug("Nave index covers [{}] subjects", index.getNumEntries());
+                return index;
+            }
+        };
+    }
+}
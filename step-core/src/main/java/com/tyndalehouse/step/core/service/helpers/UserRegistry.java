@@ -0,0 +1,436 @@
+package com.tyndalehouse.step.core.service.helpers;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.utils.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+/**
+ * The registered users, held in a concurrent set so that checking a user never waits, and persisted in an
+ * append-only log of one line per user. Lines are written in batches: a thread registering a user queues its line,
+ * and whichever thread gets to the log first writes all the queued lines and flushes them once, optionally syncing
+ * them to disk.
+ * <p/>
+ * Every so often, the set of users is written to a snapshot, along with the length of the log at the time and a
+ * checksum of the log up to that length, so that loading the users only needs to replay the end of the log. A
+ * snapshot whose checksum no longer matches the log, e.g. because the log was edited by hand, is ignored, as it is
+ * when the users are reloaded on request.
+ *
+ * @author chrisburrell
+ */
+public final class UserRegistry {
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserRegistry.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private final File log;
+    private final File snapshot;
+    private final boolean sync;
+    private final int snapshotEvery;
+    private final ConcurrentLinkedQueue<PendingUser> pending = new ConcurrentLinkedQueue<PendingUser>();
+    private final Object logLock = new Object();
+    private final ExecutorService snapshots;
+    private volatile Set<String> users;
+    private Writer writer;
+    private FileOutputStream logStream;
+    private int linesSinceSnapshot;
+
+    /**
+     * @param log           the log of users
+     * @param sync          true to sync each batch of new users to disk before returning
+     * @param snapshotEvery the number of users registered or replayed after which a snapshot is taken, 0 for never
+     */
+    public UserRegistry(final File log, final boolean sync, final int snapshotEvery) {
+        this.log = log;
+        this.snapshot = new File(log.getPath() + SNAPSHOT_SUFFIX);
+        this.sync = sync;
+        this.snapshotEvery = snapshotEvery;
+        this.snapshots = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "user-snapshot-writer");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return true if the users have been loaded
+     */
+    public boolean isLoaded() {
+        return this.users != null;
+    }
+
+    /**
+     * @param email the email of the user, in lower case
+     * @return true if the user is registered
+     */
+    public boolean contains(final String email) {
+        final Set<String> currentUsers = this.users;
+        return currentUsers != null && currentUsers.contains(email);
+    }
+
+    /**
+     * Loads the users. Users keep being checked against the previous set until the new one is ready, but
+     * registrations wait.
+     *
+     * @param full true to replay the whole log, false to start from the snapshot if there is one
+     */
+    public void load(final boolean full) {
+        synchronized (this.logLock) {
+            final long start = System.currentTimeMillis();
+            final Set<String> loadedUsers = newUserSet();
+            long offset = full ? -1 : readSnapshot(loadedUsers);
+            if (offset == -1) {
+                loadedUsers.clear();
+                offset = 0;
+            }
+
+            final int replayed = replayLog(loadedUsers, offset);
+            this.users = loadedUsers;
+            LOGGER.info("Loaded [{}] users, replaying [{}] lines of the log, in [{}]ms", new Object[]{
+                    loadedUsers.size(), replayed, System.currentTimeMillis() - start});
+
+            this.linesSinceSnapshot = 0;
+            if (this.snapshotEvery > 0 && (full || replayed >= this.snapshotEvery)) {
+                scheduleSnapshot();
+            }
+        }
+    }
+
+    /**
+     * Registers a user, returning once the user's line is in the log
+     *
+     * @param email the email of the user, in lower case
+     * @param line  the line to add to the log, without the new line
+     */
+    public void register(final String email, final String line) {
+        if (contains(email)) {
+            return;
+        }
+
+        final PendingUser user = new PendingUser(email, line);
+        this.pending.offer(user);
+        if (!user.done) {
+            synchronized (this.logLock) {
+                if (!user.done) {
+                    writePending();
+                }
+            }
+        }
+
+        if (user.failure != null) {
+            throw new StepInternalException("Unable to write user", user.failure);
+        }
+    }
+
+    /**
+     * @param users the users, replacing any loaded so far
+     */
+    public void setUsers(final Set<String> users) {
+        final Set<String> newUsers = newUserSet();
+        newUsers.addAll(users);
+        this.users = newUsers;
+    }
+
+    /**
+     * @param writer the writer the log is written to
+     */
+    public void setWriter(final Writer writer) {
+        synchronized (this.logLock) {
+            this.writer = writer;
+            this.logStream = null;
+        }
+    }
+
+    /**
+     * Closes the log, it is opened again on the next registration
+     */
+    public void close() {
+        synchronized (this.logLock) {
+            closeLog();
+        }
+    }
+
+    /**
+     * Writes all the queued users to the log, as a single batch. Called with the log lock held.
+     */
+    private void writePending() {
+        final List<PendingUser> batch = new ArrayList<PendingUser>();
+        PendingUser user;
+        while ((user = this.pending.poll()) != null) {
+            batch.add(user);
+        }
+
+        final Set<String> currentUsers = this.users == null ? newUserSet() : this.users;
+        final Set<String> written = new HashSet<String>(batch.size() * 2);
+        try {
+            ensureLogIsOpen();
+            for (final PendingUser u : batch) {
+                if (!currentUsers.contains(u.email) && written.add(u.email)) {
+                    this.writer.write(u.line);
+                    this.writer.write('\n');
+                }
+            }
+            this.writer.flush();
+            if (this.sync && this.logStream != null) {
+                this.logStream.getFD().sync();
+            }
+
+            currentUsers.addAll(written);
+            this.users = currentUsers;
+        } catch (final IOException e) {
+            closeLog();
+            written.clear();
+            for (final PendingUser u : batch) {
+                u.failure = e;
+            }
+        } finally {
+            for (final PendingUser u : batch) {
+                u.done = true;
+            }
+        }
+
+        this.linesSinceSnapshot += written.size();
+        if (this.snapshotEvery > 0 && this.linesSinceSnapshot >= this.snapshotEvery) {
+            this.linesSinceSnapshot = 0;
+            scheduleSnapshot();
+        }
+    }
+
+    /**
+     * Opens the log for appending, if not already open
+     *
+     * @throws IOException if the log cannot be opened
+     */
+    private void ensureLogIsOpen() throws IOException {
+        if (this.writer == null) {
+            this.logStream = new FileOutputStream(this.log, true);
+            this.writer = new BufferedWriter(new OutputStreamWriter(this.logStream, UTF8));
+        }
+    }
+
+    /**
+     * Closes the log
+     */
+    private void closeLog() {
+        IOUtils.closeQuietly(this.writer);
+        IOUtils.closeQuietly(this.logStream);
+        this.writer = null;
+        this.logStream = null;
+    }
+
+    /**
+     * @param loadedUsers the set to fill with the users of the snapshot
+     * @return the length of the log covered by the snapshot, or -1 if there is no usable snapshot
+     */
+    private long readSnapshot(final Set<String> loadedUsers) {
+        if (!this.snapshot.exists()) {
+            return -1;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.snapshot), UTF8));
+            final String header = reader.readLine();
+            final String[] fields = header == null ? new String[0] : header.trim().split(" ");
+            if (fields.length != 2) {
+                LOGGER.warn("User snapshot has no checksum, replaying the whole log");
+                return -1;
+            }
+
+            final long offset = Long.parseLong(fields[0]);
+            if (offset < 0 || offset > this.log.length() || Long.parseLong(fields[1]) != checksum(offset)) {
+                LOGGER.warn("User snapshot does not match the log, replaying the whole log");
+                return -1;
+            }
+
+            String email;
+            while ((email = reader.readLine()) != null) {
+                if (email.length() != 0) {
+                    loadedUsers.add(email);
+                }
+            }
+            return offset;
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to read user snapshot, replaying the whole log", e);
+            return -1;
+        } catch (final NumberFormatException e) {
+            LOGGER.warn("Corrupt user snapshot, replaying the whole log", e);
+            return -1;
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * @param length the length of the start of the log to read
+     * @return the checksum of the start of the log
+     * @throws IOException if the log cannot be read
+     */
+    private long checksum(final long length) throws IOException {
+        final CRC32 crc = new CRC32();
+        final byte[] buffer = new byte[8192];
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(this.log);
+            long remaining = length;
+            while (remaining > 0) {
+                final int read = fis.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1) {
+                    throw new IOException("Log is shorter than " + length);
+                }
+                crc.update(buffer, 0, read);
+                remaining -= read;
+            }
+        } finally {
+            IOUtils.closeQuietly(fis);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * @param loadedUsers the set to add the users of the log to
+     * @param offset      the position in the log to start from
+     * @return the number of lines replayed
+     */
+    private int replayLog(final Set<String> loadedUsers, final long offset) {
+        if (!this.log.exists()) {
+            return 0;
+        }
+
+        FileInputStream fis = null;
+        BufferedReader reader = null;
+        int lines = 0;
+        try {
+            fis = new FileInputStream(this.log);
+            if (fis.skip(offset) != offset) {
+                throw new IOException("Unable to skip to " + offset);
+            }
+            reader = new BufferedReader(new InputStreamReader(fis, UTF8));
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                final String[] userEntry = line.split("[,]+");
+                if (userEntry.length < 2) {
+                    LOGGER.warn("Invalid user entry: [{}]", line);
+                    continue;
+                }
+                loadedUsers.add(userEntry[0]);
+            }
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to read file", e);
+        } finally {
+            IOUtils.closeQuietly(reader);
+            IOUtils.closeQuietly(fis);
+        }
+        return lines;
+    }
+
+    /**
+     * Takes a copy of the users and the length of the log they cover, and writes them in the background. Called with
+     * the log lock held, so that no user is being written.
+     */
+    private void scheduleSnapshot() {
+        final Set<String> currentUsers = this.users;
+        if (currentUsers == null || this.writer != null && this.logStream == null) {
+            // nothing loaded, or not logging to a file
+            return;
+        }
+
+        final List<String> copy = new ArrayList<String>(currentUsers);
+        final long offset = this.log.length();
+        this.snapshots.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeSnapshot(copy, offset);
+            }
+        });
+    }
+
+    /**
+     * Writes the snapshot to a temporary file first, so that a snapshot is always complete. The log is only ever
+     * appended to, so the part of it the snapshot covers can still be read to work out its checksum.
+     *
+     * @param snapshotUsers the users
+     * @param offset        the length of the log they cover
+     */
+    private void writeSnapshot(final List<String> snapshotUsers, final long offset) {
+        final File temporary = new File(this.snapshot.getPath() + ".tmp");
+        Writer snapshotWriter = null;
+        try {
+            final long checksum = checksum(offset);
+            snapshotWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporary), UTF8));
+            snapshotWriter.write(Long.toString(offset));
+            snapshotWriter.write(' ');
+            snapshotWriter.write(Long.toString(checksum));
+            snapshotWriter.write('\n');
+            for (final String email : snapshotUsers) {
+                snapshotWriter.write(email);
+                snapshotWriter.write('\n');
+            }
+            snapshotWriter.close();
+            snapshotWriter = null;
+
+            if (this.snapshot.exists() && !this.snapshot.delete() || !temporary.renameTo(this.snapshot)) {
+                LOGGER.warn("Unable to replace user snapshot [{}]", this.snapshot);
+                return;
+            }
+            LOGGER.debug("Wrote snapshot of [{}] users", snapshotUsers.size());
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to write user snapshot", e);
+        } finally {
+            IOUtils.closeQuietly(snapshotWriter);
+        }
+    }
+
+    /**
+     * @return an empty set of users, safe to read while it is being added to
+     */
+    private static Set<String> newUserSet() {
+        return Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    }
+
+    /**
+     * A user waiting to be written to the log
+     */
+    private static final class PendingUser {
+        private final String email;
+        private final String line;
+        private volatile boolean done;
+        private volatile IOException failure;
+
+        /**
+         * @param email the email of the user
+         * @param line  the line to add to the log
+         */
+        private PendingUser(final String email, final String line) {
+            this.email = email;
+            this.line = line;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package com.tyndalehouse.step.core.service.helpers;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseRange;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An inverted index of the verses referenced by each entry of an entity index, such as the Nave subjects or the
+ * alternative translations. Postings are kept in one array, sliced by verse ordinal, so that the entries referencing a chapter
+ * or a whole book are a walk over a contiguous range rather than a Lucene query with a clause per verse.
+ * <p/>
+ * Entries are numbered in the order in which they are displayed, e.g. by root then by full header for Nave, in the
+ * same way Lucene sorts them, so that a set of entry numbers is returned already sorted. Without any sort field,
+ * entries are kept in the order in which they were indexed. References to the introduction of a book or chapter,
+ * i.e. to verse 0, are not indexed.
+ *
+ * @author chrisburrell
+ */
+public final class VerseReferenceIndex implements Serializable {
+    private static final long serialVersionUID = -2364981072297466521L;
+    private final String versification;
+    private final int maxDoc;
+    private final int[] docIds;
+    private final int[] verseStarts;
+    private final int[] entries;
+    private transient Versification v11n;
+
+    /**
+     * @param versification the name of the versification in which references are indexed
+     * @param maxDoc        the number of documents in the index this was built from
+     * @param docIds        the id of the document of each entry, indexed by entry number
+     * @param verseStarts   the position in entries of the first entry of each verse, indexed by verse ordinal
+     * @param entries       the entry numbers, in ascending order for each verse
+     */
+    private VerseReferenceIndex(final String versification, final int maxDoc, final int[] docIds,
+                                final int[] verseStarts, final int[] entries) {
+        this.versification = versification;
+        this.maxDoc = maxDoc;
+        this.docIds = docIds;
+        this.verseStarts = verseStarts;
+        this.entries = entries;
+        this.v11n = Versifications.instance().getVersification(versification);
+    }
+
+    /**
+     * Builds the index from an entity index
+     *
+     * @param reader          the reader of the entity index
+     * @param referenceField  the field holding the references, one OSIS id per term
+     * @param versification   the versification in which the references are expressed
+     * @param sortFields      the fields by which entries are sorted
+     * @return the index
+     * @throws IOException if the Lucene index cannot be read
+     */
+    public static VerseReferenceIndex build(final IndexReader reader, final String referenceField,
+                                              final String versification, final String... sortFields)
+            throws IOException {
+        final int maxDoc = reader.maxDoc();
+        final String[][] sortKeys = new String[sortFields.length][];
+        for (int ii = 0; ii < sortFields.length; ii++) {
+            sortKeys[ii] = getSortKeys(reader, sortFields[ii]);
+        }
+
+        // number the entries in display order
+        final Integer[] order = new Integer[maxDoc - reader.numDeletedDocs()];
+        int numEntries = 0;
+        for (int doc = 0; doc < maxDoc; doc++) {
+            if (!reader.isDeleted(doc)) {
+                order[numEntries++] = doc;
+            }
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer o1, final Integer o2) {
+                for (final String[] keys : sortKeys) {
+                    final int compared = compareKeys(keys[o1], keys[o2]);
+                    if (compared != 0) {
+                        return compared;
+                    }
+                }
+                return o1.compareTo(o2);
+            }
+        });
+
+        final int[] docIds = new int[numEntries];
+        final int[] entryByDoc = new int[maxDoc];
+        Arrays.fill(entryByDoc, -1);
+        for (int ii = 0; ii < numEntries; ii++) {
+            docIds[ii] = order[ii];
+            entryByDoc[order[ii]] = ii;
+        }
+
+        // collect the entries of each verse
+        final Versification v11n = Versifications.instance().getVersification(versification);
+        final Map<String, BibleBook> books = getBooksByOsis(v11n);
+        final int numVerses = v11n.maximumOrdinal() + 1;
+        final int[][] postings = new int[numVerses][];
+        final int[] postingSizes = new int[numVerses];
+        int numPostings = 0;
+
+        final TermEnum terms = reader.terms(new Term(referenceField, ""));
+        final TermDocs termDocs = reader.termDocs();
+        try {
+            do {
+                final Term term = terms.term();
+                if (term == null || !referenceField.equals(term.field())) {
+                    break;
+                }
+
+                final int ordinal = getOrdinal(v11n, books, term.text());
+                if (ordinal == -1) {
+                    continue;
+                }
+
+                termDocs.seek(terms);
+                while (termDocs.next()) {
+                    final int entry = entryByDoc[termDocs.doc()];
+                    if (entry == -1) {
+                        continue;
+                    }
+                    if (postings[ordinal] == null) {
+                        postings[ordinal] = new int[4];
+                    } else if (postingSizes[ordinal] == postings[ordinal].length) {
+                        postings[ordinal] = Arrays.copyOf(postings[ordinal], postingSizes[ordinal] * 2);
+                    }
+                    postings[ordinal][postingSizes[ordinal]++] = entry;
+                    numPostings++;
+                }
+            } while (terms.next());
+        } finally {
+            terms.close();
+            termDocs.close();
+        }
+
+        // flatten the postings, several OSIS ids may have resolved to the same verse
+        final int[] verseStarts = new int[numVerses + 1];
+        final int[] entries = new int[numPostings];
+        int position = 0;
+        for (int ordinal = 0; ordinal < numVerses; ordinal++) {
+            verseStarts[ordinal] = position;
+            if (postings[ordinal] != null) {
+                final int[] posting = postings[ordinal];
+                Arrays.sort(posting, 0, postingSizes[ordinal]);
+                for (int ii = 0; ii < postingSizes[ordinal]; ii++) {
+                    if (ii == 0 || posting[ii] != posting[ii - 1]) {
+                        entries[position++] = posting[ii];
+                    }
+                }
+            }
+        }
+        verseStarts[numVerses] = position;
+
+        return new VerseReferenceIndex(versification, maxDoc, docIds, verseStarts,
+                position == numPostings ? entries : Arrays.copyOf(entries, position));
+    }
+
+    /**
+     * Gets the value Lucene sorts a document by, which for an analyzed field is its greatest term
+     *
+     * @param reader the reader
+     * @param field  the field
+     * @return the sort key of each document, indexed by document id
+     * @throws IOException if the Lucene index cannot be read
+     */
+    private static String[] getSortKeys(final IndexReader reader, final String field) throws IOException {
+        final String[] keys = new String[reader.maxDoc()];
+        final TermEnum terms = reader.terms(new Term(field, ""));
+        final TermDocs termDocs = reader.termDocs();
+        try {
+            do {
+                final Term term = terms.term();
+                if (term == null || !field.equals(term.field())) {
+                    break;
+                }
+
+                termDocs.seek(terms);
+                while (termDocs.next()) {
+                    keys[termDocs.doc()] = term.text();
+                }
+            } while (terms.next());
+        } finally {
+            terms.close();
+            termDocs.close();
+        }
+        return keys;
+    }
+
+    /**
+     * @param key1 the first key
+     * @param key2 the second key
+     * @return the comparison of the keys, missing keys first
+     */
+    private static int compareKeys(final String key1, final String key2) {
+        if (key1 == null) {
+            return key2 == null ? 0 : -1;
+        }
+        if (key2 == null) {
+            return 1;
+        }
+        return key1.compareTo(key2);
+    }
+
+    /**
+     * @param v11n the versification
+     * @return the books of the versification, keyed by their lower case OSIS id
+     */
+    private static Map<String, BibleBook> getBooksByOsis(final Versification v11n) {
+        final Map<String, BibleBook> books = new HashMap<String, BibleBook>(128);
+        final Iterator<BibleBook> bookIterator = v11n.getBookIterator();
+        while (bookIterator.hasNext()) {
+            final BibleBook book = bookIterator.next();
+            books.put(book.getOSIS().toLowerCase(Locale.ENGLISH), book);
+        }
+        return books;
+    }
+
+    /**
+     * @param v11n  the versification
+     * @param books the books of the versification
+     * @param osisId an indexed OSIS id, such as gen.1.1 or Gen.1.1
+     * @return the ordinal of the verse, or -1 if it is not a verse of the versification, or is an introduction
+     */
+    private static int getOrdinal(final Versification v11n, final Map<String, BibleBook> books, final String osisId) {
+        final int firstDot = osisId.indexOf('.');
+        final int secondDot = firstDot == -1 ? -1 : osisId.indexOf('.', firstDot + 1);
+        if (secondDot == -1) {
+            return -1;
+        }
+
+        final BibleBook book = books.get(osisId.substring(0, firstDot).toLowerCase(Locale.ENGLISH));
+        if (book == null) {
+            return -1;
+        }
+
+        try {
+            final int chapter = Integer.parseInt(osisId.substring(firstDot + 1, secondDot));
+            final int verse = Integer.parseInt(osisId.substring(secondDot + 1));
+            if (chapter < 1 || chapter > v11n.getLastChapter(book)
+                    || verse < 1 || verse > v11n.getLastVerse(book, chapter)) {
+                return -1;
+            }
+            return v11n.getOrdinal(new Verse(v11n, book, chapter, verse));
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Adds the entries referencing any verse of a range. The range is matched by book, chapter and verse numbers,
+     * whatever its versification.
+     *
+     * @param range   the range
+     * @param entries the entry numbers found so far
+     */
+    public void addEntries(final VerseRange range, final BitSet entries) {
+        final Verse start = range.getStart();
+        final Verse end = range.getEnd();
+        final BibleBook startBook = start.getBook();
+        final BibleBook endBook = end.getBook();
+        if (!this.v11n.containsBook(startBook) || !this.v11n.containsBook(endBook)) {
+            return;
+        }
+
+        final int startChapter = Math.min(start.getChapter(), this.v11n.getLastChapter(startBook));
+        final int startVerse = Math.min(start.getVerse(), this.v11n.getLastVerse(startBook, startChapter));
+        final int endChapter = Math.min(end.getChapter(), this.v11n.getLastChapter(endBook));
+        final int endVerse = Math.min(end.getVerse(), this.v11n.getLastVerse(endBook, endChapter));
+
+        addEntries(this.v11n.getOrdinal(new Verse(this.v11n, startBook, startChapter, startVerse)),
+                this.v11n.getOrdinal(new Verse(this.v11n, endBook, endChapter, endVerse)), entries);
+    }
+
+    /**
+     * Adds the entries referencing any verse of a book
+     *
+     * @param book    the book
+     * @param entries the entry numbers found so far
+     */
+    public void addEntries(final BibleBook book, final BitSet entries) {
+        if (!this.v11n.containsBook(book)) {
+            return;
+        }
+
+        final int lastChapter = this.v11n.getLastChapter(book);
+        addEntries(this.v11n.getOrdinal(new Verse(this.v11n, book, 0, 0)),
+                this.v11n.getOrdinal(new Verse(this.v11n, book, lastChapter, this.v11n.getLastVerse(book, lastChapter))),
+                entries);
+    }
+
+    /**
+     * Adds the entries referencing any verse between two ordinals
+     *
+     * @param fromOrdinal the first verse, inclusive
+     * @param toOrdinal   the last verse, inclusive
+     * @param entries     the entry numbers found so far
+     */
+    public void addEntries(final int fromOrdinal, final int toOrdinal, final BitSet entries) {
+        final int from = Math.max(fromOrdinal, 0);
+        final int to = Math.min(toOrdinal, this.verseStarts.length - 2);
+        if (from > to) {
+            return;
+        }
+
+        for (int ii = this.verseStarts[from]; ii < this.verseStarts[to + 1]; ii++) {
+            entries.set(this.entries[ii]);
+        }
+    }
+
+    /**
+     * @param entries the entry numbers
+     * @return the ids of the documents of the entries, in display order
+     */
+    public int[] getDocIds(final BitSet entries) {
+        final int[] ids = new int[entries.cardinality()];
+        int ii = 0;
+        for (int entry = entries.nextSetBit(0); entry >= 0; entry = entries.nextSetBit(entry + 1)) {
+            ids[ii++] = this.docIds[entry];
+        }
+        return ids;
+    }
+
+    /**
+     * @return the number of documents in the index this was built from, to tell whether it is still current
+     */
+    public int getMaxDoc() {
+        return this.maxDoc;
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public int getNumEntries() {
+        return this.docIds.length;
+    }
+
+    /**
+     * Restores the versification, which is not serialized
+     *
+     * @param in the stream
+     * @throws IOException            if the stream cannot be read
+     * @throws ClassNotFoundException if a class is missing
+     */
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.v11n = Versifications.instance().getVersification(this.versification);
+    }
+}
@@ -35,27 +35,44 @@ package com.tyndalehouse.step.core.service.impl;
 import static java.lang.String.format;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import javax.inject.Inject;
 
+import org.crosswire.jsword.passage.KeyUtil;
+import org.crosswire.jsword.passage.NoSuchKeyException;
+import org.crosswire.jsword.passage.Passage;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+import org.crosswire.jsword.passage.RestrictionType;
+import org.crosswire.jsword.passage.VerseRange;
+
 import com.tyndalehouse.step.core.data.EntityDoc;
 import com.tyndalehouse.step.core.data.EntityIndexReader;
 import com.tyndalehouse.step.core.data.EntityManager;
+import com.tyndalehouse.step.core.exceptions.TranslatedException;
 import com.tyndalehouse.step.core.models.meanings.VersionPhraseAlternative;
 import com.tyndalehouse.step.core.models.meanings.VersionVersePhraseOption;
 import com.tyndalehouse.step.core.models.meanings.VersionVerses;
 import com.tyndalehouse.step.core.models.meanings.VersionsData;
 import com.tyndalehouse.step.core.service.AlternativeVersionsService;
+import com.tyndalehouse.step.core.service.helpers.AlternativeTranslationsIndexStore;
+import com.tyndalehouse.step.core.service.helpers.VerseReferenceIndex;
 import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
+import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
 
 /**
  * Gives access to the underlying index
  */
 public class AlternativeTranslationsServiceImpl implements AlternativeVersionsService {
     private final JSwordPassageService passageService;
+    private final JSwordVersificationService versificationService;
+    private final AlternativeTranslationsIndexStore referenceIndex;
     private final EntityIndexReader alternativeTranslations;
     private final String[][] fields;
 
@@ -63,12 +80,17 @@ public class AlternativeTranslationsServiceImpl implements AlternativeVersionsSe
      * Instantiates a new alternative translations service impl.
      * 
      * @param passageService the passage service
+     * @param versificationService the versification service
+     * @param referenceIndex the alternative translations of each verse
      * @param entityManager the entity manager
      */
     @Inject
     public AlternativeTranslationsServiceImpl(final JSwordPassageService passageService,
-            final EntityManager entityManager) {
+            final JSwordVersificationService versificationService,
+            final AlternativeTranslationsIndexStore referenceIndex, final EntityManager entityManager) {
         this.passageService = passageService;
+        this.versificationService = versificationService;
+        this.referenceIndex = referenceIndex;
         this.alternativeTranslations = entityManager.getReader("alternativeTranslations");
 
         this.fields = new String[10][3];
@@ -81,9 +103,7 @@ public class AlternativeTranslationsServiceImpl implements AlternativeVersionsSe
 
     @Override
     public VersionsData get(final String passage) {
-        final String allReferences = this.passageService.getAllReferences(passage, "ESV-THE");
-        final EntityDoc[] docs = this.alternativeTranslations.searchSingleColumn("reference", allReferences);
-
+        final EntityDoc[] docs = getEntries(passage);
         final Map<String, VersionVerses> referenceToVV = new HashMap<String, VersionVerses>();
 
         final List<VersionVerses> versionVerses = new ArrayList<VersionVerses>(64);
@@ -112,6 +132,63 @@ public class AlternativeTranslationsServiceImpl implements AlternativeVersionsSe
         return data;
     }
 
+    /**
+     * Gets the entries of every verse of the passage, walking the verse ordinals of each of its ranges if the
+     * reference index is available, and querying the entity index otherwise
+     * 
+     * @param passage the passage
+     * @return the entries, in the order in which the entity index scores them
+     */
+    private EntityDoc[] getEntries(final String passage) {
+        final String version = AlternativeTranslationsIndexStore.REFERENCE_VERSION;
+        final VerseReferenceIndex index = this.referenceIndex.getIndex(this.alternativeTranslations);
+        if (index == null) {
+            final String allReferences = this.passageService.getAllReferences(passage, version);
+            return this.alternativeTranslations.searchSingleColumn("reference", allReferences);
+        }
+
+        final Passage key;
+        try {
+            key = KeyUtil.getPassage(PassageKeyFactory.instance().getKey(
+                    this.versificationService.getVersificationForVersion(version), passage));
+        } catch (final NoSuchKeyException e) {
+            throw new TranslatedException(e, "invalid_reference_in_book", passage, version);
+        }
+
+        final BitSet entries = new BitSet(index.getNumEntries());
+        final Iterator<VerseRange> ranges = key.rangeIterator(RestrictionType.NONE);
+        while (ranges.hasNext()) {
+            index.addEntries(ranges.next(), entries);
+        }
+        return sortByScore(this.alternativeTranslations.getDocuments(index.getDocIds(entries), null));
+    }
+
+    /**
+     * Puts the entries in the order the entity index returns them for a query on their references. Each entry has a
+     * single reference, so that query scores the entries of the verses with the fewest entries highest, the entries
+     * of a verse coming in the order in which they were indexed.
+     * 
+     * @param docs the entries, in the order in which they were indexed
+     * @return the entries, in score order
+     */
+    private EntityDoc[] sortByScore(final EntityDoc[] docs) {
+        final Map<String, Integer> entriesPerReference = new HashMap<String, Integer>(docs.length * 2);
+        for (final EntityDoc d : docs) {
+            final Integer count = entriesPerReference.get(d.get("reference"));
+            entriesPerReference.put(d.get("reference"), count == null ? 1 : count + 1);
+        }
+
+        // a stable sort, keeping the indexed order within a verse
+        Arrays.sort(docs, new Comparator<EntityDoc>() {
+            @Override
+            public int compare(final EntityDoc o1, final EntityDoc o2) {
+                return entriesPerReference.get(o1.get("reference")).compareTo(
+                        entriesPerReference.get(o2.get("reference")));
+            }
+        });
+        return docs;
+    }
+
     /**
      * Gets the current versionVerses object for a particular reference, creating it if it does not already
      * exist
@@ -59,7 +59,13 @@ import com.tyndalehouse.step.core.service.jsword.impl.JSwordAnalysisServiceImpl;
 import com.tyndalehouse.step.core.service.search.SubjectSearchService;
 import com.tyndalehouse.step.core.utils.StringUtils;
 import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.KeyUtil;
+import org.crosswire.jsword.passage.Passage;
+import org.crosswire.jsword.passage.RangedPassage;
 import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseRange;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
 
 /**
  * A service able to retrieve various kinds of statistics, delegates to {@link JSwordAnalysisServiceImpl} for
@@ -155,7 +161,11 @@ public class AnalysisServiceImpl implements AnalysisService {
      * @return the passage stat
      */
     private PassageStat getSubjectStats(final String version, final String reference, final ScopeType scopeType) {
-        final SearchResult subjectResults = this.subjects.searchByReference(getReferenceSyntax(reference, version, scopeType));
+        final KeyWrapper key = this.jSwordPassageService.getKeyInfo(reference, version, version);
+        SearchResult subjectResults = this.subjects.searchByReference(getReferencePassage(key.getKey(), scopeType));
+        if (subjectResults == null) {
+            subjectResults = this.subjects.searchByReference(getReferenceSyntax(key, scopeType));
+        }
         final PassageStat stat = new PassageStat();
         
         //we duplicate the set here because we'd like to keep the casing...
@@ -182,16 +192,88 @@ public class AnalysisServiceImpl implements AnalysisService {
     }
 
 
+    /**
+     * Expands the reference to the same chapters or book as {@link #getReferenceSyntax(KeyWrapper, ScopeType)}, for
+     * looking up the precomputed subjects of each verse.
+     *
+     * @param total     the reference
+     * @param scopeType the scope type
+     * @return the chapters or book covered by the scope
+     */
+    private Passage getReferencePassage(final Key total, final ScopeType scopeType) {
+        final Versification v11n = KeyUtil.getPassage(total).getVersification();
+        final Passage expanded = new RangedPassage(v11n);
+
+        switch (scopeType) {
+            case PASSAGE:
+            case CHAPTER:
+            case NEAR_BY_CHAPTER:
+                int minChapter = -1;
+                Verse firstVerse = null;
+                Verse v = null;
+                final Iterator<Key> iterator = total.iterator();
+                while (iterator.hasNext()) {
+                    final Key next = iterator.next();
+                    if (next instanceof Verse) {
+                        final Verse previous = v;
+                        v = (Verse) next;
+                        if (firstVerse == null) {
+                            minChapter = v.getChapter();
+                            firstVerse = v;
+                        }
+
+                        if (previous == null || previous.getChapter() != v.getChapter()
+                                || previous.getBook() != v.getBook()) {
+                            addChapter(expanded, v11n, v.getBook(), v.getChapter());
+                        }
+                    }
+                }
+
+                if (scopeType == ScopeType.NEAR_BY_CHAPTER && firstVerse != null && minChapter > 0) {
+                    addChapter(expanded, v11n, firstVerse.getBook(), minChapter - 1);
+                    addChapter(expanded, v11n, v.getBook(), minChapter - 1);
+                }
+                break;
+            case BOOK:
+                final Key k = total.get(0);
+                if (k instanceof Verse) {
+                    final BibleBook book = ((Verse) k).getBook();
+                    final int lastChapter = v11n.getLastChapter(book);
+                    expanded.add(new VerseRange(v11n, new Verse(v11n, book, 1, 0),
+                            new Verse(v11n, book, lastChapter, v11n.getLastVerse(book, lastChapter))));
+                }
+                break;
+            default:
+                throw new StepInternalException("Unsupported option.");
+        }
+        return expanded;
+    }
+
+    /**
+     * Adds a whole chapter to a passage, if the book has that chapter
+     *
+     * @param passage the passage
+     * @param v11n    the versification of the passage
+     * @param book    the book
+     * @param chapter the chapter
+     */
+    private void addChapter(final Passage passage, final Versification v11n, final BibleBook book, final int chapter) {
+        if (chapter > v11n.getLastChapter(book)) {
+            return;
+        }
+        passage.add(new VerseRange(v11n, new Verse(v11n, book, chapter, 0),
+                new Verse(v11n, book, chapter, v11n.getLastVerse(book, chapter))));
+    }
+
     /**
      * Creates a lucene query to allow search for multiple chapters/entire books, without generating
      * thousands of boolean queries, because we're expanding a book into all its verses!
      *
-     * @param version   the version in which look up the key
+     * @param key       the reference, resolved in the version
      * @param scopeType the scope type
      */
 
-    private String getReferenceSyntax(final String reference, final String version, final ScopeType scopeType) {
-        final KeyWrapper key = this.jSwordPassageService.getKeyInfo(reference, version, version);
+    private String getReferenceSyntax(final KeyWrapper key, final ScopeType scopeType) {
         final Key total = key.getKey();
 
         StringBuilder sb = new StringBuilder(32);
@@ -38,6 +38,7 @@ import com.tyndalehouse.step.core.data.StepHttpSwordInstaller;
 import com.tyndalehouse.step.core.models.BibleInstaller;
 import com.tyndalehouse.step.core.models.BibleVersion;
 import com.tyndalehouse.step.core.models.BookName;
+import com.tyndalehouse.step.core.models.ClientSession;
 import com.tyndalehouse.step.core.models.EnrichedLookupOption;
 import com.tyndalehouse.step.core.models.InterlinearMode;
 import com.tyndalehouse.step.core.models.KeyWrapper;
@@ -48,6 +49,7 @@ import com.tyndalehouse.step.core.models.search.StrongCountsAndSubjects;
 import com.tyndalehouse.step.core.service.BibleInformationService;
 import com.tyndalehouse.step.core.service.PassageOptionsValidationService;
 import com.tyndalehouse.step.core.service.StrongAugmentationService;
+import com.tyndalehouse.step.core.service.helpers.RenderedPassageCache;
 import com.tyndalehouse.step.core.service.helpers.VersionResolver;
 import com.tyndalehouse.step.core.service.jsword.JSwordMetadataService;
 import com.tyndalehouse.step.core.service.jsword.JSwordModuleService;
@@ -55,6 +57,7 @@ import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
 import com.tyndalehouse.step.core.service.jsword.JSwordSearchService;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
 import com.tyndalehouse.step.core.service.jsword.helpers.JSwordStrongNumberHelper;
+import com.tyndalehouse.step.core.utils.RenderingLocale;
 import com.tyndalehouse.step.core.utils.StringUtils;
 import com.yammer.metrics.annotation.Timed;
 import org.crosswire.jsword.book.Book;
@@ -70,6 +73,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.inject.Provider;
 import javax.inject.Singleton;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -102,6 +106,8 @@ public class BibleInformationServiceImpl implements BibleInformationService {
     private final JSwordVersificationService jswordVersification;
     private final VersionResolver resolver;
     private final StrongAugmentationService strongAugmentationService;
+    private final RenderedPassageCache passageCache;
+    private final Provider<ClientSession> clientSessionProvider;
 
     /**
      * The bible information service, retrieving content and meta data.
@@ -115,6 +121,8 @@ public class BibleInformationServiceImpl implements BibleInformationService {
      * @param entityManager             the entity manager
      * @param jswordVersification       the jsword versification
      * @param strongAugmentationService to augment strong numbers
+     * @param passageCache              the cache of rendered passages
+     * @param clientSessionProvider     the client session, giving the locale of the passages
      */
     @Inject
     public BibleInformationServiceImpl(@Named("defaultVersions") final List<String> defaultVersions,
@@ -123,7 +131,9 @@ public class BibleInformationServiceImpl implements BibleInformationService {
                                        final JSwordMetadataService jswordMetadata, final JSwordSearchService jswordSearch,
                                        final EntityManager entityManager, final JSwordVersificationService jswordVersification,
                                        final StrongAugmentationService strongAugmentationService,
-                                       final VersionResolver resolver) {
+                                       final VersionResolver resolver,
+                                       final RenderedPassageCache passageCache,
+                                       final Provider<ClientSession> clientSessionProvider) {
         this.optionsValidationService = optionsValidationService;
         this.jswordPassage = jswordPassage;
         this.defaultVersions = defaultVersions;
@@ -134,6 +144,8 @@ public class BibleInformationServiceImpl implements BibleInformationService {
         this.jswordVersification = jswordVersification;
         this.strongAugmentationService = strongAugmentationService;
         this.resolver = resolver;
+        this.passageCache = passageCache;
+        this.clientSessionProvider = clientSessionProvider;
     }
 
     /**
@@ -190,17 +202,86 @@ public class BibleInformationServiceImpl implements BibleInformationService {
     @Timed(name = "passage-lookup", group = "service", rateUnit = TimeUnit.SECONDS, durationUnit = TimeUnit.MILLISECONDS)
     public OsisWrapper getPassageText(final String version, final String reference, final String options,
                                       final String interlinearVersion, final String interlinearMode) {
+        return getPassageText(version, reference, options, interlinearVersion, interlinearMode,
+                this.clientSessionProvider.get().getLocale());
+    }
 
+    @Override
+    public OsisWrapper getPassageText(final String version, final String reference, final String options,
+                                      final String interlinearVersion, final String interlinearMode,
+                                      final Locale locale) {
         final List<String> extraVersions = getExtraVersionsFromString(interlinearVersion);
         final InterlinearMode desiredModeOfDisplay = this.optionsValidationService.getDisplayMode(interlinearMode, version, extraVersions);
-
-        OsisWrapper passageText;
         final List<TrimmedLookupOption> removedOptions = new ArrayList<TrimmedLookupOption>(4);
         final List<LookupOption> inputLookupOptions = this.optionsValidationService.getLookupOptions(options);
         final InterlinearMode realModeOfDisplay = this.optionsValidationService.determineDisplayMode(inputLookupOptions, desiredModeOfDisplay, true);
         final Set<LookupOption> lookupOptions = this.optionsValidationService.trim(inputLookupOptions, version, extraVersions,
-                desiredModeOfDisplay, realModeOfDisplay, removedOptions);
+                desiredModeOfDisplay, realModeOfDisplay, locale, removedOptions);
+
+        // requests rendering the same passage share the same key, whichever way they spell it
+        final String cacheKey = RenderedPassageCache.getKey(version, getOsisReference(version, reference),
+                this.optionsValidationService.optionsToString(lookupOptions) + getRemovedOptions(removedOptions),
+                interlinearVersion, desiredModeOfDisplay.name(), locale);
+        final OsisWrapper cachedPassage = this.passageCache.get(cacheKey);
+        if (cachedPassage != null) {
+            return cachedPassage;
+        }
+
+        final OsisWrapper passageText;
+        final Locale previousLocale = RenderingLocale.set(locale);
+        try {
+            passageText = renderPassageText(version, reference, interlinearVersion, interlinearMode, extraVersions,
+                    desiredModeOfDisplay, realModeOfDisplay, lookupOptions, removedOptions);
+        } finally {
+            RenderingLocale.set(previousLocale);
+        }
+        final List<String> versions = new ArrayList<>(extraVersions);
+        versions.add(version);
+        this.passageCache.put(cacheKey, versions, passageText);
+        return passageText;
+    }
+
+    /**
+     * @param version   the version
+     * @param reference the reference, as typed or linked to
+     * @return the OSIS reference of the passage, or the reference as it is if it can't be resolved
+     */
+    private String getOsisReference(final String version, final String reference) {
+        if (StringUtils.isBlank(reference)) {
+            return reference;
+        }
+
+        try {
+            final String osisRef = this.jswordVersification.getBookFromVersion(version).getKey(reference).getOsisRef();
+            return StringUtils.isBlank(osisRef) ? reference : osisRef;
+        } catch (final NoSuchKeyException e) {
+            // rendering will deal with it
+            return reference;
+        }
+    }
 
+    /**
+     * Renders the passage text, through JSword and the stylesheets
+     *
+     * @param version              the version
+     * @param reference            the reference
+     * @param interlinearVersion   the interlinear version
+     * @param interlinearMode      the interlinear mode, as requested
+     * @param extraVersions        the extra versions
+     * @param desiredModeOfDisplay the display mode, once defaulted
+     * @param realModeOfDisplay    the mode the passage is displayed in
+     * @param lookupOptions        the options, once trimmed
+     * @param removedOptions       the options removed, with their explanations
+     * @return the passage text
+     */
+    private OsisWrapper renderPassageText(final String version, final String reference,
+                                          final String interlinearVersion, final String interlinearMode,
+                                          final List<String> extraVersions,
+                                          final InterlinearMode desiredModeOfDisplay,
+                                          final InterlinearMode realModeOfDisplay,
+                                          final Set<LookupOption> lookupOptions,
+                                          final List<TrimmedLookupOption> removedOptions) {
+        OsisWrapper passageText;
         if (INTERLINEAR != desiredModeOfDisplay && NONE != desiredModeOfDisplay) {
             // split the versions
             lookupOptions.add(LookupOption.VERSE_NUMBERS);
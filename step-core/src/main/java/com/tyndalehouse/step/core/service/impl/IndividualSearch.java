@@ -35,6 +35,7 @@ package com.tyndalehouse.step.core.service.impl;
 import com.tyndalehouse.step.core.exceptions.TranslatedException;
 import com.tyndalehouse.step.core.utils.StringUtils;
 import org.apache.lucene.queryParser.QueryParser;
+import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.index.lucene.LuceneIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -78,6 +79,8 @@ public class IndividualSearch {
     private String mainRange;
     private String[] originalFilter;
     private String originalQuery;
+    private boolean masterVersionOnly;
+    private Key scope;
 
     /**
      * Instantiates a single search to be executed.
@@ -406,4 +409,45 @@ public class IndividualSearch {
     public String getSecondaryRange() {
         return secondaryRange;
     }
+
+    /**
+     * @return true if the search runs against the first version only, rather than all versions
+     */
+    public boolean isMasterVersionOnly() {
+        return this.masterVersionOnly;
+    }
+
+    /**
+     * Restricts the search to the first version, when searching all versions would be too expensive. The other
+     * versions are still displayed alongside the results.
+     *
+     * @param masterVersionOnly true to search the first version only
+     */
+    public void setMasterVersionOnly(final boolean masterVersionOnly) {
+        this.masterVersionOnly = masterVersionOnly;
+    }
+
+    /**
+     * @return the verses the search can be restricted to, or null to search every verse
+     */
+    public Key getScope() {
+        return this.scope;
+    }
+
+    /**
+     * Restricts the search to the verses that are still in the results of the searches it is joined to. The search
+     * finds the same verses within the scope, but may look at fewer verses in doing so.
+     *
+     * @param scope the verses the search can be restricted to, in the versification of the first version, or null
+     */
+    public void setScope(final Key scope) {
+        this.scope = scope;
+    }
+
+    /**
+     * @return the versions the search is run against
+     */
+    public String[] getSearchedVersions() {
+        return this.masterVersionOnly && this.versions.length > 1 ? new String[]{this.versions[0]} : this.versions;
+    }
 }
@@ -4,6 +4,8 @@ import com.tyndalehouse.step.core.exceptions.StepInternalException;
 import com.tyndalehouse.step.core.models.OsisWrapper;
 import com.tyndalehouse.step.core.service.BibleInformationService;
 import com.tyndalehouse.step.core.service.JSwordRelatedVersesService;
+import com.tyndalehouse.step.core.service.helpers.RelatedVersesIndex;
+import com.tyndalehouse.step.core.service.helpers.RelatedVersesIndexStore;
 import com.tyndalehouse.step.core.service.jsword.JSwordMetadataService;
 import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
 import com.tyndalehouse.step.core.service.jsword.JSwordSearchService;
@@ -27,6 +29,7 @@ import org.crosswire.jsword.index.lucene.LuceneIndex;
 import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.KeyUtil;
 import org.crosswire.jsword.passage.NoSuchKeyException;
+import org.crosswire.jsword.passage.Passage;
 import org.crosswire.jsword.versification.VersificationsMapper;
 import org.jdom2.Element;
 import org.slf4j.Logger;
@@ -42,18 +45,21 @@ import java.util.List;
  */
 public class JSwordRelatedVersesServiceImpl implements JSwordRelatedVersesService {
     private static final Logger LOG = LoggerFactory.getLogger(JSwordRelatedVersesServiceImpl.class);
-    private static final int SIGNIFICANT_CUT_OFF = 200;
+    private static final int MAX_RELATED_VERSES = 50;
     private final JSwordSearchService jSwordSearchService;
     private final JSwordVersificationService jSwordVersificationService;
     private final JSwordMetadataService jSwordMetadataService;
+    private final RelatedVersesIndexStore relatedVersesIndexes;
 
     @Inject
     public JSwordRelatedVersesServiceImpl(final JSwordSearchService jSwordSearchService,
                                           final JSwordVersificationService jSwordVersificationService,
-                                          final JSwordMetadataService jSwordMetadataService) {
+                                          final JSwordMetadataService jSwordMetadataService,
+                                          final RelatedVersesIndexStore relatedVersesIndexes) {
         this.jSwordSearchService = jSwordSearchService;
         this.jSwordVersificationService = jSwordVersificationService;
         this.jSwordMetadataService = jSwordMetadataService;
+        this.relatedVersesIndexes = relatedVersesIndexes;
     }
 
 
@@ -69,9 +75,15 @@ public class JSwordRelatedVersesServiceImpl implements JSwordRelatedVersesServic
             final Key targetKey = targetBook.getKey(key);
             final Key strongKey = VersificationsMapper.instance().map(KeyUtil.getPassage(targetKey), jSwordVersificationService.getVersificationForVersion(strongBook));
 
+            final IndexSearcher is = jSwordSearchService.getIndexSearcher(strongBook.getInitials());
+            final RelatedVersesIndex index = this.relatedVersesIndexes.getIndex(strongBook.getInitials(), is);
+            if (index != null) {
+                final List<String> relatedVerses = index.getRelatedVerses(getVerseReferences(strongKey), MAX_RELATED_VERSES);
+                return targetBook.getKey(StringUtils.join(relatedVerses.toArray(new String[relatedVerses.size()]), ' '));
+            }
+
             //get list of strong numbers
             final String[] strongs = this.getStrongsFromKey(new BookData(strongBook, strongKey));
-            final IndexSearcher is = jSwordSearchService.getIndexSearcher(strongBook.getInitials());
             final List<String> filteredStrongs = keepInfrequentStrongs(strongs, is);
             return targetBook.getKey(getRelatedVerseReference(filteredStrongs, is));
         } catch (final NoSuchKeyException ex) {
@@ -80,7 +92,20 @@ public class JSwordRelatedVersesServiceImpl implements JSwordRelatedVersesServic
     }
 
     /**
-     * Keeps the strongs that are less than SIGNIFICANT_CUT_OFF point
+     * @param key the key
+     * @return the osis references of each of the verses of the key
+     */
+    private List<String> getVerseReferences(final Key key) {
+        final Passage passage = KeyUtil.getPassage(key);
+        final List<String> references = new ArrayList<String>(passage.getCardinality());
+        for (final Key verse : passage) {
+            references.add(verse.getOsisRef());
+        }
+        return references;
+    }
+
+    /**
+     * Keeps the strongs that are less frequent than the configured cut-off point
      *
      * @param strongs the total list of strongs
      * @param is      the index searcher
@@ -90,7 +115,7 @@ public class JSwordRelatedVersesServiceImpl implements JSwordRelatedVersesServic
         final List<String> keepList = new ArrayList<String>(strongs.length);
         try {
             for (String s : strongs) {
-                if (is.docFreq(new Term(LuceneIndex.FIELD_STRONG, s)) < SIGNIFICANT_CUT_OFF) {
+                if (is.docFreq(new Term(LuceneIndex.FIELD_STRONG, s)) < this.relatedVersesIndexes.getMaxDocFreq()) {
                     keepList.add(StringConversionUtils.getStrongPaddedKey(s));
                 }
             }
@@ -110,7 +135,7 @@ public class JSwordRelatedVersesServiceImpl implements JSwordRelatedVersesServic
     private String getRelatedVerseReference(final List<String> strongs, final IndexSearcher is) {
         try {
             final BooleanQuery bq = getRelatedLuceneQuery(strongs);
-            final TopScoreDocCollector collector = TopScoreDocCollector.create(50, true);
+            final TopScoreDocCollector collector = TopScoreDocCollector.create(MAX_RELATED_VERSES, true);
             is.search(bq, collector);
             final TopDocs topDocs = collector.topDocs();
             final ScoreDoc[] scoreDocs = topDocs.scoreDocs;
@@ -0,0 +1,194 @@
+package com.tyndalehouse.step.core.service.impl;
+
+import com.tyndalehouse.step.core.service.BibleInformationService;
+import com.tyndalehouse.step.core.service.helpers.RenderedPassageCache;
+import com.tyndalehouse.step.core.utils.IOUtils;
+import com.tyndalehouse.step.core.utils.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Renders the most popular passages ahead of time, so that the first users after a restart don't pay for rendering
+ * them. Popular passages come from a configured list, and from the passages most requested before the last shutdown,
+ * which are written to the STEP home directory when the application stops. Each passage is rendered in the locale it
+ * was requested in, English for the configured ones, since there is no client session to take it from, and with the
+ * options the site starts with when none are configured, so that the passages rendered are those users ask for.
+ * <p/>
+ * Rendering starts once the modules are installed, see {@link #start()}.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class PassageCacheWarmUp {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PassageCacheWarmUp.class);
+    private static final String POPULAR_PASSAGES_FILE = "popular-passages.txt";
+    private static final String UTF_8 = "UTF-8";
+
+    /**
+     * The options a passage column starts with, see passage_model.js
+     */
+    static final String DEFAULT_OPTIONS = "NHVUG";
+    private final BibleInformationService bibleInformation;
+    private final RenderedPassageCache passageCache;
+    private final File popularPassagesFile;
+    private final String configuredPassages;
+    private final int maxPassages;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * @param appHome            the home of the application
+     * @param configuredPassages the passages to render, separated by ';', each one taking the form of a cache key, e.g.
+     *                           ESV|John.1|NHVUG, optionally ending with the locale, e.g. ESV|John.1|NHVUG|||fr
+     * @param maxPassages        the number of popular passages to render, 0 to disable the warm-up
+     * @param bibleInformation   the service rendering the passages
+     * @param passageCache       the cache of passages
+     */
+    @Inject
+    public PassageCacheWarmUp(@Named("app.home") final String appHome,
+                              @Named("app.passageCache.warmUp") final String configuredPassages,
+                              @Named("app.passageCache.warmUpCount") final int maxPassages,
+                              final BibleInformationService bibleInformation,
+                              final RenderedPassageCache passageCache) {
+        this.configuredPassages = configuredPassages;
+        this.maxPassages = maxPassages;
+        this.bibleInformation = bibleInformation;
+        this.passageCache = passageCache;
+        this.popularPassagesFile = IOUtils.getHomeFile(appHome, POPULAR_PASSAGES_FILE);
+
+        if (maxPassages > 0) {
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    savePopularPassages();
+                }
+            }, "passage-cache-save"));
+        }
+    }
+
+    /**
+     * Starts rendering the popular passages in the background, unless they are already being rendered. To be called
+     * once the modules are installed, since passages of modules that are missing can't be rendered.
+     */
+    public void start() {
+        if (this.maxPassages <= 0 || !this.running.compareAndSet(false, true)) {
+            return;
+        }
+
+        final Thread warmUp = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    warmUp();
+                } finally {
+                    PassageCacheWarmUp.this.running.set(false);
+                }
+            }
+        }, "passage-cache-warm-up");
+        warmUp.setDaemon(true);
+        warmUp.setPriority(Thread.MIN_PRIORITY);
+        warmUp.start();
+    }
+
+    /**
+     * Renders each of the popular passages
+     */
+    void warmUp() {
+        final Set<String> keys = getPassagesToRender();
+        final long start = System.currentTimeMillis();
+        int rendered = 0;
+        for (final String key : keys) {
+            final String[] parts = RenderedPassageCache.splitKey(key);
+            if (parts[0] == null || parts[1] == null) {
+                continue;
+            }
+
+            final Locale locale = parts[5] == null ? Locale.ENGLISH : Locale.forLanguageTag(parts[5]);
+            try {
+                final String options = parts[2] == null ? DEFAULT_OPTIONS : parts[2];
+                this.bibleInformation.getPassageText(parts[0], parts[1], options, parts[3], parts[4], locale);
+                rendered++;
+                // CHECKSTYLE:OFF a missing module or invalid passage shouldn't stop the others from being rendered
+            } catch (final Exception e) {
+                // CHECKSTYLE:ON
+                LOGGER.debug("Unable to pre-render [{}]", key, e);
+            }
+        }
+        LOGGER.info("Pre-rendered [{}] of [{}] passages in [{}] ms", rendered, keys.size(),
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @return the configured passages, followed by the popular passages from the last run
+     */
+    private Set<String> getPassagesToRender() {
+        final Set<String> keys = new LinkedHashSet<String>();
+        if (StringUtils.isNotBlank(this.configuredPassages)) {
+            for (final String passage : StringUtils.split(this.configuredPassages, ";")) {
+                if (StringUtils.isNotBlank(passage)) {
+                    keys.add(passage.trim());
+                }
+            }
+        }
+
+        if (!this.popularPassagesFile.exists()) {
+            return keys;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.popularPassagesFile), UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null && keys.size() < this.maxPassages) {
+                if (StringUtils.isNotBlank(line)) {
+                    keys.add(line.trim());
+                }
+            }
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to read [{}]", this.popularPassagesFile, e);
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+        return keys;
+    }
+
+    /**
+     * Writes the most requested passages of this run, so that they can be rendered on the next start-up
+     */
+    void savePopularPassages() {
+        final List<String> popularPassages = this.passageCache.getMostRequested(this.maxPassages);
+        if (popularPassages.isEmpty()) {
+            // keep the passages of the previous run
+            return;
+        }
+
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(this.popularPassagesFile), UTF_8);
+            for (final String key : popularPassages) {
+                writer.write(key);
+                writer.write('\n');
+            }
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to write [{}]", this.popularPassagesFile, e);
+        } finally {
+            IOUtils.closeQuietly(writer);
+        }
+    }
+}
@@ -8,6 +8,7 @@ import com.tyndalehouse.step.core.models.TrimmedLookupOption;
 import com.tyndalehouse.step.core.service.BibleInformationService;
 import com.tyndalehouse.step.core.service.PassageOptionsValidationService;
 import com.tyndalehouse.step.core.service.jsword.JSwordMetadataService;
+import com.tyndalehouse.step.core.service.jsword.helpers.VersionCapabilityMatrix;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
@@ -17,8 +18,11 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.tyndalehouse.step.core.models.InterlinearMode.INTERLINEAR;
 import static com.tyndalehouse.step.core.models.InterlinearMode.NONE;
@@ -32,18 +36,36 @@ import static com.tyndalehouse.step.core.models.LookupOption.VERSE_NUMBERS;
 import static com.tyndalehouse.step.core.utils.StringUtils.isBlank;
 
 /**
+ * Works out the options that can actually be used to display a passage. The options available to each version come
+ * from the {@link VersionCapabilityMatrix}, and the outcome of trimming a given set of options for a given set of
+ * versions and display mode is kept, so that passages requested again with the same options don't go through the
+ * trimming again.
+ *
  * @author chrisburrell
  */
 @Singleton
 public class PassageOptionsValidationServiceImpl implements PassageOptionsValidationService {
+    private static final int MAX_OUTCOMES = 4096;
+    private static final char KEY_SEPARATOR = '|';
     private final Provider<ClientSession> clientSessionProvider;
     private final JSwordMetadataService jswordMetadata;
+    private final VersionCapabilityMatrix capabilities;
+    private final Map<String, TrimOutcome> outcomes = new ConcurrentHashMap<>();
+    private volatile int generation;
 
+    /**
+     * @param jswordMetadata        the metadata service
+     * @param capabilities          the capabilities of each version
+     * @param clientSessionProvider the client session, giving the language of the explanations
+     */
     @Inject
     public PassageOptionsValidationServiceImpl(final JSwordMetadataService jswordMetadata,
+                                               final VersionCapabilityMatrix capabilities,
                                                final Provider<ClientSession> clientSessionProvider) {
         this.jswordMetadata = jswordMetadata;
+        this.capabilities = capabilities;
         this.clientSessionProvider = clientSessionProvider;
+        this.generation = capabilities.getGeneration();
     }
 
     @Override
@@ -75,14 +97,59 @@ public class PassageOptionsValidationServiceImpl implements PassageOptionsValida
                                   final InterlinearMode mode,
                                   final InterlinearMode displayMode,
                                   final List<TrimmedLookupOption> trimmingExplanations) {
-        // obtain error messages
-        final ResourceBundle errors = ResourceBundle.getBundle("ErrorBundle", this.clientSessionProvider
-                .get().getLocale());
+        // explanations are in the user's language
+        final Locale locale = trimmingExplanations == null || options.isEmpty() ? null
+                : this.clientSessionProvider.get().getLocale();
+        return trim(options, version, extraVersions, mode, displayMode, locale, trimmingExplanations);
+    }
 
+    @Override
+    public Set<LookupOption> trim(final List<LookupOption> options, final String version,
+                                  final List<String> extraVersions,
+                                  final InterlinearMode mode,
+                                  final InterlinearMode displayMode,
+                                  final Locale explanationLocale,
+                                  final List<TrimmedLookupOption> trimmingExplanations) {
         if (options.isEmpty()) {
             return new HashSet<>();
         }
 
+        final Locale locale = trimmingExplanations == null ? null
+                : explanationLocale == null ? Locale.ENGLISH : explanationLocale;
+        final String key = getKey(options, version, extraVersions, mode, displayMode, locale);
+        TrimOutcome outcome = getOutcome(key);
+        if (outcome == null) {
+            final List<TrimmedLookupOption> explanations = locale == null ? null : new ArrayList<TrimmedLookupOption>();
+            final Set<LookupOption> result = trimOptions(locale, options, version, extraVersions, mode, displayMode,
+                    explanations);
+            outcome = new TrimOutcome(VersionCapabilityMatrix.toBits(result), explanations);
+            putOutcome(key, outcome);
+        }
+
+        if (trimmingExplanations != null) {
+            outcome.addExplanations(trimmingExplanations);
+        }
+        return VersionCapabilityMatrix.toOptions(outcome.getOptions());
+    }
+
+    /**
+     * Trims the options, as per {@link #trim(List, String, List, InterlinearMode, InterlinearMode, List)}
+     *
+     * @param locale               the language of the explanations, null if no explanations are needed
+     * @param options              the options
+     * @param version              the main version
+     * @param extraVersions        the other versions
+     * @param mode                 the mode asked for
+     * @param displayMode          the mode the passage is displayed in
+     * @param trimmingExplanations the explanations of why options were removed, or null
+     * @return the options that can be used
+     */
+    private Set<LookupOption> trimOptions(final Locale locale, final List<LookupOption> options, final String version,
+                                          final List<String> extraVersions, final InterlinearMode mode,
+                                          final InterlinearMode displayMode,
+                                          final List<TrimmedLookupOption> trimmingExplanations) {
+        // obtain error messages
+        final ResourceBundle errors = locale == null ? null : ResourceBundle.getBundle("ErrorBundle", locale);
         final Set<LookupOption> result = getUserOptionsForVersion(errors, options, version, extraVersions, trimmingExplanations);
 
 
@@ -96,7 +163,7 @@ public class PassageOptionsValidationServiceImpl implements PassageOptionsValida
                 break;
             case INTERLINEAR:
                 explainRemove(errors, NOTES, result, trimmingExplanations, !mode.equals(displayMode),
-                        errors.getString("option_not_available_interlinear"));
+                        "option_not_available_interlinear");
                 result.add(LookupOption.VERSE_NEW_LINE);
                 break;
             case NONE:
@@ -131,7 +198,7 @@ public class PassageOptionsValidationServiceImpl implements PassageOptionsValida
                                            final List<TrimmedLookupOption> trimmingExplanations,
                                            final Set<LookupOption> result,
                                            final boolean originalModeHasChanged) {
-        final String interleavedMessage = errors.getString("option_not_available_interleaved");
+        final String interleavedMessage = "option_not_available_interleaved";
         explainRemove(errors, VERSE_NUMBERS, result, trimmingExplanations, originalModeHasChanged,
                 interleavedMessage);
 
@@ -164,12 +231,13 @@ public class PassageOptionsValidationServiceImpl implements PassageOptionsValida
      * @param result              the resulting options
      * @param trimmingOptions     the list of options
      * @param originalModeChanged tru if the original mode has changed
-     * @param explanation         the explanation
+     * @param explanationKey      the key of the explanation in the error messages
      */
     private void explainRemove(final ResourceBundle errors, final LookupOption option,
                                final Set<LookupOption> result, final List<TrimmedLookupOption> trimmingOptions,
-                               final boolean originalModeChanged, final String explanation) {
+                               final boolean originalModeChanged, final String explanationKey) {
         if (result.remove(option) && trimmingOptions != null) {
+            final String explanation = errors.getString(explanationKey);
 
             final TrimmedLookupOption trimmedOption;
             if (originalModeChanged) {
@@ -198,7 +266,7 @@ public class PassageOptionsValidationServiceImpl implements PassageOptionsValida
     /**
      * Given a set of options selected by the user and a verson, retrieves the options that are actually available
      *
-     * @param errors               the error messages
+     * @param errors               the error messages, null if no explanations are needed
      * @param options              the options given by the user
      * @param version              the version of interest
      * @param extraVersions        the secondary versions that affect feature resolution
@@ -209,17 +277,12 @@ public class PassageOptionsValidationServiceImpl implements PassageOptionsValida
                                                        final List<LookupOption> options, final String version,
                                                        final List<String> extraVersions,
                                                        final List<TrimmedLookupOption> trimmingExplanations) {
-        final Set<LookupOption> available = this.jswordMetadata.getFeatures(version, extraVersions);
-        final Set<LookupOption> result = new HashSet<>(options.size());
-        // do a crazy bubble intersect, but it's tiny so that's fine
+        final long available = this.capabilities.getFeatures(version, extraVersions);
+        final Set<LookupOption> result = new HashSet<>(options.size() * 2);
         for (final LookupOption loOption : options) {
-            boolean added = false;
-            for (final LookupOption avOption : available) {
-                if (loOption.equals(avOption)) {
-                    result.add(loOption);
-                    added = true;
-                    break;
-                }
+            final boolean added = VersionCapabilityMatrix.contains(available, loOption);
+            if (added) {
+                result.add(loOption);
             }
 
             // option not available in that particular version
@@ -260,4 +323,93 @@ public class PassageOptionsValidationServiceImpl implements PassageOptionsValida
         }
         return codedOptions.toString();
     }
+
+    /**
+     * @param options       the options
+     * @param version       the main version
+     * @param extraVersions the other versions
+     * @param mode          the mode asked for
+     * @param displayMode   the mode the passage is displayed in
+     * @param locale        the language of the explanations, or null
+     * @return the key of the outcome of trimming the options
+     */
+    private String getKey(final List<LookupOption> options, final String version, final List<String> extraVersions,
+                          final InterlinearMode mode, final InterlinearMode displayMode, final Locale locale) {
+        final StringBuilder key = new StringBuilder(64);
+        for (final LookupOption lo : options) {
+            key.append((char) ('A' + lo.ordinal()));
+        }
+        key.append(KEY_SEPARATOR).append(version);
+        if (extraVersions != null) {
+            for (final String extraVersion : extraVersions) {
+                key.append(',').append(extraVersion);
+            }
+        }
+        key.append(KEY_SEPARATOR).append(mode.ordinal());
+        key.append(KEY_SEPARATOR).append(displayMode.ordinal());
+        key.append(KEY_SEPARATOR).append(locale);
+        return key.toString();
+    }
+
+    /**
+     * @param key the key of the outcome
+     * @return the outcome of trimming, or null if it has not been worked out since the versions last changed
+     */
+    private TrimOutcome getOutcome(final String key) {
+        final int currentGeneration = this.capabilities.getGeneration();
+        if (currentGeneration != this.generation) {
+            this.outcomes.clear();
+            this.generation = currentGeneration;
+            return null;
+        }
+        return this.outcomes.get(key);
+    }
+
+    /**
+     * @param key     the key of the outcome
+     * @param outcome the outcome of trimming
+     */
+    private void putOutcome(final String key, final TrimOutcome outcome) {
+        if (this.outcomes.size() >= MAX_OUTCOMES) {
+            this.outcomes.clear();
+        }
+        this.outcomes.put(key, outcome);
+    }
+
+    /**
+     * The outcome of trimming a set of options
+     */
+    private static final class TrimOutcome {
+        private final long options;
+        private final TrimmedLookupOption[] explanations;
+
+        /**
+         * @param options      the options left, as a bitset
+         * @param explanations the explanations of why the others were removed, or null
+         */
+        private TrimOutcome(final long options, final List<TrimmedLookupOption> explanations) {
+            this.options = options;
+            this.explanations = explanations == null
+                    ? new TrimmedLookupOption[0]
+                    : explanations.toArray(new TrimmedLookupOption[explanations.size()]);
+        }
+
+        /**
+         * @return the options left, as a bitset
+         */
+        private long getOptions() {
+            return this.options;
+        }
+
+        /**
+         * Adds copies of the explanations, since callers may change them
+         *
+         * @param trimmingExplanations the list of explanations to add to
+         */
+        private void addExplanations(final List<TrimmedLookupOption> trimmingExplanations) {
+            for (final TrimmedLookupOption explanation : this.explanations) {
+                trimmingExplanations.add(new TrimmedLookupOption(explanation.getExplanation(), explanation.getOption()));
+            }
+        }
+    }
 }
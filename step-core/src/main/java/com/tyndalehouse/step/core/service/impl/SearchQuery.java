@@ -55,6 +55,8 @@ public class SearchQuery {
     private String originalQuery;
 
     private int currentSearch = 0;
+    private int[] executionOrder;
+    private int executed = 0;
     private boolean allKeys = false;
     private final String sortOrder;
     private List<EntityDoc> definitions;
@@ -224,10 +226,10 @@ public class SearchQuery {
      * @return true if the current search is not null
      */
     public boolean hasMoreSearches() {
-        final boolean moreSearches = this.currentSearch < this.searches.length - 1;
+        final boolean moreSearches = this.executed < this.searches.length - 1;
 
         if (moreSearches) {
-            this.currentSearch++;
+            nextSearch();
         }
 
         return moreSearches;
@@ -237,7 +239,20 @@ public class SearchQuery {
      * increments the pointer to the next search
      */
     public void nextSearch() {
-        this.currentSearch++;
+        this.executed++;
+        this.currentSearch = this.executionOrder == null ? this.executed : this.executionOrder[this.executed];
+    }
+
+    /**
+     * Changes the order in which the searches are run, e.g. to run the most selective search first. The searches
+     * themselves, and so the first and last search, are left as they are.
+     *
+     * @param executionOrder the indexes of the searches, in the order they should be run
+     */
+    public void setExecutionOrder(final int[] executionOrder) {
+        this.executionOrder = executionOrder;
+        this.executed = 0;
+        this.currentSearch = executionOrder[0];
     }
 
     /**
@@ -251,7 +266,7 @@ public class SearchQuery {
      * @return true if the current search is the first search
      */
     public boolean isFirstSearch() {
-        return this.currentSearch == 0;
+        return this.executed == 0;
     }
 
     /**
@@ -319,5 +334,17 @@ public class SearchQuery {
 
     public void setCurrentSearchAsFirstSearch() {
         this.currentSearch = 0;
+        this.executed = 0;
+        this.executionOrder = null;
+    }
+
+    /**
+     * Makes the last search the current search, as it would be once all searches had been run in their original
+     * order
+     */
+    public void setCurrentSearchAsLastSearch() {
+        this.currentSearch = this.searches.length - 1;
+        this.executed = this.currentSearch;
+        this.executionOrder = null;
     }
 }
@@ -1,19 +1,12 @@
 package com.tyndalehouse.step.core.service.impl;
 
-import static com.tyndalehouse.step.core.utils.IOUtils.closeQuietly;
-
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.Writer;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 
 import javax.inject.Inject;
@@ -26,7 +19,7 @@ import org.slf4j.LoggerFactory;
 import com.tyndalehouse.step.core.exceptions.StepInternalException;
 import com.tyndalehouse.step.core.exceptions.TranslatedException;
 import com.tyndalehouse.step.core.service.UserService;
-import com.tyndalehouse.step.core.utils.IOUtils;
+import com.tyndalehouse.step.core.service.helpers.UserRegistry;
 
 /**
  * A user service implementation, that checks whether a user is allowed in. Then given a number of parameters,
@@ -39,12 +32,21 @@ public class UserServiceImpl implements UserService {
     private static final Pattern EMAIL = Pattern
             .compile("^[_A-Za-z0-9-\\+]+(\\.[_A-Za-z0-9-]+)*@[A-Za-z0-9-]+(\\.[A-Za-z0-9]+)*(\\.[A-Za-z]{2,})$");
     private static final Logger LOGGER = LoggerFactory.getLogger(UserServiceImpl.class);
-    private final File usersFile;
+    private final UserRegistry registry;
     private boolean autoRegister;
     private boolean enabled;
-    private volatile Set<String> users = null;
-    private volatile Writer userWriter;
-    private volatile boolean refreshUsers = false;
+    private final AtomicBoolean refreshUsers = new AtomicBoolean();
+
+    /**
+     * Creates a user service
+     * 
+     * @param autoRegister true if users are automatically registered and allowed through
+     * @param enabled true to indicate a check should be performed
+     * @param usersFileName the location of the users file
+     */
+    public UserServiceImpl(final boolean autoRegister, final boolean enabled, final String usersFileName) {
+        this(autoRegister, enabled, usersFileName, false, 0);
+    }
 
     /**
      * Creates a user service
@@ -52,14 +54,18 @@ public class UserServiceImpl implements UserService {
      * @param autoRegister true if users are automatically registered and allowed through
      * @param enabled true to indicate a check should be performed
      * @param usersFileName the location of the users file
+     * @param sync true to sync new users to disk before letting them through
+     * @param snapshotEvery the number of new users after which a snapshot of all users is taken, 0 for never
      */
     @Inject
     public UserServiceImpl(@Named("app.user.autoregister") final boolean autoRegister,
             @Named("app.user.enablecheck") final boolean enabled,
-            @Named("app.user.data") final String usersFileName) {
+            @Named("app.user.data") final String usersFileName,
+            @Named("app.user.sync") final boolean sync,
+            @Named("app.user.snapshotEvery") final int snapshotEvery) {
         this.autoRegister = autoRegister;
         this.enabled = enabled;
-        this.usersFile = new File(usersFileName);
+        this.registry = new UserRegistry(new File(usersFileName), sync, snapshotEvery);
     }
 
     @Override
@@ -72,7 +78,7 @@ public class UserServiceImpl implements UserService {
 
         ensureUsers();
         final String properEmail = email.toLowerCase(Locale.ENGLISH);
-        if (this.users.contains(properEmail)) {
+        if (this.registry.contains(properEmail)) {
             return true;
         }
 
@@ -107,7 +113,7 @@ public class UserServiceImpl implements UserService {
 
     @Override
     public void refresh() {
-        this.refreshUsers = true;
+        this.refreshUsers.set(true);
         this.enabled = true;
     }
 
@@ -115,106 +121,42 @@ public class UserServiceImpl implements UserService {
      * @param email the email address of the user
      * @param name the name of the user
      */
-    private synchronized void createUser(final String email, final String name) {
-
-        ensureFileIsOpenForWrite();
-        try {
-            this.userWriter.write(email);
-            this.userWriter.write(',');
-            this.userWriter.write(name);
-            this.userWriter.write(',');
-            this.userWriter.write(new SimpleDateFormat("yyyy-MMM-dd HH:mm:ss", Locale.ENGLISH)
-                    .format(new Date()));
-            this.userWriter.write('\n');
-            this.userWriter.flush();
-
-            this.users.add(email);
-        } catch (final IOException e) {
-            IOUtils.closeQuietly(this.userWriter);
-            throw new StepInternalException("Unable to write user", e);
-        }
-    }
-
-    /** opens the user writer if not already open */
-    private void ensureFileIsOpenForWrite() {
-        if (this.enabled && this.userWriter == null) {
-            synchronized (this) {
-                if (this.enabled && this.userWriter == null) {
-                    try {
-                        this.userWriter = new FileWriter(this.usersFile, true);
-                    } catch (final IOException e) {
-                        LOGGER.error("Unable to open writer", e);
-                        IOUtils.closeQuietly(this.userWriter);
-                    }
-                }
-            }
-        }
-    }
-
-    /** populates the user reader if not already populated */
-    private void ensureUsers() {
-        if (this.users == null || this.refreshUsers) {
-            synchronized (this) {
-                if (this.users == null || this.refreshUsers) {
-                    this.users = null;
-                    this.refreshUsers = false;
-                    this.users = readUsersFile();
-                }
-            }
-        }
+    private void createUser(final String email, final String name) {
+        final StringBuilder line = new StringBuilder(email.length() + name.length() + 24);
+        line.append(email).append(',').append(name).append(',');
+        line.append(new SimpleDateFormat("yyyy-MMM-dd HH:mm:ss", Locale.ENGLISH).format(new Date()));
+        this.registry.register(email, line.toString());
     }
 
     /**
-     * @return a set of users
+     * Loads the users if not already loaded. A refresh replays the whole users file, while requests carry on being
+     * checked against the users loaded so far.
      */
-    private synchronized Set<String> readUsersFile() {
-        final Set<String> usersFromFile = new HashSet<String>();
-        if (!this.usersFile.exists()) {
-            return usersFromFile;
-        }
-
-        FileInputStream fis = null;
-        BufferedReader reader = null;
-        InputStreamReader isr = null;
-        try {
-            fis = new FileInputStream(this.usersFile);
-            isr = new InputStreamReader(fis);
-            reader = new BufferedReader(isr);
-
-            String line = null;
-            while ((line = reader.readLine()) != null) {
-                final String[] userEntry = line.split("[,]+");
-                if (userEntry.length < 2) {
-                    LOGGER.warn("Invalid user entry: [{}]", line);
-                    continue;
+    private void ensureUsers() {
+        if (!this.registry.isLoaded()) {
+            synchronized (this) {
+                if (!this.registry.isLoaded()) {
+                    this.refreshUsers.set(false);
+                    this.registry.load(false);
                 }
-
-                // add email to hashset
-                usersFromFile.add(userEntry[0]);
             }
-        } catch (final IOException e) {
-            throw new StepInternalException("Unable to read file", e);
-        } finally {
-            IOUtils.closeQuietly(fis);
-            IOUtils.closeQuietly(isr);
-            IOUtils.closeQuietly(reader);
+        } else if (this.refreshUsers.compareAndSet(true, false)) {
+            this.registry.load(true);
         }
-
-        return usersFromFile;
     }
 
     /**
      * @param users the users to set
      */
     void setUsers(final Set<String> users) {
-        this.users = users;
+        this.registry.setUsers(users);
     }
 
     /**
      * @param userWriter the userWriter to set
      */
     void setUserWriter(final Writer userWriter) {
-        this.userWriter = userWriter;
+        this.registry.setWriter(userWriter);
     }
 
     @Override
@@ -228,9 +170,7 @@ public class UserServiceImpl implements UserService {
 
         if (!enabled) {
             // close writer
-            synchronized (this) {
-                closeQuietly(this.userWriter);
-            }
+            this.registry.close();
         }
     }
 }
@@ -44,6 +44,11 @@ import com.tyndalehouse.step.core.service.helpers.OriginalWordUtils;
 import com.tyndalehouse.step.core.utils.SortingUtils;
 import com.tyndalehouse.step.core.utils.StringConversionUtils;
 import com.tyndalehouse.step.core.utils.StringUtils;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.Gauge;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.MapFieldSelector;
 import org.codehaus.jackson.map.util.LRUMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -75,7 +80,24 @@ public class VocabularyServiceImpl implements VocabularyService {
     private static final String HIGHER_STRONG = "STRONG:";
     private static final String LOWER_STRONG = "strong:";
     private static final int START_STRONG_KEY = HIGHER_STRONG.length();
+    private static final FieldSelector QUICK_DEFINITION_FIELDS = new MapFieldSelector(
+            "accentedUnicode", "shortDefinition", "stepGloss", "stepTransliteration", "mediumDefinition",
+            "popularity", "relatedNumbers");
+    private static final FieldSelector LEXICON_DEFINITION_FIELDS = new MapFieldSelector(
+            "accentedUnicode", "stepGloss", "stepTransliteration", "alternativeTagging");
     private static final LRUMap<String, EntityDoc[]> DEFINITIION_CACHE = new LRUMap<>(128, 256);
+    private static final Counter DEFINITION_CACHE_HITS = Metrics.newCounter(VocabularyServiceImpl.class, "definition-cache-hits");
+    private static final Counter DEFINITION_CACHE_MISSES = Metrics.newCounter(VocabularyServiceImpl.class, "definition-cache-misses");
+
+    static {
+        Metrics.newGauge(VocabularyServiceImpl.class, "definition-cache-size", new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return DEFINITIION_CACHE.size();
+            }
+        });
+    }
+
     private final EntityIndexReader definitions;
 
     // define a few extraction methods
@@ -256,7 +278,8 @@ public class VocabularyServiceImpl implements VocabularyService {
         final String[] strongList = this.strongAugmentationService.augment(version, reference, getKeys(vocabIdentifiers)).getStrongList();
 
         if (strongList.length != 0) {
-            EntityDoc[] strongNumbers = this.definitions.searchUniqueBySingleField("strongNumber", strongList);
+            EntityDoc[] strongNumbers = this.definitions.searchUniqueBySingleField("strongNumber",
+                    QUICK_DEFINITION_FIELDS, strongList);
             return new VocabResponse(strongNumbers);
         }
         return new VocabResponse();
@@ -330,10 +353,13 @@ public class VocabularyServiceImpl implements VocabularyService {
 
         final EntityDoc[] entityDocs = DEFINITIION_CACHE.get(cacheKey);
         if (entityDocs != null) {
+            DEFINITION_CACHE_HITS.inc();
             return entityDocs;
         }
 
-        final EntityDoc[] strongNumbers = this.definitions.searchUniqueBySingleField("strongNumber", keys);
+        DEFINITION_CACHE_MISSES.inc();
+        final EntityDoc[] strongNumbers = this.definitions.searchUniqueBySingleField("strongNumber",
+                LEXICON_DEFINITION_FIELDS, keys);
         DEFINITIION_CACHE.put(cacheKey, strongNumbers);
         return strongNumbers;
     }
@@ -0,0 +1,256 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import com.tyndalehouse.step.core.service.helpers.BackgroundBuiltStore;
+import com.tyndalehouse.step.core.utils.IOUtils;
+import com.tyndalehouse.step.core.utils.StringConversionUtils;
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.book.BookData;
+import org.crosswire.jsword.book.BookException;
+import org.crosswire.jsword.book.Books;
+import org.crosswire.jsword.book.BooksEvent;
+import org.crosswire.jsword.book.BooksListener;
+import org.crosswire.jsword.book.OSISUtil;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseRange;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import static com.tyndalehouse.step.core.utils.StringUtils.split;
+
+/**
+ * Holds the word and strong number histograms of each chapter of a version, so that the statistics of a chapter, a
+ * group of chapters or a whole book can be obtained by merging a few histograms, rather than by reading and
+ * tokenizing the text again.
+ * <p/>
+ * The histograms of a version are built in the background the first time they are asked for, and kept between runs,
+ * see {@link BackgroundBuiltStore}. Until they are available, callers are expected to work the statistics out from
+ * the text. Histograms are built again whenever their module is installed or removed, or its version changes.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class ChapterStatsStore implements BooksListener {
+    /**
+     * Splits canonical text into words
+     */
+    public static final String WORD_SPLIT = "[,./<>?!;:'\\[\\]\\{\\}!\"\\-\u2013 ()]+";
+    private static final String STORE_DIRECTORY = "chapter-stats";
+    private static final String MODULE_VERSION = "Version";
+    private final boolean enabled;
+    private final BackgroundBuiltStore<HashMap<String, WordHistogram[]>> histograms;
+
+    /**
+     * The kind of tokens counted in a histogram
+     */
+    public enum TokenType {
+        /**
+         * words of the canonical text
+         */
+        WORDS,
+        /**
+         * padded strong numbers
+         */
+        STRONGS
+    }
+
+    /**
+     * @param appHome the home of the application, in which the histograms are kept
+     * @param enabled true to keep histograms, false to always work statistics out from the text
+     */
+    @Inject
+    public ChapterStatsStore(@Named("app.home") final String appHome,
+                             @Named("analysis.chapterStats") final boolean enabled) {
+        this(enabled ? IOUtils.getHomeDirectory(appHome, STORE_DIRECTORY) : null, enabled);
+        Books.installed().addBooksListener(this);
+    }
+
+    /**
+     * @param storeDirectory the directory in which histograms are kept, or null to keep them in memory only
+     * @param enabled        true to keep histograms
+     */
+    ChapterStatsStore(final File storeDirectory, final boolean enabled) {
+        this.enabled = enabled;
+        this.histograms = new BackgroundBuiltStore<HashMap<String, WordHistogram[]>>(STORE_DIRECTORY, storeDirectory);
+    }
+
+    /**
+     * Combines the histograms of all the chapters covered by a range. Ranges are taken to cover whole chapters.
+     *
+     * @param book      the book (i.e. module) the text comes from
+     * @param tokenType the kind of tokens to count
+     * @param range     the range of chapters
+     * @return the combined histogram, or null if the histograms of the book are not available yet
+     */
+    public WordHistogram getHistogram(final Book book, final TokenType tokenType, final VerseRange range) {
+        if (!this.enabled) {
+            return null;
+        }
+
+        final Versification v11n = range.getVersification();
+        final Map<String, WordHistogram[]> chapters = this.histograms.get(getStoreKey(book.getInitials(), tokenType),
+                getSignature(book, v11n), new Callable<HashMap<String, WordHistogram[]>>() {
+                    @Override
+                    public HashMap<String, WordHistogram[]> call() throws Exception {
+                        return build(book, v11n, tokenType);
+                    }
+                });
+        if (chapters == null) {
+            return null;
+        }
+
+        final Verse start = range.getStart();
+        final Verse end = range.getEnd();
+        final List<WordHistogram> selected = new ArrayList<WordHistogram>();
+
+        BibleBook bibleBook = start.getBook();
+        int chapter = Math.max(1, start.getChapter());
+        while (bibleBook != null) {
+            final WordHistogram[] bookChapters = chapters.get(bibleBook.getOSIS());
+            if (bookChapters != null && chapter < bookChapters.length && bookChapters[chapter] != null) {
+                selected.add(bookChapters[chapter]);
+            }
+
+            if (bibleBook == end.getBook() && chapter >= end.getChapter()) {
+                break;
+            }
+
+            if (chapter < v11n.getLastChapter(bibleBook)) {
+                chapter++;
+            } else {
+                bibleBook = v11n.getNextBook(bibleBook);
+                chapter = 1;
+            }
+        }
+        return mergeAll(selected, 0, selected.size());
+    }
+
+    /**
+     * Merges histograms in pairs, so that each word is copied a logarithmic number of times only
+     *
+     * @param selected the histograms
+     * @param from     the first histogram to merge, inclusive
+     * @param to       the last histogram to merge, exclusive
+     * @return the merged histogram
+     */
+    private WordHistogram mergeAll(final List<WordHistogram> selected, final int from, final int to) {
+        if (to - from == 0) {
+            return WordHistogram.empty();
+        }
+        if (to - from == 1) {
+            return selected.get(from);
+        }
+
+        final int middle = (from + to) >>> 1;
+        return mergeAll(selected, from, middle).merge(mergeAll(selected, middle, to));
+    }
+
+    /**
+     * Extracts the tokens of a passage
+     *
+     * @param bookData  the passage
+     * @param tokenType the kind of tokens
+     * @return the tokens, in the order of the text
+     * @throws BookException if the passage cannot be read
+     */
+    public static String[] getTokens(final BookData bookData, final TokenType tokenType) throws BookException {
+        if (tokenType == TokenType.STRONGS) {
+            final String[] strongs = split(OSISUtil.getStrongsNumbers(bookData.getOsisFragment()));
+            for (int ii = 0; ii < strongs.length; ii++) {
+                strongs[ii] = StringConversionUtils.getStrongPaddedKey(strongs[ii]);
+            }
+            return strongs;
+        }
+        return split(OSISUtil.getCanonicalText(bookData.getOsisFragment()), WORD_SPLIT);
+    }
+
+    /**
+     * Tokenizes each chapter of a book
+     *
+     * @param book      the book
+     * @param v11n      the versification of the book
+     * @param tokenType the kind of tokens
+     * @return the histograms of each chapter, keyed by the OSIS name of the bible book, and indexed by chapter
+     * @throws BookException if the book cannot be read
+     */
+    HashMap<String, WordHistogram[]> build(final Book book, final Versification v11n, final TokenType tokenType)
+            throws BookException {
+        final Map<String, String> canonicalWords = new HashMap<String, String>(16384);
+        final HashMap<String, WordHistogram[]> chapters = new HashMap<String, WordHistogram[]>(128);
+
+        final Iterator<BibleBook> bibleBooks = v11n.getBookIterator();
+        while (bibleBooks.hasNext()) {
+            final BibleBook bibleBook = bibleBooks.next();
+            final int lastChapter = v11n.getLastChapter(bibleBook);
+            final WordHistogram[] bookChapters = new WordHistogram[lastChapter + 1];
+            for (int chapter = 1; chapter <= lastChapter; chapter++) {
+                final VerseRange range = new VerseRange(v11n, new Verse(v11n, bibleBook, chapter, 0),
+                        new Verse(v11n, bibleBook, chapter, v11n.getLastVerse(bibleBook, chapter)));
+                final String[] tokens = getTokens(new BookData(book, range), tokenType);
+
+                // the same words appear in most chapters, so share their instances
+                for (int ii = 0; ii < tokens.length; ii++) {
+                    final String canonical = canonicalWords.get(tokens[ii]);
+                    if (canonical == null) {
+                        canonicalWords.put(tokens[ii], tokens[ii]);
+                    } else {
+                        tokens[ii] = canonical;
+                    }
+                }
+                bookChapters[chapter] = WordHistogram.fromTokens(tokens);
+            }
+            chapters.put(bibleBook.getOSIS(), bookChapters);
+        }
+        return chapters;
+    }
+
+    /**
+     * Drops the histograms of a module
+     *
+     * @param initials the initials of the module
+     */
+    void invalidate(final String initials) {
+        for (final TokenType tokenType : TokenType.values()) {
+            this.histograms.invalidate(getStoreKey(initials, tokenType));
+        }
+    }
+
+    @Override
+    public void bookAdded(final BooksEvent ev) {
+        invalidate(ev.getBook().getInitials());
+    }
+
+    @Override
+    public void bookRemoved(final BooksEvent ev) {
+        invalidate(ev.getBook().getInitials());
+    }
+
+    /**
+     * @param book the book
+     * @param v11n the versification of the book
+     * @return the signature of what the histograms are built from
+     */
+    private static String getSignature(final Book book, final Versification v11n) {
+        return book.getBookMetaData().getProperty(MODULE_VERSION) + "-" + v11n.getName();
+    }
+
+    /**
+     * @param initials  the initials of the book
+     * @param tokenType the kind of tokens
+     * @return the key under which histograms are kept
+     */
+    private static String getStoreKey(final String initials, final TokenType tokenType) {
+        return initials + '-' + tokenType.name().toLowerCase(Locale.ENGLISH);
+    }
+}
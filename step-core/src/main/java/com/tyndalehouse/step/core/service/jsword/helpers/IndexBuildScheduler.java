@@ -0,0 +1,406 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Timer;
+import org.crosswire.common.progress.JobManager;
+import org.crosswire.common.progress.Progress;
+import org.crosswire.common.progress.WorkEvent;
+import org.crosswire.common.progress.WorkListener;
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.index.IndexManager;
+import org.crosswire.jsword.index.IndexManagerFactory;
+import org.crosswire.jsword.index.IndexStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.String.format;
+
+/**
+ * Builds the search indexes of modules, a bounded number at a time. JSword starts a new thread for each index it is
+ * asked to create, so building the indexes of all the modules of a fresh install at once is left to chance. Instead,
+ * builds are queued here, the core reference versions first and the others in the order they were asked for, and
+ * only handed to JSword when a worker is free and there is enough heap left for another index. Callers queueing many
+ * modules at once are expected to queue them in the order given by {@link #sortByPriority(List)}, since a worker
+ * that is idle starts the first build it is given. The progress and the timings of each build are kept, so that
+ * callers don't need to walk JSword's job list.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class IndexBuildScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexBuildScheduler.class);
+    private static final String INDEX_JOB_NAME = "Creating index. Processing %s";
+    private static final long POLL_INTERVAL = 500;
+    private static final long START_GRACE = 10000;
+    private static final long MEGABYTE = 1024L * 1024L;
+    private static final Timer BUILD_TIMER = Metrics.newTimer(IndexBuildScheduler.class, "build",
+            TimeUnit.MILLISECONDS, TimeUnit.SECONDS);
+    private static final Timer WAIT_TIMER = Metrics.newTimer(IndexBuildScheduler.class, "wait",
+            TimeUnit.MILLISECONDS, TimeUnit.SECONDS);
+
+    /**
+     * The state of a build
+     */
+    public enum State {
+        QUEUED,
+        BUILDING,
+        DONE,
+        FAILED
+    }
+
+    private final Map<String, Integer> priorities = new HashMap<String, Integer>();
+    private final Map<String, IndexBuild> builds = new ConcurrentHashMap<String, IndexBuild>();
+    private final long memoryPerBuild;
+    private final ThreadPoolExecutor workers;
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final Object admission = new Object();
+    private int running;
+
+    /**
+     * @param numWorkers       the number of indexes built at the same time
+     * @param priorityVersions the initials of the modules to index first, most important first, separated by commas
+     * @param memoryPerBuild   the free heap, in megabytes, needed to start a build while another one is running
+     */
+    @Inject
+    public IndexBuildScheduler(@Named("app.index.build.workers") final int numWorkers,
+                               @Named("app.index.build.priorityVersions") final String priorityVersions,
+                               @Named("app.index.build.memoryPerBuildMb") final int memoryPerBuild) {
+        this.memoryPerBuild = memoryPerBuild * MEGABYTE;
+        if (priorityVersions != null) {
+            final String[] versions = priorityVersions.split(",");
+            for (int ii = 0; ii < versions.length; ii++) {
+                this.priorities.put(versions[ii].trim().toLowerCase(Locale.ENGLISH), ii);
+            }
+        }
+
+        final int poolSize = Math.max(1, numWorkers);
+        this.workers = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "index-builder-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        // every build goes through the priority queue, rather than the first ones being handed straight to new threads
+        this.workers.prestartAllCoreThreads();
+
+        JobManager.addWorkListener(new WorkListener() {
+            @Override
+            public void workProgressed(final WorkEvent ev) {
+                updateProgress(ev.getJob());
+            }
+
+            @Override
+            public void workStateChanged(final WorkEvent ev) {
+                updateProgress(ev.getJob());
+            }
+        });
+    }
+
+    /**
+     * Orders modules so that the core reference versions come first, most important first, the other modules keeping
+     * their order
+     *
+     * @param books the modules
+     */
+    public void sortByPriority(final List<Book> books) {
+        Collections.sort(books, new Comparator<Book>() {
+            @Override
+            public int compare(final Book o1, final Book o2) {
+                final int p1 = getPriority(getKey(o1.getInitials()));
+                final int p2 = getPriority(getKey(o2.getInitials()));
+                return p1 < p2 ? -1 : (p1 == p2 ? 0 : 1);
+            }
+        });
+    }
+
+    /**
+     * Queues the build of a module's index, unless it is already queued or being built. A rebuild asked for while the
+     * index is being built, or queued to be built without deleting it first, is run once that build is over, so that
+     * it picks up the module as it is now.
+     *
+     * @param book    the module
+     * @param rebuild true to delete the existing index before building it again
+     */
+    public void schedule(final Book book, final boolean rebuild) {
+        final String key = getKey(book.getInitials());
+        final IndexBuild build;
+        synchronized (this.builds) {
+            final IndexBuild existing = this.builds.get(key);
+            if (existing != null && (existing.state == State.QUEUED || existing.state == State.BUILDING)) {
+                if (rebuild && !(existing.state == State.QUEUED && existing.rebuild)) {
+                    existing.rebuildAfter = true;
+                    LOGGER.debug("Index of [{}] is [{}], rebuilding it afterwards", book.getInitials(), existing.state);
+                } else {
+                    LOGGER.debug("Index of [{}] is already [{}]", book.getInitials(), existing.state);
+                }
+                return;
+            }
+
+            build = new IndexBuild(book, rebuild, getPriority(key), this.sequence.incrementAndGet());
+            this.builds.put(key, build);
+        }
+
+        LOGGER.debug("Queued index of [{}], [{}] builds waiting", book.getInitials(), this.workers.getQueue().size());
+        this.workers.execute(build);
+    }
+
+    /**
+     * @param key the key of the module
+     * @return the priority of the module, lowest first
+     */
+    private int getPriority(final String key) {
+        final Integer priority = this.priorities.get(key);
+        return priority == null ? Integer.MAX_VALUE : priority;
+    }
+
+    /**
+     * @param initials the initials of the module
+     * @return the state of the last build of the module's index, or null if it was never scheduled here
+     */
+    public State getState(final String initials) {
+        final IndexBuild build = this.builds.get(getKey(initials));
+        return build == null ? null : build.state;
+    }
+
+    /**
+     * @param initials the initials of the module
+     * @return the progress of the last build of the module's index, between 0 and 1, or -1 if it was never scheduled
+     * here
+     */
+    public double getProgress(final String initials) {
+        final IndexBuild build = this.builds.get(getKey(initials));
+        if (build == null) {
+            return -1;
+        }
+
+        switch (build.state) {
+            case QUEUED:
+                return 0;
+            case BUILDING:
+                final int totalWork = build.totalWork;
+                return totalWork > 0 ? Math.min(1.0, (double) build.work / totalWork) : 0;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Builds the index, once a worker is free and there is enough memory left to do so
+     *
+     * @param build the build
+     */
+    private void build(final IndexBuild build) {
+        final Book book = build.book;
+        try {
+            admit();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            complete(build, false);
+            return;
+        }
+
+        build.started = System.currentTimeMillis();
+        build.state = State.BUILDING;
+        WAIT_TIMER.update(build.started - build.queued, TimeUnit.MILLISECONDS);
+        LOGGER.info("Building index of [{}] after waiting [{}]ms", book.getInitials(), build.started - build.queued);
+
+        boolean success = false;
+        try {
+            success = createIndex(build);
+            // CHECKSTYLE:OFF
+        } catch (final Exception e) {
+            // CHECKSTYLE:ON
+            LOGGER.error("Unable to build index of " + book.getInitials(), e);
+        } finally {
+            release();
+            final long buildTime = System.currentTimeMillis() - build.started;
+            BUILD_TIMER.update(buildTime, TimeUnit.MILLISECONDS);
+            LOGGER.info("Index of [{}] {} after [{}]ms", new Object[]{book.getInitials(),
+                    success ? "built" : "failed", buildTime});
+            complete(build, success);
+        }
+    }
+
+    /**
+     * Marks a build as over, and queues the rebuild asked for while it was running, if any
+     *
+     * @param build   the build
+     * @param success true if the module is indexed
+     */
+    private void complete(final IndexBuild build, final boolean success) {
+        final boolean rebuildAfter;
+        synchronized (this.builds) {
+            build.state = success ? State.DONE : State.FAILED;
+            rebuildAfter = build.rebuildAfter;
+        }
+
+        if (rebuildAfter) {
+            schedule(build.book, true);
+        }
+    }
+
+    /**
+     * Hands the build to JSword, and waits for it to finish
+     *
+     * @param build the build
+     * @return true if the module is indexed
+     * @throws InterruptedException if the worker is interrupted
+     */
+    private boolean createIndex(final IndexBuild build) throws InterruptedException {
+        final Book book = build.book;
+        final IndexManager indexManager = IndexManagerFactory.getIndexManager();
+        if (build.rebuild) {
+            try {
+                indexManager.deleteIndex(book);
+                // CHECKSTYLE:OFF
+            } catch (final Exception e) {
+                // CHECKSTYLE:ON
+                LOGGER.info("Error deleting index. Attempting to rebuild index all the same");
+                LOGGER.trace("Error deleting index. Attempting to rebuild index all the same", e);
+            }
+        } else if (indexManager.isIndexed(book)) {
+            return true;
+        }
+
+        indexManager.scheduleIndexCreation(book);
+        while (true) {
+            final IndexStatus status = book.getIndexStatus();
+            if (IndexStatus.INVALID.equals(status)) {
+                return false;
+            }
+
+            final boolean inProgress = IndexStatus.SCHEDULED.equals(status) || IndexStatus.CREATING.equals(status);
+            if (!inProgress && (indexManager.isIndexed(book)
+                    || System.currentTimeMillis() - build.started > START_GRACE)) {
+                return indexManager.isIndexed(book);
+            }
+            Thread.sleep(POLL_INTERVAL);
+        }
+    }
+
+    /**
+     * Waits until another build can be started. A build always starts if no other one is running, so that a small
+     * heap slows the builds down rather than stopping them.
+     *
+     * @throws InterruptedException if the worker is interrupted
+     */
+    private void admit() throws InterruptedException {
+        synchronized (this.admission) {
+            while (this.running > 0 && getAvailableMemory() < this.memoryPerBuild) {
+                LOGGER.debug("Waiting for memory before building another index, [{}] running", this.running);
+                this.admission.wait(POLL_INTERVAL * 2);
+            }
+            this.running++;
+        }
+    }
+
+    /**
+     * Lets the next build start
+     */
+    private void release() {
+        synchronized (this.admission) {
+            this.running--;
+            this.admission.notifyAll();
+        }
+    }
+
+    /**
+     * @return the heap that can still be allocated, in bytes
+     */
+    private long getAvailableMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    /**
+     * Records the progress reported by JSword against the build it belongs to
+     *
+     * @param job the JSword job
+     */
+    private void updateProgress(final Progress job) {
+        final String jobName = job.getJobName();
+        if (jobName == null) {
+            return;
+        }
+
+        for (final IndexBuild build : this.builds.values()) {
+            if (build.state == State.BUILDING && jobName.equals(format(INDEX_JOB_NAME, build.book.getInitials()))) {
+                build.work = job.getWork();
+                build.totalWork = job.getTotalWork();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param initials the initials of a module
+     * @return the key of its build
+     */
+    private static String getKey(final String initials) {
+        return initials.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * The build of a module's index, ordered by priority, then in the order it was asked for
+     */
+    private final class IndexBuild implements Runnable, Comparable<IndexBuild> {
+        private final Book book;
+        private final boolean rebuild;
+        private final int priority;
+        private final int order;
+        private final long queued = System.currentTimeMillis();
+        private volatile long started;
+        private volatile int work;
+        private volatile int totalWork;
+        private volatile State state = State.QUEUED;
+        private boolean rebuildAfter;
+
+        /**
+         * @param book     the module
+         * @param rebuild  true to delete the existing index first
+         * @param priority the priority, lowest first
+         * @param order    the order in which the build was asked for
+         */
+        private IndexBuild(final Book book, final boolean rebuild, final int priority, final int order) {
+            this.book = book;
+            this.rebuild = rebuild;
+            this.priority = priority;
+            this.order = order;
+        }
+
+        @Override
+        public void run() {
+            build(this);
+        }
+
+        @Override
+        public int compareTo(final IndexBuild o) {
+            if (this.priority != o.priority) {
+                return this.priority < o.priority ? -1 : 1;
+            }
+            return this.order < o.order ? -1 : (this.order == o.order ? 0 : 1);
+        }
+    }
+}
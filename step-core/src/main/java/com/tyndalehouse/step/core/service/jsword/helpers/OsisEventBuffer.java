@@ -0,0 +1,278 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import org.crosswire.common.xml.SAXEventProvider;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A recording of the SAX events of an OSIS document, which can be replayed as many times as needed. Events are kept
+ * in flat arrays rather than as a tree: one opcode per event, the operands of all events in a single array of ints,
+ * names and attribute values in a pool of strings, and text in a single array of chars. This is much smaller than the
+ * equivalent JDOM tree, and replaying it allocates nothing but the attributes.
+ * <p/>
+ * The buffer is filled by using it as a {@link ContentHandler}, and must not be modified once it is shared. Replaying
+ * is thread-safe.
+ *
+ * @author chrisburrell
+ */
+public final class OsisEventBuffer implements ContentHandler, SAXEventProvider {
+    private static final byte START_DOCUMENT = 0;
+    private static final byte END_DOCUMENT = 1;
+    private static final byte START_PREFIX_MAPPING = 2;
+    private static final byte END_PREFIX_MAPPING = 3;
+    private static final byte START_ELEMENT = 4;
+    private static final byte END_ELEMENT = 5;
+    private static final byte CHARACTERS = 6;
+    private static final byte IGNORABLE_WHITESPACE = 7;
+    private static final byte PROCESSING_INSTRUCTION = 8;
+    private static final byte SKIPPED_ENTITY = 9;
+    private static final int ATTRIBUTE_OPERANDS = 5;
+    private byte[] types = new byte[256];
+    private int[] operandStarts = new int[256];
+    private int numEvents;
+    private int[] operands = new int[1024];
+    private int numOperands;
+    private char[] text = new char[4096];
+    private int textLength;
+    private final List<String> strings = new ArrayList<String>(128);
+    private Map<String, Integer> stringIds = new HashMap<String, Integer>(128);
+
+    /**
+     * Records all the events of a provider
+     *
+     * @param provider the provider
+     * @return the recording
+     * @throws SAXException if the provider fails
+     */
+    public static OsisEventBuffer record(final SAXEventProvider provider) throws SAXException {
+        final OsisEventBuffer buffer = new OsisEventBuffer();
+        provider.provideSAXEvents(buffer);
+        buffer.trim();
+        return buffer;
+    }
+
+    /**
+     * Releases the memory used only while recording
+     */
+    public void trim() {
+        this.types = Arrays.copyOf(this.types, this.numEvents);
+        this.operandStarts = Arrays.copyOf(this.operandStarts, this.numEvents);
+        this.operands = Arrays.copyOf(this.operands, this.numOperands);
+        this.text = Arrays.copyOf(this.text, this.textLength);
+        this.stringIds = null;
+    }
+
+    @Override
+    public void provideSAXEvents(final ContentHandler handler) throws SAXException {
+        final AttributesImpl attributes = new AttributesImpl();
+        for (int event = 0; event < this.numEvents; event++) {
+            int operand = this.operandStarts[event];
+            switch (this.types[event]) {
+                case START_DOCUMENT:
+                    handler.startDocument();
+                    break;
+                case END_DOCUMENT:
+                    handler.endDocument();
+                    break;
+                case START_PREFIX_MAPPING:
+                    handler.startPrefixMapping(string(operand), string(operand + 1));
+                    break;
+                case END_PREFIX_MAPPING:
+                    handler.endPrefixMapping(string(operand));
+                    break;
+                case START_ELEMENT:
+                    attributes.clear();
+                    final int numAttributes = this.operands[operand + 3];
+                    int attribute = operand + 4;
+                    for (int ii = 0; ii < numAttributes; ii++) {
+                        attributes.addAttribute(string(attribute), string(attribute + 1), string(attribute + 2),
+                                string(attribute + 3), string(attribute + 4));
+                        attribute += ATTRIBUTE_OPERANDS;
+                    }
+                    handler.startElement(string(operand), string(operand + 1), string(operand + 2), attributes);
+                    break;
+                case END_ELEMENT:
+                    handler.endElement(string(operand), string(operand + 1), string(operand + 2));
+                    break;
+                case CHARACTERS:
+                    handler.characters(this.text, this.operands[operand], this.operands[operand + 1]);
+                    break;
+                case IGNORABLE_WHITESPACE:
+                    handler.ignorableWhitespace(this.text, this.operands[operand], this.operands[operand + 1]);
+                    break;
+                case PROCESSING_INSTRUCTION:
+                    handler.processingInstruction(string(operand), string(operand + 1));
+                    break;
+                case SKIPPED_ENTITY:
+                    handler.skippedEntity(string(operand));
+                    break;
+                default:
+                    throw new SAXException("Unknown event type " + this.types[event]);
+            }
+        }
+    }
+
+    /**
+     * @return an estimate of the memory held, in chars, ints counting as two
+     */
+    public long getSize() {
+        long size = this.text.length + 2L * this.operands.length + 2L * this.operandStarts.length + this.types.length;
+        for (final String value : this.strings) {
+            size += value.length();
+        }
+        return size;
+    }
+
+    @Override
+    public void setDocumentLocator(final Locator locator) {
+        // locations are not kept
+    }
+
+    @Override
+    public void startDocument() {
+        addEvent(START_DOCUMENT);
+    }
+
+    @Override
+    public void endDocument() {
+        addEvent(END_DOCUMENT);
+    }
+
+    @Override
+    public void startPrefixMapping(final String prefix, final String uri) {
+        addEvent(START_PREFIX_MAPPING);
+        addString(prefix);
+        addString(uri);
+    }
+
+    @Override
+    public void endPrefixMapping(final String prefix) {
+        addEvent(END_PREFIX_MAPPING);
+        addString(prefix);
+    }
+
+    @Override
+    public void startElement(final String uri, final String localName, final String qName, final Attributes atts) {
+        addEvent(START_ELEMENT);
+        addString(uri);
+        addString(localName);
+        addString(qName);
+
+        final int numAttributes = atts == null ? 0 : atts.getLength();
+        addOperand(numAttributes);
+        for (int ii = 0; ii < numAttributes; ii++) {
+            addString(atts.getURI(ii));
+            addString(atts.getLocalName(ii));
+            addString(atts.getQName(ii));
+            addString(atts.getType(ii));
+            addString(atts.getValue(ii));
+        }
+    }
+
+    @Override
+    public void endElement(final String uri, final String localName, final String qName) {
+        addEvent(END_ELEMENT);
+        addString(uri);
+        addString(localName);
+        addString(qName);
+    }
+
+    @Override
+    public void characters(final char[] ch, final int start, final int length) {
+        addEvent(CHARACTERS);
+        addText(ch, start, length);
+    }
+
+    @Override
+    public void ignorableWhitespace(final char[] ch, final int start, final int length) {
+        addEvent(IGNORABLE_WHITESPACE);
+        addText(ch, start, length);
+    }
+
+    @Override
+    public void processingInstruction(final String target, final String data) {
+        addEvent(PROCESSING_INSTRUCTION);
+        addString(target);
+        addString(data);
+    }
+
+    @Override
+    public void skippedEntity(final String name) {
+        addEvent(SKIPPED_ENTITY);
+        addString(name);
+    }
+
+    /**
+     * @param type the type of the event to start
+     */
+    private void addEvent(final byte type) {
+        if (this.numEvents == this.types.length) {
+            this.types = Arrays.copyOf(this.types, this.numEvents * 2);
+            this.operandStarts = Arrays.copyOf(this.operandStarts, this.numEvents * 2);
+        }
+        this.types[this.numEvents] = type;
+        this.operandStarts[this.numEvents] = this.numOperands;
+        this.numEvents++;
+    }
+
+    /**
+     * @param operand the operand to add to the current event
+     */
+    private void addOperand(final int operand) {
+        if (this.numOperands == this.operands.length) {
+            this.operands = Arrays.copyOf(this.operands, this.numOperands * 2);
+        }
+        this.operands[this.numOperands++] = operand;
+    }
+
+    /**
+     * @param value the string to add to the current event, pooled with the ones already recorded
+     */
+    private void addString(final String value) {
+        if (value == null) {
+            addOperand(-1);
+            return;
+        }
+
+        Integer id = this.stringIds.get(value);
+        if (id == null) {
+            id = this.strings.size();
+            this.strings.add(value);
+            this.stringIds.put(value, id);
+        }
+        addOperand(id);
+    }
+
+    /**
+     * @param ch     the characters
+     * @param start  the start of the characters to add
+     * @param length the number of characters to add
+     */
+    private void addText(final char[] ch, final int start, final int length) {
+        if (this.textLength + length > this.text.length) {
+            this.text = Arrays.copyOf(this.text, Math.max(this.text.length * 2, this.textLength + length));
+        }
+        System.arraycopy(ch, start, this.text, this.textLength, length);
+        addOperand(this.textLength);
+        addOperand(length);
+        this.textLength += length;
+    }
+
+    /**
+     * @param operand the position of the operand
+     * @return the string it refers to
+     */
+    private String string(final int operand) {
+        final int id = this.operands[operand];
+        return id == -1 ? null : this.strings.get(id);
+    }
+}
@@ -0,0 +1,227 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import org.crosswire.jsword.passage.Passage;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+import org.crosswire.jsword.passage.PassageTally;
+import org.crosswire.jsword.passage.PassageTally.Order;
+import org.crosswire.jsword.passage.RestrictionType;
+import org.crosswire.jsword.passage.VerseRange;
+import org.crosswire.jsword.versification.Versification;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The verses of a set of search results, kept as an array of ordinals in the order they are to be shown. Each order
+ * is obtained by sorting a single primitive key per verse, i.e. its ordinal prefixed by its rank (relevance, or the
+ * first group of verses it belongs to), rather than by comparing verse objects. Once ordered, any page can be cut out
+ * directly, without walking the results that come before it.
+ *
+ * @author chrisburrell
+ */
+public final class VerseOrdinalResults {
+    private static final int NO_GROUP = -1;
+    private static final long ORDINAL_MASK = 0xFFFFFFFFL;
+    private final Versification v11n;
+    private final int[] ordinals;
+    private final int[] groups;
+
+    /**
+     * @param v11n     the versification of the ordinals
+     * @param ordinals the ordinals, in the order they are to be shown
+     * @param groups   the group of each verse, or null if the verses are not grouped
+     */
+    private VerseOrdinalResults(final Versification v11n, final int[] ordinals, final int[] groups) {
+        this.v11n = v11n;
+        this.ordinals = ordinals;
+        this.groups = groups;
+    }
+
+    /**
+     * @param passage the results
+     * @return the results, in canonical order
+     */
+    public static VerseOrdinalResults canonical(final Passage passage) {
+        return new VerseOrdinalResults(passage.getVersification(), getOrdinals(passage), null);
+    }
+
+    /**
+     * Orders the results by relevance, the most relevant first, and verses of the same relevance in canonical order.
+     * The tally is left in canonical order.
+     *
+     * @param tally the results, with their relevance
+     * @return the results, most relevant first
+     */
+    public static VerseOrdinalResults ranked(final PassageTally tally) {
+        tally.setOrdering(Order.BIBLICAL);
+        final Versification v11n = tally.getVersification();
+        final int[] canonical = getOrdinals(tally);
+
+        final long[] keys = new long[canonical.length];
+        for (int ii = 0; ii < canonical.length; ii++) {
+            final int tallyOf = tally.getTallyOf(v11n.decodeOrdinal(canonical[ii]));
+            keys[ii] = getKey(Integer.MAX_VALUE - tallyOf, canonical[ii]);
+        }
+        return new VerseOrdinalResults(v11n, sortOrdinals(keys, keys.length, null), null);
+    }
+
+    /**
+     * Orders the results by the first group they belong to, and in canonical order within each group. This gives
+     * the vocabulary order, each group being the verses containing a word, the words being in the order of their
+     * glosses.
+     *
+     * @param passage     the results
+     * @param groups      the groups, in order, in the same versification as the results
+     * @param keepOthers  true to put the verses that are in no group after all the others, false to drop them
+     * @return the results, grouped
+     */
+    public static VerseOrdinalResults grouped(final Passage passage, final List<? extends Passage> groups,
+                                              final boolean keepOthers) {
+        final int[] canonical = getOrdinals(passage);
+        final int[] groupOf = new int[canonical.length];
+        Arrays.fill(groupOf, NO_GROUP);
+
+        // later groups are written first, so that the earliest group a verse is in wins
+        for (int group = groups.size() - 1; group >= 0; group--) {
+            for (final int ordinal : getOrdinals(groups.get(group))) {
+                final int position = Arrays.binarySearch(canonical, ordinal);
+                if (position >= 0) {
+                    groupOf[position] = group;
+                }
+            }
+        }
+
+        final long[] keys = new long[canonical.length];
+        int numKeys = 0;
+        for (int ii = 0; ii < canonical.length; ii++) {
+            if (groupOf[ii] != NO_GROUP) {
+                keys[numKeys++] = getKey(groupOf[ii], canonical[ii]);
+            } else if (keepOthers) {
+                keys[numKeys++] = getKey(groups.size(), canonical[ii]);
+            }
+        }
+
+        final int[] sortedGroups = new int[numKeys];
+        final int[] ordinals = sortOrdinals(keys, numKeys, sortedGroups);
+        for (int ii = 0; ii < numKeys; ii++) {
+            if (sortedGroups[ii] == groups.size()) {
+                sortedGroups[ii] = NO_GROUP;
+            }
+        }
+        return new VerseOrdinalResults(passage.getVersification(), ordinals, sortedGroups);
+    }
+
+    /**
+     * @return the number of verses
+     */
+    public int size() {
+        return this.ordinals.length;
+    }
+
+    /**
+     * @param position the position of the verse in the results
+     * @return the ordinal of the verse
+     */
+    public int getOrdinal(final int position) {
+        return this.ordinals[position];
+    }
+
+    /**
+     * @param position the position of the verse in the results
+     * @return the group the verse was put in, or -1 if it is in none
+     */
+    public int getGroup(final int position) {
+        return this.groups == null ? NO_GROUP : this.groups[position];
+    }
+
+    /**
+     * @param pageNumber the page number, 1 indexed
+     * @param pageSize   the size of the page
+     * @return the position of the first verse of the page
+     */
+    public int getPageStart(final int pageNumber, final int pageSize) {
+        final long start = (long) (Math.max(pageNumber, 1) - 1) * pageSize;
+        return (int) Math.min(start, this.ordinals.length);
+    }
+
+    /**
+     * @param pageNumber the page number, 1 indexed
+     * @param pageSize   the size of the page
+     * @return the position after the last verse of the page
+     */
+    public int getPageEnd(final int pageNumber, final int pageSize) {
+        return (int) Math.min((long) getPageStart(pageNumber, pageSize) + pageSize, this.ordinals.length);
+    }
+
+    /**
+     * @param pageNumber the page number, 1 indexed
+     * @param pageSize   the size of the page
+     * @return the verses of the page, as a passage, i.e. in canonical order
+     */
+    public Passage getPage(final int pageNumber, final int pageSize) {
+        final Passage page = (Passage) PassageKeyFactory.instance().createEmptyKeyList(this.v11n);
+        final int end = getPageEnd(pageNumber, pageSize);
+        for (int position = getPageStart(pageNumber, pageSize); position < end; position++) {
+            page.addAll(this.v11n.decodeOrdinal(this.ordinals[position]));
+        }
+        return page;
+    }
+
+    /**
+     * @param pageNumber the page number, 1 indexed
+     * @param pageSize   the size of the page
+     * @return the ordinals of the page, in canonical order, i.e. the order in which the page's passage is iterated
+     */
+    public int[] getCanonicalPageOrdinals(final int pageNumber, final int pageSize) {
+        final int[] page = Arrays.copyOfRange(this.ordinals, getPageStart(pageNumber, pageSize),
+                getPageEnd(pageNumber, pageSize));
+        Arrays.sort(page);
+        return page;
+    }
+
+    /**
+     * @param passage the passage
+     * @return the ordinals of all its verses, in canonical order
+     */
+    private static int[] getOrdinals(final Passage passage) {
+        final int[] ordinals = new int[passage.getCardinality()];
+        int numOrdinals = 0;
+        final Iterator<VerseRange> ranges = passage.rangeIterator(RestrictionType.NONE);
+        while (ranges.hasNext()) {
+            final VerseRange range = ranges.next();
+            final int end = range.getEnd().getOrdinal();
+            for (int ordinal = range.getStart().getOrdinal(); ordinal <= end && numOrdinals < ordinals.length; ordinal++) {
+                ordinals[numOrdinals++] = ordinal;
+            }
+        }
+        return numOrdinals == ordinals.length ? ordinals : Arrays.copyOf(ordinals, numOrdinals);
+    }
+
+    /**
+     * @param rank    the rank of the verse, lowest first
+     * @param ordinal the ordinal of the verse
+     * @return the key sorting the verse by rank, then in canonical order
+     */
+    private static long getKey(final int rank, final int ordinal) {
+        return (long) rank << 32 | ordinal & ORDINAL_MASK;
+    }
+
+    /**
+     * @param keys    the keys of the verses
+     * @param numKeys the number of keys in use
+     * @param ranks   a place to store the rank of each verse once sorted, or null if not needed
+     * @return the ordinals, sorted by their keys
+     */
+    private static int[] sortOrdinals(final long[] keys, final int numKeys, final int[] ranks) {
+        Arrays.sort(keys, 0, numKeys);
+        final int[] ordinals = new int[numKeys];
+        for (int ii = 0; ii < numKeys; ii++) {
+            ordinals[ii] = (int) keys[ii];
+            if (ranks != null) {
+                ranks[ii] = (int) (keys[ii] >>> 32);
+            }
+        }
+        return ordinals;
+    }
+}
@@ -0,0 +1,373 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import com.tyndalehouse.step.core.models.LookupOption;
+import com.tyndalehouse.step.core.service.helpers.VersionResolver;
+import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+import com.tyndalehouse.step.core.utils.JSwordUtils;
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.book.BookMetaData;
+import org.crosswire.jsword.book.Books;
+import org.crosswire.jsword.book.BooksEvent;
+import org.crosswire.jsword.book.BooksListener;
+import org.crosswire.jsword.book.FeatureType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.tyndalehouse.step.core.utils.StringUtils.isNotEmpty;
+import static org.crosswire.jsword.book.BookCategory.BIBLE;
+
+/**
+ * The capabilities of each version, i.e. the display options it supports, held as a bitset of {@link LookupOption}
+ * ordinals, along with the facts about its tagging and language that decide how it can be shown alongside other
+ * versions. Capabilities are worked out from the module's metadata the first time a version is asked for, and
+ * forgotten when a module is installed or removed, so that looking up the options of a passage no longer reads any
+ * metadata.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class VersionCapabilityMatrix implements BooksListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VersionCapabilityMatrix.class);
+    private static final LookupOption[] OPTIONS = LookupOption.values();
+    private static final long HIDDEN_OPTIONS = toBits(LookupOption.HIDE_XGEN, LookupOption.CHAPTER_BOOK_VERSE_NUMBER,
+            LookupOption.HEADINGS_ONLY, LookupOption.HIDE_COMPARE_HEADERS);
+    private static final long BIBLE_OPTIONS = toBits(LookupOption.VERSE_NUMBERS, LookupOption.VERSE_NEW_LINE);
+    private static final long STRONG_OPTIONS = toBits(LookupOption.ENGLISH_VOCAB, LookupOption.GREEK_VOCAB,
+            LookupOption.TRANSLITERATION, LookupOption.INTERLINEAR);
+    private static final long GREEK_OPTIONS = toBits(LookupOption.GREEK_ACCENTS);
+    private static final long HEBREW_OPTIONS = toBits(LookupOption.HEBREW_ACCENTS, LookupOption.HEBREW_VOWELS);
+    private static final String[] DIVIDED_HEBREW_VERSIONS = new String[]{"OSMHB", "OHB", "OSHB", "WLC"};
+
+    private final Map<String, VersionCapabilities> capabilities = new ConcurrentHashMap<String, VersionCapabilities>();
+    private final AtomicInteger generation = new AtomicInteger();
+    private final JSwordVersificationService versificationService;
+    private final VersionResolver versionResolver;
+
+    /**
+     * @param versificationService the versification service, to find the module of each version
+     * @param versionResolver      the resolver of versions, telling us about their tagging
+     */
+    @Inject
+    public VersionCapabilityMatrix(final JSwordVersificationService versificationService,
+                                   final VersionResolver versionResolver) {
+        this.versificationService = versificationService;
+        this.versionResolver = versionResolver;
+        Books.installed().addBooksListener(this);
+    }
+
+    /**
+     * @param version the version
+     * @return the capabilities of the version
+     */
+    public VersionCapabilities get(final String version) {
+        VersionCapabilities versionCapabilities = this.capabilities.get(version);
+        if (versionCapabilities == null) {
+            final Book book = this.versificationService.getBookFromVersion(version);
+            if (book == null) {
+                return VersionCapabilities.NONE;
+            }
+
+            versionCapabilities = new VersionCapabilities(book, isSeptuagintTagging(version));
+            this.capabilities.put(version, versionCapabilities);
+        }
+        return versionCapabilities;
+    }
+
+    /**
+     * The options available when showing a version, alongside other versions. The accents and vowels of the
+     * original languages are available if any of the versions is in that language.
+     *
+     * @param version       the main version
+     * @param extraVersions the other versions, may be null
+     * @return the available options, as a bitset
+     */
+    public long getFeatures(final String version, final List<String> extraVersions) {
+        final VersionCapabilities main = get(version);
+        if (main == VersionCapabilities.NONE) {
+            return 0;
+        }
+
+        long features = main.getOptions() | main.getAncientOptions();
+        if (extraVersions != null) {
+            for (final String extraVersion : extraVersions) {
+                features |= get(extraVersion).getAncientOptions();
+            }
+        }
+        return features;
+    }
+
+    /**
+     * @param version the version
+     * @param options the options
+     * @return true if the version's module has the features behind all the options
+     */
+    public boolean supportsFeatures(final String version, final LookupOption... options) {
+        final long required = toBits(options);
+        return (get(version).getFeatures() & required) == required;
+    }
+
+    /**
+     * @return a number that changes whenever the capabilities of any version may have changed
+     */
+    public int getGeneration() {
+        return this.generation.get();
+    }
+
+    /**
+     * @param options the options
+     * @return the options as a bitset
+     */
+    public static long toBits(final LookupOption... options) {
+        long bits = 0;
+        for (final LookupOption lo : options) {
+            bits |= 1L << lo.ordinal();
+        }
+        return bits;
+    }
+
+    /**
+     * @param options the options
+     * @return the options as a bitset
+     */
+    public static long toBits(final Collection<LookupOption> options) {
+        long bits = 0;
+        for (final LookupOption lo : options) {
+            bits |= 1L << lo.ordinal();
+        }
+        return bits;
+    }
+
+    /**
+     * @param bits the options as a bitset
+     * @return the options
+     */
+    public static Set<LookupOption> toOptions(final long bits) {
+        final Set<LookupOption> options = EnumSet.noneOf(LookupOption.class);
+        for (final LookupOption lo : OPTIONS) {
+            if (contains(bits, lo)) {
+                options.add(lo);
+            }
+        }
+        return options;
+    }
+
+    /**
+     * @param bits   the options as a bitset
+     * @param option the option
+     * @return true if the option is in the bitset
+     */
+    public static boolean contains(final long bits, final LookupOption option) {
+        return (bits & 1L << option.ordinal()) != 0;
+    }
+
+    /**
+     * @param version the version
+     * @return true if the version is tagged against the Septuagint
+     */
+    private boolean isSeptuagintTagging(final String version) {
+        return this.versionResolver != null && this.versionResolver.isSeptuagintTagging(version);
+    }
+
+    /**
+     * Forgets the capabilities of the versions of a module
+     *
+     * @param initials the initials of the module
+     */
+    public void invalidate(final String initials) {
+        final Iterator<VersionCapabilities> versions = this.capabilities.values().iterator();
+        while (versions.hasNext()) {
+            if (versions.next().getInitials().equalsIgnoreCase(initials)) {
+                versions.remove();
+            }
+        }
+        this.generation.incrementAndGet();
+        LOGGER.debug("Invalidated capabilities of [{}]", initials);
+    }
+
+    @Override
+    public void bookAdded(final BooksEvent ev) {
+        invalidate(ev.getBook().getInitials());
+    }
+
+    @Override
+    public void bookRemoved(final BooksEvent ev) {
+        invalidate(ev.getBook().getInitials());
+    }
+
+    /**
+     * The capabilities of a single version
+     */
+    public static final class VersionCapabilities {
+        private static final VersionCapabilities NONE = new VersionCapabilities();
+        private final String initials;
+        private final long options;
+        private final long features;
+        private final long ancientOptions;
+        private final boolean strongs;
+        private final boolean bible;
+        private final boolean septuagintTagging;
+        private final String language;
+
+        /**
+         * No capabilities at all
+         */
+        private VersionCapabilities() {
+            this.initials = "";
+            this.options = 0;
+            this.features = 0;
+            this.ancientOptions = 0;
+            this.strongs = false;
+            this.bible = false;
+            this.septuagintTagging = false;
+            this.language = null;
+        }
+
+        /**
+         * Works out the capabilities of a module
+         *
+         * @param book              the module
+         * @param septuagintTagging true if the module is tagged against the Septuagint
+         */
+        VersionCapabilities(final Book book, final boolean septuagintTagging) {
+            final BookMetaData metaData = book.getBookMetaData();
+            this.initials = book.getInitials();
+            this.strongs = book.hasFeature(FeatureType.STRONGS_NUMBERS);
+            this.bible = BIBLE.equals(book.getBookCategory());
+            this.septuagintTagging = septuagintTagging;
+            this.language = book.getLanguage().getCode();
+
+            final boolean ancientGreek = JSwordUtils.isAncientGreekBook(book);
+            final boolean ancientHebrew = JSwordUtils.isAncientHebrewBook(book);
+            this.ancientOptions = (ancientGreek ? GREEK_OPTIONS : 0) | (ancientHebrew ? HEBREW_OPTIONS : 0);
+
+            long bits = HIDDEN_OPTIONS;
+            if (this.bible) {
+                bits |= BIBLE_OPTIONS;
+            }
+            if (metaData.hasFeature(FeatureType.WORDS_OF_CHRIST)) {
+                bits |= toBits(LookupOption.RED_LETTER);
+            }
+            if (metaData.hasFeature(FeatureType.STRONGS_NUMBERS)) {
+                bits |= STRONG_OPTIONS;
+            }
+            if (book.hasFeature(FeatureType.MORPHOLOGY)) {
+                bits |= toBits(LookupOption.COLOUR_CODE);
+            }
+            if (metaData.hasFeature(FeatureType.FOOTNOTES) || metaData.hasFeature(FeatureType.SCRIPTURE_REFERENCES)) {
+                bits |= toBits(LookupOption.NOTES);
+            }
+            if (isDividedHebrew(book.getInitials())) {
+                bits |= toBits(LookupOption.DIVIDE_HEBREW);
+            }
+            if (ancientGreek || ancientHebrew) {
+                bits |= toBits(LookupOption.TRANSLITERATE_ORIGINAL);
+            }
+
+            long supportedFeatures = 0;
+            for (final LookupOption lo : OPTIONS) {
+                final FeatureType matching = FeatureType.fromString(lo.getXsltParameterName());
+                if (matching != null && isNotEmpty(lo.name()) && metaData.hasFeature(matching)) {
+                    bits |= toBits(lo);
+                }
+
+                final FeatureType feature = lo.getFeature();
+                if (feature == null || metaData.hasFeature(feature)) {
+                    supportedFeatures |= toBits(lo);
+                }
+            }
+            this.options = bits;
+            this.features = supportedFeatures;
+        }
+
+        /**
+         * @param initials the initials of the module
+         * @return true if the seg divisions of the Hebrew text are available
+         */
+        private static boolean isDividedHebrew(final String initials) {
+            for (final String divided : DIVIDED_HEBREW_VERSIONS) {
+                if (divided.equals(initials)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return the initials of the module
+         */
+        public String getInitials() {
+            return this.initials;
+        }
+
+        /**
+         * @return the options the version supports on its own, as a bitset
+         */
+        public long getOptions() {
+            return this.options;
+        }
+
+        /**
+         * @return the options whose JSword feature the module has, or that need none, as a bitset
+         */
+        public long getFeatures() {
+            return this.features;
+        }
+
+        /**
+         * @return the accents and vowels options the version brings to any set of versions it is part of
+         */
+        public long getAncientOptions() {
+            return this.ancientOptions;
+        }
+
+        /**
+         * @return true if the module is tagged with strong numbers
+         */
+        public boolean hasStrongs() {
+            return this.strongs;
+        }
+
+        /**
+         * @return true if the module is a Bible
+         */
+        public boolean isBible() {
+            return this.bible;
+        }
+
+        /**
+         * @return true if the module is tagged against the Septuagint
+         */
+        public boolean isSeptuagintTagging() {
+            return this.septuagintTagging;
+        }
+
+        /**
+         * @return the code of the language of the module
+         */
+        public String getLanguage() {
+            return this.language;
+        }
+
+        /**
+         * @param other the capabilities of another version
+         * @return true if both versions are Bibles in the same language
+         */
+        public boolean isSameLanguageBible(final VersionCapabilities other) {
+            return this.bible && other.bible && this.language != null
+                    && this.language.toLowerCase(Locale.ENGLISH).equals(
+                    other.language == null ? null : other.language.toLowerCase(Locale.ENGLISH));
+        }
+    }
+}
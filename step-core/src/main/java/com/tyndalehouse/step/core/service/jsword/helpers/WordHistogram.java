@@ -0,0 +1,128 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The number of occurrences of each word of a passage, held as two parallel arrays sorted by word, so that the
+ * histograms of several passages can be combined by merging them rather than by hashing each word again.
+ *
+ * @author chrisburrell
+ */
+public final class WordHistogram implements Serializable {
+    private static final long serialVersionUID = 2847612375639106549L;
+    private static final WordHistogram EMPTY = new WordHistogram(new String[0], new int[0]);
+    private final String[] words;
+    private final int[] counts;
+
+    /**
+     * @param words  the distinct words, in ascending order
+     * @param counts the number of occurrences of each word
+     */
+    private WordHistogram(final String[] words, final int[] counts) {
+        this.words = words;
+        this.counts = counts;
+    }
+
+    /**
+     * @return a histogram without any words
+     */
+    public static WordHistogram empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Counts the occurrences of each of the tokens
+     *
+     * @param tokens the tokens of a passage, in any order, blank tokens being ignored
+     * @return the histogram of the tokens
+     */
+    public static WordHistogram fromTokens(final String[] tokens) {
+        final String[] sorted = Arrays.copyOf(tokens, tokens.length);
+        Arrays.sort(sorted);
+
+        final String[] words = new String[sorted.length];
+        final int[] counts = new int[sorted.length];
+        int distinct = 0;
+        for (final String token : sorted) {
+            if (token.length() == 0) {
+                continue;
+            }
+
+            if (distinct > 0 && words[distinct - 1].equals(token)) {
+                counts[distinct - 1]++;
+            } else {
+                words[distinct] = token;
+                counts[distinct] = 1;
+                distinct++;
+            }
+        }
+        return new WordHistogram(Arrays.copyOf(words, distinct), Arrays.copyOf(counts, distinct));
+    }
+
+    /**
+     * Combines two histograms, adding up the counts of the words they have in common
+     *
+     * @param other the other histogram
+     * @return a new histogram containing the words of both
+     */
+    public WordHistogram merge(final WordHistogram other) {
+        if (other.size() == 0) {
+            return this;
+        }
+        if (size() == 0) {
+            return other;
+        }
+
+        final String[] mergedWords = new String[this.words.length + other.words.length];
+        final int[] mergedCounts = new int[mergedWords.length];
+        int ii = 0;
+        int jj = 0;
+        int kk = 0;
+        while (ii < this.words.length && jj < other.words.length) {
+            final int comparison = this.words[ii].compareTo(other.words[jj]);
+            if (comparison < 0) {
+                mergedWords[kk] = this.words[ii];
+                mergedCounts[kk++] = this.counts[ii++];
+            } else if (comparison > 0) {
+                mergedWords[kk] = other.words[jj];
+                mergedCounts[kk++] = other.counts[jj++];
+            } else {
+                mergedWords[kk] = this.words[ii];
+                mergedCounts[kk++] = this.counts[ii++] + other.counts[jj++];
+            }
+        }
+        while (ii < this.words.length) {
+            mergedWords[kk] = this.words[ii];
+            mergedCounts[kk++] = this.counts[ii++];
+        }
+        while (jj < other.words.length) {
+            mergedWords[kk] = other.words[jj];
+            mergedCounts[kk++] = other.counts[jj++];
+        }
+        return new WordHistogram(Arrays.copyOf(mergedWords, kk), Arrays.copyOf(mergedCounts, kk));
+    }
+
+    /**
+     * @return the number of distinct words
+     */
+    public int size() {
+        return this.words.length;
+    }
+
+    /**
+     * @param index the index of the word, between 0 and {@link #size()}
+     * @return the word
+     */
+    public String getWord(final int index) {
+        return this.words[index];
+    }
+
+    /**
+     * @param index the index of the word, between 0 and {@link #size()}
+     * @return the number of occurrences of the word
+     */
+    public int getCount(final int index) {
+        return this.counts[index];
+    }
+}
@@ -40,6 +40,9 @@ import javax.inject.Named;
 import com.tyndalehouse.step.core.models.stats.ScopeType;
 import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+import com.tyndalehouse.step.core.service.jsword.helpers.ChapterStatsStore;
+import com.tyndalehouse.step.core.service.jsword.helpers.ChapterStatsStore.TokenType;
+import com.tyndalehouse.step.core.service.jsword.helpers.WordHistogram;
 import com.tyndalehouse.step.core.utils.StringConversionUtils;
 import com.tyndalehouse.step.core.utils.StringUtils;
 import org.crosswire.jsword.book.Book;
@@ -61,7 +64,7 @@ import java.util.*;
  * @author chrisburrell
  */
 public class JSwordAnalysisServiceImpl implements JSwordAnalysisService {
-    static final String WORD_SPLIT = "[,./<>?!;:'\\[\\]\\{\\}!\"\\-\u2013 ()]+";
+    static final String WORD_SPLIT = ChapterStatsStore.WORD_SPLIT;
     private static final String LANGUAGE_STOP_LIST = "analysis.stopWords.%s";
     private final JSwordVersificationService versification;
     private final Map<String, Set<String>> stopWords = new HashMap<String, Set<String>>(32);
@@ -69,17 +72,21 @@ public class JSwordAnalysisServiceImpl implements JSwordAnalysisService {
     private final Versification strongsV11n;
     private final Book strongsBook;
     private final Properties stopWordsProperties;
+    private final ChapterStatsStore chapterStats;
 
     /**
      * Instantiates a new jsword analysis service impl.
      *
      * @param versification the versification
+     * @param chapterStats  the store of pre-tokenized chapters
      */
     @Inject
     public JSwordAnalysisServiceImpl(final JSwordVersificationService versification,
                                      @Named("StepCoreProperties") final Properties stopWordsProperties,
-                                     @Named("analysis.stopStrongs") final String configuredStopStrongs) {
+                                     @Named("analysis.stopStrongs") final String configuredStopStrongs,
+                                     final ChapterStatsStore chapterStats) {
         this.versification = versification;
+        this.chapterStats = chapterStats;
         this.stopWordsProperties = stopWordsProperties;
         stopStrongs = StringUtils.createSet(configuredStopStrongs);
         strongsBook = this.versification.getBookFromVersion(JSwordPassageService.REFERENCE_BOOK);
@@ -91,6 +98,10 @@ public class JSwordAnalysisServiceImpl implements JSwordAnalysisService {
         try {
             //change the reference to match what we need
             final BookData expandedBook = getExpandedBookData(reference, scopeType, strongsV11n, strongsBook);
+            final WordHistogram histogram = getChapterHistogram(expandedBook, scopeType, TokenType.STRONGS);
+            if (histogram != null) {
+                return getStatsFromStrongHistogram(histogram);
+            }
             return getStatsFromStrongArray(split(OSISUtil.getStrongsNumbers(expandedBook.getOsisFragment())));
         } catch (final BookException e) {
             throw new StepInternalException("Unable to read passage text", e);
@@ -103,12 +114,16 @@ public class JSwordAnalysisServiceImpl implements JSwordAnalysisService {
             final Book book = this.versification.getBookFromVersion(version);
             final Versification av11n = this.versification.getVersificationForVersion(book);
             final BookData bookData = getExpandedBookData(reference, scopeType, av11n, book);
+            Set<String> languageStopWords = getLanguageStopList(book);
+
+            final WordHistogram histogram = getChapterHistogram(bookData, scopeType, TokenType.WORDS);
+            if (histogram != null) {
+                return getStatsFromWordHistogram(histogram, languageStopWords);
+            }
 
             final String canonicalText = OSISUtil.getCanonicalText(bookData.getOsisFragment());
             final String[] words = split(canonicalText, WORD_SPLIT);
 
-            Set<String> languageStopWords = getLanguageStopList(book);
-
             final PassageStat stat = new PassageStat();
             for (final String word : words) {
                 //only add word if not in STOP list
@@ -122,6 +137,22 @@ public class JSwordAnalysisServiceImpl implements JSwordAnalysisService {
         }
     }
 
+    /**
+     * Obtains the pre-tokenized counts for whole chapters, rather than reading the text again
+     *
+     * @param bookData  the expanded passage
+     * @param scopeType the scope type
+     * @param tokenType the kind of tokens required
+     * @return the combined counts of the chapters, or null if the text needs reading
+     */
+    private WordHistogram getChapterHistogram(final BookData bookData, final ScopeType scopeType, final TokenType tokenType) {
+        final Key key = bookData.getKey();
+        if (scopeType == ScopeType.PASSAGE || !(key instanceof VerseRange)) {
+            return null;
+        }
+        return this.chapterStats.getHistogram(bookData.getFirstBook(), tokenType, (VerseRange) key);
+    }
+
     /**
      * Lazily obtains the stop list for the specific language of a book
      *
@@ -243,6 +274,41 @@ public class JSwordAnalysisServiceImpl implements JSwordAnalysisService {
         return stat;
     }
 
+    /**
+     * Gets the stats from pre-tokenized strong numbers, leaving out those in the stop list
+     *
+     * @param histogram the counts of each padded strong number
+     * @return the stats
+     */
+    private PassageStat getStatsFromStrongHistogram(final WordHistogram histogram) {
+        final PassageStat stat = new PassageStat();
+        for (int ii = 0; ii < histogram.size(); ii++) {
+            final String paddedStrongNumber = histogram.getWord(ii);
+            if (!this.stopStrongs.contains(paddedStrongNumber.toUpperCase())) {
+                stat.addWord(paddedStrongNumber, histogram.getCount(ii));
+            }
+        }
+        return stat;
+    }
+
+    /**
+     * Gets the stats from pre-tokenized words, leaving out those in the stop list
+     *
+     * @param histogram         the counts of each word
+     * @param languageStopWords the stop list for the language of the text
+     * @return the stats
+     */
+    private PassageStat getStatsFromWordHistogram(final WordHistogram histogram, final Set<String> languageStopWords) {
+        final PassageStat stat = new PassageStat();
+        for (int ii = 0; ii < histogram.size(); ii++) {
+            final String word = histogram.getWord(ii);
+            if (!languageStopWords.contains(StringConversionUtils.unAccent(word.toUpperCase(), true))) {
+                stat.addWord(word, histogram.getCount(ii));
+            }
+        }
+        return stat;
+    }
+
     /**
      * @return access tot he default v11n for analysis
      */
@@ -1,8 +1,6 @@
 package com.tyndalehouse.step.core.service.jsword.impl;
 
 import static com.tyndalehouse.step.core.utils.StringUtils.isBlank;
-import static com.tyndalehouse.step.core.utils.StringUtils.isNotEmpty;
-import static org.crosswire.jsword.book.BookCategory.BIBLE;
 
 import java.util.*;
 
@@ -11,6 +9,8 @@ import javax.inject.Inject;
 import com.tyndalehouse.step.core.exceptions.StepInternalException;
 import com.tyndalehouse.step.core.models.InterlinearMode;
 import com.tyndalehouse.step.core.service.helpers.VersionResolver;
+import com.tyndalehouse.step.core.service.jsword.helpers.VersionCapabilityMatrix;
+import com.tyndalehouse.step.core.service.jsword.helpers.VersionCapabilityMatrix.VersionCapabilities;
 import com.tyndalehouse.step.core.utils.JSwordUtils;
 import com.tyndalehouse.step.core.utils.StringUtils;
 import org.crosswire.jsword.book.Book;
@@ -34,17 +34,29 @@ import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
 public class JSwordMetadataServiceImpl implements JSwordMetadataService {
     private static final String BOOK_CHAPTER_FORMAT = "%s %d";
     private final JSwordVersificationService versificationService;
-    private final VersionResolver versionResolver;
+    private final VersionCapabilityMatrix capabilities;
 
     /**
      * Sets up the service for providing metadata information
      *
      * @param versificationService the versification service
+     * @param versionResolver      the resolver of versions
      */
-    @Inject
     public JSwordMetadataServiceImpl(final JSwordVersificationService versificationService, final VersionResolver versionResolver) {
+        this(versificationService, new VersionCapabilityMatrix(versificationService, versionResolver));
+    }
+
+    /**
+     * Sets up the service for providing metadata information
+     *
+     * @param versificationService the versification service
+     * @param capabilities         the capabilities of each version
+     */
+    @Inject
+    public JSwordMetadataServiceImpl(final JSwordVersificationService versificationService,
+                                     final VersionCapabilityMatrix capabilities) {
         this.versificationService = versificationService;
-        this.versionResolver = versionResolver;
+        this.capabilities = capabilities;
     }
 
     @Override
@@ -67,168 +79,7 @@ public class JSwordMetadataServiceImpl implements JSwordMetadataService {
 
     @Override
     public Set<LookupOption> getFeatures(final String version, List<String> extraVersions) {
-        // obtain the book
-        final Book book = this.versificationService.getBookFromVersion(version);
-        final Set<LookupOption> options = new HashSet<LookupOption>(LookupOption.values().length * 2);
-
-        if (book == null) {
-            return options;
-        }
-
-        // some options are always there for Bibles:
-        addBibleCategoryOptions(book, options);
-        addRedLetterOptions(book, options);
-        addStrongNumberOptions(book, options);
-        addMorphologyOptions(book, options);
-        addNotesOptions(book, options);
-        addHebrewOptions(book, options);
-        addAncientOptions(version, extraVersions, options);
-        addMasterAncientOptions(book, options);
-        addAllMatchingLookupOptions(book, options);
-        addHiddenOptions(options);
-
-        return options;
-    }
-
-    private void addMasterAncientOptions(final Book currentVersion, final Set<LookupOption> options) {
-        if (JSwordUtils.isAncientGreekBook(currentVersion) || JSwordUtils.isAncientHebrewBook(currentVersion)) {
-            options.add(LookupOption.TRANSLITERATE_ORIGINAL);
-        }
-    }
-
-    private void addHiddenOptions(final Set<LookupOption> options) {
-        options.add(LookupOption.HIDE_XGEN);
-        options.add(LookupOption.CHAPTER_BOOK_VERSE_NUMBER);
-        options.add(LookupOption.HEADINGS_ONLY);
-        options.add(LookupOption.HIDE_COMPARE_HEADERS);
-    }
-
-    /**
-     * Adds options that apply regardless of the conditions
-     *
-     * @param currentVersion the current primary version
-     * @param extraVersions  the secondary versions that affect feature resolution
-     * @param options        the set of options
-     */
-    private void addAncientOptions(final String currentVersion, final List<String> extraVersions, final Set<LookupOption> options) {
-        final List<String> allVersions = new ArrayList<String>(extraVersions);
-        allVersions.add(currentVersion);
-
-        boolean hasGreekVersion, hasHebrewVersion = hasGreekVersion = false;
-        for (String version : allVersions) {
-            Book book = this.versificationService.getBookFromVersion(version);
-            if (JSwordUtils.isAncientGreekBook(book)) {
-                hasGreekVersion = true;
-            }
-
-            if (JSwordUtils.isAncientHebrewBook(book)) {
-                hasHebrewVersion = true;
-            }
-        }
-
-        //hebrew/greek options for interlinears
-        if (hasGreekVersion) {
-            options.add(LookupOption.GREEK_ACCENTS);
-        }
-
-        if (hasHebrewVersion) {
-            options.add(LookupOption.HEBREW_ACCENTS);
-            options.add(LookupOption.HEBREW_VOWELS);
-        }
-    }
-
-    /**
-     * For Hebrew books, we hard code availability of seg divisions for OHB and WLC
-     *
-     * @param book    the Book in question
-     * @param options the available options
-     */
-    private void addHebrewOptions(final Book book, final Set<LookupOption> options) {
-        if ("OSMHB".equals(book.getInitials()) || "OHB".equals(book.getInitials()) || "OSHB".equals(book.getInitials())
-                || "WLC".equals(book.getInitials())) {
-            options.add(LookupOption.DIVIDE_HEBREW);
-        }
-    }
-
-    /**
-     * Add all options when the options match by their XsltParameter Name
-     *
-     * @param book    the book
-     * @param options the options to be added to
-     */
-    private void addAllMatchingLookupOptions(final Book book, final Set<LookupOption> options) {
-        // cycle through each option
-        for (final LookupOption lo : LookupOption.values()) {
-            final FeatureType ft = FeatureType.fromString(lo.getXsltParameterName());
-            if (ft != null && isNotEmpty(lo.name()) && book.getBookMetaData().hasFeature(ft)) {
-                options.add(lo);
-            }
-        }
-    }
-
-    /**
-     * Adds options for notes
-     *
-     * @param book    the book
-     * @param options the options to be added to
-     */
-    private void addNotesOptions(final Book book, final Set<LookupOption> options) {
-        if (book.getBookMetaData().hasFeature(FeatureType.FOOTNOTES)
-                || book.getBookMetaData().hasFeature(FeatureType.SCRIPTURE_REFERENCES)) {
-            options.add(LookupOption.NOTES);
-        }
-    }
-
-    /**
-     * Adds options for morphology
-     *
-     * @param book    the book
-     * @param options the options to be added to
-     */
-    private void addMorphologyOptions(final Book book, final Set<LookupOption> options) {
-        if (book.hasFeature(FeatureType.MORPHOLOGY)) {
-            options.add(LookupOption.COLOUR_CODE);
-        }
-    }
-
-    /**
-     * Adds options for strong numbers
-     *
-     * @param book    the book
-     * @param options the options to be added to
-     */
-    private void addStrongNumberOptions(final Book book, final Set<LookupOption> options) {
-        if (book.getBookMetaData().hasFeature(FeatureType.STRONGS_NUMBERS)) {
-            options.add(LookupOption.ENGLISH_VOCAB);
-            options.add(LookupOption.GREEK_VOCAB);
-            options.add(LookupOption.TRANSLITERATION);
-            options.add(LookupOption.INTERLINEAR);
-        }
-    }
-
-    /**
-     * Adds options for red letter Bible
-     *
-     * @param book    the book
-     * @param options the options to be added to
-     */
-    private void addRedLetterOptions(final Book book, final Set<LookupOption> options) {
-        if (book.getBookMetaData().hasFeature(FeatureType.WORDS_OF_CHRIST)) {
-            options.add(LookupOption.RED_LETTER);
-        }
-    }
-
-    /**
-     * Adds options if module is a Bible
-     *
-     * @param book    the book
-     * @param options the options to be added to
-     */
-    private void addBibleCategoryOptions(final Book book, final Set<LookupOption> options) {
-        if (BIBLE.equals(book.getBookCategory())) {
-            options.add(LookupOption.VERSE_NUMBERS);
-            options.add(LookupOption.VERSE_NEW_LINE);
-        }
+        return VersionCapabilityMatrix.toOptions(this.capabilities.getFeatures(version, extraVersions));
     }
 
     @Override
@@ -358,7 +209,7 @@ public class JSwordMetadataServiceImpl implements JSwordMetadataService {
 
     @Override
     public boolean hasVocab(final String version) {
-        return supportsStrongs(this.versificationService.getBookFromVersion(version));
+        return this.capabilities.get(version).hasStrongs();
     }
 
     @Override
@@ -370,9 +221,7 @@ public class JSwordMetadataServiceImpl implements JSwordMetadataService {
     public String[] getLanguages(final String... versions) {
         String[] languages = new String[versions.length];
         for (int i = 0; i < versions.length; i++) {
-            final String version = versions[i];
-            Book b = this.versificationService.getBookFromVersion(version);
-            languages[i] = b.getLanguage().getCode();
+            languages[i] = this.capabilities.get(versions[i]).getLanguage();
         }
         return languages;
     }
@@ -390,24 +239,16 @@ public class JSwordMetadataServiceImpl implements JSwordMetadataService {
 
         //so we've either asked for nothing, or asked for something that we need to check is appropriate
 
-        Book main = this.versificationService.getBookFromVersion(version);
-        String firstLanguage = main.getLanguage().getCode();
-        boolean supportsStrongs = this.supportsStrongs(main);
-        boolean sameLanguageAndBible = main.getBookCategory() == BIBLE;
+        final VersionCapabilities main = this.capabilities.get(version);
+        boolean supportsStrongs = main.hasStrongs();
+        boolean sameLanguageAndBible = main.isBible();
+        boolean sameTagging = true;
 
         for (String extraVersion : extraVersions) {
-            Book b = this.versificationService.getBookFromVersion(extraVersion);
-            if (supportsStrongs && !this.supportsStrongs(b)) {
-                supportsStrongs = false;
-            }
-            if (!firstLanguage.equalsIgnoreCase(b.getLanguage().getCode()) || b.getBookCategory() != BIBLE) {
-                sameLanguageAndBible = false;
-            }
-            
-            //small optimization
-            if (!supportsStrongs && !sameLanguageAndBible) {
-                break;
-            }
+            final VersionCapabilities extra = this.capabilities.get(extraVersion);
+            supportsStrongs &= extra.hasStrongs();
+            sameLanguageAndBible &= main.isSameLanguageBible(extra);
+            sameTagging &= main.isSeptuagintTagging() == extra.isSeptuagintTagging();
         }
 
         //if compare options were given and are available, we return these.
@@ -415,43 +256,16 @@ public class JSwordMetadataServiceImpl implements JSwordMetadataService {
             return getSameOrDowngradedInterlinearMode(interlinearMode, sameLanguageAndBible);
         }
 
-        if (supportsStrongs && allVersionsSameTagging(version, extraVersions)) {
+        if (supportsStrongs && sameTagging) {
             return InterlinearMode.INTERLINEAR;
         }
 
         return InterlinearMode.INTERLEAVED;
     }
 
-    /**
-     * We check that all versions have the same Greek/Hebrew tagging. For example, Septuagint tagged texts should
-     * not be mapped to the Hebrew texts
-     * @param version the version
-     * @param extraVersions the extra versions
-     * @return true if all versions are of the same kind
-     */
-    private boolean allVersionsSameTagging(final String version, final List<String> extraVersions) {
-        final boolean isSeptuagint = this.versionResolver.isSeptuagintTagging(version);
-        for(String v : extraVersions) {
-            if(isSeptuagint != this.versionResolver.isSeptuagintTagging(v)) {
-                return false;
-            }
-        }
-        return true;
-    }
-
-
     @Override
     public boolean supportsFeature(final String version, LookupOption... options) {
-        Book b = this.versificationService.getBookFromVersion(version);
-        for(LookupOption lo : options) {
-            FeatureType ft = lo.getFeature();
-            if(ft != null) {
-                if(!b.getBookMetaData().hasFeature(ft)) {
-                    return false;
-                }
-            }
-        }
-        return true;
+        return this.capabilities.supportsFeatures(version, options);
     }
     
     /**
@@ -7,6 +7,7 @@ import com.tyndalehouse.step.core.models.BibleInstaller;
 import com.tyndalehouse.step.core.service.helpers.VersionResolver;
 import com.tyndalehouse.step.core.service.jsword.JSwordModuleService;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+import com.tyndalehouse.step.core.service.jsword.helpers.IndexBuildScheduler;
 import com.tyndalehouse.step.core.utils.JSwordUtils;
 import com.tyndalehouse.step.core.utils.ValidateUtils;
 import org.crosswire.common.progress.JobManager;
@@ -53,6 +54,7 @@ public class JSwordModuleServiceImpl implements JSwordModuleService {
     private final List<Installer> offlineInstallers;
     private final JSwordVersificationService versificationService;
     private final VersionResolver versionResolver;
+    private final IndexBuildScheduler indexBuilds;
     private boolean offline = false;
 
 
@@ -60,15 +62,29 @@ public class JSwordModuleServiceImpl implements JSwordModuleService {
      * @param installers        a list of installers to use to download books
      * @param offlineInstallers the set of installers to use offline, rather than online
      */
+    public JSwordModuleServiceImpl(final List<Installer> installers,
+                                   final List<Installer> offlineInstallers,
+                                   final JSwordVersificationService versificationService,
+                                   final VersionResolver versionResolver) {
+        this(installers, offlineInstallers, versificationService, versionResolver, new IndexBuildScheduler(1, null, 0));
+    }
+
+    /**
+     * @param installers        a list of installers to use to download books
+     * @param offlineInstallers the set of installers to use offline, rather than online
+     * @param indexBuilds       the scheduler of index builds
+     */
     @Inject
     public JSwordModuleServiceImpl(@Named("onlineInstallers") final List<Installer> installers,
                                    @Named("offlineInstallers") final List<Installer> offlineInstallers,
                                    final JSwordVersificationService versificationService,
-                                   final VersionResolver versionResolver) {
+                                   final VersionResolver versionResolver,
+                                   final IndexBuildScheduler indexBuilds) {
         this.bookInstallers = installers;
         this.offlineInstallers = offlineInstallers;
         this.versificationService = versificationService;
         this.versionResolver = versionResolver;
+        this.indexBuilds = indexBuilds;
 
         // add a handler to be notified of all job progresses
         JobManager.addWorkListener(new WorkListener() {
@@ -123,20 +139,14 @@ public class JSwordModuleServiceImpl implements JSwordModuleService {
         final IndexManager indexManager = IndexManagerFactory.getIndexManager();
         final Book book = this.versificationService.getBookFromVersion(initials);
         if (!indexManager.isIndexed(book)) {
-            indexManager.scheduleIndexCreation(book);
+            this.indexBuilds.schedule(book, false);
         }
     }
 
     @Override
     public void reIndex(final String initials) {
-        final Book book = this.versificationService.getBookFromVersion(initials);
-        try {
-            IndexManagerFactory.getIndexManager().deleteIndex(book);
-        } catch (final Exception e) {
-            LOGGER.info("Error deleting index. Attempting to rebuild index all the same");
-            LOGGER.trace("Error deleting index. Attempting to rebuild index all the same", e);
-        }
-        IndexManagerFactory.getIndexManager().scheduleIndexCreation(book);
+        // the existing index is deleted once the build starts, so it stays usable while the build is queued
+        this.indexBuilds.schedule(this.versificationService.getBookFromVersion(initials), true);
     }
 
 
@@ -238,12 +248,18 @@ public class JSwordModuleServiceImpl implements JSwordModuleService {
     public double getProgressOnIndexing(final String bookName) {
         notBlank(bookName, "The book name to be indexed was blank", SERVICE_VALIDATION_ERROR);
 
+        // the scheduler knows about builds it started, including queued ones that aren't indexed yet
+        String longVersionName = this.versionResolver.getLongName(bookName);
+        final IndexBuildScheduler.State state = this.indexBuilds.getState(longVersionName);
+        if (state == IndexBuildScheduler.State.QUEUED || state == IndexBuildScheduler.State.BUILDING) {
+            return this.indexBuilds.getProgress(longVersionName);
+        }
+
         if (isIndexed(bookName)) {
             return 1;
         }
 
         // not yet installed (or at least wasn't on the lines above, so check job list
-        String longVersionName = this.versionResolver.getLongName(bookName);
         final Iterator<Progress> iterator = JobManager.iterator();
         while (iterator.hasNext()) {
             final Progress p = iterator.next();
@@ -403,6 +419,11 @@ public class JSwordModuleServiceImpl implements JSwordModuleService {
     public void waitForIndexes(final String... versions) {
         for (final String s : versions) {
             while (!this.isIndexed(s)) {
+                if (this.indexBuilds.getState(this.versionResolver.getLongName(s)) == IndexBuildScheduler.State.FAILED) {
+                    LOGGER.error("Index of [{}] could not be built", s);
+                    break;
+                }
+
                 try {
                     Thread.sleep(INDEX_WAITING);
                 } catch (final InterruptedException e) {
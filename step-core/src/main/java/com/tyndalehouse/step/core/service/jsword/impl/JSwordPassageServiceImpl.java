@@ -43,11 +43,14 @@ import com.tyndalehouse.step.core.models.OsisWrapper;
 import com.tyndalehouse.step.core.models.StringAndCount;
 import com.tyndalehouse.step.core.service.PassageOptionsValidationService;
 import com.tyndalehouse.step.core.service.VocabularyService;
+import com.tyndalehouse.step.core.service.helpers.InterleavedOsisCache;
 import com.tyndalehouse.step.core.service.helpers.VersionResolver;
 import com.tyndalehouse.step.core.service.impl.MorphologyServiceImpl;
 import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+import com.tyndalehouse.step.core.service.jsword.helpers.OsisEventBuffer;
 import com.tyndalehouse.step.core.utils.JSwordUtils;
+import com.tyndalehouse.step.core.utils.StageTimer;
 import com.tyndalehouse.step.core.utils.StringConversionUtils;
 import com.tyndalehouse.step.core.utils.StringUtils;
 import com.tyndalehouse.step.core.xsl.MultiInterlinearProvider;
@@ -56,7 +59,6 @@ import com.tyndalehouse.step.core.xsl.impl.ColorCoderProviderImpl;
 import com.tyndalehouse.step.core.xsl.impl.InterleavingProviderImpl;
 import com.tyndalehouse.step.core.xsl.impl.MultiInterlinearProviderImpl;
 import org.crosswire.common.xml.Converter;
-import org.crosswire.common.xml.JDOMSAXEventProvider;
 import org.crosswire.common.xml.SAXEventProvider;
 import org.crosswire.common.xml.TransformingSAXEventProvider;
 import org.crosswire.jsword.book.Book;
@@ -77,12 +79,6 @@ import org.crosswire.jsword.passage.VerseRange;
 import org.crosswire.jsword.versification.BibleBook;
 import org.crosswire.jsword.versification.Testament;
 import org.crosswire.jsword.versification.Versification;
-import org.jdom2.Document;
-import org.jdom2.Element;
-import org.jdom2.filter.ElementFilter;
-import org.jdom2.filter.Filter;
-import org.jdom2.output.Format;
-import org.jdom2.output.XMLOutputter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
@@ -94,10 +90,8 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import static com.tyndalehouse.step.core.models.InterlinearMode.COLUMN_COMPARE;
@@ -111,8 +105,6 @@ import static com.tyndalehouse.step.core.utils.ValidateUtils.notNull;
 import static java.lang.Integer.parseInt;
 import static java.lang.String.format;
 import static org.crosswire.common.xml.XMLUtil.writeToString;
-import static org.crosswire.jsword.book.OSISUtil.OSIS_ATTR_OSISID;
-import static org.crosswire.jsword.book.OSISUtil.OSIS_ELEMENT_VERSE;
 
 /**
  * a service providing a wrapper around JSword
@@ -126,12 +118,16 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
     private static final String OSIS_CHAPTER_FORMAT = "%s.%d";
     private static final String OSIS_CHAPTER_VERSE_FORMAT = "%s.%s.%d";
     private static final Logger LOGGER = LoggerFactory.getLogger(JSwordPassageServiceImpl.class);
+    private static final StageTimer OSIS_READ_TIMER = new StageTimer(JSwordPassageServiceImpl.class, "osis-read", null);
+    private static final StageTimer STYLESHEET_SETUP_TIMER = new StageTimer(JSwordPassageServiceImpl.class, "stylesheet-setup", null);
+    private static final StageTimer TRANSFORM_TIMER = new StageTimer(JSwordPassageServiceImpl.class, "transform", null);
     private final MorphologyServiceImpl morphologyProvider;
     private final JSwordVersificationService versificationService;
     private final VocabularyService vocabProvider;
     private final ColorCoderProviderImpl colorCoder;
     private final VersionResolver resolver;
     private final PassageOptionsValidationService optionsValidationService;
+    private final InterleavedOsisCache interleavedOsis;
     private final Book kjvaBook;
     private final Book esvBook;
 
@@ -145,17 +141,38 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
      * @param resolver                 the resolver
      * @param optionsValidationService
      */
-    @Inject
     public JSwordPassageServiceImpl(final JSwordVersificationService versificationService,
                                     final MorphologyServiceImpl morphologyProvider, final VocabularyService vocabProvider,
                                     final ColorCoderProviderImpl colorCoder, final VersionResolver resolver,
                                     final PassageOptionsValidationService optionsValidationService) {
+        this(versificationService, morphologyProvider, vocabProvider, colorCoder, resolver, optionsValidationService,
+                new InterleavedOsisCache(0));
+    }
+
+    /**
+     * constructs the jsword service.
+     *
+     * @param versificationService     jsword versification service
+     * @param morphologyProvider       provides morphological information
+     * @param vocabProvider            the service providing lexicon and vocabulary information
+     * @param colorCoder               the service to color code a passage
+     * @param resolver                 the resolver
+     * @param optionsValidationService
+     * @param interleavedOsis          the merged OSIS of passages in several versions
+     */
+    @Inject
+    public JSwordPassageServiceImpl(final JSwordVersificationService versificationService,
+                                    final MorphologyServiceImpl morphologyProvider, final VocabularyService vocabProvider,
+                                    final ColorCoderProviderImpl colorCoder, final VersionResolver resolver,
+                                    final PassageOptionsValidationService optionsValidationService,
+                                    final InterleavedOsisCache interleavedOsis) {
         this.versificationService = versificationService;
         this.morphologyProvider = morphologyProvider;
         this.vocabProvider = vocabProvider;
         this.colorCoder = colorCoder;
         this.resolver = resolver;
         this.optionsValidationService = optionsValidationService;
+        this.interleavedOsis = interleavedOsis;
 
         kjvaBook = Books.installed().getBook("KJVA");
         esvBook = Books.installed().getBook(JSwordPassageService.REFERENCE_BOOK);
@@ -812,12 +829,25 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
         try {
             // first check whether the key is contained in the book
             key = normalize(key, versification);
-            final SAXEventProvider osissep = bookData.getSAXEventProvider();
+            final StageTimer.Context readTime = OSIS_READ_TIMER.time(key);
+            final SAXEventProvider osissep;
+            try {
+                osissep = bookData.getSAXEventProvider();
+            } finally {
+                readTime.stop();
+            }
 
-            final TransformingSAXEventProvider htmlsep = executeStyleSheet(versification, options, interlinearVersion,
-                    bookData, osissep, displayMode);
+            final StageTimer.Context setupTime = STYLESHEET_SETUP_TIMER.time();
+            final TransformingSAXEventProvider htmlsep;
+            try {
+                htmlsep = executeStyleSheet(versification, options, interlinearVersion, bookData, osissep,
+                        displayMode);
+            } finally {
+                setupTime.stop();
+            }
 
-            final OsisWrapper osisWrapper = new OsisWrapper(writeToString(htmlsep), key,
+            final String html = transform(htmlsep);
+            final OsisWrapper osisWrapper = new OsisWrapper(html, key,
                     getLanguages(book, displayMode, htmlsep, options), versification,
                     resolver.getShortName(bookData.getFirstBook().getInitials()), displayMode,
                     interlinearVersion);
@@ -959,6 +989,23 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
 
     }
 
+    /**
+     * Runs the stylesheet and serializes the output. Both happen in the same pass, so they are timed together.
+     *
+     * @param htmlsep the provider of the transformed events
+     * @return the html
+     * @throws SAXException         the SAX exception
+     * @throws TransformerException the transformer exception
+     */
+    private String transform(final SAXEventProvider htmlsep) throws SAXException, TransformerException {
+        final StageTimer.Context stage = TRANSFORM_TIMER.time();
+        try {
+            return writeToString(htmlsep);
+        } finally {
+            stage.stop();
+        }
+    }
+
     private OsisWrapper doInterleavedVersionsLookup(String[] versions, final BookData data,
                                                     final Versification v11n,
                                                     final List<LookupOption> options,
@@ -967,8 +1014,21 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
         try {
             setUnaccenter(data, displayMode);
 
-            final TransformingSAXEventProvider transformer = executeStyleSheet(v11n, options, null, data,
-                    data.getSAXEventProvider(), displayMode);
+            final StageTimer.Context readTime = OSIS_READ_TIMER.time(data.getKey());
+            final SAXEventProvider osissep;
+            try {
+                osissep = getInterleavedOsis(data, displayMode);
+            } finally {
+                readTime.stop();
+            }
+
+            final StageTimer.Context setupTime = STYLESHEET_SETUP_TIMER.time();
+            final TransformingSAXEventProvider transformer;
+            try {
+                transformer = executeStyleSheet(v11n, options, null, data, osissep, displayMode);
+            } finally {
+                setupTime.stop();
+            }
 
             String[] languages = new String[books.length];
             for (int ii = 0; ii < books.length; ii++) {
@@ -976,7 +1036,7 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
             }
 
             final Key key = data.getKey();
-            return new OsisWrapper(writeToString(transformer), key,
+            return new OsisWrapper(transform(transformer), key,
                     languages, v11n, resolver.getShortName(versions[0]), displayMode,
                     StringUtils.join(versions, 1)
             );
@@ -990,6 +1050,31 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
     }
 
 
+    /**
+     * Reads the merged OSIS of several versions, or replays it if the same versions of the same passage have been read
+     * before
+     *
+     * @param data        the data of all the versions
+     * @param displayMode the display mode
+     * @return the provider of the merged OSIS
+     * @throws BookException if the versions cannot be read
+     * @throws SAXException  if the OSIS cannot be recorded
+     */
+    private SAXEventProvider getInterleavedOsis(final BookData data, final InterlinearMode displayMode)
+            throws BookException, SAXException {
+        if (!this.interleavedOsis.isEnabled()) {
+            return data.getSAXEventProvider();
+        }
+
+        final String cacheKey = InterleavedOsisCache.getKey(data.getBooks(), data.getKey(), isComparingMode(displayMode));
+        OsisEventBuffer osis = this.interleavedOsis.get(cacheKey);
+        if (osis == null) {
+            osis = OsisEventBuffer.record(data.getSAXEventProvider());
+            this.interleavedOsis.put(cacheKey, data.getBooks(), osis);
+        }
+        return osis;
+    }
+
     /**
      * Validates the books given and trims down by removing any following duplicates
      *
@@ -1099,79 +1184,6 @@ public class JSwordPassageServiceImpl implements JSwordPassageService {
         }
     }
 
-    /**
-     * Changes the input OSIS document to have extra verses, the ones from the other versions
-     *
-     * @param bookDatas the list of all book datas that we will be querying
-     * @return the provider of events for the stylesheet to execute upon
-     */
-    SAXEventProvider buildInterleavedVersions(final BookData... bookDatas) {
-
-        final Map<String, Element> versions = new HashMap<String, Element>();
-        try {
-            // obtain OSIS from every version
-            for (final BookData bookData : bookDatas) {
-                final Element osis = bookData.getOsis();
-                versions.put(bookData.getFirstBook().getInitials(), osis);
-            }
-
-            final Filter<Element> verseFilter = new ElementFilter(OSIS_ELEMENT_VERSE);
-
-            // select one version and iterate through the others and change the OSIS
-            boolean firstVersion = true;
-            final Map<String, Element> versesFromMaster = new HashMap<String, Element>();
-
-            // iterate through documents of every version
-            for (final BookData data : bookDatas) {
-                final String version = data.getFirstBook().getInitials();
-
-                final Element element = versions.get(version);
-                final Iterator<Element> docIterator = element.getDescendants(verseFilter);
-                Element previousAppendedElement = null;
-
-                // save the first version
-                while (docIterator.hasNext()) {
-                    final Element e = docIterator.next();
-                    LOGGER.debug("Obtaining verse [{}]", e.getAttributeValue(OSIS_ATTR_OSISID));
-                    final String osisID = e.getAttributeValue(OSIS_ATTR_OSISID).toLowerCase();
-                    if (firstVersion) {
-                        versesFromMaster.put(osisID, e);
-                    } else {
-                        Element childVerse = versesFromMaster.get(osisID);
-
-                        if (childVerse == null) {
-                            LOGGER.debug("Orphaned row: [{}]", osisID);
-                            childVerse = previousAppendedElement;
-                        }
-
-                        final Element parentElement = childVerse.getParentElement();
-                        parentElement.addContent(parentElement.indexOf(childVerse), e.clone());
-                        previousAppendedElement = childVerse;
-                    }
-                }
-
-                firstVersion = false;
-            }
-
-            final Element amendedOsis = versions.get(bookDatas[0].getFirstBook().getInitials());
-            Document doc = amendedOsis.getDocument();
-
-            if (doc == null) {
-                doc = new Document(amendedOsis);
-            }
-
-            if (LOGGER.isDebugEnabled()) {
-                final XMLOutputter xmlOutputter = new XMLOutputter(Format.getRawFormat());
-                LOGGER.debug("\n {}", xmlOutputter.outputString(doc));
-            }
-
-            return new JDOMSAXEventProvider(doc);
-
-        } catch (final BookException e) {
-            throw new LocalisedException(e, e.getMessage());
-        }
-    }
-
     /**
      * Executes the stylesheet
      *
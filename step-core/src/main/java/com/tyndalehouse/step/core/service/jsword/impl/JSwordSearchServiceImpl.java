@@ -33,8 +33,10 @@
 package com.tyndalehouse.step.core.service.jsword.impl;
 
 import java.awt.image.LookupOp;
+import java.io.IOException;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.inject.Inject;
@@ -43,7 +45,18 @@ import javax.inject.Singleton;
 import com.tyndalehouse.step.core.exceptions.LuceneSearchException;
 import com.tyndalehouse.step.core.models.InterlinearMode;
 import com.tyndalehouse.step.core.service.jsword.JSwordMetadataService;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.Version;
 import org.crosswire.jsword.book.Book;
 import org.crosswire.jsword.book.BookException;
 import org.crosswire.jsword.index.Index;
@@ -51,6 +64,7 @@ import org.crosswire.jsword.index.IndexManager;
 import org.crosswire.jsword.index.IndexManagerFactory;
 import org.crosswire.jsword.index.IndexStatus;
 import org.crosswire.jsword.index.lucene.LuceneIndex;
+import org.crosswire.jsword.index.lucene.analysis.LuceneAnalyzer;
 import org.crosswire.jsword.index.search.DefaultSearchModifier;
 import org.crosswire.jsword.index.search.DefaultSearchRequest;
 import org.crosswire.jsword.passage.*;
@@ -71,6 +85,8 @@ import com.tyndalehouse.step.core.service.impl.SearchQuery;
 import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
 import com.tyndalehouse.step.core.service.jsword.JSwordSearchService;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+import com.tyndalehouse.step.core.service.jsword.helpers.VerseOrdinalResults;
+import com.tyndalehouse.step.core.utils.StageTimer;
 
 /**
  * API to search across the data
@@ -81,7 +97,10 @@ import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
 public class JSwordSearchServiceImpl implements JSwordSearchService {
     private static final Logger LOGGER = LoggerFactory.getLogger(JSwordSearchServiceImpl.class);
     private static final int MAX_RESULTS = 50000;
+    private static final StageTimer FIND_TIMER = new StageTimer(JSwordSearchServiceImpl.class, "find", null);
     private static final Pattern GEN_REV_RANGE = Pattern.compile("(\\+)\\[Gen-Rev\\]");
+    private static final FieldSelector KEY_ONLY = new MapFieldSelector(LuceneIndex.FIELD_KEY);
+    private static final StageTimer SCOPED_FIND_TIMER = new StageTimer(JSwordSearchServiceImpl.class, "find", "scoped");
     private final JSwordVersificationService av11nService;
     private final JSwordMetadataService metadataService;
     private final JSwordPassageService jsword;
@@ -128,7 +147,7 @@ public class JSwordSearchServiceImpl implements JSwordSearchService {
         
         
         boolean searchExecuted = false;
-        for (final String version : currentSearch.getVersions()) {
+        for (final String version : currentSearch.getSearchedVersions()) {
             // now for each version, we do the search and store it in a map
             final Book bible = this.av11nService.getBookFromVersion(version);
         
@@ -162,14 +181,23 @@ public class JSwordSearchServiceImpl implements JSwordSearchService {
         String version = bible.getInitials();
         if (bible.getIndexStatus().equals(IndexStatus.DONE)) {
             final Key luceneSearchResults;
+            String query = currentSearch.getQuery();
+            //small optimization and cater for versions that don't support Gen-Rev as a range:
+            query = GEN_REV_RANGE.matcher(query).replaceAll("");
+            final Key scopedResults = modifier.isRanked() ? null : findWithinScope(bible, query, currentSearch.getScope());
+            if (scopedResults != null) {
+                resultsPerVersion.put(version, scopedResults);
+                return;
+            }
+
+            final StageTimer.Context findTime = FIND_TIMER.time(version, query);
             try {
-                String query = currentSearch.getQuery();
-                //small optimization and cater for versions that don't support Gen-Rev as a range:
-                query = GEN_REV_RANGE.matcher(query).replaceAll("");
                 luceneSearchResults = bible.find(new DefaultSearchRequest(query, modifier));
             } catch (final BookException e) {
                 throw new LuceneSearchException("Unable to search for " + currentSearch.getQuery()
                         + " with Bible " + version, e);
+            } finally {
+                findTime.stop();
             }
 
             resultsPerVersion.put(version, luceneSearchResults);
@@ -179,6 +207,77 @@ public class JSwordSearchServiceImpl implements JSwordSearchService {
         }
     }
 
+    /**
+     * Runs the query against the verses of the scope only, so that the index doesn't need to read, for every verse
+     * found anywhere in the Bible, which verse it is. This is only done for queries in the plain Lucene syntax, with an
+     * optional range, and for scopes small enough to be passed to Lucene one verse at a time.
+     *
+     * @param bible the bible
+     * @param query the query
+     * @param scope the verses the search can be restricted to, or null
+     * @return the verses found, or null if the search can't be restricted to the scope
+     */
+    private Key findWithinScope(final Book bible, final String query, final Key scope) {
+        if (!(scope instanceof VerseKey) || scope.getCardinality() > BooleanQuery.getMaxClauseCount()) {
+            return null;
+        }
+
+        final Versification v11n = this.av11nService.getVersificationForVersion(bible);
+        final Versification scopeV11n = ((VerseKey) scope).getVersification();
+        final Passage verses = new RangedPassage(v11n);
+        verses.addAll(v11n.equals(scopeV11n) ? scope
+                : VersificationsMapper.instance().map(KeyUtil.getPassage(scope), v11n));
+
+        final StageTimer.Context findTime = SCOPED_FIND_TIMER.time(bible.getInitials(), query);
+        try {
+            String luceneQuery = query;
+            final Matcher range = IndividualSearch.MAIN_RANGE.matcher(luceneQuery);
+            if (range.find()) {
+                verses.retainAll(bible.getKey(range.group(2)));
+                luceneQuery = luceneQuery.replace(range.group(), " ").trim();
+            }
+
+            // blurring and ranges are understood by JSword only
+            if (luceneQuery.isEmpty() || luceneQuery.indexOf('[') != -1 || luceneQuery.indexOf('~') != -1
+                    || verses.getCardinality() > BooleanQuery.getMaxClauseCount()) {
+                return null;
+            }
+
+            final Key results = PassageKeyFactory.instance().createEmptyKeyList(v11n);
+            if (verses.isEmpty()) {
+                return results;
+            }
+
+            final BooleanQuery inScope = new BooleanQuery();
+            for (final Key verse : verses) {
+                inScope.add(new TermQuery(new Term(LuceneIndex.FIELD_KEY, verse.getOsisRef())), Occur.SHOULD);
+            }
+
+            final QueryParser parser = new QueryParser(Version.LUCENE_30, LuceneIndex.FIELD_BODY,
+                    new LuceneAnalyzer(bible));
+            parser.setAllowLeadingWildcard(true);
+            final BooleanQuery scopedQuery = new BooleanQuery();
+            scopedQuery.add(parser.parse(luceneQuery), Occur.MUST);
+            scopedQuery.add(inScope, Occur.MUST);
+
+            final IndexSearcher searcher = getIndexSearcher(bible.getInitials());
+            final TopDocs hits = searcher.search(scopedQuery, verses.getCardinality());
+            final StringBuilder osisRefs = new StringBuilder(hits.scoreDocs.length * 12);
+            for (final ScoreDoc hit : hits.scoreDocs) {
+                osisRefs.append(searcher.doc(hit.doc, KEY_ONLY).get(LuceneIndex.FIELD_KEY)).append(' ');
+            }
+            if (osisRefs.length() > 0) {
+                results.addAll(PassageKeyFactory.instance().getKey(v11n, osisRefs.toString()));
+            }
+            return results;
+        } catch (final ParseException | IOException | NoSuchKeyException e) {
+            LOGGER.debug("Unable to search [{}] within scope, searching every verse: [{}]", query, e.getMessage());
+            return null;
+        } finally {
+            findTime.stop();
+        }
+    }
+
     /**
      * merges all search results together
      *
@@ -352,39 +451,27 @@ public class JSwordSearchServiceImpl implements JSwordSearchService {
      */
     @Override
     public Key rankAndTrimResults(final SearchQuery sq, final Key results) {
-        rankResults(sq.isRanked(), results);
-        final Passage passage = (Passage) results;
         if (!sq.isAllKeys()) {
-            // we need the first pageNumber*PAGE_SIZE results, so remove anything beyond that.
-            return getPage(sq.getPageNumber(), sq.getPageSize(), passage);
+            // we only need the requested page, which is cut straight out of the ordered results
+            return getOrderedResults(sq.isRanked(), results).getPage(sq.getPageNumber(), sq.getPageSize());
         }
+        rankResults(sq.isRanked(), results);
         return results;
     }
 
     /**
-     * @param pageNumber the page number, 1 indexed
-     * @param pageSize the size of the page
-     * @param passage the passage we want to trim down
-     * @return the new results
+     * @param ranked  true to order the results by relevance
+     * @param results the results
+     * @return the verses of the results as ordinals, in the order they are to be shown
      */
-    private Passage getPage(final int pageNumber, final int pageSize, final Passage passage) {
-        Passage results = (Passage) PassageKeyFactory.instance().createEmptyKeyList(passage.getVersification());
-        Iterator<Key> verses = passage.iterator();
-        
-        //page 1 = 1-60
-        //page 2 = 61-120
-        int from = (pageNumber-1) * pageSize + 1;
-        int to = from + pageSize - 1;
-        int currentCount = 1;
-        while(verses.hasNext()) {
-            final Key verse = verses.next();
-            if(currentCount >= from && currentCount <= to) {
-                results.addAll(verse);
+    private VerseOrdinalResults getOrderedResults(final boolean ranked, final Key results) {
+        if (ranked) {
+            if (!(results instanceof PassageTally)) {
+                throw new StepInternalException("Unable to retrieve in ranked order...");
             }
-            currentCount++;
+            return VerseOrdinalResults.ranked((PassageTally) results);
         }
-        
-        return results;
+        return VerseOrdinalResults.canonical((Passage) results);
     }
 
     /**
@@ -39,15 +39,12 @@ import com.tyndalehouse.step.core.exceptions.StepInternalException;
 import com.tyndalehouse.step.core.models.KeyWrapper;
 import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
 import org.crosswire.jsword.book.Book;
-import org.crosswire.jsword.book.BookMetaData;
-import org.crosswire.jsword.book.Books;
 import org.crosswire.jsword.passage.*;
 import org.crosswire.jsword.versification.Versification;
 import org.crosswire.jsword.versification.VersificationsMapper;
-import org.crosswire.jsword.versification.system.Versifications;
 
 import com.tyndalehouse.step.core.exceptions.TranslatedException;
-import com.tyndalehouse.step.core.service.helpers.VersionResolver;
+import com.tyndalehouse.step.core.service.helpers.BookRegistry;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
 
 /**
@@ -58,16 +55,17 @@ import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
  */
 @Singleton
 public class JSwordVersificationServiceImpl implements JSwordVersificationService {
-    private final VersionResolver versionResolver;
+    private final BookRegistry bookRegistry;
 
     /**
-     * Takes a Version resolver to be able to cope with short book abbreviations.
+     * Takes a book registry to be able to cope with short book abbreviations, and avoid looking books up in JSword
+     * on every call.
      * 
-     * @param versionResolver the version resolver
+     * @param bookRegistry the registry of installed books
      */
     @Inject
-    public JSwordVersificationServiceImpl(final VersionResolver versionResolver) {
-        this.versionResolver = versionResolver;
+    public JSwordVersificationServiceImpl(final BookRegistry bookRegistry) {
+        this.bookRegistry = bookRegistry;
     }
 
     @Override
@@ -132,7 +130,7 @@ public class JSwordVersificationServiceImpl implements JSwordVersificationServic
 
     @Override
     public Book getBookSilently(final String version) {
-        return Books.installed().getBook(this.versionResolver.getLongName(version));
+        return this.bookRegistry.getBook(version);
     }
 
     @Override
@@ -150,18 +148,16 @@ public class JSwordVersificationServiceImpl implements JSwordVersificationServic
 
     @Override
     public Versification getVersificationForVersion(final String version) {
-        return getVersificationForVersion(getBookFromVersion(version));
+        final BookRegistry.BookHandle handle = this.bookRegistry.getHandle(version);
+        if (handle == null) {
+            throw new TranslatedException("book_not_found", version);
+        }
+        return handle.getVersification();
     }
 
     @Override
     public Versification getVersificationForVersion(final Book version) {
-        final Versification versification = Versifications.instance().getVersification(
-                (String) version.getBookMetaData().getProperty(BookMetaData.KEY_VERSIFICATION));
-
-        if (versification == null) {
-            return Versifications.instance().getVersification(Versifications.DEFAULT_V11N);
-        }
-        return versification;
+        return this.bookRegistry.getVersification(version);
     }
 
     /**
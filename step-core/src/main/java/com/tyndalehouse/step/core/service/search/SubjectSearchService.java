@@ -37,6 +37,7 @@ import com.tyndalehouse.step.core.models.search.SubjectSuggestion;
 import com.tyndalehouse.step.core.service.impl.SearchQuery;
 import com.tyndalehouse.step.core.service.impl.SearchType;
 import org.crosswire.jsword.passage.Key;
+import org.crosswire.jsword.passage.Passage;
 
 import java.util.List;
 
@@ -70,6 +71,16 @@ public interface SubjectSearchService {
      */
     SearchResult searchByReference(String referenceQuerySyntax);
 
+    /**
+     * Search by a passage, using the precomputed subjects of each verse. Verses are matched by book, chapter and
+     * verse numbers.
+     *
+     * @param reference the passage
+     * @return the search result a list of topics that match, or null if the subjects of each verse are not available
+     *         yet, in which case the Lucene query syntax should be used instead
+     */
+    SearchResult searchByReference(Passage reference);
+
     /**
      * First resolves the reference and expands it to its full form (e.g. Gen.1.1-3 goes to Gen.1.1 Gen.1.2
      * Gen 1.3), Then carries out a search against all subjects.
@@ -50,6 +50,28 @@ public class AbstractSubjectSearchServiceImpl {
                 restrictionByInput.getValue(), restrictionByInput.getCount());
     }
 
+    /**
+     * The scope of a subject search that is joined to other searches is the verses still in their results, so
+     * only the subjects referring to those verses need to be found.
+     *
+     * @param search the subject search
+     * @return the verses of the scope within the main range if the search has a scope, the main range otherwise
+     */
+    String getRangeForNaveSearch(final IndividualSearch search) {
+        final Key scope = search.getScope();
+        if (scope == null) {
+            return search.getMainRange();
+        }
+
+        final Key inRange = scope.clone();
+        if (StringUtils.isNotBlank(search.getMainRange())) {
+            inRange.retainAll(getInputReferenceKey(search.getVersions()[0], search.getMainRange()));
+        }
+
+        // an empty restriction would restrict nothing, so the main range is kept
+        return inRange.isEmpty() ? search.getMainRange() : inRange.getOsisRef();
+    }
+
     /**
      * This is part 1 of 2 that gives us a retriction on a book reference, as input by the user.
      * @param version the master version
@@ -61,24 +83,7 @@ public class AbstractSubjectSearchServiceImpl {
             return new StringAndCount("", 0);
         }
 
-        //strip out any + and square brackets
-        Matcher matcher = IndividualSearch.MAIN_RANGE.matcher(mainRange);
-        final boolean hasReference = matcher.find();
-        String key;
-        if (!hasReference || matcher.groupCount() < 2) {
-            //assume un-wrapped reference
-            key = mainRange;
-        } else {
-            key = matcher.group(2);
-        }
-
-        final Book master = this.jSwordVersificationService.getBookFromVersion(version);
-        final Key k;
-        try {
-            k = master.getKey(key);
-        } catch (NoSuchKeyException e) {
-            throw new TranslatedException(e, "invalid_reference_in_book", key, version);
-        }
+        final Key k = getInputReferenceKey(version, mainRange);
 
         //now work out what we're looking at
         String keyOsisID = k.getOsisID();
@@ -125,6 +130,35 @@ public class AbstractSubjectSearchServiceImpl {
         return wrapRefForLucene(keyOsisID, true);
     }
 
+    /**
+     * Resolves the reference input by the user
+     *
+     * @param version   the master version
+     * @param mainRange the main range input by the user, possibly wrapped in +[ ]
+     * @return the key, in the versification of the master version
+     */
+    Key getInputReferenceKey(final String version, final String mainRange) {
+        //strip out any + and square brackets
+        Matcher matcher = IndividualSearch.MAIN_RANGE.matcher(mainRange);
+        final boolean hasReference = matcher.find();
+        String key;
+        if (!hasReference || matcher.groupCount() < 2) {
+            //assume un-wrapped reference
+            key = mainRange;
+        } else {
+            key = matcher.group(2);
+        }
+
+        final Book master = this.jSwordVersificationService.getBookFromVersion(version);
+        final Key k;
+        try {
+            k = master.getKey(key);
+        } catch (NoSuchKeyException e) {
+            throw new TranslatedException(e, "invalid_reference_in_book", key, version);
+        }
+        return k;
+    }
+
     private StringAndCount getBooksFromRefs(final Versification v11n, final String osisRef) {
         final StringBuilder lucenePrefix = new StringBuilder(32);
         lucenePrefix.append("+(");
@@ -0,0 +1,501 @@
+package com.tyndalehouse.step.core.service.search.impl;
+
+import com.tyndalehouse.step.core.exceptions.TranslatedException;
+import com.tyndalehouse.step.core.service.impl.IndividualSearch;
+import com.tyndalehouse.step.core.service.impl.SearchQuery;
+import com.tyndalehouse.step.core.service.impl.SearchType;
+import com.tyndalehouse.step.core.service.jsword.JSwordSearchService;
+import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+import com.tyndalehouse.step.core.utils.IOUtils;
+import com.tyndalehouse.step.core.utils.StringConversionUtils;
+import com.tyndalehouse.step.core.utils.StringUtils;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.TermAttribute;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.PrefixTermEnum;
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.index.IndexStatus;
+import org.crosswire.jsword.index.lucene.LuceneIndex;
+import org.crosswire.jsword.index.lucene.analysis.LuceneAnalyzer;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+import org.crosswire.jsword.versification.Versification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Estimates how expensive a search is before it is run, and plans the searches of a query accordingly.
+ * <p/>
+ * Searches run against the Bible indexes are estimated from the number of verses each of their terms is found in, as
+ * held in the index of each version, wildcards being expanded to the terms they match. The verses found by the search
+ * are the verses found in the first version, in proportion to the size of the passage the search is restricted to.
+ * The work of the search is the number of verses read from the indexes of all the versions searched. Other searches,
+ * such as subject searches, are given a nominal size for their type.
+ * <p/>
+ * A query whose work is over budget is run against the first version only, and refused if even that is over
+ * budget. Searches that are joined together are run most selective first, unless their results are ranked or sorted by
+ * vocabulary, since then the order the searches are run in matters.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class SearchCostEstimator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SearchCostEstimator.class);
+    private static final Pattern STRONG_NUMBER = Pattern.compile("[GgHh]\\d{1,5}[a-zA-Z]?");
+    private static final Pattern TERM_SEPARATORS = Pattern.compile("[\\s()\"]+");
+    private static final Map<SearchType, Long> NOMINAL_HITS = newNominalHits();
+    private static final long UNKNOWN_HITS = 1000;
+    private static final char FIELD_SEPARATOR = ':';
+    private static final char WILDCARD = '*';
+    private static final char EXCLUDED = '-';
+    private static final char REQUIRED = '+';
+    private static final char RELATED = '~';
+    private static final String AND = "AND";
+    private static final String OR = "OR";
+    private static final String NOT = "NOT";
+    private final JSwordSearchService jswordSearch;
+    private final JSwordVersificationService versificationService;
+    private final boolean enabled;
+    private final long degradeAbove;
+    private final long refuseAbove;
+    private final int maxExpandedTerms;
+    private final Counter degraded = Metrics.newCounter(SearchCostEstimator.class, "degraded");
+    private final Counter refused = Metrics.newCounter(SearchCostEstimator.class, "refused");
+
+    /**
+     * @param jswordSearch         the search service, giving access to the indexes
+     * @param versificationService the versification service
+     * @param enabled              false to run every query as it is, in the order given
+     * @param degradeAbove         the work above which a query is only run against its first version
+     * @param refuseAbove          the work above which a query is refused
+     * @param maxExpandedTerms     the number of terms a wildcard is expanded to, beyond which it is assumed to
+     *                             match every verse
+     */
+    @Inject
+    public SearchCostEstimator(final JSwordSearchService jswordSearch,
+                               final JSwordVersificationService versificationService,
+                               @Named("app.search.cost.enabled") final boolean enabled,
+                               @Named("app.search.cost.degradeAbove") final long degradeAbove,
+                               @Named("app.search.cost.refuseAbove") final long refuseAbove,
+                               @Named("app.search.cost.maxExpandedTerms") final int maxExpandedTerms) {
+        this.jswordSearch = jswordSearch;
+        this.versificationService = versificationService;
+        this.enabled = enabled;
+        this.degradeAbove = degradeAbove;
+        this.refuseAbove = refuseAbove;
+        this.maxExpandedTerms = maxExpandedTerms;
+    }
+
+    /**
+     * Estimates the searches of the query, restricts them to the first version or refuses the query if it is too
+     * expensive, and sets the order in which joined searches are run
+     *
+     * @param sq the search query, before any of its searches are run
+     */
+    public void plan(final SearchQuery sq) {
+        if (!this.enabled) {
+            return;
+        }
+
+        final IndividualSearch[] searches = sq.getSearches();
+        final Estimate[] estimates = new Estimate[searches.length];
+        long work = 0;
+        long masterWork = 0;
+        for (int ii = 0; ii < searches.length; ii++) {
+            estimates[ii] = estimate(searches[ii]);
+            work += estimates[ii].getWork();
+            masterWork += estimates[ii].getMasterWork();
+        }
+
+        if (work > Math.min(this.degradeAbove, this.refuseAbove)) {
+            if (masterWork > this.refuseAbove) {
+                this.refused.inc();
+                LOGGER.warn("Refusing query [{}], estimated at [{}] verses read", sq.getOriginalQuery(), work);
+                throw new TranslatedException("search_too_expensive");
+            }
+
+            if (masterWork < work) {
+                this.degraded.inc();
+                LOGGER.info("Searching first version only for query [{}], estimated at [{}] verses read, [{}] for "
+                        + "the first version", new Object[]{sq.getOriginalQuery(), work, masterWork});
+                for (final IndividualSearch search : searches) {
+                    search.setMasterVersionOnly(isIndexSearch(search.getType()));
+                }
+            }
+        }
+
+        if (searches.length > 1 && canReorder(sq)) {
+            sq.setExecutionOrder(getExecutionOrder(estimates));
+        }
+    }
+
+    /**
+     * @param sq the search query
+     * @return true if the searches of the query can be run in any order
+     */
+    private boolean canReorder(final SearchQuery sq) {
+        // ranking, and sorts by vocabulary, depend on what the last search run leaves behind in the query
+        return !sq.isRanked() && !SearchServiceImpl.VOCABULARY_SORT.equals(sq.getSortOrder())
+                && !SearchServiceImpl.ORIGINAL_SPELLING_SORT.equals(sq.getSortOrder());
+    }
+
+    /**
+     * @param estimates the estimates of the searches
+     * @return the indexes of the searches, fewest verses found first, searches with the same estimate keeping
+     * their order
+     */
+    static int[] getExecutionOrder(final Estimate[] estimates) {
+        final Integer[] order = new Integer[estimates.length];
+        for (int ii = 0; ii < order.length; ii++) {
+            order[ii] = ii;
+        }
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer o1, final Integer o2) {
+                return Long.compare(estimates[o1].getHits(), estimates[o2].getHits());
+            }
+        });
+
+        final int[] executionOrder = new int[order.length];
+        for (int ii = 0; ii < order.length; ii++) {
+            executionOrder[ii] = order[ii];
+        }
+        return executionOrder;
+    }
+
+    /**
+     * @param search the search
+     * @return the estimate of the verses found and read by the search
+     */
+    public Estimate estimate(final IndividualSearch search) {
+        final Long nominalHits = NOMINAL_HITS.get(search.getType());
+        if (nominalHits != null) {
+            return new Estimate(nominalHits, nominalHits, nominalHits);
+        }
+
+        final List<String> terms = getTerms(search);
+        if (terms.isEmpty()) {
+            return new Estimate(UNKNOWN_HITS, UNKNOWN_HITS, UNKNOWN_HITS);
+        }
+
+        final boolean allTerms = isAllTermsRequired(search.getQuery(), terms);
+        long hits = -1;
+        long work = 0;
+        long masterWork = 0;
+        final String range = getRange(search);
+        final String[] versions = search.getVersions();
+        for (int ii = 0; ii < versions.length; ii++) {
+            final long[] versionEstimate = estimateVersion(versions[ii], terms, allTerms, range);
+            if (versionEstimate == null) {
+                continue;
+            }
+
+            hits = Math.max(hits, versionEstimate[0]);
+            work += versionEstimate[1];
+            if (ii == 0) {
+                masterWork = versionEstimate[1];
+            }
+        }
+
+        if (hits == -1) {
+            // none of the versions can be estimated, e.g. because they are still being indexed
+            return new Estimate(UNKNOWN_HITS, UNKNOWN_HITS, UNKNOWN_HITS);
+        }
+        return new Estimate(hits, work, masterWork);
+    }
+
+    /**
+     * @param version  the version
+     * @param terms    the terms of the search, each optionally prefixed by its field
+     * @param allTerms true if verses must contain every term, false if any will do
+     * @param range    the passage the search is restricted to, or null
+     * @return the verses found and the verses read, or null if the version can't be estimated
+     */
+    private long[] estimateVersion(final String version, final List<String> terms, final boolean allTerms,
+                                   final String range) {
+        final Book book = this.versificationService.getBookSilently(version);
+        if (book == null || !IndexStatus.DONE.equals(book.getIndexStatus())) {
+            return null;
+        }
+
+        try {
+            final IndexReader reader = this.jswordSearch.getIndexSearcher(version).getIndexReader();
+            final Analyzer analyzer = new LuceneAnalyzer(book);
+            long hits = -1;
+            long work = 0;
+            for (final String term : terms) {
+                final boolean excluded = term.charAt(0) == EXCLUDED;
+                final long frequency = getFrequency(reader, analyzer, excluded ? term.substring(1) : term);
+                work += frequency;
+                if (excluded) {
+                    continue;
+                }
+
+                if (hits == -1) {
+                    hits = frequency;
+                } else {
+                    hits = allTerms ? Math.min(hits, frequency) : hits + frequency;
+                }
+            }
+
+            final int verses = reader.numDocs();
+            return new long[]{(long) (Math.min(Math.max(hits, 0), verses) * getScope(version, range)), work};
+            // CHECKSTYLE:OFF
+        } catch (final Exception ex) {
+            // an estimate is never worth failing the search for
+            LOGGER.debug("Unable to estimate search against [{}]: [{}]", version, ex.getMessage());
+            LOGGER.trace(ex.getMessage(), ex);
+            return null;
+            // CHECKSTYLE:ON
+        }
+    }
+
+    /**
+     * @param reader   the index of the version
+     * @param analyzer the analyzer of the version
+     * @param term     the term, optionally prefixed by its field
+     * @return the number of verses the term is found in
+     * @throws IOException if the index can't be read
+     */
+    private long getFrequency(final IndexReader reader, final Analyzer analyzer, final String term)
+            throws IOException {
+        final int separator = term.indexOf(FIELD_SEPARATOR);
+        final String field = separator == -1 ? LuceneIndex.FIELD_BODY : term.substring(0, separator);
+        String value = separator == -1 ? term : term.substring(separator + 1);
+        if (LuceneIndex.FIELD_STRONG.equals(field)) {
+            value = StringConversionUtils.getStrongPaddedKey(value);
+        }
+
+        if (value.indexOf(WILDCARD) != -1) {
+            return getPrefixFrequency(reader, field, value.substring(0, value.indexOf(WILDCARD)));
+        }
+
+        long frequency = 0;
+        boolean firstToken = true;
+        final TokenStream tokens = analyzer.tokenStream(field, new StringReader(value));
+        try {
+            final TermAttribute termAttribute = tokens.addAttribute(TermAttribute.class);
+            while (tokens.incrementToken()) {
+                // the tokens of a single word, or the words of a phrase, are all found in the verse, so a token
+                // found nowhere means the term is found nowhere
+                final int tokenFrequency = reader.docFreq(new Term(field, termAttribute.term()));
+                frequency = firstToken ? tokenFrequency : Math.min(frequency, tokenFrequency);
+                firstToken = false;
+            }
+        } finally {
+            tokens.close();
+        }
+        return frequency;
+    }
+
+    /**
+     * @param reader the index of the version
+     * @param field  the field
+     * @param prefix the prefix of the wildcard
+     * @return the number of verses the terms starting with the prefix are found in, or every verse if there are too
+     * many such terms
+     * @throws IOException if the index can't be read
+     */
+    private long getPrefixFrequency(final IndexReader reader, final String field, final String prefix)
+            throws IOException {
+        if (prefix.isEmpty()) {
+            return reader.numDocs();
+        }
+
+        TermEnum termEnum = null;
+        try {
+            termEnum = new PrefixTermEnum(reader, new Term(field, prefix.toLowerCase(Locale.ENGLISH)));
+            long frequency = 0;
+            int expanded = 0;
+            while (termEnum.term() != null) {
+                if (++expanded > this.maxExpandedTerms) {
+                    return reader.numDocs();
+                }
+                frequency += termEnum.docFreq();
+                if (!termEnum.next()) {
+                    break;
+                }
+            }
+            return frequency;
+        } finally {
+            IOUtils.closeQuietly(termEnum);
+        }
+    }
+
+    /**
+     * @param version the version
+     * @param range   the passage the search is restricted to, or null
+     * @return the proportion of the version the passage covers
+     */
+    private double getScope(final String version, final String range) {
+        if (StringUtils.isBlank(range)) {
+            return 1;
+        }
+
+        try {
+            final Versification v11n = this.versificationService.getVersificationForVersion(version);
+            final int verses = PassageKeyFactory.instance().getKey(v11n, range).getCardinality();
+            return Math.min(1, (double) verses / (v11n.maximumOrdinal() + 1));
+            // CHECKSTYLE:OFF
+        } catch (final Exception ex) {
+            // CHECKSTYLE:ON
+            LOGGER.trace("Unable to size range [{}]", range);
+            return 1;
+        }
+    }
+
+    /**
+     * @param search the search
+     * @return the passage the search is restricted to, or null
+     */
+    private String getRange(final IndividualSearch search) {
+        final Matcher range = IndividualSearch.MAIN_RANGE.matcher(search.getQuery());
+        if (range.find()) {
+            return range.group(2);
+        }
+
+        final String mainRange = StringUtils.cleanJSwordRestriction(search.getMainRange());
+        return StringUtils.isNotBlank(mainRange) ? mainRange : search.getSecondaryRange();
+    }
+
+    /**
+     * @param search the search
+     * @return the terms of the search, prefixed by their field if not in the text, and by - if excluded
+     */
+    private List<String> getTerms(final IndividualSearch search) {
+        final String query = IndividualSearch.MAIN_RANGE.matcher(search.getQuery()).replaceAll(" ");
+        final List<String> terms = new ArrayList<String>();
+        for (final String token : TERM_SEPARATORS.split(query)) {
+            String term = token;
+            if (term.isEmpty() || AND.equals(term) || OR.equals(term) || NOT.equals(term)) {
+                continue;
+            }
+
+            if (term.charAt(0) == REQUIRED || term.charAt(0) == RELATED) {
+                term = term.substring(1);
+            }
+            if (term.isEmpty() || term.charAt(term.length() - 1) == FIELD_SEPARATOR) {
+                continue;
+            }
+
+            if (search.getType() != SearchType.TEXT && term.indexOf(FIELD_SEPARATOR) == -1) {
+                // original word searches are run against the strong numbers once their words are looked up
+                if (!STRONG_NUMBER.matcher(term).matches()) {
+                    return new ArrayList<String>(0);
+                }
+                term = LuceneIndex.FIELD_STRONG + FIELD_SEPARATOR + term;
+            }
+            terms.add(term);
+        }
+        return terms;
+    }
+
+    /**
+     * @param query the query
+     * @param terms the terms of the query
+     * @return true if verses must contain every term of the query
+     */
+    private static boolean isAllTermsRequired(final String query, final List<String> terms) {
+        if (query.contains(" " + OR + " ")) {
+            return false;
+        }
+        if (query.contains(" " + AND + " ")) {
+            return true;
+        }
+
+        // terms are otherwise only all required if each of them is marked as such
+        int required = 0;
+        for (final String token : TERM_SEPARATORS.split(query)) {
+            if (!token.isEmpty() && token.charAt(0) == REQUIRED && token.indexOf('[') == -1) {
+                required++;
+            }
+        }
+        return required >= terms.size();
+    }
+
+    /**
+     * @param type the type of search
+     * @return true if the search is run against the Bible indexes
+     */
+    private static boolean isIndexSearch(final SearchType type) {
+        return !NOMINAL_HITS.containsKey(type);
+    }
+
+    /**
+     * @return the nominal number of verses found by the searches that are not run against the Bible indexes
+     */
+    private static Map<SearchType, Long> newNominalHits() {
+        final Map<SearchType, Long> hits = new EnumMap<SearchType, Long>(SearchType.class);
+        hits.put(SearchType.SUBJECT_SIMPLE, 200L);
+        hits.put(SearchType.SUBJECT_EXTENDED, 500L);
+        hits.put(SearchType.SUBJECT_FULL, 500L);
+        hits.put(SearchType.SUBJECT_RELATED, 500L);
+        hits.put(SearchType.RELATED_VERSES, 100L);
+        hits.put(SearchType.EXACT_FORM, 300L);
+        hits.put(SearchType.TIMELINE_DESCRIPTION, 100L);
+        hits.put(SearchType.TIMELINE_REFERENCE, 100L);
+        hits.put(SearchType.PASSAGE, 100L);
+        return hits;
+    }
+
+    /**
+     * The estimate of a search
+     */
+    public static final class Estimate {
+        private final long hits;
+        private final long work;
+        private final long masterWork;
+
+        /**
+         * @param hits       the number of verses found
+         * @param work       the number of verses read from the indexes of all versions
+         * @param masterWork the number of verses read from the index of the first version
+         */
+        Estimate(final long hits, final long work, final long masterWork) {
+            this.hits = hits;
+            this.work = work;
+            this.masterWork = masterWork;
+        }
+
+        /**
+         * @return the number of verses found
+         */
+        public long getHits() {
+            return this.hits;
+        }
+
+        /**
+         * @return the number of verses read from the indexes of all versions
+         */
+        public long getWork() {
+            return this.work;
+        }
+
+        /**
+         * @return the number of verses read from the index of the first version
+         */
+        public long getMasterWork() {
+            return this.masterWork;
+        }
+    }
+}
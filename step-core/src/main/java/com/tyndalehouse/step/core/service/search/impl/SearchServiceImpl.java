@@ -73,21 +73,30 @@ import com.tyndalehouse.step.core.service.jsword.JSwordMetadataService;
 import com.tyndalehouse.step.core.service.jsword.JSwordPassageService;
 import com.tyndalehouse.step.core.service.jsword.JSwordSearchService;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+import com.tyndalehouse.step.core.service.jsword.helpers.VerseOrdinalResults;
 import com.tyndalehouse.step.core.service.search.SubjectSearchService;
 import com.tyndalehouse.step.core.utils.StringConversionUtils;
 import com.tyndalehouse.step.core.utils.StringUtils;
+import com.tyndalehouse.step.core.utils.StageTimer;
 import com.tyndalehouse.step.core.utils.language.GreekUtils;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.queryParser.MultiFieldQueryParser;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.queryParser.QueryParser.Operator;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.util.Version;
 import org.crosswire.jsword.book.Book;
 import org.crosswire.jsword.passage.DefaultKeyList;
 import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.KeyUtil;
 import org.crosswire.jsword.passage.NoSuchKeyException;
+import org.crosswire.jsword.passage.Passage;
 import org.crosswire.jsword.passage.RangedPassage;
 import org.crosswire.jsword.passage.VerseKey;
 import org.crosswire.jsword.versification.Versification;
@@ -99,8 +108,10 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -140,6 +151,13 @@ public class SearchServiceImpl implements SearchService {
     private static final Logger LOGGER = LoggerFactory.getLogger(SearchServiceImpl.class);
     private static final String STRONG_QUERY = "strong:";
     private static final String NO_FILTER = "all";
+    private static final String SIMPLIFIED_STEP_TRANSLITERATION = "simplifiedStepTransliteration";
+    // the scope is handed to the indexes one verse at a time, which Lucene limits to 1024 clauses
+    private static final int MAX_SCOPED_VERSES = 1000;
+    private static final FieldSelector STRONG_NUMBER_ONLY = new MapFieldSelector(STRONG_NUMBER_FIELD);
+    private static final Map<SearchType, StageTimer> SEARCH_TIMERS = newSearchTimers();
+    private static final StageTimer JOIN_TIMER = new StageTimer(SearchServiceImpl.class, "search", "join");
+    private static final StageTimer SORT_TIMER = new StageTimer(SearchServiceImpl.class, "sort", null);
     private final JSwordSearchService jswordSearch;
     private final TimelineService timeline;
     private final EntityIndexReader definitions;
@@ -150,6 +168,7 @@ public class SearchServiceImpl implements SearchService {
     private final SubjectSearchService subjects;
     private final BibleInformationService bibleInfoService;
     private final StrongAugmentationService strongAugmentationService;
+    private final SearchCostEstimator costEstimator;
     private VersionResolver versionResolver;
     private LexiconDefinitionService lexiconDefinitionService;
     private JSwordRelatedVersesService relatedVerseService;
@@ -162,6 +181,7 @@ public class SearchServiceImpl implements SearchService {
      * @param entityManager             the manager for all entities stored in lucene
      * @param relatedVerseService       the related verse service
      * @param strongAugmentationService the service to deal with augmentation of strong numbers
+     * @param costEstimator             the estimator planning searches before they are run
      */
     @Inject
     public SearchServiceImpl(final JSwordSearchService jswordSearch,
@@ -173,7 +193,8 @@ public class SearchServiceImpl implements SearchService {
                              final VersionResolver versionResolver,
                              final LexiconDefinitionService lexiconDefinitionService,
                              final JSwordRelatedVersesService relatedVerseService,
-                             final StrongAugmentationService strongAugmentationService) {
+                             final StrongAugmentationService strongAugmentationService,
+                             final SearchCostEstimator costEstimator) {
         this.jswordSearch = jswordSearch;
         this.jswordMetadata = jswordMetadata;
         this.versificationService = versificationService;
@@ -184,6 +205,7 @@ public class SearchServiceImpl implements SearchService {
         this.lexiconDefinitionService = lexiconDefinitionService;
         this.relatedVerseService = relatedVerseService;
         this.strongAugmentationService = strongAugmentationService;
+        this.costEstimator = costEstimator;
         this.definitions = entityManager.getReader("definition");
         this.specificForms = entityManager.getReader("specificForm");
         this.timelineEvents = entityManager.getReader("timelineEvent");
@@ -564,9 +586,13 @@ public class SearchServiceImpl implements SearchService {
      */
     private SearchResult doSearch(final SearchQuery sq) {
         final long start = System.currentTimeMillis();
+        this.costEstimator.plan(sq);
 
         SearchResult result;
         // if we've only got one search, we want to retrieve the keys, the page, etc. all in one go
+        final StageTimer.Context searchTime = sq.isIndividualSearch()
+                ? SEARCH_TIMERS.get(sq.getCurrentSearch().getType()).time(sq.getCurrentSearch().getQuery())
+                : JOIN_TIMER.time(sq.getOriginalQuery());
         try {
 
             if (sq.isIndividualSearch()) {
@@ -576,6 +602,8 @@ public class SearchServiceImpl implements SearchService {
             }
         } catch (final AbortQueryException ex) {
             result = new SearchResult();
+        } finally {
+            searchTime.stop();
         }
 
         // we split the query into separate searches
@@ -594,11 +622,43 @@ public class SearchServiceImpl implements SearchService {
         final String[] allVersions = sq.getCurrentSearch().getVersions();
         result.setMasterVersion(this.versionResolver.getShortName(allVersions[0]));
         result.setExtraVersions(StringUtils.join(allVersions, 1));
-        specialSort(sq, result);
+        result.setMasterVersionOnly(isMasterVersionOnly(sq));
+
+        final StageTimer.Context sortTime = SORT_TIMER.time();
+        try {
+            specialSort(sq, result);
+        } finally {
+            sortTime.stop();
+        }
+
         enrichWithLanguages(sq, result);
         return result;
     }
 
+    /**
+     * @param sq the search query
+     * @return true if any of the searches was restricted to the first version, to keep the query within budget
+     */
+    private boolean isMasterVersionOnly(final SearchQuery sq) {
+        for (final IndividualSearch search : sq.getSearches()) {
+            if (search.isMasterVersionOnly() && search.getVersions().length > 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return a timer for each type of search, so that their timings can be told apart
+     */
+    private static Map<SearchType, StageTimer> newSearchTimers() {
+        final Map<SearchType, StageTimer> timers = new EnumMap<SearchType, StageTimer>(SearchType.class);
+        for (final SearchType type : SearchType.values()) {
+            timers.put(type, new StageTimer(SearchServiceImpl.class, "search", type.name().toLowerCase(Locale.ENGLISH)));
+        }
+        return timers;
+    }
+
     private SearchType getBestSearchType(final SearchQuery sq) {
         IndividualSearch[] searches = sq.getSearches();
         for (IndividualSearch s : searches) {
@@ -650,9 +710,11 @@ public class SearchServiceImpl implements SearchService {
     private void specialSort(final SearchQuery sq, final SearchResult result) {
         // we only do this kind of sort if we have some strong numbers, and at least 2!
         if (result.getStrongHighlights() != null && result.getStrongHighlights().size() > 1) {
+            // results may already have been put in vocabulary order as they were retrieved
+            final boolean alreadySorted = VOCABULARY_SORT.equals(result.getOrder());
 
             result.setOrder(sq.getSortOrder());
-            if (VOCABULARY_SORT.equals(sq.getSortOrder())) {
+            if (!alreadySorted && VOCABULARY_SORT.equals(sq.getSortOrder())) {
                 sortByStrongNumber(sq, result, new GlossComparator());
             }
         }
@@ -702,6 +764,107 @@ public class SearchServiceImpl implements SearchService {
         result.setResults(specialPaging(sq, newOrder));
     }
 
+    /**
+     * @param sq      the search criteria
+     * @param strongs the strong numbers that were searched for
+     * @return true if the results can be put in vocabulary order before the verses are retrieved
+     */
+    private boolean isVocabularySortedWhileRetrieved(final SearchQuery sq, final Set<String> strongs) {
+        return sq.isAllKeys() && VOCABULARY_SORT.equals(sq.getSortOrder())
+                && strongs.size() > 1 && sq.getDefinitions() != null;
+    }
+
+    /**
+     * Puts the results in vocabulary order, i.e. grouped by the first strong number they contain, in the order of
+     * the glosses. The strong number of each verse is known from the index, by searching each strong number on its
+     * own, so only the verses of the requested page need retrieving.
+     *
+     * @param sq      the search criteria
+     * @param results all the results
+     * @param strongs the strong numbers that were searched for
+     * @return the requested page of results
+     */
+    private SearchResult buildVocabularySortedResults(final SearchQuery sq, final Key results,
+                                                      final Set<String> strongs) {
+        final Passage passage = KeyUtil.getPassage(results);
+        final List<EntityDoc> sortedDefinitions = new ArrayList<EntityDoc>(sq.getDefinitions());
+        Collections.sort(sortedDefinitions, new GlossComparator());
+
+        final List<EntityDoc> definitions = new ArrayList<EntityDoc>(strongs.size());
+        final List<Passage> versesByDefinition = new ArrayList<Passage>(strongs.size());
+        for (final EntityDoc def : filterDefinitions(sq, sortedDefinitions)) {
+            final String strong = def.get(STRONG_NUMBER_FIELD);
+            if (strongs.contains(strong)) {
+                definitions.add(def);
+                versesByDefinition.add(getVersesWithStrong(sq, strong, passage.getVersification()));
+            }
+        }
+
+        final String[] filter = sq.getCurrentSearch().getOriginalFilter();
+        final VerseOrdinalResults ordered = VerseOrdinalResults.grouped(passage, versesByDefinition,
+                filter == null || filter.length == 0);
+
+        final int pageNumber = sq.getPageNumber();
+        final int pageSize = sq.getPageSize();
+        final SearchResult result = this.jswordSearch.getResultsFromTrimmedKeys(sq, sq.getCurrentSearch().getVersions(),
+                ordered.size(), ordered.getPage(pageNumber, pageSize));
+
+        // the page was retrieved in canonical order, so we put its entries back in vocabulary order
+        final List<SearchEntry> entries = result.getResults();
+        final int[] canonicalOrdinals = ordered.getCanonicalPageOrdinals(pageNumber, pageSize);
+        if (entries.size() == canonicalOrdinals.length) {
+            final List<SearchEntry> newOrder = new ArrayList<SearchEntry>(entries.size());
+            final int end = ordered.getPageEnd(pageNumber, pageSize);
+            for (int position = ordered.getPageStart(pageNumber, pageSize); position < end; position++) {
+                final SearchEntry entry = entries.get(Arrays.binarySearch(canonicalOrdinals, ordered.getOrdinal(position)));
+                final int definition = ordered.getGroup(position);
+                if (definition != -1 && entry instanceof LexicalSearchEntry) {
+                    setDefinition((LexicalSearchEntry) entry, definitions.get(definition));
+                }
+                newOrder.add(entry);
+            }
+            result.setResults(newOrder);
+        } else {
+            LOGGER.warn("Unable to put [{}] results back in vocabulary order", entries.size());
+        }
+
+        result.setTotal(ordered.size());
+        result.setQuery(sq.getOriginalQuery());
+        result.setOrder(VOCABULARY_SORT);
+        return result;
+    }
+
+    /**
+     * @param sq     the search criteria, the current search of which is used for the versions and range
+     * @param strong the strong number, possibly augmented
+     * @param v11n   the versification the verses are wanted in
+     * @return the verses containing the strong number
+     */
+    private Passage getVersesWithStrong(final SearchQuery sq, final String strong, final Versification v11n) {
+        final IndividualSearch currentSearch = sq.getCurrentSearch();
+        final String currentQuery = currentSearch.getQuery();
+        final boolean augmented = !isDigit(strong.charAt(strong.length() - 1));
+        final String indexedStrong = augmented ? strong.substring(0, strong.length() - 1) : strong;
+
+        Key verses;
+        try {
+            currentSearch.setQuery(getQuerySyntaxForStrongs(Collections.singleton(indexedStrong), sq));
+            verses = this.jswordSearch.searchKeys(sq);
+        } finally {
+            currentSearch.setQuery(currentQuery);
+        }
+
+        if (augmented) {
+            verses = intersect(verses, this.strongAugmentationService.getVersesForAugmentedStrong(strong));
+        }
+
+        final Passage passage = KeyUtil.getPassage(verses);
+        if (v11n.equals(passage.getVersification())) {
+            return passage;
+        }
+        return KeyUtil.getPassage(VersificationsMapper.instance().map(passage, v11n));
+    }
+
     /**
      * Takes a new order and rebuilds a list of search results
      *
@@ -717,16 +880,24 @@ public class SearchServiceImpl implements SearchService {
             if (list != null) {
                 newOrder.addAll(list);
                 for (final LexicalSearchEntry e : list) {
-                    e.setStepGloss(def.get("stepGloss"));
-                    e.setStepTransliteration(def.get("stepTransliteration"));
-                    e.setAccentedUnicode(def.get("accentedUnicode"));
-                    e.setStrongNumber(def.get("strongNumber"));
+                    setDefinition(e, def);
                 }
             }
         }
         return newOrder;
     }
 
+    /**
+     * @param entry the entry
+     * @param def   the definition of the strong number the entry was sorted by
+     */
+    private void setDefinition(final LexicalSearchEntry entry, final EntityDoc def) {
+        entry.setStepGloss(def.get("stepGloss"));
+        entry.setStepTransliteration(def.get("stepTransliteration"));
+        entry.setAccentedUnicode(def.get("accentedUnicode"));
+        entry.setStrongNumber(def.get("strongNumber"));
+    }
+
     /**
      * Extracts all strong numbers from verses
      *
@@ -884,7 +1055,8 @@ public class SearchServiceImpl implements SearchService {
     }
 
     /**
-     * Runs each individual search and gives us a key that can be used to retrieve every passage
+     * Runs each individual search and gives us a key that can be used to retrieve every passage. Each search after
+     * the first is restricted to the verses the previous searches have left, when there are few enough of them.
      *
      * @param sq the search query
      * @return the key to all the results
@@ -892,47 +1064,97 @@ public class SearchServiceImpl implements SearchService {
     private Key runJoiningSearches(final SearchQuery sq) {
         Key results = null;
         do {
-            switch (sq.getCurrentSearch().getType()) {
-                case TEXT:
-                    results = intersect(results, this.jswordSearch.searchKeys(sq));
-                    break;
-                case ORIGINAL_GREEK_FORMS:
-                case ORIGINAL_HEBREW_FORMS:
-                    adaptQueryForStrongSearch(sq);
-                    results = intersect(results, this.jswordSearch.searchKeys(sq));
-                    break;
-                case ORIGINAL_GREEK_RELATED:
-                case ORIGINAL_HEBREW_RELATED:
-                    adaptQueryForRelatedStrongSearch(sq);
-                    results = intersect(results, this.jswordSearch.searchKeys(sq));
-                    break;
-                case ORIGINAL_MEANING:
-                    adaptQueryForMeaningSearch(sq);
-                    results = intersect(results, this.jswordSearch.searchKeys(sq));
-                    break;
-                case EXACT_FORM:
-                    results = intersect(results, getKeysFromOriginalText(sq));
-                    break;
-                case SUBJECT_SIMPLE:
-                case SUBJECT_EXTENDED:
-                case SUBJECT_FULL:
-                    sq.getCurrentSearch().setType(SearchType.SUBJECT_FULL);
-                    sq.getCurrentSearch().setQuery(sq.getCurrentSearch().getOriginalQuery());
-                    results = intersect(results, this.subjects.getKeys(sq));
-                    break;
-                case SUBJECT_RELATED:
-                    //no override for related topic searches
-                    results = intersect(results, this.subjects.getKeys(sq));
-                    break;
-                case RELATED_VERSES:
-                    results = intersect(results, this.relatedVerseService.getRelatedVerses(sq.getCurrentSearch().getVersions()[0], sq.getCurrentSearch().getQuery()));
-                    break;
-                default:
-                    throw new TranslatedException("refinement_not_supported", sq.getOriginalQuery(), sq
-                            .getCurrentSearch().getType().getLanguageKey());
+            final IndividualSearch currentSearch = sq.getCurrentSearch();
+            final StageTimer.Context subSearchTime = SEARCH_TIMERS.get(currentSearch.getType())
+                    .time(currentSearch.getQuery());
+            try {
+                currentSearch.setScope(getScope(sq, results));
+                results = runJoiningSearch(sq, results);
+            } finally {
+                currentSearch.setScope(null);
+                subSearchTime.stop();
+            }
+
+            // nothing left for the other searches to narrow down
+            if (results != null && results.isEmpty()) {
+                break;
             }
         } while (sq.hasMoreSearches());
-        return results;
+
+        // the searches may have been run in a different order, so the results are retrieved as per the last search
+        sq.setCurrentSearchAsLastSearch();
+        return toMasterVersification(sq, results);
+    }
+
+    /**
+     * @param sq      the search query
+     * @param results the results of the searches run so far, null if none have been run
+     * @return the verses the next search can be restricted to, or null if it should search every verse
+     */
+    private Key getScope(final SearchQuery sq, final Key results) {
+        if (!(results instanceof VerseKey) || results.getCardinality() > MAX_SCOPED_VERSES) {
+            return null;
+        }
+        return toMasterVersification(sq, results);
+    }
+
+    /**
+     * @param sq      the search query
+     * @param results the results of the searches
+     * @return the results, in the versification of the first version
+     */
+    private Key toMasterVersification(final SearchQuery sq, final Key results) {
+        if (!(results instanceof VerseKey)) {
+            return results;
+        }
+
+        final Versification masterV11n = this.versificationService.getVersificationForVersion(
+                sq.getCurrentSearch().getVersions()[0]);
+        if (masterV11n.equals(((VerseKey) results).getVersification())) {
+            return results;
+        }
+        return VersificationsMapper.instance().map(KeyUtil.getPassage(results), masterV11n);
+    }
+
+    /**
+     * Runs the current search and joins its keys to the results so far
+     *
+     * @param sq      the search query
+     * @param results the results of the previous searches, null if this is the first search
+     * @return the key to all the results so far
+     */
+    private Key runJoiningSearch(final SearchQuery sq, final Key results) {
+        switch (sq.getCurrentSearch().getType()) {
+            case TEXT:
+                return intersect(results, this.jswordSearch.searchKeys(sq));
+            case ORIGINAL_GREEK_FORMS:
+            case ORIGINAL_HEBREW_FORMS:
+                adaptQueryForStrongSearch(sq);
+                return intersect(results, this.jswordSearch.searchKeys(sq));
+            case ORIGINAL_GREEK_RELATED:
+            case ORIGINAL_HEBREW_RELATED:
+                adaptQueryForRelatedStrongSearch(sq);
+                return intersect(results, this.jswordSearch.searchKeys(sq));
+            case ORIGINAL_MEANING:
+                adaptQueryForMeaningSearch(sq);
+                return intersect(results, this.jswordSearch.searchKeys(sq));
+            case EXACT_FORM:
+                return intersect(results, getKeysFromOriginalText(sq));
+            case SUBJECT_SIMPLE:
+            case SUBJECT_EXTENDED:
+            case SUBJECT_FULL:
+                sq.getCurrentSearch().setType(SearchType.SUBJECT_FULL);
+                sq.getCurrentSearch().setQuery(sq.getCurrentSearch().getOriginalQuery());
+                return intersect(results, this.subjects.getKeys(sq));
+            case SUBJECT_RELATED:
+                //no override for related topic searches
+                return intersect(results, this.subjects.getKeys(sq));
+            case RELATED_VERSES:
+                return intersect(results, this.relatedVerseService.getRelatedVerses(sq.getCurrentSearch().getVersions()[0], sq.getCurrentSearch().getQuery()));
+            default:
+                throw new TranslatedException("refinement_not_supported", sq.getOriginalQuery(), sq
+                        .getCurrentSearch().getType().getLanguageKey());
+        }
     }
 
     /**
@@ -1185,7 +1407,9 @@ public class SearchServiceImpl implements SearchService {
         }
 
         currentSearch.setQuery(currentQuery);
-        final SearchResult textResults = buildCombinedVerseBasedResults(sq, key);
+        final SearchResult textResults = isVocabularySortedWhileRetrieved(sq, strongs)
+                ? buildVocabularySortedResults(sq, key, strongs)
+                : buildCombinedVerseBasedResults(sq, key);
 
         textResults.setStrongHighlights(new ArrayList<>(strongs));
         return textResults;
@@ -1543,11 +1767,13 @@ public class SearchServiceImpl implements SearchService {
         // first find by transliterations that we have
         final String lowerQuery = query.toLowerCase(Locale.ENGLISH);
 
-        final String simplifiedTransliteration = OriginalWordSuggestionServiceImpl
-                .getSimplifiedTransliterationClause(isGreek, lowerQuery, false);
+        // the matcher walks the term dictionary rather than spelling out every transliteration in the query
+        final Set<String> matchingTerms = this.specificForms.findMatchingTerms(SIMPLIFIED_STEP_TRANSLITERATION,
+                StringConversionUtils.getTransliterationMatcher(lowerQuery, isGreek));
 
-        final EntityDoc[] specificFormEntities = this.specificForms.searchSingleColumn(
-                "simplifiedTransliteration", simplifiedTransliteration, getFilter(isGreek));
+        final EntityDoc[] specificFormEntities = matchingTerms.isEmpty() ? new EntityDoc[0] :
+                this.specificForms.search(getAnyTermQuery(SIMPLIFIED_STEP_TRANSLITERATION, matchingTerms),
+                        Integer.MAX_VALUE, null, getFilter(isGreek), STRONG_NUMBER_ONLY);
 
         // finally, if we haven't found anything, then abort
         if (specificFormEntities.length != 0) {
@@ -1582,6 +1808,39 @@ public class SearchServiceImpl implements SearchService {
 
     }
 
+    /**
+     * @param fieldName the field
+     * @param terms     the terms, any of which can match
+     * @return a query matching any of the terms, nested so as to stay within the maximum number of clauses
+     */
+    private static Query getAnyTermQuery(final String fieldName, final Collection<String> terms) {
+        final int maxClauses = BooleanQuery.getMaxClauseCount();
+        final List<BooleanQuery> queries = new ArrayList<BooleanQuery>(terms.size() / maxClauses + 1);
+        BooleanQuery current = null;
+        for (final String term : terms) {
+            if (current == null || current.clauses().size() == maxClauses) {
+                current = new BooleanQuery();
+                queries.add(current);
+            }
+            current.add(new TermQuery(new Term(fieldName, term)), BooleanClause.Occur.SHOULD);
+        }
+
+        while (queries.size() > 1) {
+            final List<BooleanQuery> parents = new ArrayList<BooleanQuery>(queries.size() / maxClauses + 1);
+            BooleanQuery parent = null;
+            for (final BooleanQuery child : queries) {
+                if (parent == null || parent.clauses().size() == maxClauses) {
+                    parent = new BooleanQuery();
+                    parents.add(parent);
+                }
+                parent.add(child, BooleanClause.Occur.SHOULD);
+            }
+            queries.clear();
+            queries.addAll(parents);
+        }
+        return queries.get(0);
+    }
+
     /**
      * splits up the query syntax and returns a list of all strong numbers required
      *
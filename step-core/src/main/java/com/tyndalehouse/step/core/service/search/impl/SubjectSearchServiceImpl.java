@@ -45,6 +45,8 @@ import com.tyndalehouse.step.core.models.search.ExpandableSubjectHeadingEntry;
 import com.tyndalehouse.step.core.models.search.SearchEntry;
 import com.tyndalehouse.step.core.models.search.SearchResult;
 import com.tyndalehouse.step.core.models.search.SubjectHeadingSearchEntry;
+import com.tyndalehouse.step.core.service.helpers.VerseReferenceIndex;
+import com.tyndalehouse.step.core.service.helpers.SubjectReferenceIndexStore;
 import com.tyndalehouse.step.core.service.impl.IndividualSearch;
 import com.tyndalehouse.step.core.service.impl.SearchQuery;
 import com.tyndalehouse.step.core.service.jsword.JSwordMetadataService;
@@ -64,7 +66,10 @@ import org.crosswire.jsword.passage.Key;
 import org.crosswire.jsword.passage.KeyUtil;
 import org.crosswire.jsword.passage.Passage;
 import org.crosswire.jsword.passage.RangedPassage;
+import org.crosswire.jsword.passage.RestrictionType;
 import org.crosswire.jsword.passage.VerseKey;
+import org.crosswire.jsword.passage.VerseRange;
+import org.crosswire.jsword.versification.BibleBook;
 import org.crosswire.jsword.versification.Versification;
 import org.crosswire.jsword.versification.VersificationsMapper;
 import org.crosswire.jsword.versification.system.Versifications;
@@ -74,6 +79,7 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
@@ -101,24 +107,28 @@ public class SubjectSearchServiceImpl extends AbstractSubjectSearchServiceImpl i
     private final JSwordMetadataService jSwordMetadataService;
     private final JSwordModuleService jSwordModuleService;
     private final JSwordVersificationService jSwordVersificationService;
+    private final SubjectReferenceIndexStore subjectReferences;
 
     /**
      * Instantiates a new subject search service impl.
      *
-     * @param entityManager an entity manager providing access to all the different entities.
-     * @param jswordSearch  the search service for text searching in jsword
+     * @param entityManager     an entity manager providing access to all the different entities.
+     * @param jswordSearch      the search service for text searching in jsword
+     * @param subjectReferences the precomputed subjects of each verse
      */
     @Inject
     public SubjectSearchServiceImpl(final EntityManager entityManager,
                                     final JSwordSearchService jswordSearch,
                                     final JSwordMetadataService jSwordMetadataService,
                                     final JSwordModuleService jSwordModuleService,
-                                    final JSwordVersificationService jSwordVersificationService) {
+                                    final JSwordVersificationService jSwordVersificationService,
+                                    final SubjectReferenceIndexStore subjectReferences) {
         super(jSwordVersificationService);
         this.jswordSearch = jswordSearch;
         this.jSwordMetadataService = jSwordMetadataService;
         this.jSwordModuleService = jSwordModuleService;
         this.jSwordVersificationService = jSwordVersificationService;
+        this.subjectReferences = subjectReferences;
         this.naves = entityManager.getReader("nave");
     }
 
@@ -132,16 +142,88 @@ public class SubjectSearchServiceImpl extends AbstractSubjectSearchServiceImpl i
                     Integer.valueOf(count).toString(),
                     Integer.valueOf(JSwordPassageService.MAX_VERSES_RETRIEVED).toString());
         }
+
+        final EntityDoc[] results = getDocsByInputReference(versions, references);
+        if (results != null) {
+            return toSubjectEntries("sr=" + allReferencesAndCounts.getValue(), results);
+        }
         return searchByReference(allReferencesAndCounts.getValue());
     }
 
     @Override
     public SearchResult searchByReference(final String referenceQuerySyntax) {
+        //referenceQuerySyntax could be a full referenceQuerySyntax, or could be the start of a referenceQuerySyntax here
+        return toSubjectEntries("sr=" + referenceQuerySyntax, getDocsByExpandedReferences(referenceQuerySyntax));
+    }
+
+    @Override
+    public SearchResult searchByReference(final Passage reference) {
+        final VerseReferenceIndex index = this.subjectReferences.getNaveIndex(this.naves);
+        if (index == null) {
+            return null;
+        }
+
+        final BitSet subjects = new BitSet(index.getNumEntries());
+        addSubjects(index, reference, subjects);
+        return toSubjectEntries("sr=" + reference.getOsisRef(), this.naves.getDocuments(index.getDocIds(subjects), null));
+    }
+
+    /**
+     * Finds the subjects referencing the reference input by the user, within the books of the versions, from the
+     * precomputed subjects of each verse
+     *
+     * @param versions  the versions, the first one being used to resolve the reference
+     * @param mainRange the reference input by the user
+     * @return the subjects, in display order, or null if they need to be searched for in Lucene
+     */
+    private EntityDoc[] getDocsByInputReference(final String[] versions, final String mainRange) {
+        if (isBlank(mainRange)) {
+            return null;
+        }
+
+        final VerseReferenceIndex index = this.subjectReferences.getNaveIndex(this.naves);
+        if (index == null) {
+            return null;
+        }
+
+        final BitSet subjects = new BitSet(index.getNumEntries());
+        addSubjects(index, KeyUtil.getPassage(getInputReferenceKey(versions[0], mainRange)), subjects);
+
+        final Set<BibleBook> books = getBookListForVersions(versions);
+        //same assumption as for the lucene fragment, 66 books cover all the subjects
+        if (books.size() < 66) {
+            final BitSet inScope = new BitSet(index.getNumEntries());
+            for (final BibleBook book : books) {
+                index.addEntries(book, inScope);
+            }
+            subjects.and(inScope);
+        }
+        return this.naves.getDocuments(index.getDocIds(subjects), null);
+    }
+
+    /**
+     * Adds the subjects referencing any verse of a passage
+     *
+     * @param index     the precomputed subjects of each verse
+     * @param reference the passage
+     * @param subjects  the subjects found so far
+     */
+    private void addSubjects(final VerseReferenceIndex index, final Passage reference, final BitSet subjects) {
+        final Iterator<VerseRange> ranges = reference.rangeIterator(RestrictionType.NONE);
+        while (ranges.hasNext()) {
+            index.addEntries(ranges.next(), subjects);
+        }
+    }
+
+    /**
+     * @param query   the query to report
+     * @param results the nave documents
+     * @return the subjects as expandable headings
+     */
+    private SearchResult toSubjectEntries(final String query, final EntityDoc[] results) {
         final SearchResult sr = new SearchResult();
-        sr.setQuery("sr=" + referenceQuerySyntax);
+        sr.setQuery(query);
 
-        //referenceQuerySyntax could be a full referenceQuerySyntax, or could be the start of a referenceQuerySyntax here
-        final EntityDoc[] results = getDocsByExpandedReferences(referenceQuerySyntax);
         final List<SearchEntry> resultList = new ArrayList<SearchEntry>(results.length);
         for (final EntityDoc d : results) {
             final ExpandableSubjectHeadingEntry entry = new ExpandableSubjectHeadingEntry(d.get("root"),
@@ -212,6 +294,11 @@ public class SubjectSearchServiceImpl extends AbstractSubjectSearchServiceImpl i
             case SUBJECT_FULL:
                 return naveDocsToReference(sq, this.getExtendedNaveDocs(sq));
             case SUBJECT_RELATED:
+                final EntityDoc[] relatedDocs = getDocsByInputReference(sq.getCurrentSearch().getVersions(),
+                        sq.getCurrentSearch().getQuery());
+                if (relatedDocs != null) {
+                    return naveDocsToReference(sq, relatedDocs);
+                }
                 return naveDocsToReference(sq, getDocsByExpandedReferences(this.getInputReferenceForNaveSearch(
                         sq.getCurrentSearch().getVersions(),
                         sq.getCurrentSearch().getQuery()).getValue()));
@@ -431,7 +518,7 @@ public class SubjectSearchServiceImpl extends AbstractSubjectSearchServiceImpl i
         sb.append(") ");
 
         //construct query
-        sb.append(this.getInputReferenceForNaveSearch(sq.getCurrentSearch().getVersions(), sq.getCurrentSearch().getMainRange()).getValue());
+        sb.append(this.getInputReferenceForNaveSearch(sq.getCurrentSearch().getVersions(), getRangeForNaveSearch(sq.getCurrentSearch())).getValue());
 
         try {
             return this.naves.search(this.naves.getQueryParser(false, true, "rootStem").parse(sb.toString()), Integer.MAX_VALUE, NAVE_SORT, null);
@@ -458,7 +545,7 @@ public class SubjectSearchServiceImpl extends AbstractSubjectSearchServiceImpl i
         query.append(" fullHeaderAnalyzed:");
         query.append(queryBody);
         query.append(") ");
-        query.append(this.getInputReferenceForNaveSearch(sq.getCurrentSearch().getVersions(), sq.getCurrentSearch().getMainRange()).getValue());
+        query.append(this.getInputReferenceForNaveSearch(sq.getCurrentSearch().getVersions(), getRangeForNaveSearch(sq.getCurrentSearch())).getValue());
 
         try {
             return this.naves.search(this.naves.getQueryParser(false, true, "rootStem").parse(query.toString()), Integer.MAX_VALUE, NAVE_SORT, null);
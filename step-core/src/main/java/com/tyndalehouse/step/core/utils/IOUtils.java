@@ -33,13 +33,17 @@
 package com.tyndalehouse.step.core.utils;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 
+import org.crosswire.common.util.CWProject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+
 /**
  * Some IO Utils for use in the STEP application.
  * 
@@ -69,6 +73,37 @@ public final class IOUtils {
         }
     }
 
+    /**
+     * Gives a file kept in the home of the application, i.e. under the JSword project directory
+     * 
+     * @param appHome the home of the application
+     * @param name the name of the file
+     * @return the file, which may not exist yet
+     */
+    public static File getHomeFile(final String appHome, final String name) {
+        try {
+            return new File(new File(CWProject.instance().getWriteableProjectSubdir(appHome, true)), name);
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to create home directory", e);
+        }
+    }
+
+    /**
+     * Gives a directory kept in the home of the application, creating it if required
+     * 
+     * @param appHome the home of the application
+     * @param name the name of the directory
+     * @return the directory, or null if it cannot be created
+     */
+    public static File getHomeDirectory(final String appHome, final String name) {
+        final File directory = getHomeFile(appHome, name);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            LOG.warn("Unable to create [{}]", directory);
+            return null;
+        }
+        return directory;
+    }
+
     /**
      * Read a classpath resource into a String
      * 
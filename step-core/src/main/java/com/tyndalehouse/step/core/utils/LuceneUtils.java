@@ -1,5 +1,6 @@
 package com.tyndalehouse.step.core.utils;
 
+import com.tyndalehouse.step.core.data.common.TermMatcher;
 import com.tyndalehouse.step.core.data.common.TermsAndMaxCount;
 import com.tyndalehouse.step.core.exceptions.StepInternalException;
 import org.apache.lucene.index.Term;
@@ -12,6 +13,7 @@ import org.apache.lucene.search.SingleTermEnum;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * Utilities to help with index reading
@@ -96,6 +98,49 @@ public final class LuceneUtils {
         }
     }
 
+    /**
+     * Reads the parts of the term dictionary starting with the matcher's prefixes, and keeps the terms it matches
+     *
+     * @param searcher  the index searcher
+     * @param fieldName the name of the field
+     * @param matcher   the matcher deciding which terms are wanted
+     * @return the terms matched
+     */
+    public static Set<String> getAllTermsMatching(final IndexSearcher searcher, final String fieldName,
+                                                  final TermMatcher matcher) {
+        final Set<String> terms = new HashSet<String>();
+        final Term field = new Term(fieldName);
+
+        // prefixes are visited in order, so that the dictionary is read front to back, and a prefix already
+        // covered by a shorter one is not scanned twice
+        String lastPrefix = null;
+        for (final String prefix : new TreeSet<String>(matcher.getPrefixes())) {
+            if (prefix.length() == 0 || lastPrefix != null && prefix.startsWith(lastPrefix)) {
+                continue;
+            }
+            lastPrefix = prefix;
+
+            TermEnum termEnum = null;
+            try {
+                termEnum = new PrefixTermEnum(searcher.getIndexReader(), field.createTerm(prefix));
+                while (termEnum.term() != null) {
+                    final String termValue = termEnum.term().text();
+                    if (matcher.matches(termValue)) {
+                        terms.add(termValue);
+                    }
+                    if (!termEnum.next()) {
+                        break;
+                    }
+                }
+            } catch (IOException ex) {
+                throw new StepInternalException(ex.getMessage(), ex);
+            } finally {
+                IOUtils.closeQuietly(termEnum);
+            }
+        }
+        return terms;
+    }
+
     private static TermsAndMaxCount getBlankTermsAndMaxCount() {
         TermsAndMaxCount termsAndMaxCount = new TermsAndMaxCount();
         termsAndMaxCount.setTerms(new HashSet<String>());
@@ -0,0 +1,41 @@
+package com.tyndalehouse.step.core.utils;
+
+import java.util.Locale;
+
+/**
+ * The locale in which the current thread renders text, e.g. book names, when it isn't the locale of the client session,
+ * or when there is no client session at all, as is the case for background threads rendering passages ahead of time.
+ *
+ * @author chrisburrell
+ */
+public final class RenderingLocale {
+    private static final ThreadLocal<Locale> CURRENT = new ThreadLocal<Locale>();
+
+    /**
+     * preventing instantiation
+     */
+    private RenderingLocale() {
+        // no op
+    }
+
+    /**
+     * @return the locale the current thread renders text in, or null to use the locale of the client session
+     */
+    public static Locale get() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @param locale the locale the current thread renders text in, or null to use the locale of the client session
+     * @return the locale previously set, to be restored once rendering is over
+     */
+    public static Locale set(final Locale locale) {
+        final Locale previous = CURRENT.get();
+        if (locale == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(locale);
+        }
+        return previous;
+    }
+}
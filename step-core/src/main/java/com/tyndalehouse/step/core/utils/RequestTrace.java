@@ -0,0 +1,213 @@
+package com.tyndalehouse.step.core.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records the stages a single request goes through, along with how long each of them took. A trace is bound to the
+ * thread serving the request, between calls to {@link #begin(String, String)} and {@link #end()}. Spans started on a
+ * thread that isn't tracing a request cost nothing and record nothing. Only the first {@link #MAX_SPANS} spans of a
+ * request are kept, the others are only counted.
+ *
+ * @author chrisburrell
+ */
+public final class RequestTrace {
+    private static final ThreadLocal<RequestTrace> CURRENT = new ThreadLocal<RequestTrace>();
+    public static final int MAX_SPANS = 500;
+    private static final Span NO_SPAN = new Span(null, null, null, 0, 0);
+    private final String request;
+    private final String arguments;
+    private final long startTime;
+    private final long startNanos;
+    private final List<Span> spans = new ArrayList<Span>();
+    private int depth;
+    private int droppedSpans;
+    private long durationNanos;
+
+    /**
+     * @param request   the request being traced
+     * @param arguments the arguments to the request
+     */
+    private RequestTrace(final String request, final String arguments) {
+        this.request = request;
+        this.arguments = arguments;
+        this.startTime = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Starts tracing the request served by the current thread
+     *
+     * @param request   the request, typically its path
+     * @param arguments the arguments to the request
+     */
+    public static void begin(final String request, final String arguments) {
+        CURRENT.set(new RequestTrace(request, arguments));
+    }
+
+    /**
+     * Stops tracing the request served by the current thread
+     *
+     * @return the trace of the request, or null if the request wasn't being traced
+     */
+    public static RequestTrace end() {
+        final RequestTrace trace = CURRENT.get();
+        if (trace == null) {
+            return null;
+        }
+
+        CURRENT.remove();
+        trace.durationNanos = System.nanoTime() - trace.startNanos;
+        return trace;
+    }
+
+    /**
+     * @return true if the current thread is tracing a request
+     */
+    public static boolean isActive() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * Starts a span within the trace of the current request. Spans started whilst another one is running are nested
+     * within it.
+     *
+     * @param stage  the name of the stage
+     * @param detail the detail about what the stage is doing, only converted to a string if the request is traced
+     * @return the span, to be stopped once the stage is over
+     */
+    public static Span span(final String stage, final Object detail) {
+        final RequestTrace trace = CURRENT.get();
+        if (trace == null) {
+            return NO_SPAN;
+        }
+
+        if (trace.spans.size() >= MAX_SPANS) {
+            trace.droppedSpans++;
+            return NO_SPAN;
+        }
+
+        final Span span = new Span(trace, stage, detail == null ? null : detail.toString(), trace.depth++,
+                System.nanoTime() - trace.startNanos);
+        trace.spans.add(span);
+        return span;
+    }
+
+    /**
+     * @return the request being traced
+     */
+    public String getRequest() {
+        return this.request;
+    }
+
+    /**
+     * @return the arguments to the request
+     */
+    public String getArguments() {
+        return this.arguments;
+    }
+
+    /**
+     * @return the time at which the request started, in milliseconds since the epoch
+     */
+    public long getStartTime() {
+        return this.startTime;
+    }
+
+    /**
+     * @return the time the whole request took, in milliseconds
+     */
+    public long getDurationMillis() {
+        return this.durationNanos / 1000000L;
+    }
+
+    /**
+     * @return the spans recorded, in the order in which they were started
+     */
+    public List<Span> getSpans() {
+        return Collections.unmodifiableList(this.spans);
+    }
+
+    /**
+     * @return the number of spans started after the first {@link #MAX_SPANS}, which weren't kept
+     */
+    public int getDroppedSpans() {
+        return this.droppedSpans;
+    }
+
+    /**
+     * A single stage of a request
+     */
+    public static final class Span {
+        private final RequestTrace trace;
+        private final String stage;
+        private final String detail;
+        private final int depth;
+        private final long offsetNanos;
+        private long durationNanos = -1;
+
+        /**
+         * @param trace       the trace the span belongs to
+         * @param stage       the name of the stage
+         * @param detail      the detail of the stage
+         * @param depth       how deeply nested the span is
+         * @param offsetNanos the time at which the span started, relative to the start of the request
+         */
+        private Span(final RequestTrace trace, final String stage, final String detail,
+                     final int depth, final long offsetNanos) {
+            this.trace = trace;
+            this.stage = stage;
+            this.detail = detail;
+            this.depth = depth;
+            this.offsetNanos = offsetNanos;
+        }
+
+        /**
+         * Stops the span. Stopping a span more than once has no effect.
+         */
+        public void stop() {
+            if (this.trace == null || this.durationNanos >= 0) {
+                return;
+            }
+
+            this.durationNanos = System.nanoTime() - this.trace.startNanos - this.offsetNanos;
+            this.trace.depth--;
+        }
+
+        /**
+         * @return the name of the stage
+         */
+        public String getStage() {
+            return this.stage;
+        }
+
+        /**
+         * @return the detail of the stage, may be null
+         */
+        public String getDetail() {
+            return this.detail;
+        }
+
+        /**
+         * @return how deeply nested the span is, 0 for the top level
+         */
+        public int getDepth() {
+            return this.depth;
+        }
+
+        /**
+         * @return the time at which the span started, in milliseconds since the start of the request
+         */
+        public double getOffsetMillis() {
+            return this.offsetNanos / 1000000d;
+        }
+
+        /**
+         * @return the time the span took, in milliseconds, or -1 if the span was never stopped
+         */
+        public double getDurationMillis() {
+            return this.durationNanos < 0 ? -1 : this.durationNanos / 1000000d;
+        }
+    }
+}
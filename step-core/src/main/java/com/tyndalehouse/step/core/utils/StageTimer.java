@@ -0,0 +1,78 @@
+package com.tyndalehouse.step.core.utils;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.core.TimerContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times a stage of a request, both in the metrics registry, where timings are aggregated across all requests, and in
+ * the trace of the current request, if it is being traced.
+ *
+ * @author chrisburrell
+ */
+public final class StageTimer {
+    private final Timer timer;
+    private final String stage;
+
+    /**
+     * @param owner the class owning the stage
+     * @param name  the name of the stage
+     * @param scope the scope of the stage, may be null
+     */
+    public StageTimer(final Class<?> owner, final String name, final String scope) {
+        this.timer = Metrics.newTimer(owner, name, scope, TimeUnit.MILLISECONDS, TimeUnit.SECONDS);
+        this.stage = owner.getSimpleName() + '.' + name + (scope == null ? "" : '.' + scope);
+    }
+
+    /**
+     * @return the context to stop once the stage is over
+     */
+    public Context time() {
+        return time(null);
+    }
+
+    /**
+     * @param detail the detail of what the stage is doing, only recorded if the request is traced
+     * @return the context to stop once the stage is over
+     */
+    public Context time(final Object detail) {
+        return new Context(this.timer.time(), RequestTrace.span(this.stage, detail));
+    }
+
+    /**
+     * @param subject what the stage is working on, e.g. a version
+     * @param detail  the detail of what the stage is doing
+     * @return the context to stop once the stage is over, the detail being joined to the subject only if the request
+     *         is traced
+     */
+    public Context time(final Object subject, final Object detail) {
+        return time(RequestTrace.isActive() ? subject + ": " + detail : null);
+    }
+
+    /**
+     * A running stage
+     */
+    public static final class Context {
+        private final TimerContext timerContext;
+        private final RequestTrace.Span span;
+
+        /**
+         * @param timerContext the running timer
+         * @param span         the span in the trace of the request
+         */
+        private Context(final TimerContext timerContext, final RequestTrace.Span span) {
+            this.timerContext = timerContext;
+            this.span = span;
+        }
+
+        /**
+         * Stops timing the stage
+         */
+        public void stop() {
+            this.span.stop();
+            this.timerContext.stop();
+        }
+    }
+}
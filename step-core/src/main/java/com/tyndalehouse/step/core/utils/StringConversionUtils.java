@@ -35,6 +35,7 @@ package com.tyndalehouse.step.core.utils;
 
 import com.tyndalehouse.step.core.utils.language.GreekUtils;
 import com.tyndalehouse.step.core.utils.language.HebrewUtils;
+import com.tyndalehouse.step.core.utils.language.transliteration.TransliterationMatcher;
 import com.tyndalehouse.step.core.utils.language.transliteration.TransliterationOption;
 import com.tyndalehouse.step.core.utils.language.transliteration.TransliterationRule;
 import org.slf4j.Logger;
@@ -378,6 +379,25 @@ public final class StringConversionUtils {
                 HebrewUtils.getTransliterationRules()));
     }
 
+    /**
+     * Removes the mark-up from the transliteration and compiles the same rules as
+     * {@link #adaptTransliterationForQuerying(String, boolean)} into a matcher, which accepts every option without
+     * listing them, and so without limiting their number.
+     *
+     * @param stepTransliteration the transliteration
+     * @param isGreek             true if greek
+     * @return the matcher of all possible transliterations
+     */
+    public static TransliterationMatcher getTransliterationMatcher(final String stepTransliteration,
+                                                                   final boolean isGreek) {
+        if (isGreek) {
+            return new TransliterationMatcher(removeGreekTranslitMarkUpForIndexing(stepTransliteration),
+                    GreekUtils.getTransliterationRules());
+        }
+        return new TransliterationMatcher(removeHebrewTranslitMarkUpForIndexing(stepTransliteration),
+                HebrewUtils.getTransliterationRules());
+    }
+
     private static List<TransliterationOption> trimmedTranslits(final List<TransliterationOption> transliterationRules) {
         return transliterationRules.subList(0, Math.min(transliterationRules.size(), MAX_TRANSLITERATIONS));
 
@@ -55,7 +55,10 @@ public final class ContemporaryLanguageUtils {
      */
     public static Locale getLocaleFromTag(final String tag) {
         final String[] tagParts = tag.split("[-_]");
-        if (tagParts.length == 1) {
+        if (tagParts.length == 0) {
+            // only separators, e.g. "-"
+            return Locale.ROOT;
+        } else if (tagParts.length == 1) {
             return new Locale(tag);
         } else {
             return new Locale(tagParts[0], tagParts[1]);
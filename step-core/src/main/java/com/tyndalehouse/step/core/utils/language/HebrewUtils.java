@@ -9,6 +9,7 @@ import org.slf4j.LoggerFactory;
 import com.tyndalehouse.step.core.utils.language.hebrew.ConsonantType;
 import com.tyndalehouse.step.core.utils.language.hebrew.HebrewLetter;
 import com.tyndalehouse.step.core.utils.language.hebrew.HebrewLetterType;
+import com.tyndalehouse.step.core.utils.language.hebrew.HebrewTransliterator;
 import com.tyndalehouse.step.core.utils.language.hebrew.SoundingType;
 import com.tyndalehouse.step.core.utils.language.hebrew.VowelLengthType;
 import com.tyndalehouse.step.core.utils.language.hebrew.VowelStressType;
@@ -264,6 +265,21 @@ public final class HebrewUtils {
      * @return the transliteration
      */
     public static String transliterateHebrew(final String inputString) {
+        if (LOGGER.isTraceEnabled()) {
+            // only the letter by letter analysis can be output
+            return transliterateHebrewByLetters(inputString);
+        }
+        return HebrewTransliterator.transliterate(inputString);
+    }
+
+    /**
+     * vowel-based hebrew transliteration, analysing each letter into a {@link HebrewLetter}. This is the reference for
+     * {@link HebrewTransliterator}, which is used otherwise.
+     *
+     * @param inputString the input string
+     * @return the transliteration
+     */
+    static String transliterateHebrewByLetters(final String inputString) {
         final HebrewLetter[] letters = new HebrewLetter[inputString.length()];
         final char[] input = inputString.toCharArray();
         try {
@@ -0,0 +1,829 @@
+package com.tyndalehouse.step.core.utils.language.hebrew;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Transliterates pointed Hebrew with the same rules as the letter by letter analysis in
+ * {@link com.tyndalehouse.step.core.utils.language.HebrewUtils}, but keeps its analysis in primitive arrays instead of
+ * {@link HebrewLetter}s, and looks pointing up in bit masks instead of lists of marks. Each thread has its own
+ * transliterator, whose arrays and output buffer are re-used from one word to the next, so that the only object created
+ * for a word is the transliteration itself.
+ * <p/>
+ * The analysis still needs to look both ways: stresses are only known once all accents have been read, and whether a
+ * sheva is sounded depends on the stresses. Letters are therefore classified in a first sweep, stresses marked in a
+ * second, and shevas, alephs and ayins sounded or silenced in a third, before the output is written.
+ *
+ * @author chrisburrell
+ */
+public final class HebrewTransliterator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HebrewTransliterator.class);
+    private static final int INITIAL_CAPACITY = 32;
+
+    private static final char HYPHEN = '.';
+    private static final char MAQAF_HYPHEN = '-';
+    private static final char OPEN_QUOTE = '\u2018';
+    private static final char H_WITH_DOT = '\u1e25';
+
+    private static final char ETNAHTA = 0x0591;
+    private static final char GERESH = 0x059C;
+    private static final char GERESH_MUQDAM = 0x059D;
+    private static final char ZINOR = 0x05AE;
+    private static final char SHEVA = 0x05B0;
+    private static final char HATAF_SEGOL = 0x05B1;
+    private static final char HATAF_PATAH = 0x05B2;
+    private static final char HATAF_QAMATS = 0x05B3;
+    private static final char HIRIQ = 0x05B4;
+    private static final char TSERE = 0x05B5;
+    private static final char SEGOL = 0x05B6;
+    private static final char PATAH = 0x05B7;
+    private static final char QAMATS = 0x05B8;
+    private static final char HOLAM = 0x05B9;
+    private static final char QAMATS_2 = 0x05BA;
+    private static final char QUBUTS = 0x05BB;
+    private static final char DAGESH = 0x05BC;
+    private static final char METEG = 0x05BD;
+    private static final char MAQAF = 0x05BE;
+    private static final char SHIN_DOT = 0x05C1;
+    private static final char QAMATS_QATAN = 0x05C7;
+    private static final char ALEPH = 0x05D0;
+    private static final char BET = 0x05D1;
+    private static final char GIMEL = 0x05D2;
+    private static final char DALET = 0x05D3;
+    private static final char HE = 0x05D4;
+    private static final char VAV = 0x05D5;
+    private static final char ZAYIN = 0x05D6;
+    private static final char HET = 0x05D7;
+    private static final char TET = 0x05D8;
+    private static final char YOD = 0x05D9;
+    private static final char FINAL_KAF = 0x05DA;
+    private static final char KAF = 0x05DB;
+    private static final char LAMED = 0x05DC;
+    private static final char FINAL_MEM = 0x05DD;
+    private static final char MEM = 0x05DE;
+    private static final char FINAL_NUN = 0x05DF;
+    private static final char NUN = 0x05E0;
+    private static final char SAMEKH = 0x05E1;
+    private static final char AYIN = 0x05E2;
+    private static final char FINAL_PE = 0x05E3;
+    private static final char PE = 0x05E4;
+    private static final char FINAL_TSADI = 0x05E5;
+    private static final char TSADI = 0x05E6;
+    private static final char QOF = 0x05E7;
+    private static final char RESH = 0x05E8;
+    private static final char SIN = 0x05E9;
+    private static final char TAV = 0x05EA;
+
+    // sets of pointing, one bit per mark from SHEVA to QAMATS_QATAN
+    private static final int VERY_SHORT_VOWELS = marks(SHEVA, HATAF_SEGOL, HATAF_PATAH, HATAF_QAMATS);
+    private static final int LONG_VOWELS = marks(TSERE, QAMATS, QAMATS_2, HOLAM);
+    private static final int ALL_VOWELS = marks(QAMATS_QATAN, SHEVA, HATAF_SEGOL, HATAF_PATAH, HATAF_QAMATS, HIRIQ,
+            TSERE, SEGOL, PATAH, QAMATS, HOLAM, QAMATS_2, QUBUTS);
+    private static final int YOD_VOWELS_BEFORE = marks(HIRIQ, TSERE, SEGOL, QAMATS, QAMATS_2);
+    private static final int VOWELS_OR_DAGESH = ALL_VOWELS | marks(DAGESH);
+    private static final int VAV_CONSONANT_VOWELS = marks(HIRIQ, TSERE, SEGOL, SHEVA, PATAH, QAMATS, QUBUTS,
+            QAMATS_QATAN);
+    private static final int QAMATS_AND_HOLAM = marks(QAMATS, HOLAM);
+
+    // the output of letters which always transliterate the same way, from SHEVA to TAV
+    private static final String[] FIXED_OUTPUT = new String[TAV - SHEVA + 1];
+
+    // letter types
+    private static final byte OTHER = 0;
+    private static final byte CONSONANT = 1;
+    private static final byte VOWEL = 2;
+    private static final byte ACCENT = 3;
+
+    // vowel lengths
+    private static final byte VERY_SHORT = 1;
+    private static final byte SHORT = 2;
+    private static final byte LONG = 3;
+
+    // sounding
+    private static final byte SILENT = 1;
+    private static final byte SOUNDING = 2;
+
+    // consonant types
+    private static final byte NO_DAGESH = 1;
+    private static final byte SINGLE = 2;
+    private static final byte DOUBLE = 3;
+
+    private static final ThreadLocal<HebrewTransliterator> TRANSLITERATORS = new ThreadLocal<HebrewTransliterator>() {
+        @Override
+        protected HebrewTransliterator initialValue() {
+            return new HebrewTransliterator();
+        }
+    };
+
+    static {
+        setFixedOutput("a", HATAF_PATAH, PATAH, QAMATS, QAMATS_2);
+        setFixedOutput("e", HATAF_SEGOL, TSERE, SEGOL);
+        setFixedOutput("i", HIRIQ);
+        setFixedOutput("o", HATAF_QAMATS, QAMATS_QATAN);
+        setFixedOutput("u", QUBUTS);
+        setFixedOutput("g", GIMEL);
+        setFixedOutput("d", DALET);
+        setFixedOutput("h", HE);
+        setFixedOutput("z", ZAYIN);
+        setFixedOutput("ch", HET);
+        setFixedOutput("t", TET, TAV);
+        setFixedOutput("l", LAMED);
+        setFixedOutput("m", FINAL_MEM, MEM);
+        setFixedOutput("n", FINAL_NUN, NUN);
+        setFixedOutput("s", SAMEKH);
+        setFixedOutput("ts", FINAL_TSADI, TSADI);
+        setFixedOutput("q", QOF);
+        setFixedOutput("r", RESH);
+    }
+
+    private char[] input = new char[INITIAL_CAPACITY];
+    private byte[] type = new byte[INITIAL_CAPACITY];
+    private byte[] length = new byte[INITIAL_CAPACITY];
+    private byte[] sounding = new byte[INITIAL_CAPACITY];
+    private byte[] consonantType = new byte[INITIAL_CAPACITY];
+    private boolean[] stressed = new boolean[INITIAL_CAPACITY];
+    private boolean[] shureq = new boolean[INITIAL_CAPACITY];
+    private boolean[] shin = new boolean[INITIAL_CAPACITY];
+    private final StringBuilder output = new StringBuilder(INITIAL_CAPACITY * 2);
+    private int size;
+
+    /**
+     * use {@link #transliterate(String)}
+     */
+    private HebrewTransliterator() {
+        // re-used by a single thread
+    }
+
+    /**
+     * @param inputString pointed Hebrew
+     * @return the transliteration
+     */
+    public static String transliterate(final String inputString) {
+        return TRANSLITERATORS.get().transliterateWord(inputString);
+    }
+
+    /**
+     * @param value   the output
+     * @param letters the letters which always have that output
+     */
+    private static void setFixedOutput(final String value, final char... letters) {
+        for (final char letter : letters) {
+            FIXED_OUTPUT[letter - SHEVA] = value;
+        }
+    }
+
+    /**
+     * @param pointing the marks
+     * @return the bit mask of the marks
+     */
+    private static int marks(final char... pointing) {
+        int mask = 0;
+        for (final char c : pointing) {
+            mask |= 1 << (c - SHEVA);
+        }
+        return mask;
+    }
+
+    /**
+     * @param inputString pointed Hebrew
+     * @return the transliteration
+     */
+    private String transliterateWord(final String inputString) {
+        reset(inputString);
+        try {
+            classify();
+            final boolean stressedWord = stress();
+            sound();
+            return write(stressedWord);
+            // CHECKSTYLE:OFF
+        } catch (final RuntimeException ex) {
+            LOGGER.error("Error occured during Hebrew transliteration of [{}]", inputString, ex);
+            throw ex;
+        }
+        // CHECKSTYLE:ON
+    }
+
+    /**
+     * Copies the input into the buffers, growing them if required, and clears the analysis of the previous word
+     *
+     * @param inputString the input
+     */
+    private void reset(final String inputString) {
+        this.size = inputString.length();
+        if (this.size > this.input.length) {
+            final int capacity = Math.max(this.size, this.input.length * 2);
+            this.input = new char[capacity];
+            this.type = new byte[capacity];
+            this.length = new byte[capacity];
+            this.sounding = new byte[capacity];
+            this.consonantType = new byte[capacity];
+            this.stressed = new boolean[capacity];
+            this.shureq = new boolean[capacity];
+            this.shin = new boolean[capacity];
+        }
+
+        inputString.getChars(0, this.size, this.input, 0);
+        for (int ii = 0; ii < this.size; ii++) {
+            this.type[ii] = OTHER;
+            this.length[ii] = 0;
+            this.sounding[ii] = 0;
+            this.consonantType[ii] = 0;
+            this.stressed[ii] = false;
+            this.shureq[ii] = false;
+            this.shin[ii] = false;
+        }
+        this.output.setLength(0);
+    }
+
+    /**
+     * Works out what each character is: consonant, vowel (including vav and yod used as vowels) or accent, the length of
+     * vowels and the dagesh of consonants
+     */
+    private void classify() {
+        for (int ii = 0; ii < this.size; ii++) {
+            final char c = this.input[ii];
+            if (isHebrewConsonant(c)) {
+                classifyConsonant(ii);
+                classifyDagesh(ii);
+            } else if (isHebrewVowel(c)) {
+                this.type[ii] = VOWEL;
+                this.length[ii] = getVowelLength(ii);
+            } else if (c != DAGESH && (c >= ETNAHTA && c <= ZINOR || c == METEG)) {
+                this.type[ii] = ACCENT;
+            }
+        }
+    }
+
+    /**
+     * @param ii the position of a consonant
+     */
+    private void classifyConsonant(final int ii) {
+        final char c = this.input[ii];
+        if (ii >= 2 && c == YOD) {
+            if (isYodVowel(ii)) {
+                this.type[ii] = VOWEL;
+                this.length[ii] = LONG;
+            } else {
+                this.type[ii] = CONSONANT;
+            }
+        } else if (c == VAV) {
+            if (isVavConsonant(ii)) {
+                this.type[ii] = CONSONANT;
+            } else {
+                this.type[ii] = VOWEL;
+                this.shureq[ii] = hasAnyPointing(ii, true, markOf(DAGESH));
+
+                final int next = nextHebrewConsonant(ii);
+                this.length[ii] = next != -1 && hasAnyPointing(next, true, markOf(DAGESH)) ? SHORT : LONG;
+            }
+        } else {
+            this.type[ii] = CONSONANT;
+            this.shin[ii] = c == SIN && hasAnyPointing(ii, true, markOf(SHIN_DOT));
+        }
+    }
+
+    /**
+     * @param ii the position of a consonant
+     */
+    private void classifyDagesh(final int ii) {
+        if (this.type[ii] != CONSONANT) {
+            return;
+        }
+
+        if (!hasAnyPointing(ii, true, markOf(DAGESH))) {
+            this.consonantType[ii] = NO_DAGESH;
+            return;
+        }
+
+        if (isStartOfWord(ii) || isLastLetterInWord(ii)) {
+            // as the letter by letter analysis does, it is the first letter that is marked
+            this.consonantType[0] = SINGLE;
+            return;
+        }
+
+        final char c = this.input[ii];
+        if ((c == BET || c == GIMEL || c == DALET || c == KAF || c == PE || c == TAV)
+                && hasAnyPointing(ii, false, VERY_SHORT_VOWELS)) {
+            this.consonantType[ii] = SINGLE;
+            return;
+        }
+        this.consonantType[ii] = DOUBLE;
+    }
+
+    /**
+     * @param ii the position of a vowel
+     * @return the length of the vowel
+     */
+    private byte getVowelLength(final int ii) {
+        final int mark = 1 << (this.input[ii] - SHEVA);
+        if ((VERY_SHORT_VOWELS & mark) != 0) {
+            return VERY_SHORT;
+        }
+        if ((LONG_VOWELS & mark) != 0) {
+            return LONG;
+        }
+        if (this.input[ii] == HIRIQ && hasAnyPointing(ii, true, markOf(METEG))
+                || hasAnyPointing(ii, false, markOf(METEG))) {
+            return LONG;
+        }
+        return SHORT;
+    }
+
+    /**
+     * @param ii the position of a yod
+     * @return true if the yod is a vowel
+     */
+    private boolean isYodVowel(final int ii) {
+        return hasAnyPointing(ii, false, YOD_VOWELS_BEFORE) && !hasAnyPointing(ii, true, VOWELS_OR_DAGESH);
+    }
+
+    /**
+     * @param ii the position of a vav
+     * @return true if the vav is a consonant
+     */
+    private boolean isVavConsonant(final int ii) {
+        final boolean hasDagesh = hasAnyPointing(ii, true, markOf(DAGESH));
+        if (isStartOfWord(ii)) {
+            return !hasDagesh;
+        }
+
+        if (isLastLetterInWord(ii)) {
+            return !hasDagesh && !hasAnyPointing(ii, true, markOf(HOLAM));
+        }
+
+        if (hasDagesh) {
+            return hasAnyPointing(ii, true, VAV_CONSONANT_VOWELS);
+        }
+
+        if (hasAllPointing(ii, true, QAMATS_AND_HOLAM)) {
+            return true;
+        }
+
+        // following a vowel makes it a consonant
+        for (int jj = ii - 1; jj > 0 && this.type[jj] != CONSONANT && !isStartOfWord(jj); jj--) {
+            if (this.type[jj] == VOWEL) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stresses the vowels closest to accents, and shortens vavs with a dagesh
+     *
+     * @return true if the word has a stress
+     */
+    private boolean stress() {
+        boolean hasStress = false;
+        for (int ii = 0; ii < this.size; ii++) {
+            final char c = this.input[ii];
+            if (c == SHIN_DOT) {
+                continue;
+            }
+
+            if (this.type[ii] == ACCENT) {
+                if (c != GERESH_MUQDAM && c != GERESH || previousConsonant(ii) != 0) {
+                    this.stressed[getCloseVowel(ii)] = true;
+                    hasStress = true;
+                }
+            } else if (c == VAV && hasAnyPointing(ii, true, markOf(DAGESH))) {
+                this.length[ii] = SHORT;
+            }
+        }
+        return hasStress;
+    }
+
+    /**
+     * Sounds or silences shevas, alephs and ayins. A sheva depends on the letters before it, which are settled by the
+     * time it is reached, and an aleph or ayin on the type of the letters after it only.
+     */
+    private void sound() {
+        int previousConsonantPosition = -1;
+        int currentConsonantPosition = -1;
+        for (int ii = 0; ii < this.size; ii++) {
+            final char c = this.input[ii];
+            if (this.type[ii] == CONSONANT) {
+                previousConsonantPosition = currentConsonantPosition;
+                currentConsonantPosition = ii;
+            } else if (c == SHEVA) {
+                final boolean sounded = !isLastHebrewConsonantInWordWithoutVowel(ii)
+                        && (isStartOfWord(currentConsonantPosition)
+                        || this.consonantType[currentConsonantPosition] != NO_DAGESH
+                        || isAfterAnUnstressedVowel(currentConsonantPosition, true)
+                        || hasAnyPointing(previousConsonantPosition, true, markOf(SHEVA)))
+                        && !(isAfterAnUnstressedVowel(currentConsonantPosition, false)
+                        && this.consonantType[ii] == NO_DAGESH);
+                this.sounding[ii] = sounded ? SOUNDING : SILENT;
+            }
+
+            if (c == AYIN || c == ALEPH) {
+                for (int jj = ii + 1; untilEndOfWord(jj); jj++) {
+                    if (this.type[jj] == CONSONANT) {
+                        this.sounding[ii] = SILENT;
+                        break;
+                    } else if (this.type[jj] == VOWEL) {
+                        this.sounding[ii] = SOUNDING;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param stressedWord true if the word has a stress
+     * @return the transliteration
+     */
+    private String write(final boolean stressedWord) {
+        for (int ii = 0; ii < this.size; ii++) {
+            hyphenateSyllables(ii, stressedWord);
+
+            final int sizeBeforeAppending = this.output.length();
+            writeLetter(ii);
+
+            if (this.consonantType[ii] == DOUBLE && !isStartOfWord(ii)) {
+                this.output.append(HYPHEN);
+                final int endOfDoubleLetter = this.output.length() - 1;
+                for (int jj = sizeBeforeAppending; jj < endOfDoubleLetter; jj++) {
+                    this.output.append(this.output.charAt(jj));
+                }
+            }
+        }
+
+        doEndings();
+        return this.output.toString();
+    }
+
+    /**
+     * @param ii the position of the letter to output
+     */
+    private void writeLetter(final int ii) {
+        final char c = this.input[ii];
+        if (c < SHEVA || c > TAV) {
+            return;
+        }
+
+        final boolean softened = this.consonantType[ii] == NO_DAGESH && ii != 0;
+        switch (c) {
+            case BET:
+                this.output.append(softened ? 'v' : 'b');
+                break;
+            case VAV:
+                if (this.type[ii] != VOWEL) {
+                    this.output.append('v');
+                } else if (this.shureq[ii]) {
+                    this.output.append('u');
+                }
+                break;
+            case YOD:
+                if (this.type[ii] == CONSONANT) {
+                    this.output.append('y');
+                }
+                break;
+            case FINAL_KAF:
+            case KAF:
+                this.output.append(softened ? "kh" : "k");
+                break;
+            case FINAL_PE:
+            case PE:
+                this.output.append(softened ? "ph" : "p");
+                break;
+            case SIN:
+                this.output.append(this.shin[ii] ? "sh" : "s");
+                break;
+            case SHEVA:
+                if (this.sounding[ii] != SILENT) {
+                    this.output.append('e');
+                }
+                break;
+            case HOLAM:
+                final int outputLength = this.output.length();
+                if (outputLength > 0 && this.output.charAt(outputLength - 1) == 'w') {
+                    this.output.insert(outputLength - 1, 'o');
+                } else {
+                    this.output.append('o');
+                }
+                break;
+            default:
+                final String fixed = FIXED_OUTPUT[c - SHEVA];
+                if (fixed != null) {
+                    this.output.append(fixed);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Marks the syllables, before the letter at the given position is output
+     *
+     * @param current   the current position
+     * @param hasStress true if the word has a stress
+     */
+    private void hyphenateSyllables(final int current, final boolean hasStress) {
+        final char c = this.input[current];
+        if (c == MAQAF) {
+            this.output.append(MAQAF_HYPHEN);
+            return;
+        }
+
+        if (c == ' ') {
+            this.output.append(' ');
+            return;
+        }
+
+        if (current - 1 >= 0 && (this.input[current - 1] == MAQAF || this.input[current - 1] == ' ')) {
+            return;
+        }
+
+        if (isStartOfWord(current) || this.type[current] != CONSONANT
+                || isLastHebrewConsonantInWordWithoutVowel(current)) {
+            return;
+        }
+
+        final int outputLength = this.output.length();
+        if (outputLength > 0) {
+            final char last = this.output.charAt(outputLength - 1);
+            if (last == HYPHEN || last == MAQAF_HYPHEN || last == ' ') {
+                return;
+            }
+        }
+
+        boolean foundLongVowel = false;
+        boolean foundStressedVowel = false;
+        for (int ii = current - 1; ii > 0 && this.type[ii] != CONSONANT; ii--) {
+            if (this.type[ii] == VOWEL) {
+                if ((VERY_SHORT_VOWELS & markOf(this.input[ii])) != 0) {
+                    this.output.append(HYPHEN);
+                    return;
+                }
+
+                foundLongVowel |= this.length[ii] == LONG;
+                foundStressedVowel |= this.stressed[ii];
+                if (hasStress && foundLongVowel && !foundStressedVowel) {
+                    this.output.append(HYPHEN);
+                    return;
+                }
+            }
+        }
+
+        if (this.consonantType[current] == DOUBLE) {
+            return;
+        }
+
+        for (int ii = current + 1; untilEndOfWord(ii) && this.type[ii] != CONSONANT; ii++) {
+            if (this.input[ii] == SHEVA && this.sounding[ii] == SILENT) {
+                return;
+            }
+        }
+
+        if (this.sounding[current] == SILENT) {
+            return;
+        }
+
+        this.output.append(HYPHEN);
+    }
+
+    /**
+     * Swaps the last letters of words ending in a he or het with a patah: ha to ah, cha to ach
+     */
+    private void doEndings() {
+        int lastConsonant = -1;
+        for (int ii = this.size - 1; ii >= 0; ii--) {
+            if (isHebrewConsonant(this.input[ii])) {
+                lastConsonant = ii;
+                break;
+            }
+        }
+
+        if (lastConsonant == -1 || this.input[lastConsonant] != HET && this.input[lastConsonant] != HE
+                || !hasAnyPointing(lastConsonant, true, markOf(PATAH))) {
+            return;
+        }
+
+        final int last = this.output.length() - 1;
+        final int secondLast = last - 1;
+        if (secondLast < 0 || this.output.charAt(last) != 'a') {
+            return;
+        }
+
+        final char secondChar = this.output.charAt(secondLast);
+        if (secondChar == 'h' || secondChar == H_WITH_DOT) {
+            if (secondLast > 0 && this.output.charAt(secondLast - 1) == 'c') {
+                this.output.setCharAt(last, 'h');
+                this.output.setCharAt(secondLast, 'c');
+                this.output.setCharAt(secondLast - 1, 'a');
+            } else {
+                this.output.setCharAt(secondLast, 'a');
+                this.output.setCharAt(last, secondChar);
+            }
+        } else if (secondChar == OPEN_QUOTE) {
+            this.output.setCharAt(last, 'a');
+            this.output.setCharAt(secondLast, OPEN_QUOTE);
+        }
+    }
+
+    /**
+     * @param ii the position of a vowel
+     * @param lookingForLong true for a long vowel, false for a short one
+     * @return true if the vowels since the previous consonant include an unstressed vowel of that length
+     */
+    private boolean isAfterAnUnstressedVowel(final int ii, final boolean lookingForLong) {
+        for (int jj = ii - 1; jj >= 0 && this.type[jj] != CONSONANT; jj--) {
+            final boolean isCorrectLength = lookingForLong ? this.length[jj] == LONG : this.length[jj] == SHORT;
+            if (this.type[jj] == VOWEL && isCorrectLength && !this.stressed[jj]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param position our current position
+     * @return true if it is the last consonant of the word and no sounded vowel follows it
+     */
+    private boolean isLastHebrewConsonantInWordWithoutVowel(final int position) {
+        if (!isLastHebrewConsonantInWord(position)) {
+            return false;
+        }
+
+        for (int ii = position + 1; untilEndOfWord(ii); ii++) {
+            if (this.type[ii] == VOWEL && this.sounding[ii] != SILENT) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param position our current position
+     * @return true if no other consonants are found after the position, other than alephs and ayins with no vowels
+     */
+    private boolean isLastHebrewConsonantInWord(final int position) {
+        boolean vowelReturnsConsonant = false;
+        for (int ii = position + 1; untilEndOfWord(ii); ii++) {
+            if (vowelReturnsConsonant && this.type[ii] == VOWEL) {
+                return false;
+            }
+
+            if (this.type[ii] == CONSONANT) {
+                if (this.input[ii] != AYIN && this.input[ii] != ALEPH) {
+                    return false;
+                }
+                vowelReturnsConsonant = true;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param currentPosition the current position
+     * @return true if no consonant follows in the word, other than an aleph or ayin when the letter has no vowel
+     */
+    private boolean isLastLetterInWord(final int currentPosition) {
+        for (int ii = currentPosition + 1; ii < this.size && this.input[ii] != MAQAF && this.input[ii] != ' '; ii++) {
+            if (isHebrewConsonant(this.input[ii])) {
+                if (this.input[ii] == ALEPH || this.input[ii] == AYIN) {
+                    return !hasAnyPointing(currentPosition, true, ALL_VOWELS);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param currentPosition our current position
+     * @return the position of the closest vowel, before then after the current position, within the syllable
+     */
+    private int getCloseVowel(final int currentPosition) {
+        for (int ii = currentPosition - 1; ii > 0 && untilEndOfWord(ii); ii--) {
+            if (this.type[ii] == VOWEL) {
+                return ii;
+            } else if (this.type[ii] == CONSONANT) {
+                break;
+            }
+        }
+
+        for (int ii = currentPosition + 1; untilEndOfWord(ii); ii++) {
+            if (this.type[ii] == VOWEL) {
+                return ii;
+            } else if (this.type[ii] == CONSONANT) {
+                break;
+            }
+        }
+
+        for (int ii = currentPosition; ii >= 0; ii--) {
+            if (this.type[ii] == VOWEL) {
+                return ii;
+            }
+        }
+        throw new IllegalStateException("No vowel found near the accent at " + currentPosition);
+    }
+
+    /**
+     * @param currentPosition the current position
+     * @return the position of the first consonant before it, or -1
+     */
+    private int previousConsonant(final int currentPosition) {
+        for (int ii = currentPosition - 1; ii >= 0; ii--) {
+            if (this.type[ii] == CONSONANT) {
+                return ii;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param currentPosition the current position
+     * @return the position of the next Hebrew consonant, or -1
+     */
+    private int nextHebrewConsonant(final int currentPosition) {
+        for (int ii = currentPosition + 1; ii < this.size; ii++) {
+            if (isHebrewConsonant(this.input[ii])) {
+                return ii;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Looks at the pointing of the letter at the given position, stopping at the next (or previous) consonant
+     *
+     * @param position the position of the letter
+     * @param after    true to look at the marks after the letter, false for those before
+     * @param marks    the marks looked for
+     * @return true if any of the marks is found
+     */
+    private boolean hasAnyPointing(final int position, final boolean after, final int marks) {
+        final int increment = after ? 1 : -1;
+        for (int ii = position + increment; ii < this.size; ii = ii + increment) {
+            final char c = this.input[ii];
+            if (c >= ALEPH) {
+                break;
+            }
+            if ((markOf(c) & marks) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param position the position of the letter
+     * @param after    true to look at the marks after the letter, false for those before
+     * @param marks    the marks looked for
+     * @return true if all the marks are found
+     */
+    private boolean hasAllPointing(final int position, final boolean after, final int marks) {
+        final int increment = after ? 1 : -1;
+        int found = 0;
+        for (int ii = position + increment; ii < this.size; ii = ii + increment) {
+            final char c = this.input[ii];
+            if (c >= ALEPH) {
+                break;
+            }
+            found |= markOf(c);
+        }
+        return (found & marks) == marks;
+    }
+
+    /**
+     * @param c a character
+     * @return its bit in the pointing masks, or 0 if it is not a pointing mark
+     */
+    private static int markOf(final char c) {
+        return c >= SHEVA && c <= QAMATS_QATAN ? 1 << (c - SHEVA) : 0;
+    }
+
+    /**
+     * @param ii the position
+     * @return true if it is the start of a word, i.e. first or after a space or maqaf
+     */
+    private boolean isStartOfWord(final int ii) {
+        return ii == 0 || !untilEndOfWord(ii - 1);
+    }
+
+    /**
+     * @param ii the position
+     * @return true if the position is within the input, and not a space or maqaf
+     */
+    private boolean untilEndOfWord(final int ii) {
+        return ii < this.size && this.input[ii] != MAQAF && this.input[ii] != ' ';
+    }
+
+    /**
+     * @param c a character
+     * @return true if it is a Hebrew consonant
+     */
+    private static boolean isHebrewConsonant(final char c) {
+        return c >= ALEPH && c <= TAV;
+    }
+
+    /**
+     * @param c a character
+     * @return true if it is a Hebrew vowel, or other pointing treated as such
+     */
+    private static boolean isHebrewVowel(final char c) {
+        return c >= SHEVA && c <= QAMATS_QATAN && c != DAGESH && c != SHIN_DOT;
+    }
+}
@@ -70,6 +70,20 @@ public class StringToStringRule implements TransliterationRule {
         return true;
     }
 
+    /**
+     * @return the string matched by this rule
+     */
+    public String getMatch() {
+        return new String(this.s);
+    }
+
+    /**
+     * @return the strings the match can be replaced with
+     */
+    public String[] getOptions() {
+        return this.options.clone();
+    }
+
     @Override
     public String toString() {
         final StringBuilder value = new StringBuilder(32);
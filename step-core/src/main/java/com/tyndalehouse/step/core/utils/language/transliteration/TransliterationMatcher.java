@@ -0,0 +1,234 @@
+package com.tyndalehouse.step.core.utils.language.transliteration;
+
+import com.tyndalehouse.step.core.data.common.TermMatcher;
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Matches index terms against all the spellings a transliteration rule set allows for a word, without listing the
+ * spellings. The word is compiled into a small automaton: one state per position in the word, and one transition for
+ * each letter kept as is, and for each replacement offered by a rule matching at that position. A term matches if
+ * some path through the automaton spells it, once the path has been through the same clean-up as indexed
+ * transliterations (lower case, doubled letters collapsed, hyphens, stars and apostrophes dropped).
+ * <p/>
+ * This accepts exactly the spellings that {@link com.tyndalehouse.step.core.utils.StringConversionUtils#multiplyTranslitOptions}
+ * would list, without the cap on their number.
+ *
+ * @author chrisburrell
+ */
+public final class TransliterationMatcher implements TermMatcher {
+    private static final int PREFIX_LENGTH = 2;
+    private static final Map<List<TransliterationRule>, RuleNode> COMPILED_RULES =
+            Collections.synchronizedMap(new IdentityHashMap<List<TransliterationRule>, RuleNode>());
+    private final int finalState;
+    private final int[][] targets;
+    private final char[][][] outputs;
+
+    /**
+     * @param baseString           a transliteration without any mark-up
+     * @param transliterationRules the rules to apply
+     */
+    public TransliterationMatcher(final String baseString, final List<TransliterationRule> transliterationRules) {
+        final RuleNode rules = compile(transliterationRules);
+        final char[] base = baseString.toCharArray();
+
+        this.finalState = base.length;
+        this.targets = new int[base.length][];
+        this.outputs = new char[base.length][][];
+        for (int position = 0; position < base.length; position++) {
+            final List<Integer> stateTargets = new ArrayList<Integer>();
+            final List<char[]> stateOutputs = new ArrayList<char[]>();
+
+            // the letter can always be kept as is
+            stateTargets.add(position + 1);
+            stateOutputs.add(new char[]{base[position]});
+
+            RuleNode node = rules;
+            for (int end = position; end < base.length; end++) {
+                node = node.children.get(base[end]);
+                if (node == null) {
+                    break;
+                }
+                for (final String option : node.options) {
+                    stateTargets.add(end + 1);
+                    stateOutputs.add(option.toCharArray());
+                }
+            }
+
+            this.targets[position] = new int[stateTargets.size()];
+            for (int ii = 0; ii < this.targets[position].length; ii++) {
+                this.targets[position][ii] = stateTargets.get(ii);
+            }
+            this.outputs[position] = stateOutputs.toArray(new char[stateOutputs.size()][]);
+        }
+    }
+
+    /**
+     * Compiles the rules into a trie keyed by the strings they match, once per rule set
+     *
+     * @param transliterationRules the rules
+     * @return the root of the trie
+     */
+    private static RuleNode compile(final List<TransliterationRule> transliterationRules) {
+        RuleNode root = COMPILED_RULES.get(transliterationRules);
+        if (root != null) {
+            return root;
+        }
+
+        root = new RuleNode();
+        for (final TransliterationRule rule : transliterationRules) {
+            if (!(rule instanceof StringToStringRule)) {
+                throw new StepInternalException("Unable to compile transliteration rule: " + rule);
+            }
+
+            final StringToStringRule stringRule = (StringToStringRule) rule;
+            RuleNode node = root;
+            for (final char c : stringRule.getMatch().toCharArray()) {
+                RuleNode child = node.children.get(c);
+                if (child == null) {
+                    child = new RuleNode();
+                    node.children.put(c, child);
+                }
+                node = child;
+            }
+            Collections.addAll(node.options, stringRule.getOptions());
+        }
+        COMPILED_RULES.put(transliterationRules, root);
+        return root;
+    }
+
+    @Override
+    public boolean matches(final String term) {
+        final int length = term.length();
+        final Set<Long> visited = new HashSet<Long>();
+        final Deque<long[]> toVisit = new ArrayDeque<long[]>();
+        toVisit.push(new long[]{0, 0, 0});
+
+        while (!toVisit.isEmpty()) {
+            final long[] current = toVisit.pop();
+            final int state = (int) current[0];
+            final int matched = (int) current[1];
+            final char last = (char) current[2];
+            if (!visited.add(encode(state, matched, last))) {
+                continue;
+            }
+
+            if (state == this.finalState) {
+                if (matched == length) {
+                    return true;
+                }
+                continue;
+            }
+
+            for (int ii = 0; ii < this.targets[state].length; ii++) {
+                int position = matched;
+                char previous = last;
+                boolean failed = false;
+                for (final char c : this.outputs[state][ii]) {
+                    final char lower = Character.toLowerCase(c);
+                    if (lower == previous) {
+                        continue;
+                    }
+                    previous = lower;
+                    if (isDropped(lower)) {
+                        continue;
+                    }
+                    if (position == length || term.charAt(position) != lower) {
+                        failed = true;
+                        break;
+                    }
+                    position++;
+                }
+
+                if (!failed) {
+                    toVisit.push(new long[]{this.targets[state][ii], position, previous});
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lists what the spellings can start with, which is a small set, unlike the set of spellings
+     *
+     * @return the distinct starts of the cleaned-up spellings, of at most two letters
+     */
+    @Override
+    public Collection<String> getPrefixes() {
+        final Set<String> prefixes = new HashSet<String>();
+        final Set<String> visited = new HashSet<String>();
+        collectPrefixes(0, "", (char) 0, prefixes, visited);
+        return prefixes;
+    }
+
+    /**
+     * @param state    the current state
+     * @param prefix   the letters spelt so far
+     * @param last     the last letter before clean-up
+     * @param prefixes the prefixes found
+     * @param visited  the states already visited, with their prefix
+     */
+    private void collectPrefixes(final int state, final String prefix, final char last, final Set<String> prefixes,
+                                 final Set<String> visited) {
+        if (prefix.length() == PREFIX_LENGTH || state == this.finalState) {
+            prefixes.add(prefix);
+            return;
+        }
+        if (!visited.add(state + ":" + last + ":" + prefix)) {
+            return;
+        }
+
+        for (int ii = 0; ii < this.targets[state].length; ii++) {
+            final StringBuilder spelt = new StringBuilder(prefix);
+            char previous = last;
+            for (final char c : this.outputs[state][ii]) {
+                final char lower = Character.toLowerCase(c);
+                if (lower == previous) {
+                    continue;
+                }
+                previous = lower;
+                if (!isDropped(lower) && spelt.length() < PREFIX_LENGTH) {
+                    spelt.append(lower);
+                }
+            }
+            collectPrefixes(this.targets[state][ii], spelt.toString(), previous, prefixes, visited);
+        }
+    }
+
+    /**
+     * @param c a lower case letter
+     * @return true if the letter is dropped from indexed transliterations
+     */
+    private static boolean isDropped(final char c) {
+        return c == '-' || c == '*' || c == '\'';
+    }
+
+    /**
+     * @param state   the automaton state
+     * @param matched the number of letters of the term matched
+     * @param last    the last letter before clean-up
+     * @return a key for the combination
+     */
+    private static long encode(final int state, final int matched, final char last) {
+        return ((long) state << 40) | ((long) matched << 16) | last;
+    }
+
+    /**
+     * A node in the trie of rules
+     */
+    private static final class RuleNode {
+        private final Map<Character, RuleNode> children = new HashMap<Character, RuleNode>(8);
+        private final List<String> options = new ArrayList<String>(2);
+    }
+}
@@ -0,0 +1,34 @@
+package com.tyndalehouse.step.core.data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Field.Index;
+import org.apache.lucene.document.Field.Store;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+
+/**
+ * Tests {@link EntityDocSerializer}
+ * 
+ * @author chrisburrell
+ */
+public class EntityDocSerializerTest {
+    /**
+     * Fields are written in the order of the document, and repeated fields are only written once, with their last value
+     */
+    @Test
+    public void testSerialize() throws IOException {
+        final Document doc = new Document();
+        doc.add(new Field("strongNumber", "G0016", Store.YES, Index.NOT_ANALYZED));
+        doc.add(new Field("stepGloss", "first", Store.YES, Index.NO));
+        doc.add(new Field("stepTransliteration", "agape", Store.YES, Index.NO));
+        doc.add(new Field("stepGloss", "love", Store.YES, Index.NO));
+
+        assertEquals("{\"strongNumber\":\"G0016\",\"stepTransliteration\":\"agape\",\"stepGloss\":\"love\"}",
+                new ObjectMapper().writeValueAsString(new EntityDoc(doc)));
+    }
+}
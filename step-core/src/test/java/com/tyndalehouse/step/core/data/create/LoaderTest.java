@@ -57,8 +57,11 @@ import com.tyndalehouse.step.core.data.EntityIndexReader;
 import com.tyndalehouse.step.core.data.EntityManager;
 import com.tyndalehouse.step.core.data.entities.impl.TestEntityManager;
 import com.tyndalehouse.step.core.models.ClientSession;
+import com.tyndalehouse.step.core.service.helpers.AlternativeTranslationsIndexStore;
+import com.tyndalehouse.step.core.service.helpers.SubjectReferenceIndexStore;
 import com.tyndalehouse.step.core.service.helpers.VersionResolver;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+import com.tyndalehouse.step.core.service.jsword.helpers.IndexBuildScheduler;
 import com.tyndalehouse.step.core.service.jsword.impl.JSwordPassageServiceImpl;
 import com.tyndalehouse.step.core.utils.TestUtils;
 
@@ -87,7 +90,7 @@ public class LoaderTest {
 
     @Test
     public void testLoaderProgress() {
-        Loader l = new Loader(null, null, new Properties(), null, null, null);
+        Loader l = new Loader(null, null, new Properties(), null, null, null, null, null, null);
         assertEquals(0, l.getTotalProgress());
 
         l.setTotalProgress(1);
@@ -243,7 +246,8 @@ public class LoaderTest {
         final JSwordVersificationService versificationService = TestUtils.mockVersificationService();
         return new Loader(new JSwordPassageServiceImpl(versificationService, null, null, null,
                 mock(VersionResolver.class), null), null, coreProperties, this.entityManager,
-                this.clientSessionProvider, mock(AppManagerService.class));
+                this.clientSessionProvider, mock(AppManagerService.class), mock(SubjectReferenceIndexStore.class),
+                mock(AlternativeTranslationsIndexStore.class), mock(IndexBuildScheduler.class));
     }
 
     /**
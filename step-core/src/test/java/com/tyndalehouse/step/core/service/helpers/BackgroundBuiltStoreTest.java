@@ -0,0 +1,126 @@
+package com.tyndalehouse.step.core.service.helpers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the store of values built in the background
+ *
+ * @author chrisburrell
+ */
+public class BackgroundBuiltStoreTest {
+    private static final long TIMEOUT_MILLIS = 5000;
+    private File storeDirectory;
+
+    /**
+     * Creates an empty store directory
+     *
+     * @throws IOException unable to create the directory
+     */
+    @Before
+    public void setUp() throws IOException {
+        this.storeDirectory = File.createTempFile("background-store", "");
+        this.storeDirectory.delete();
+        this.storeDirectory.mkdirs();
+    }
+
+    /**
+     * Removes the store directory
+     */
+    @After
+    public void tearDown() {
+        for (final File f : this.storeDirectory.listFiles()) {
+            f.delete();
+        }
+        this.storeDirectory.delete();
+    }
+
+    /**
+     * Values are read back on the next run, unless what they were built from has changed since
+     */
+    @Test
+    public void testValuesAreKeptWhileSignatureMatches() throws InterruptedException {
+        final AtomicInteger builds = new AtomicInteger();
+        final BackgroundBuiltStore<String> first = new BackgroundBuiltStore<String>("test", this.storeDirectory);
+        assertNull(first.get("key", "v1", value("built", builds)));
+        assertEquals("built", await(first, "key", "v1", value("built", builds)));
+
+        final BackgroundBuiltStore<String> second = new BackgroundBuiltStore<String>("test", this.storeDirectory);
+        assertEquals("built", await(second, "key", "v1", value("rebuilt", builds)));
+        assertEquals(1, builds.get());
+
+        assertEquals("rebuilt", await(second, "key", "v2", value("rebuilt", builds)));
+        assertEquals(2, builds.get());
+    }
+
+    /**
+     * A value invalidated while it is being built is neither kept in memory nor written to disk
+     */
+    @Test
+    public void testInvalidatedBuildIsDiscarded() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final BackgroundBuiltStore<String> store = new BackgroundBuiltStore<String>("test", this.storeDirectory);
+        assertNull(store.get("key", "v1", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                started.countDown();
+                release.await();
+                return "stale";
+            }
+        }));
+
+        assertTrue(started.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        store.invalidate("key");
+        release.countDown();
+
+        final AtomicInteger builds = new AtomicInteger();
+        assertEquals("fresh", await(store, "key", "v1", value("fresh", builds)));
+        assertTrue(new File(this.storeDirectory, "key.ser").exists());
+    }
+
+    /**
+     * @param store     the store
+     * @param key       the key
+     * @param signature the signature
+     * @param build     builds the value
+     * @return the value, once available
+     * @throws InterruptedException interrupted while waiting
+     */
+    private static String await(final BackgroundBuiltStore<String> store, final String key, final String signature,
+                                final Callable<String> build) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        String value;
+        while ((value = store.get(key, signature, build)) == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return value;
+    }
+
+    /**
+     * @param value  the value to build
+     * @param builds counts the builds
+     * @return builds the value
+     */
+    private static Callable<String> value(final String value, final AtomicInteger builds) {
+        return new Callable<String>() {
+            @Override
+            public String call() {
+                builds.incrementAndGet();
+                return value;
+            }
+        };
+    }
+}
@@ -0,0 +1,56 @@
+package com.tyndalehouse.step.core.service.helpers;
+
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.book.Books;
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the resolution of books through the registry
+ *
+ * @author chrisburrell
+ */
+public class BookRegistryTest {
+
+    /**
+     * Books are found by their initials and short names, whatever the case
+     */
+    @Test
+    public void testLookup() {
+        final BookRegistry registry = new BookRegistry(getResolver(), true);
+        final Book kjv = Books.installed().getBook("KJV");
+
+        assertSame(kjv, registry.getBook("KJV"));
+        assertSame(kjv, registry.getBook("kjv"));
+        assertSame(kjv, registry.getBook("KingJ"));
+        assertSame(kjv, registry.getHandle("KingJ").getBook());
+        assertSame(registry.getHandle("KJV").getVersification(), registry.getVersification(kjv));
+        assertNull(registry.getBook("NoSuchBook"));
+    }
+
+    /**
+     * Books are still found before the first snapshot, and the same handles returned once it is taken
+     */
+    @Test
+    public void testRebuild() {
+        final BookRegistry registry = new BookRegistry(getResolver(), false);
+        assertNotNull(registry.getHandle("KingJ"));
+
+        registry.rebuild();
+        assertSame(registry.getHandle("KingJ"), registry.getHandle("kjv"));
+    }
+
+    /**
+     * @return a resolver knowing the KJV as KingJ
+     */
+    private static VersionResolver getResolver() {
+        final Properties properties = new Properties();
+        properties.put(VersionResolver.APP_VERSIONS_PREFIX + "KJV", "KingJ");
+        return new VersionResolver(properties);
+    }
+}
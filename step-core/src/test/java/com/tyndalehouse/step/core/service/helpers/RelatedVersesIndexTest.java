@@ -0,0 +1,85 @@
+package com.tyndalehouse.step.core.service.helpers;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.RAMDirectory;
+import org.crosswire.jsword.index.lucene.LuceneIndex;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the precomputed related verses
+ *
+ * @author chrisburrell
+ */
+public class RelatedVersesIndexTest {
+    private RelatedVersesIndex index;
+
+    /**
+     * Indexes a few verses, H0001 being too common to relate verses
+     */
+    @Before
+    public void setUp() throws IOException {
+        final RAMDirectory directory = new RAMDirectory();
+        final IndexWriter writer = new IndexWriter(directory, new WhitespaceAnalyzer(), true,
+                IndexWriter.MaxFieldLength.UNLIMITED);
+        addVerse(writer, "Gen.1.1", "H0001 H0002 H0003 H0004");
+        addVerse(writer, "Gen.1.2", "H0001 H0002 H0003");
+        addVerse(writer, "Gen.1.3", "H0001 H0002 H0005");
+        addVerse(writer, "Gen.1.4", "H0001 H0004 H0005 H0006");
+        addVerse(writer, "Gen.1.5", "H0001 H0006");
+        writer.close();
+
+        final IndexReader reader = IndexReader.open(directory, true);
+        try {
+            this.index = RelatedVersesIndex.build(reader, 5);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Verses sharing the most significant strong numbers come first, and verses sharing fewer than two are left out
+     */
+    @Test
+    public void testRelatedVerses() {
+        assertEquals(5, this.index.getNumVerses());
+
+        final List<String> related = this.index.getRelatedVerses(Arrays.asList("Gen.1.1"), 10);
+        assertEquals("Gen.1.1", related.get(0));
+        assertEquals("Gen.1.2", related.get(1));
+        assertEquals(2, related.size());
+    }
+
+    /**
+     * Only the best verses are kept
+     */
+    @Test
+    public void testMaxVerses() {
+        final List<String> related = this.index.getRelatedVerses(Arrays.asList("Gen.1.4"), 1);
+        assertEquals(Arrays.asList("Gen.1.4"), related);
+        assertTrue(this.index.getRelatedVerses(Arrays.asList("Rev.1.1"), 10).isEmpty());
+    }
+
+    /**
+     * @param writer  the index writer
+     * @param key     the reference of the verse
+     * @param strongs the strong numbers in the verse
+     */
+    private void addVerse(final IndexWriter writer, final String key, final String strongs) throws IOException {
+        final Document doc = new Document();
+        doc.add(new Field(LuceneIndex.FIELD_KEY, key, Field.Store.YES, Field.Index.NOT_ANALYZED));
+        doc.add(new Field(LuceneIndex.FIELD_STRONG, strongs, Field.Store.NO, Field.Index.ANALYZED));
+        writer.addDocument(doc);
+    }
+}
@@ -0,0 +1,157 @@
+package com.tyndalehouse.step.core.service.helpers;
+
+import com.tyndalehouse.step.core.models.InterlinearMode;
+import com.tyndalehouse.step.core.models.LexiconSuggestion;
+import com.tyndalehouse.step.core.models.LookupOption;
+import com.tyndalehouse.step.core.models.OsisWrapper;
+import com.tyndalehouse.step.core.models.TrimmedLookupOption;
+import org.crosswire.jsword.passage.NoSuchKeyException;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the cache of rendered passages
+ *
+ * @author chrisburrell
+ */
+public class RenderedPassageCacheTest {
+    private VersionResolver resolver;
+
+    /**
+     * Sets up a resolver with one short name
+     */
+    @Before
+    public void setUp() {
+        final Properties properties = new Properties();
+        properties.put(VersionResolver.APP_VERSIONS_PREFIX + "Antoniades", "Ant");
+        this.resolver = new VersionResolver(properties);
+    }
+
+    /**
+     * The order of the options doesn't matter, the language does but not the country, and keys can be split back into
+     * their parts
+     */
+    @Test
+    public void testKeyIsNormalised() {
+        final String key = RenderedPassageCache.getKey("ESV", " John.1 ", "VHN", "KJV, Ant", null, Locale.FRENCH);
+        assertEquals(key, RenderedPassageCache.getKey("ESV", "John.1", "NHV", "KJV,Ant", "", Locale.FRENCH));
+        assertNotEquals(key, RenderedPassageCache.getKey("ESV", "John.1", "NHV", "KJV,Ant", "", Locale.ENGLISH));
+        assertEquals(RenderedPassageCache.getKey("ESV", "John.1", "NHV", null, "NONE", Locale.ENGLISH),
+                RenderedPassageCache.getKey("ESV", "John.1", "NHV", null, "NONE", Locale.UK));
+        assertArrayEquals(new String[]{"ESV", "John.1", "HNV", "KJV,Ant", null, "fr"},
+                RenderedPassageCache.splitKey(key));
+        assertArrayEquals(new String[]{"ESV", "Gen.1", null, null, null, null},
+                RenderedPassageCache.splitKey("ESV|Gen.1"));
+    }
+
+    /**
+     * Passages returned are copies, which the caller is free to alter
+     */
+    @Test
+    public void testGetReturnsCopy() throws NoSuchKeyException {
+        final RenderedPassageCache cache = new RenderedPassageCache(1000, null, 0, this.resolver);
+        final OsisWrapper passage = passage("Gen.1", 10);
+        passage.setTitle("Genesis 1");
+        passage.setTime(42);
+        final List<TrimmedLookupOption> removedOptions = new ArrayList<>();
+        removedOptions.add(new TrimmedLookupOption("no notes", LookupOption.NOTES));
+        passage.setRemovedOptions(removedOptions);
+        final Map<String, List<LexiconSuggestion>> strongNumbers = new HashMap<>();
+        strongNumbers.put("G0001", new ArrayList<LexiconSuggestion>());
+        passage.setStrongNumbers(strongNumbers);
+        cache.put("key", Arrays.asList("ESV"), passage);
+
+        final OsisWrapper first = cache.get("key");
+        first.setSignature("altered");
+        first.getRemovedOptions().get(0).setExplanation("altered");
+        first.getRemovedOptions().clear();
+        first.getStrongNumbers().get("G0001").add(new LexiconSuggestion());
+        first.getStrongNumbers().put("H0001", new ArrayList<LexiconSuggestion>());
+        final OsisWrapper second = cache.get("key");
+        assertNotSame(first, second);
+        assertNull(second.getSignature());
+        assertEquals(1, second.getRemovedOptions().size());
+        assertEquals("no notes", second.getRemovedOptions().get(0).getExplanation());
+        assertEquals(1, second.getStrongNumbers().size());
+        assertEquals(0, second.getStrongNumbers().get("G0001").size());
+        assertEquals("Gen.1", second.getOsisId());
+        assertEquals("Genesis 1", second.getTitle());
+        assertEquals(42, second.getTime());
+    }
+
+    /**
+     * Passages that don't fit in memory any more are spilled to disk, then read back on the next request
+     */
+    @Test
+    public void testSpillToDisk() throws NoSuchKeyException, IOException {
+        final File spillDirectory = File.createTempFile("passage-cache", "");
+        spillDirectory.delete();
+        spillDirectory.mkdirs();
+        try {
+            final RenderedPassageCache cache = new RenderedPassageCache(15, spillDirectory, 10, this.resolver);
+            cache.put("first", Arrays.asList("ESV"), passage("Gen.1", 10));
+            cache.put("second", Arrays.asList("ESV"), passage("Gen.2", 10));
+            assertEquals(10, cache.getCurrentChars());
+
+            final OsisWrapper first = cache.get("first");
+            assertNotNull(first);
+            assertEquals("Gen.1", first.getOsisId());
+            assertNotNull(cache.get("second"));
+        } finally {
+            for (final File f : spillDirectory.listFiles()) {
+                f.delete();
+            }
+            spillDirectory.delete();
+        }
+    }
+
+    /**
+     * Installing or removing a module drops the passages rendered from it, whatever name it was requested by
+     */
+    @Test
+    public void testInvalidate() throws NoSuchKeyException {
+        final RenderedPassageCache cache = new RenderedPassageCache(1000, null, 0, this.resolver);
+        cache.put("esv", Arrays.asList("ESV"), passage("Gen.1", 10));
+        cache.put("interlinear", Arrays.asList("KJV", "Ant"), passage("Gen.1", 10));
+
+        cache.invalidate("Antoniades");
+        assertNull(cache.get("interlinear"));
+        assertNotNull(cache.get("esv"));
+        assertNotNull(cache.get("esv"));
+        assertEquals(10, cache.getCurrentChars());
+        assertEquals(Arrays.asList("esv", "interlinear"), cache.getMostRequested(10));
+    }
+
+    /**
+     * @param reference the reference
+     * @param length    the length of the rendered text
+     * @return a rendered passage
+     */
+    private OsisWrapper passage(final String reference, final int length) throws NoSuchKeyException {
+        final Versification v11n = Versifications.instance().getVersification("KJV");
+        final char[] value = new char[length];
+        Arrays.fill(value, 'a');
+        return new OsisWrapper(new String(value), PassageKeyFactory.instance().getKey(v11n, reference),
+                new String[]{"en"}, v11n, "ESV", InterlinearMode.NONE, "");
+    }
+}
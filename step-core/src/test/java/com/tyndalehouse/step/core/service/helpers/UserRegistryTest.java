@@ -0,0 +1,138 @@
+package com.tyndalehouse.step.core.service.helpers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the loading and logging of registered users
+ *
+ * @author chrisburrell
+ */
+public class UserRegistryTest {
+    private File log;
+    private File snapshot;
+
+    /**
+     * Creates an empty log
+     */
+    @Before
+    public void setUp() throws IOException {
+        this.log = File.createTempFile("users", ".txt");
+        this.snapshot = new File(this.log.getPath() + ".snapshot");
+    }
+
+    /**
+     * Removes the log and its snapshot
+     */
+    @After
+    public void tearDown() {
+        this.log.delete();
+        this.snapshot.delete();
+    }
+
+    /**
+     * New users are appended to the log, and found again when reloading
+     */
+    @Test
+    public void testRegisterAndReload() {
+        final UserRegistry registry = new UserRegistry(this.log, true, 0);
+        registry.load(false);
+        registry.register("a@b.com", "a@b.com,A,2014-Jan-01 00:00:00");
+        registry.register("a@b.com", "a@b.com,A,2014-Jan-01 00:00:00");
+        assertTrue(registry.contains("a@b.com"));
+        registry.close();
+
+        final UserRegistry reloaded = new UserRegistry(this.log, false, 0);
+        reloaded.load(false);
+        assertTrue(reloaded.contains("a@b.com"));
+        assertFalse(reloaded.contains("c@d.com"));
+    }
+
+    /**
+     * The snapshot gives the users up to its offset, only the rest of the log is replayed
+     */
+    @Test
+    public void testRecoverFromSnapshot() throws IOException {
+        final String covered = "a@b.com,A,date\n";
+        write(this.log, covered + "c@d.com,C,date\n");
+        write(this.snapshot, header(covered) + "\nsnapshot@b.com\n");
+
+        final UserRegistry registry = new UserRegistry(this.log, false, 0);
+        registry.load(false);
+        assertTrue(registry.contains("snapshot@b.com"));
+        assertTrue(registry.contains("c@d.com"));
+
+        // the covered part of the log is taken from the snapshot, not replayed
+        assertFalse(registry.contains("a@b.com"));
+
+        // a full reload ignores the snapshot
+        registry.load(true);
+        assertTrue(registry.contains("a@b.com"));
+        assertFalse(registry.contains("snapshot@b.com"));
+    }
+
+    /**
+     * A snapshot beyond the end of the log is ignored
+     */
+    @Test
+    public void testSnapshotBeyondLog() throws IOException {
+        write(this.log, "a@b.com,A,date\n");
+        write(this.snapshot, "1000 0\nsnapshot@b.com\n");
+
+        final UserRegistry registry = new UserRegistry(this.log, false, 0);
+        registry.load(false);
+        assertTrue(registry.contains("a@b.com"));
+        assertFalse(registry.contains("snapshot@b.com"));
+    }
+
+    /**
+     * A snapshot of a log that has since been edited is ignored, even if the log is as long as it was
+     */
+    @Test
+    public void testSnapshotOfEditedLog() throws IOException {
+        write(this.log, "a@b.com,A,date\nc@d.com,C,date\n");
+        write(this.snapshot, header("x@y.com,X,date\n") + "\nsnapshot@b.com\n");
+
+        final UserRegistry registry = new UserRegistry(this.log, false, 0);
+        registry.load(false);
+        assertTrue(registry.contains("a@b.com"));
+        assertTrue(registry.contains("c@d.com"));
+        assertFalse(registry.contains("snapshot@b.com"));
+    }
+
+    /**
+     * @param covered the part of the log covered by a snapshot
+     * @return the header of the snapshot, i.e. the length of the covered part and its checksum
+     */
+    private String header(final String covered) {
+        final byte[] bytes = covered.getBytes(Charset.forName("UTF-8"));
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return bytes.length + " " + crc.getValue();
+    }
+
+    /**
+     * @param file    the file
+     * @param content the content to write to it
+     */
+    private void write(final File file, final String content) throws IOException {
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.tyndalehouse.step.core.service.helpers;
+
+import org.apache.lucene.analysis.KeywordAnalyzer;
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.RAMDirectory;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.passage.VerseRange;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the precomputed entries of each verse
+ *
+ * @author chrisburrell
+ */
+public class VerseReferenceIndexTest {
+    private VerseReferenceIndex index;
+    private Versification v11n;
+
+    /**
+     * Indexes a few subjects, out of their display order
+     */
+    @Before
+    public void setUp() throws IOException {
+        final RAMDirectory directory = new RAMDirectory();
+        final IndexWriter writer = new IndexWriter(directory, new WhitespaceAnalyzer(), true,
+                IndexWriter.MaxFieldLength.UNLIMITED);
+        addSubject(writer, "moses", "law", "exod.3.1 exod.3.2 deut.34.5");
+        addSubject(writer, "aaron", "priest", "exod.4.14 exod.28.1");
+        addSubject(writer, "aaron", "brother", "exod.4.14 exod.7.1 unknown.1.1");
+        addSubject(writer, "creation", "creation", "gen.1.1 gen.1.2 gen.2.4");
+        writer.close();
+
+        final IndexReader reader = IndexReader.open(directory, true);
+        try {
+            this.index = VerseReferenceIndex.build(reader, "expandedReferences", "KJV", "root", "fullHeader");
+        } finally {
+            reader.close();
+        }
+        this.v11n = Versifications.instance().getVersification("KJV");
+    }
+
+    /**
+     * Subjects of a chapter come back in display order, whatever the order they were indexed in
+     */
+    @Test
+    public void testChapterInDisplayOrder() {
+        assertEquals(4, this.index.getNumEntries());
+        assertEquals(4, this.index.getMaxDoc());
+
+        final BitSet subjects = new BitSet();
+        this.index.addEntries(chapter(BibleBook.EXOD, 4), subjects);
+        assertArrayEquals(new int[]{2, 1}, this.index.getDocIds(subjects));
+    }
+
+    /**
+     * A whole book is a single range of verses
+     */
+    @Test
+    public void testBook() {
+        final BitSet subjects = new BitSet();
+        this.index.addEntries(BibleBook.EXOD, subjects);
+        assertArrayEquals(new int[]{2, 1, 0}, this.index.getDocIds(subjects));
+
+        subjects.clear();
+        this.index.addEntries(BibleBook.GEN, subjects);
+        assertArrayEquals(new int[]{3}, this.index.getDocIds(subjects));
+
+        subjects.clear();
+        this.index.addEntries(BibleBook.MATT, subjects);
+        assertEquals(0, this.index.getDocIds(subjects).length);
+    }
+
+    /**
+     * Ranges only pick up the subjects of their own verses
+     */
+    @Test
+    public void testVerseRange() {
+        final BitSet subjects = new BitSet();
+        this.index.addEntries(new VerseRange(this.v11n, new Verse(this.v11n, BibleBook.EXOD, 7, 1)), subjects);
+        assertArrayEquals(new int[]{2}, this.index.getDocIds(subjects));
+
+        subjects.clear();
+        this.index.addEntries(new VerseRange(this.v11n, new Verse(this.v11n, BibleBook.EXOD, 3, 2),
+                new Verse(this.v11n, BibleBook.EXOD, 4, 13)), subjects);
+        assertArrayEquals(new int[]{0}, this.index.getDocIds(subjects));
+    }
+
+    /**
+     * References indexed as is, such as those of the alternative translations, are kept in the order they were indexed
+     */
+    @Test
+    public void testMixedCaseInIndexedOrder() throws IOException {
+        final RAMDirectory directory = new RAMDirectory();
+        final IndexWriter writer = new IndexWriter(directory, new KeywordAnalyzer(), true,
+                IndexWriter.MaxFieldLength.UNLIMITED);
+        addReference(writer, "John.3.16");
+        addReference(writer, "Gen.1.1");
+        addReference(writer, "John.3.17");
+        writer.close();
+
+        final IndexReader reader = IndexReader.open(directory, true);
+        final VerseReferenceIndex references;
+        try {
+            references = VerseReferenceIndex.build(reader, "reference", "KJV");
+        } finally {
+            reader.close();
+        }
+
+        final BitSet entries = new BitSet();
+        references.addEntries(chapter(BibleBook.JOHN, 3), entries);
+        references.addEntries(chapter(BibleBook.GEN, 1), entries);
+        assertArrayEquals(new int[]{0, 1, 2}, references.getDocIds(entries));
+    }
+
+    /**
+     * References to the introduction of a book or chapter are not picked up with the chapter
+     */
+    @Test
+    public void testIntroductionsAreSkipped() throws IOException {
+        final RAMDirectory directory = new RAMDirectory();
+        final IndexWriter writer = new IndexWriter(directory, new KeywordAnalyzer(), true,
+                IndexWriter.MaxFieldLength.UNLIMITED);
+        addReference(writer, "Gen.0.0");
+        addReference(writer, "Gen.1.0");
+        addReference(writer, "Gen.1.1");
+        writer.close();
+
+        final IndexReader reader = IndexReader.open(directory, true);
+        final VerseReferenceIndex references;
+        try {
+            references = VerseReferenceIndex.build(reader, "reference", "KJV");
+        } finally {
+            reader.close();
+        }
+
+        final BitSet entries = new BitSet();
+        references.addEntries(BibleBook.GEN, entries);
+        references.addEntries(chapter(BibleBook.GEN, 1), entries);
+        assertArrayEquals(new int[]{2}, references.getDocIds(entries));
+    }
+
+    /**
+     * @param book    the book
+     * @param chapter the chapter
+     * @return the whole chapter
+     */
+    private VerseRange chapter(final BibleBook book, final int chapter) {
+        return new VerseRange(this.v11n, new Verse(this.v11n, book, chapter, 0),
+                new Verse(this.v11n, book, chapter, this.v11n.getLastVerse(book, chapter)));
+    }
+
+    /**
+     * @param writer     the index writer
+     * @param root       the root of the subject
+     * @param fullHeader the heading of the subject
+     * @param references the references, as expanded when indexing
+     */
+    private void addSubject(final IndexWriter writer, final String root, final String fullHeader,
+                            final String references) throws IOException {
+        final Document doc = new Document();
+        doc.add(new Field("root", root, Field.Store.YES, Field.Index.ANALYZED));
+        doc.add(new Field("fullHeader", fullHeader, Field.Store.YES, Field.Index.ANALYZED));
+        doc.add(new Field("expandedReferences", references, Field.Store.NO, Field.Index.ANALYZED));
+        writer.addDocument(doc);
+    }
+
+    /**
+     * @param writer    the index writer
+     * @param reference the single OSIS reference of the entry
+     */
+    private void addReference(final IndexWriter writer, final String reference) throws IOException {
+        final Document doc = new Document();
+        doc.add(new Field("reference", reference, Field.Store.YES, Field.Index.ANALYZED));
+        writer.addDocument(doc);
+    }
+}
@@ -0,0 +1,88 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the recording of OSIS
+ *
+ * @author chrisburrell
+ */
+public class OsisEventBufferTest {
+    /**
+     * A recording replays the document it was made from
+     */
+    @Test
+    public void testReplay() throws Exception {
+        final String osis = "<osis><div type=\"chapter\"><verse osisID=\"Gen.1.1\">In the <w lemma=\"a\">beginning</w></verse></div></osis>";
+        final OsisEventBuffer buffer = parse(osis);
+        assertEquals(osis, serialize(buffer));
+        assertEquals(osis, serialize(buffer));
+    }
+
+    /**
+     * The size counts the names and attribute values as well as the text
+     */
+    @Test
+    public void testSizeCountsStrings() throws Exception {
+        final String longValue = new String(new char[1000]).replace('\0', 'a');
+        final long small = parse("<osis><w lemma=\"a\">b</w></osis>").getSize();
+        final long large = parse("<osis><w lemma=\"" + longValue + "\">b</w></osis>").getSize();
+        assertTrue(large - small >= longValue.length() - 1);
+    }
+
+    /**
+     * @param xml the xml
+     * @return the recorded events
+     */
+    private OsisEventBuffer parse(final String xml) throws ParserConfigurationException, SAXException, IOException {
+        final OsisEventBuffer buffer = new OsisEventBuffer();
+        final XMLReader reader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+        reader.setContentHandler(buffer);
+        reader.parse(new InputSource(new StringReader(xml)));
+        buffer.trim();
+        return buffer;
+    }
+
+    /**
+     * @param buffer the recorded events
+     * @return the events written back as xml
+     */
+    private String serialize(final OsisEventBuffer buffer) throws SAXException {
+        final StringBuilder xml = new StringBuilder();
+        buffer.provideSAXEvents(new DefaultHandler() {
+            @Override
+            public void startElement(final String uri, final String localName, final String qName,
+                                     final Attributes attributes) {
+                xml.append('<').append(qName);
+                for (int ii = 0; ii < attributes.getLength(); ii++) {
+                    xml.append(' ').append(attributes.getQName(ii)).append("=\"").append(attributes.getValue(ii)).append('"');
+                }
+                xml.append('>');
+            }
+
+            @Override
+            public void endElement(final String uri, final String localName, final String qName) {
+                xml.append("</").append(qName).append('>');
+            }
+
+            @Override
+            public void characters(final char[] ch, final int start, final int length) {
+                xml.append(ch, start, length);
+            }
+        });
+        return xml.toString();
+    }
+}
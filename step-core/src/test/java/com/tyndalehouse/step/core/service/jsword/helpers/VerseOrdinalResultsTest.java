@@ -0,0 +1,113 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import org.crosswire.jsword.passage.NoSuchKeyException;
+import org.crosswire.jsword.passage.Passage;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+import org.crosswire.jsword.passage.PassageTally;
+import org.crosswire.jsword.passage.Verse;
+import org.crosswire.jsword.versification.BibleBook;
+import org.crosswire.jsword.versification.Versification;
+import org.crosswire.jsword.versification.system.Versifications;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the ordering and paging of results kept as ordinals
+ *
+ * @author chrisburrell
+ */
+public class VerseOrdinalResultsTest {
+    private Versification v11n;
+
+    /**
+     * Sets up the versification
+     */
+    @Before
+    public void setUp() {
+        this.v11n = Versifications.instance().getVersification("KJV");
+    }
+
+    /**
+     * Any page can be cut out, the last one being shorter
+     */
+    @Test
+    public void testCanonicalPages() throws NoSuchKeyException {
+        final VerseOrdinalResults results = VerseOrdinalResults.canonical(passage("Gen.1.1-Gen.1.5;Exod.2.3"));
+        assertEquals(6, results.size());
+
+        assertEquals(passage("Gen.1.3-Gen.1.4").getOsisRef(), results.getPage(2, 2).getOsisRef());
+        assertEquals(passage("Gen.1.5;Exod.2.3").getOsisRef(), results.getPage(3, 2).getOsisRef());
+        assertEquals(passage("Exod.2.3").getOsisRef(), results.getPage(2, 5).getOsisRef());
+        assertEquals(0, results.getPage(4, 2).getCardinality());
+    }
+
+    /**
+     * The most relevant verses come first, ties being kept in canonical order
+     */
+    @Test
+    public void testRanked() throws NoSuchKeyException {
+        final PassageTally tally = new PassageTally(this.v11n);
+        tally.add(verse(BibleBook.GEN, 1, 1), 1);
+        tally.add(verse(BibleBook.GEN, 1, 2), 3);
+        tally.add(verse(BibleBook.EXOD, 1, 1), 3);
+        tally.add(verse(BibleBook.EXOD, 1, 2), 2);
+
+        final VerseOrdinalResults results = VerseOrdinalResults.ranked(tally);
+        assertEquals(verse(BibleBook.GEN, 1, 2).getOrdinal(), results.getOrdinal(0));
+        assertEquals(verse(BibleBook.EXOD, 1, 1).getOrdinal(), results.getOrdinal(1));
+        assertEquals(verse(BibleBook.EXOD, 1, 2).getOrdinal(), results.getOrdinal(2));
+        assertEquals(verse(BibleBook.GEN, 1, 1).getOrdinal(), results.getOrdinal(3));
+
+        // the page is the second and third most relevant verses
+        assertEquals(passage("Exod.1.1-Exod.1.2").getOsisRef(), results.getPage(2, 2).getOsisRef());
+    }
+
+    /**
+     * Verses go in the first group they are in, the others last or not at all
+     */
+    @Test
+    public void testGrouped() throws NoSuchKeyException {
+        final Passage all = passage("Gen.1.1-Gen.1.4");
+        final VerseOrdinalResults kept = VerseOrdinalResults.grouped(all,
+                Arrays.asList(passage("Gen.1.3;Gen.1.4"), passage("Gen.1.1;Gen.1.4")), true);
+
+        assertEquals(4, kept.size());
+        assertArrayEquals(new int[]{
+                        verse(BibleBook.GEN, 1, 3).getOrdinal(), verse(BibleBook.GEN, 1, 4).getOrdinal(),
+                        verse(BibleBook.GEN, 1, 1).getOrdinal(), verse(BibleBook.GEN, 1, 2).getOrdinal()},
+                new int[]{kept.getOrdinal(0), kept.getOrdinal(1), kept.getOrdinal(2), kept.getOrdinal(3)});
+        assertArrayEquals(new int[]{0, 0, 1, -1},
+                new int[]{kept.getGroup(0), kept.getGroup(1), kept.getGroup(2), kept.getGroup(3)});
+
+        // the second page, in canonical order, is how it is retrieved
+        assertArrayEquals(new int[]{verse(BibleBook.GEN, 1, 1).getOrdinal(), verse(BibleBook.GEN, 1, 2).getOrdinal()},
+                kept.getCanonicalPageOrdinals(2, 2));
+
+        final VerseOrdinalResults dropped = VerseOrdinalResults.grouped(all,
+                Arrays.asList(passage("Gen.1.3;Gen.1.4"), passage("Gen.1.1;Gen.1.4")), false);
+        assertEquals(3, dropped.size());
+    }
+
+    /**
+     * @param reference the reference
+     * @return the passage
+     */
+    private Passage passage(final String reference) throws NoSuchKeyException {
+        return (Passage) PassageKeyFactory.instance().getKey(this.v11n, reference);
+    }
+
+    /**
+     * @param book    the book
+     * @param chapter the chapter
+     * @param verse   the verse
+     * @return the verse
+     */
+    private Verse verse(final BibleBook book, final int chapter, final int verse) {
+        return new Verse(this.v11n, book, chapter, verse);
+    }
+}
@@ -0,0 +1,122 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import com.tyndalehouse.step.core.models.LookupOption;
+import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+import org.crosswire.common.util.Language;
+import org.crosswire.jsword.book.Book;
+import org.crosswire.jsword.book.BookCategory;
+import org.crosswire.jsword.book.BookMetaData;
+import org.crosswire.jsword.book.FeatureType;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the capabilities worked out for each version
+ *
+ * @author chrisburrell
+ */
+public class VersionCapabilityMatrixTest {
+    private VersionCapabilityMatrix matrix;
+
+    /**
+     * Sets up an English version tagged with strong numbers, and a Greek one without any features
+     */
+    @Before
+    public void setUp() {
+        final JSwordVersificationService versificationService = mock(JSwordVersificationService.class);
+        final Book english = mockBook("ENG", "en", FeatureType.STRONGS_NUMBERS, FeatureType.WORDS_OF_CHRIST);
+        final Book greek = mockBook("GRK", "grc");
+        when(versificationService.getBookFromVersion("ENG")).thenReturn(english);
+        when(versificationService.getBookFromVersion("GRK")).thenReturn(greek);
+        this.matrix = new VersionCapabilityMatrix(versificationService, null);
+    }
+
+    /**
+     * Options come from the version's features, and accents from any Greek version alongside it
+     */
+    @Test
+    public void testFeatures() {
+        final long english = this.matrix.getFeatures("ENG", null);
+        assertTrue(VersionCapabilityMatrix.contains(english, LookupOption.RED_LETTER));
+        assertTrue(VersionCapabilityMatrix.contains(english, LookupOption.INTERLINEAR));
+        assertTrue(VersionCapabilityMatrix.contains(english, LookupOption.VERSE_NUMBERS));
+        assertTrue(VersionCapabilityMatrix.contains(english, LookupOption.HIDE_XGEN));
+        assertFalse(VersionCapabilityMatrix.contains(english, LookupOption.GREEK_ACCENTS));
+        assertFalse(VersionCapabilityMatrix.contains(english, LookupOption.NOTES));
+
+        final long withGreek = this.matrix.getFeatures("ENG", Arrays.asList("GRK"));
+        assertTrue(VersionCapabilityMatrix.contains(withGreek, LookupOption.GREEK_ACCENTS));
+        assertFalse(VersionCapabilityMatrix.contains(withGreek, LookupOption.HEBREW_VOWELS));
+
+        final long greek = this.matrix.getFeatures("GRK", null);
+        assertTrue(VersionCapabilityMatrix.contains(greek, LookupOption.TRANSLITERATE_ORIGINAL));
+        assertFalse(VersionCapabilityMatrix.contains(greek, LookupOption.INTERLINEAR));
+    }
+
+    /**
+     * Options are only supported if the module has the feature behind them
+     */
+    @Test
+    public void testSupportsFeatures() {
+        assertTrue(this.matrix.supportsFeatures("ENG", LookupOption.ENGLISH_VOCAB, LookupOption.VERSE_NUMBERS));
+        assertFalse(this.matrix.supportsFeatures("ENG", LookupOption.ENGLISH_VOCAB, LookupOption.MORPHOLOGY));
+        assertTrue(this.matrix.supportsFeatures("GRK", LookupOption.VERSE_NUMBERS));
+        assertFalse(this.matrix.supportsFeatures("GRK", LookupOption.HEADINGS));
+    }
+
+    /**
+     * Capabilities are kept until the module changes
+     */
+    @Test
+    public void testInvalidate() {
+        final VersionCapabilityMatrix.VersionCapabilities capabilities = this.matrix.get("ENG");
+        assertSame(capabilities, this.matrix.get("ENG"));
+        assertTrue(capabilities.hasStrongs());
+        assertFalse(capabilities.isSameLanguageBible(this.matrix.get("GRK")));
+
+        final int generation = this.matrix.getGeneration();
+        this.matrix.invalidate("eng");
+        assertNotSame(capabilities, this.matrix.get("ENG"));
+        assertTrue(generation != this.matrix.getGeneration());
+    }
+
+    /**
+     * Bitsets convert back to the same options
+     */
+    @Test
+    public void testBits() {
+        final EnumSet<LookupOption> options = EnumSet.of(LookupOption.HEADINGS, LookupOption.HIDE_COMPARE_HEADERS);
+        assertEquals(options, VersionCapabilityMatrix.toOptions(VersionCapabilityMatrix.toBits(options)));
+    }
+
+    /**
+     * @param initials the initials of the book
+     * @param language the language of the book
+     * @param features the features of the book
+     * @return the book
+     */
+    private Book mockBook(final String initials, final String language, final FeatureType... features) {
+        final Book book = mock(Book.class);
+        final BookMetaData metaData = mock(BookMetaData.class);
+        when(book.getInitials()).thenReturn(initials);
+        when(book.getBookMetaData()).thenReturn(metaData);
+        when(book.getBookCategory()).thenReturn(BookCategory.BIBLE);
+        when(book.getLanguage()).thenReturn(new Language(language));
+        for (final FeatureType feature : features) {
+            when(metaData.hasFeature(feature)).thenReturn(true);
+            when(book.hasFeature(feature)).thenReturn(true);
+        }
+        return book;
+    }
+}
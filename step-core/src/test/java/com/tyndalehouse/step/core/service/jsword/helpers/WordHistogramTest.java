@@ -0,0 +1,48 @@
+package com.tyndalehouse.step.core.service.jsword.helpers;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the counting and merging of word histograms
+ *
+ * @author chrisburrell
+ */
+public class WordHistogramTest {
+    /**
+     * Words are counted and sorted, blank tokens being ignored
+     */
+    @Test
+    public void testFromTokens() {
+        final WordHistogram histogram = WordHistogram.fromTokens(new String[]{"the", "", "love", "of", "the", "Lord"});
+        assertEquals(4, histogram.size());
+        assertEquals("Lord", histogram.getWord(0));
+        assertEquals("love", histogram.getWord(1));
+        assertEquals("of", histogram.getWord(2));
+        assertEquals("the", histogram.getWord(3));
+        assertEquals(2, histogram.getCount(3));
+    }
+
+    /**
+     * Merging adds up the counts of common words and keeps the others
+     */
+    @Test
+    public void testMerge() {
+        final WordHistogram first = WordHistogram.fromTokens(new String[]{"a", "c", "c", "e"});
+        final WordHistogram second = WordHistogram.fromTokens(new String[]{"b", "c", "f", "f"});
+
+        final WordHistogram merged = first.merge(second);
+        assertEquals(5, merged.size());
+        assertEquals("a", merged.getWord(0));
+        assertEquals("b", merged.getWord(1));
+        assertEquals("c", merged.getWord(2));
+        assertEquals(3, merged.getCount(2));
+        assertEquals("e", merged.getWord(3));
+        assertEquals("f", merged.getWord(4));
+        assertEquals(2, merged.getCount(4));
+
+        assertSame(first, first.merge(WordHistogram.empty()));
+    }
+}
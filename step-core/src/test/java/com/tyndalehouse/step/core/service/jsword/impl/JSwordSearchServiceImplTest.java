@@ -1,5 +1,6 @@
 package com.tyndalehouse.step.core.service.jsword.impl;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
@@ -11,6 +12,7 @@ import java.util.List;
 import com.tyndalehouse.step.core.models.AvailableFeatures;
 import com.tyndalehouse.step.core.models.InterlinearMode;
 import com.tyndalehouse.step.core.service.PassageOptionsValidationService;
+import org.crosswire.jsword.passage.Key;
 import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -54,6 +56,22 @@ public class JSwordSearchServiceImplTest {
         assertTrue(this.search.estimateSearchResults(new SearchQuery("John", new String[] {"ESV-THE"}, "false", 0, 0, 0, null)) > 100);
     }
 
+    /**
+     * A search restricted to the verses of an earlier search finds the verses found by both
+     */
+    @Test
+    public void testScopedSearch() {
+        assertScopedSearchIsIntersection("t=fire", "t=elijah");
+    }
+
+    /**
+     * A search for a Strong number restricted to the verses of an earlier search finds the verses found by both
+     */
+    @Test
+    public void testScopedStrongSearch() {
+        assertScopedSearchIsIntersection("t=strong:h0452", "t=chariot");
+    }
+
     /**
      * Random tests
      */
@@ -94,6 +112,31 @@ public class JSwordSearchServiceImplTest {
         assertFalse(results.isEmpty());
     }
 
+    /**
+     * @param query      the query to run within the scope
+     * @param scopeQuery the query finding the scope
+     */
+    private void assertScopedSearchIsIntersection(final String query, final String scopeQuery) {
+        final Key scope = keys(scopeQuery);
+        final Key expected = keys(query);
+        final int unscoped = expected.getCardinality();
+        expected.retainAll(scope);
+        assertFalse(expected.isEmpty());
+        assertTrue(expected.getCardinality() < unscoped);
+
+        final SearchQuery sq = new SearchQuery(query, new String[] {"ESV-THE"}, "false", 0, 1, 1, null);
+        sq.getCurrentSearch().setScope(scope);
+        assertEquals(expected.getOsisRef(), this.search.searchKeys(sq).getOsisRef());
+    }
+
+    /**
+     * @param query the query
+     * @return the verses found by the query in the ESV, searching every verse
+     */
+    private Key keys(final String query) {
+        return this.search.searchKeys(new SearchQuery(query, new String[] {"ESV-THE"}, "false", 0, 1, 1, null));
+    }
+
     // @Test
     // public void testRebuildIndex() {
     // final IndexManager indexManager = IndexManagerFactory.getIndexManager();
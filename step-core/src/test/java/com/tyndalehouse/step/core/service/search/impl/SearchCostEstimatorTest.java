@@ -0,0 +1,206 @@
+package com.tyndalehouse.step.core.service.search.impl;
+
+import com.tyndalehouse.step.core.exceptions.TranslatedException;
+import com.tyndalehouse.step.core.service.impl.IndividualSearch;
+import com.tyndalehouse.step.core.service.impl.SearchQuery;
+import com.tyndalehouse.step.core.service.impl.SearchType;
+import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
+import com.tyndalehouse.step.core.service.jsword.impl.JSwordSearchServiceImpl;
+import com.tyndalehouse.step.core.utils.TestUtils;
+import org.crosswire.jsword.passage.NoSuchKeyException;
+import org.crosswire.jsword.passage.PassageKeyFactory;
+import org.crosswire.jsword.versification.Versification;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the planning of searches from their estimates
+ *
+ * @author chrisburrell
+ */
+public class SearchCostEstimatorTest {
+    private final SearchCostEstimator estimator = new SearchCostEstimator(null, null, true, 10000, 20000, 200);
+    private final JSwordVersificationService versificationService = TestUtils.mockVersificationService();
+    private final JSwordSearchServiceImpl jswordSearch = new JSwordSearchServiceImpl(this.versificationService, null,
+            null);
+
+    /**
+     * A word is estimated to be found in as many verses as it is in the index
+     */
+    @Test
+    public void testDocumentFrequency() {
+        final long hits = indexEstimator(Long.MAX_VALUE, 200).estimate(
+                text("elijah", null, "ESV-THE")).getHits();
+
+        assertTrue(hits > 0);
+        assertEquals(this.jswordSearch.estimateSearchResults(
+                new SearchQuery("t=elijah", new String[]{"ESV-THE"}, "false", 0, 1, 1, null)), hits);
+    }
+
+    /**
+     * A word made of a token found nowhere is found nowhere, whichever of its tokens comes first
+     */
+    @Test
+    public void testAbsentToken() {
+        final SearchCostEstimator indexEstimator = indexEstimator(Long.MAX_VALUE, 200);
+        assertEquals(0, indexEstimator.estimate(text("xyzzyq-elijah", null, "ESV-THE")).getHits());
+        assertEquals(0, indexEstimator.estimate(text("elijah-xyzzyq", null, "ESV-THE")).getHits());
+    }
+
+    /**
+     * Wildcards are expanded to the words they match, and assumed to match every verse if they match too many
+     */
+    @Test
+    public void testWildcardExpansion() {
+        final long elijah = indexEstimator(Long.MAX_VALUE, 200).estimate(
+                text("elijah", null, "ESV-THE")).getHits();
+        final long expanded = indexEstimator(Long.MAX_VALUE, 200).estimate(
+                text("elij*", null, "ESV-THE")).getHits();
+        assertTrue(expanded >= elijah);
+
+        final long everyVerse = indexEstimator(Long.MAX_VALUE, 1).estimate(text("e*", null, "ESV-THE")).getHits();
+        assertEquals(this.jswordSearch.getIndexSearcher("ESV-THE").getIndexReader().numDocs(), everyVerse);
+    }
+
+    /**
+     * Searches restricted to a passage find verses in proportion to the size of the passage
+     *
+     * @throws NoSuchKeyException the passage isn't recognised
+     */
+    @Test
+    public void testRangeScaling() throws NoSuchKeyException {
+        final SearchCostEstimator indexEstimator = indexEstimator(Long.MAX_VALUE, 200);
+        final long wholeBible = indexEstimator.estimate(text("elijah", null, "ESV-THE")).getHits();
+        final long matthew = indexEstimator.estimate(text("elijah", "Mat", "ESV-THE")).getHits();
+
+        final Versification v11n = this.versificationService.getVersificationForVersion("ESV-THE");
+        final double scope = (double) PassageKeyFactory.instance().getKey(v11n, "Mat").getCardinality()
+                / (v11n.maximumOrdinal() + 1);
+        assertTrue(matthew < wholeBible);
+        assertEquals((long) (wholeBible * scope), matthew);
+    }
+
+    /**
+     * Queries over budget for all versions, but not for the first, search the first version only
+     */
+    @Test
+    public void testDegraded() {
+        final IndividualSearch search = text("elijah", null, "ESV-THE", "KJV");
+        indexEstimator(1, 200).plan(new SearchQuery(1, 0, null, null, search));
+
+        assertTrue(search.isMasterVersionOnly());
+        assertArrayEquals(new String[]{"ESV-THE"}, search.getSearchedVersions());
+        assertArrayEquals(new String[]{"ESV-THE", "KJV"}, search.getVersions());
+    }
+
+    /**
+     * Queries within budget search all their versions
+     */
+    @Test
+    public void testNotDegraded() {
+        final IndividualSearch search = text("elijah", null, "ESV-THE", "KJV");
+        indexEstimator(Long.MAX_VALUE, 200).plan(new SearchQuery(1, 0, null, null, search));
+
+        assertFalse(search.isMasterVersionOnly());
+        assertArrayEquals(new String[]{"ESV-THE", "KJV"}, search.getSearchedVersions());
+    }
+
+    /**
+     * The searches finding fewest verses are run first, searches with the same estimate keeping their order
+     */
+    @Test
+    public void testExecutionOrder() {
+        assertArrayEquals(new int[]{2, 0, 3, 1}, SearchCostEstimator.getExecutionOrder(new SearchCostEstimator.Estimate[]{
+                new SearchCostEstimator.Estimate(50, 50, 50),
+                new SearchCostEstimator.Estimate(900, 900, 900),
+                new SearchCostEstimator.Estimate(10, 10, 10),
+                new SearchCostEstimator.Estimate(50, 50, 50)
+        }));
+    }
+
+    /**
+     * Joined searches are run most selective first, and the results retrieved as per the last search
+     */
+    @Test
+    public void testJoinReordered() {
+        final IndividualSearch subject = search(SearchType.SUBJECT_FULL);
+        final IndividualSearch related = search(SearchType.RELATED_VERSES);
+        final SearchQuery sq = new SearchQuery(1, 0, null, null, subject, related);
+
+        this.estimator.plan(sq);
+        assertSame(related, sq.getCurrentSearch());
+        assertTrue(sq.hasMoreSearches());
+        assertSame(subject, sq.getCurrentSearch());
+        assertFalse(sq.hasMoreSearches());
+
+        sq.setCurrentSearchAsLastSearch();
+        assertSame(related, sq.getCurrentSearch());
+    }
+
+    /**
+     * Searches sorted by vocabulary are run in the order given
+     */
+    @Test
+    public void testVocabularySortNotReordered() {
+        final IndividualSearch subject = search(SearchType.SUBJECT_FULL);
+        final SearchQuery sq = new SearchQuery(1, 0, null, SearchServiceImpl.VOCABULARY_SORT, subject,
+                search(SearchType.RELATED_VERSES));
+
+        this.estimator.plan(sq);
+        assertSame(subject, sq.getCurrentSearch());
+    }
+
+    /**
+     * Queries over budget are refused
+     */
+    @Test
+    public void testRefused() {
+        final IndividualSearch[] searches = new IndividualSearch[50];
+        for (int ii = 0; ii < searches.length; ii++) {
+            searches[ii] = search(SearchType.SUBJECT_FULL);
+        }
+
+        try {
+            this.estimator.plan(new SearchQuery(1, 0, null, null, searches));
+            fail("Query should have been refused");
+        } catch (final TranslatedException e) {
+            assertEquals("search_too_expensive", e.getMessage());
+        }
+    }
+
+    /**
+     * @param degradeAbove     the work above which a query is only run against its first version
+     * @param maxExpandedTerms the number of terms a wildcard is expanded to
+     * @return an estimator reading the indexes of the installed versions, never refusing a query
+     */
+    private SearchCostEstimator indexEstimator(final long degradeAbove, final int maxExpandedTerms) {
+        return new SearchCostEstimator(this.jswordSearch, this.versificationService, true, degradeAbove,
+                Long.MAX_VALUE, maxExpandedTerms);
+    }
+
+    /**
+     * @param query    the text to search for
+     * @param range    the passage to search in, or null
+     * @param versions the versions to search
+     * @return a text search
+     */
+    private static IndividualSearch text(final String query, final String range, final String... versions) {
+        return new IndividualSearch(SearchType.TEXT, Arrays.asList(versions), query, range, null);
+    }
+
+    /**
+     * @param type the type of search
+     * @return a search of that type
+     */
+    private static IndividualSearch search(final SearchType type) {
+        return new IndividualSearch(type, Arrays.asList("ESV-THE", "KJV"), "elijah", null, null);
+    }
+}
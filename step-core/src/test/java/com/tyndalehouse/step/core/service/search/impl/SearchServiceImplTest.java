@@ -15,9 +15,11 @@ import com.tyndalehouse.step.core.models.LookupOption;
 import com.tyndalehouse.step.core.service.PassageOptionsValidationService;
 import com.tyndalehouse.step.core.service.impl.LexiconDefinitionServiceImpl;
 import com.tyndalehouse.step.core.service.impl.SearchQuery;
+import com.tyndalehouse.step.core.service.impl.SearchType;
 import com.tyndalehouse.step.core.service.impl.TimelineServiceImpl;
 import com.tyndalehouse.step.core.service.jsword.JSwordMetadataService;
 import com.tyndalehouse.step.core.service.jsword.JSwordModuleService;
+import org.crosswire.jsword.passage.Key;
 import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -29,6 +31,7 @@ import com.tyndalehouse.step.core.models.search.SearchResult;
 import com.tyndalehouse.step.core.models.search.SubjectHeadingSearchEntry;
 import com.tyndalehouse.step.core.models.search.TimelineEventSearchEntry;
 import com.tyndalehouse.step.core.models.search.VerseSearchEntry;
+import com.tyndalehouse.step.core.service.helpers.SubjectReferenceIndexStore;
 import com.tyndalehouse.step.core.service.helpers.VersionResolver;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
 import com.tyndalehouse.step.core.service.jsword.impl.JSwordPassageServiceImpl;
@@ -44,12 +47,13 @@ public class SearchServiceImplTest {
     private static final Logger LOGGER = LoggerFactory.getLogger(SearchServiceImplTest.class);
     private TestEntityManager entityManager;
     private SubjectSearchServiceImpl subjects;
+    private JSwordSearchServiceImpl jswordSearch;
     private SearchServiceImpl searchServiceUnderTest;
 
     @Before
     public void setUp() {
         entityManager = new TestEntityManager();
-        searchServiceUnderTest = getSearchServiceUnderTest();
+        searchServiceUnderTest = getSearchServiceUnderTest(Long.MAX_VALUE);
     }
 
     /**
@@ -62,6 +66,51 @@ public class SearchServiceImplTest {
         assertFalse(results.isEmpty());
     }
 
+    /**
+     * Joined searches find the verses found by each of the searches, whether or not the later searches are
+     * restricted to the verses found by the first
+     */
+    @Test
+    public void testJoinedSearch() {
+        final Key both = keys("t=elijah");
+        both.retainAll(keys("t=fire"));
+
+        assertFalse(both.isEmpty());
+        assertEquals(both.getCardinality(), total("t=elijah=>t=fire"));
+        assertEquals(both.getCardinality(), total("t=fire=>t=elijah"));
+    }
+
+    /**
+     * Text searches joined to a subject search find the verses found by both
+     */
+    @Test
+    public void testJoinedSubjectSearch() {
+        final SearchQuery subject = new SearchQuery("sh=elijah", new String[]{"ESV-THE"}, "false", 0, 1, 1, null);
+        subject.getCurrentSearch().setType(SearchType.SUBJECT_FULL);
+        subject.getCurrentSearch().setQuery(subject.getCurrentSearch().getOriginalQuery());
+        final Key both = this.subjects.getKeys(subject);
+        both.retainAll(keys("t=chariot"));
+
+        assertFalse(both.isEmpty());
+        assertEquals(both.getCardinality(), total("sh=elijah=>t=chariot"));
+    }
+
+    /**
+     * Results of a search restricted to the first version, to keep it within budget, say so
+     */
+    @Test
+    public void testMasterVersionOnlyIsReported() {
+        final String[] versions = {"ESV-THE", "KJV"};
+        assertFalse(this.searchServiceUnderTest.search(
+                new SearchQuery("t=elijah", versions, "false", 0, 1, 1, null)).isMasterVersionOnly());
+
+        final SearchResult degraded = getSearchServiceUnderTest(1).search(
+                new SearchQuery("t=elijah", versions, "false", 0, 1, 1, null));
+        assertTrue(degraded.isMasterVersionOnly());
+        assertEquals("ESV-THE", degraded.getMasterVersion());
+        assertEquals("KJV", degraded.getExtraVersions());
+    }
+
     /**
      * test exact strong match
      */
@@ -106,9 +155,27 @@ public class SearchServiceImplTest {
     }
 
     /**
+     * @param query the query
+     * @return the verses found by the query in the ESV, searching every verse
+     */
+    private Key keys(final String query) {
+        return this.jswordSearch.searchKeys(new SearchQuery(query, new String[]{"ESV-THE"}, "false", 0, 1, 1, null));
+    }
+
+    /**
+     * @param query the query
+     * @return the number of verses found by the query in the ESV
+     */
+    private int total(final String query) {
+        return this.searchServiceUnderTest.search(
+                new SearchQuery(query, new String[]{"ESV-THE"}, "false", 0, 1, 1, null)).getTotal();
+    }
+
+    /**
+     * @param degradeAbove the work above which queries only search their first version
      * @return the search service to test
      */
-    private SearchServiceImpl getSearchServiceUnderTest() {
+    private SearchServiceImpl getSearchServiceUnderTest(final long degradeAbove) {
         final JSwordMetadataService meta = mock(JSwordMetadataService.class);
         final JSwordModuleService module = mock(JSwordModuleService.class);
         final JSwordVersificationService versificationService = TestUtils.mockVersificationService();
@@ -123,11 +190,12 @@ public class SearchServiceImplTest {
         when(module.isIndexed(any(String.class))).thenReturn(true);
         when(meta.supportsFeature(any(String.class), any(LookupOption.class))).thenReturn(true);
 
-        final JSwordSearchServiceImpl jswordSearch = new JSwordSearchServiceImpl(versificationService, null, jsword);
+        jswordSearch = new JSwordSearchServiceImpl(versificationService, null, jsword);
         subjects = new SubjectSearchServiceImpl(entityManager,
-                jswordSearch, meta, module, versificationService);
+                jswordSearch, meta, module, versificationService, mock(SubjectReferenceIndexStore.class));
         return new SearchServiceImpl(jswordSearch, meta, versificationService, subjects, new TimelineServiceImpl(entityManager, jsword), null, entityManager, TestUtils.mockVersionResolver(),
-                mock(LexiconDefinitionServiceImpl.class), null, null
+                mock(LexiconDefinitionServiceImpl.class), null, null,
+                new SearchCostEstimator(jswordSearch, versificationService, true, degradeAbove, Long.MAX_VALUE, 200)
         );
     }
 }
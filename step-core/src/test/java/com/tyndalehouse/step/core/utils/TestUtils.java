@@ -41,6 +41,7 @@ import org.mockito.stubbing.Answer;
 
 import com.tyndalehouse.step.core.data.entities.impl.EntityIndexWriterImpl;
 import com.tyndalehouse.step.core.data.entities.impl.TestEntityManager;
+import com.tyndalehouse.step.core.service.helpers.BookRegistry;
 import com.tyndalehouse.step.core.service.helpers.VersionResolver;
 import com.tyndalehouse.step.core.service.jsword.JSwordVersificationService;
 import com.tyndalehouse.step.core.service.jsword.impl.JSwordVersificationServiceImpl;
@@ -84,7 +85,7 @@ public final class TestUtils {
      */
     public static JSwordVersificationService mockVersificationService() {
         final VersionResolver resolver = mockVersionResolver();
-        final JSwordVersificationService versification = new JSwordVersificationServiceImpl(resolver);
+        final JSwordVersificationService versification = new JSwordVersificationServiceImpl(new BookRegistry(resolver));
         return versification;
     }
 
@@ -0,0 +1,65 @@
+package com.tyndalehouse.step.core.utils.language;
+
+import com.tyndalehouse.step.core.utils.IOUtils;
+import com.tyndalehouse.step.core.utils.language.hebrew.HebrewTransliterator;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the transliterator gives exactly the same output as the letter by letter analysis
+ *
+ * @author chrisburrell
+ */
+public class HebrewTransliteratorTest {
+    private static final String SPECIFIC_FORMS = "com/tyndalehouse/step/core/data/create/lexicon/specific_forms.txt";
+
+    /**
+     * Every Hebrew form of the lexicon is transliterated the same way
+     *
+     * @throws IOException if the forms cannot be read
+     */
+    @Test
+    public void testSameAsLetterByLetterForAllSpecificForms() throws IOException {
+        BufferedReader reader = null;
+        int numForms = 0;
+        try {
+            reader = new BufferedReader(new InputStreamReader(
+                    getClass().getClassLoader().getResourceAsStream(SPECIFIC_FORMS), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int separator = line.indexOf(',');
+                if (separator == -1 || separator == line.length() - 1) {
+                    continue;
+                }
+
+                final String form = line.substring(separator + 1);
+                if (HebrewUtils.isHebrewText(form)) {
+                    assertEquals(form, HebrewUtils.transliterateHebrewByLetters(form),
+                            HebrewTransliterator.transliterate(form));
+                    numForms++;
+                }
+            }
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+        assertTrue(numForms > 0);
+    }
+
+    /**
+     * Buffers re-used for a shorter word after a longer one do not leak into the output
+     */
+    @Test
+    public void testReuseAfterLongerWord() {
+        final String longer = "אֲבִיהֶם אֲבִיכֶם";
+        final String shorter = "אֲבִיהֶן";
+
+        assertEquals(HebrewUtils.transliterateHebrewByLetters(longer), HebrewTransliterator.transliterate(longer));
+        assertEquals(HebrewUtils.transliterateHebrewByLetters(shorter), HebrewTransliterator.transliterate(shorter));
+    }
+}
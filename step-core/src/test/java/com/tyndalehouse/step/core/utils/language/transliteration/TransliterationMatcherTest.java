@@ -0,0 +1,90 @@
+package com.tyndalehouse.step.core.utils.language.transliteration;
+
+import com.tyndalehouse.step.core.data.analyzers.TransliterationAnalyzer;
+import com.tyndalehouse.step.core.utils.language.GreekUtils;
+import com.tyndalehouse.step.core.utils.language.HebrewUtils;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.TermAttribute;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static com.tyndalehouse.step.core.utils.StringConversionUtils.getTransliterationMatcher;
+import static com.tyndalehouse.step.core.utils.StringConversionUtils.multiplyTranslitOptions;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the matcher accepts the same transliterations as the list of options it replaces
+ *
+ * @author chrisburrell
+ */
+public class TransliterationMatcherTest {
+    /**
+     * Every option listed by the rules, once indexed, is matched
+     */
+    @Test
+    public void testMatchesAllOptions() throws IOException {
+        assertMatchesAllOptions("hesed", HebrewUtils.getTransliterationRules());
+        assertMatchesAllOptions("achab", HebrewUtils.getTransliterationRules());
+        assertMatchesAllOptions("yehoshua", HebrewUtils.getTransliterationRules());
+        assertMatchesAllOptions("aggphab", GreekUtils.getTransliterationRules());
+        assertMatchesAllOptions("christos", GreekUtils.getTransliterationRules());
+    }
+
+    /**
+     * Spellings the rules do not allow are rejected
+     */
+    @Test
+    public void testRejectsOtherSpellings() {
+        final TransliterationMatcher matcher = getTransliterationMatcher("hesed", false);
+        assertTrue(matcher.matches("hetsed"));
+        assertFalse(matcher.matches("hesedh"));
+        assertFalse(matcher.matches("hese"));
+        assertFalse(matcher.matches("chesed"));
+    }
+
+    /**
+     * Prefixes are the starts of the indexed options
+     */
+    @Test
+    public void testPrefixes() {
+        final TransliterationMatcher matcher = getTransliterationMatcher("aggphab", true);
+        assertTrue(matcher.getPrefixes().contains("ag"));
+        assertTrue(matcher.getPrefixes().contains("an"));
+        assertEquals(2, matcher.getPrefixes().size());
+    }
+
+    /**
+     * @param word  the transliteration
+     * @param rules the rules applying to it
+     */
+    private void assertMatchesAllOptions(final String word, final List<TransliterationRule> rules)
+            throws IOException {
+        final TransliterationMatcher matcher = new TransliterationMatcher(word, rules);
+        final List<TransliterationOption> options = multiplyTranslitOptions(word, rules);
+        for (final TransliterationOption option : options) {
+            final String indexed = analyze(option.getOption().toString());
+            assertTrue(option + " as " + indexed, matcher.matches(indexed));
+        }
+    }
+
+    /**
+     * @param value the value
+     * @return the value as it is indexed
+     */
+    private String analyze(final String value) throws IOException {
+        final TokenStream tokens = new TransliterationAnalyzer().tokenStream("simplifiedStepTransliteration",
+                new StringReader(value));
+        final TermAttribute term = tokens.getAttribute(TermAttribute.class);
+        final StringBuilder analyzed = new StringBuilder(value.length());
+        while (tokens.incrementToken()) {
+            analyzed.append(term.term());
+        }
+        tokens.close();
+        return analyzed.toString();
+    }
+}
@@ -0,0 +1,167 @@
+package com.tyndalehouse.step.mobileapp.generator;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The files making up an exported bundle, keyed by the path they were exported from. Each line of the manifest holds
+ * the path, the name of the file in the bundle, the SHA-1 of its content and the validators the server gave for it,
+ * separated by tabs, so that the next export only fetches and writes what has changed.
+ */
+public class BundleManifest {
+    private static final String ENCODING = "UTF-8";
+    private static final String NONE = "-";
+    private final Map<String, Entry> entries = new TreeMap<>();
+
+    /**
+     * @param file the manifest
+     * @return the manifest, empty if the file doesn't exist or can't be read
+     */
+    public static BundleManifest read(final File file) {
+        final BundleManifest manifest = new BundleManifest();
+        if (!file.exists()) {
+            return manifest;
+        }
+
+        try {
+            for (final String line : FileUtils.readLines(file, ENCODING)) {
+                final String[] parts = line.split("\t");
+                if (parts.length == 5) {
+                    manifest.put(new Entry(parts[0], parts[1], parts[2], fromField(parts[3]), fromField(parts[4])));
+                }
+            }
+        } catch (final IOException e) {
+            // everything gets exported again
+            manifest.entries.clear();
+        }
+        return manifest;
+    }
+
+    /**
+     * @param file the file to write the manifest to
+     * @throws IOException unable to write the manifest
+     */
+    public void write(final File file) throws IOException {
+        final List<String> lines = new ArrayList<>(this.entries.size());
+        synchronized (this.entries) {
+            for (final Entry e : this.entries.values()) {
+                lines.add(e.getPath() + '\t' + e.getFileName() + '\t' + e.getSha1() + '\t'
+                        + toField(e.getEtag()) + '\t' + toField(e.getLastModified()));
+            }
+        }
+        FileUtils.writeLines(file, ENCODING, lines, "\n");
+    }
+
+    /**
+     * @param path the path the file was exported from
+     * @return the entry, or null if there is none
+     */
+    public Entry get(final String path) {
+        synchronized (this.entries) {
+            return this.entries.get(path);
+        }
+    }
+
+    /**
+     * @param entry the entry to add, replacing any entry for the same path
+     */
+    public void put(final Entry entry) {
+        synchronized (this.entries) {
+            this.entries.put(entry.getPath(), entry);
+        }
+    }
+
+    /**
+     * @return a copy of all the entries
+     */
+    public Collection<Entry> getEntries() {
+        synchronized (this.entries) {
+            return new ArrayList<>(this.entries.values());
+        }
+    }
+
+    /**
+     * @param value a value, possibly null
+     * @return the value as written to the manifest
+     */
+    private static String toField(final String value) {
+        return value == null || value.isEmpty() ? NONE : value.replace('\t', ' ');
+    }
+
+    /**
+     * @param field a field as written to the manifest
+     * @return the value, possibly null
+     */
+    private static String fromField(final String field) {
+        return NONE.equals(field) ? null : field;
+    }
+
+    /**
+     * A single file of the bundle
+     */
+    public static final class Entry {
+        private final String path;
+        private final String fileName;
+        private final String sha1;
+        private final String etag;
+        private final String lastModified;
+
+        /**
+         * @param path         the path the file was exported from, including any query
+         * @param fileName     the name of the file in the bundle, relative to its root
+         * @param sha1         the SHA-1 of the content of the file
+         * @param etag         the ETag given by the server, may be null
+         * @param lastModified the Last-Modified date given by the server, may be null
+         */
+        public Entry(final String path, final String fileName, final String sha1, final String etag,
+                     final String lastModified) {
+            this.path = path;
+            this.fileName = fileName;
+            this.sha1 = sha1;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * @return the path the file was exported from
+         */
+        public String getPath() {
+            return this.path;
+        }
+
+        /**
+         * @return the name of the file in the bundle
+         */
+        public String getFileName() {
+            return this.fileName;
+        }
+
+        /**
+         * @return the SHA-1 of the content of the file
+         */
+        public String getSha1() {
+            return this.sha1;
+        }
+
+        /**
+         * @return the ETag given by the server
+         */
+        public String getEtag() {
+            return this.etag;
+        }
+
+        /**
+         * @return the Last-Modified date given by the server
+         */
+        public String getLastModified() {
+            return this.lastModified;
+        }
+    }
+}
@@ -0,0 +1,592 @@
+package com.tyndalehouse.step.mobileapp.generator;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+
+/**
+ * Exports the static bundle of the app from a STEP instance running locally, such as the step-server jar, rather
+ * than from the live site. Files are fetched in parallel, each of them only once however often it is referenced,
+ * and with a few attempts should a request fail or stall.
+ * <p/>
+ * Files referenced from the page and from its stylesheets are written under a name carrying a hash of their content,
+ * and the references are rewritten to match, so that a changed file never gets mixed up with an old copy. Files
+ * loaded by name by the app itself, such as the messages of each language, keep their name. The manifest of the
+ * bundle records where each file came from, so that the next export only asks for what has changed, only writes what
+ * is different, and removes what is no longer referenced.
+ */
+public class StaticBundleExporter implements Closeable {
+    public static final String MANIFEST = "bundle-manifest.txt";
+    public static final String INDEX = "index.html";
+    private static final Logger LOGGER = LoggerFactory.getLogger(StaticBundleExporter.class);
+    private static final String LINKS = "[src], [rel]:not([rel=canonical])";
+    private static final String CSS_SUFFIX = ".css";
+    private static final String ENCODING = "UTF-8";
+    private static final int HASH_LENGTH = 10;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int CONNECT_TIMEOUT = 10000;
+    private static final int SOCKET_TIMEOUT = 60000;
+    private static final long RETRY_PAUSE = 1000;
+    private final String baseUrl;
+    private final File root;
+    private final CloseableHttpClient client;
+    private final ExecutorService executor;
+    private final BundleManifest previous;
+    private final BundleManifest current = new BundleManifest();
+    private final ConcurrentMap<String, Future<ExportedFile>> exports = new ConcurrentHashMap<>();
+    private final AtomicInteger fetched = new AtomicInteger();
+    private final AtomicInteger unchanged = new AtomicInteger();
+    private final AtomicInteger written = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+
+    /**
+     * @param baseUrl the address of the local STEP instance, ending with a slash
+     * @param root    the directory of the bundle
+     * @param threads the number of files fetched at once
+     * @throws IOException unable to create the directory of the bundle
+     */
+    public StaticBundleExporter(final String baseUrl, final File root, final int threads) throws IOException {
+        this.baseUrl = baseUrl;
+        this.root = root;
+        FileUtils.forceMkdir(root);
+        this.previous = BundleManifest.read(new File(root, MANIFEST));
+
+        final PoolingHttpClientConnectionManager connections = new PoolingHttpClientConnectionManager();
+        connections.setMaxTotal(threads);
+        connections.setDefaultMaxPerRoute(threads);
+        this.client = HttpClients.custom()
+                .setConnectionManager(connections)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(CONNECT_TIMEOUT)
+                        .setConnectionRequestTimeout(SOCKET_TIMEOUT)
+                        .setSocketTimeout(SOCKET_TIMEOUT).build())
+                .disableAutomaticRetries()
+                .build();
+        this.executor = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * @param path the path of the page, relative to the base address
+     * @return the content of the page
+     * @throws IOException unable to fetch the page
+     */
+    public String fetchPage(final String path) throws IOException {
+        return new String(get(path, null).body, ENCODING);
+    }
+
+    /**
+     * Exports the page and everything it references, along with the messages of each language
+     *
+     * @param page      the page, which is written as the index of the bundle
+     * @param languages the languages of the app
+     * @return the number of files that couldn't be exported
+     * @throws IOException          unable to write the bundle
+     * @throws InterruptedException interrupted while waiting for the files
+     */
+    public int export(final Document page, final List<String> languages) throws IOException, InterruptedException {
+        final long start = System.currentTimeMillis();
+
+        // everything the page references, in parallel
+        final Map<Element, Future<ExportedFile>> links = new LinkedHashMap<>();
+        for (final Element link : page.select(LINKS)) {
+            final String attribute = getLinkAttribute(link);
+            final String path = link.attr(attribute);
+            if (isLocal(path) && !path.startsWith("international")) {
+                links.put(link, submit(stripLeadingSlash(path), null));
+            }
+        }
+
+        final List<Future<ExportedFile>> international = new ArrayList<>(languages.size());
+        for (final String language : languages) {
+            international.add(submit("international/interactive.js?lang=" + language,
+                    "international/interactive-" + language + ".js"));
+        }
+
+        // then whatever the stylesheets reference, which we need to know to name the stylesheets
+        final List<ExportedFile> stylesheets = new ArrayList<>();
+        for (final Future<ExportedFile> link : links.values()) {
+            final ExportedFile file = await(link);
+            if (file != null && file.body != null) {
+                stylesheets.add(file);
+                for (final String reference : getCssReferences(file)) {
+                    submit(resolve(file.path, reference), null);
+                }
+            }
+        }
+        for (final ExportedFile stylesheet : stylesheets) {
+            writeStylesheet(stylesheet);
+        }
+
+        // and finally the page itself, pointing at the names of the files in the bundle
+        for (final Map.Entry<Element, Future<ExportedFile>> link : links.entrySet()) {
+            final ExportedFile file = await(link.getValue());
+            if (file != null) {
+                link.getKey().attr(getLinkAttribute(link.getKey()), file.fileName);
+            }
+        }
+        for (final Future<ExportedFile> file : international) {
+            await(file);
+        }
+        writeIfChanged(INDEX, page.html().getBytes(ENCODING));
+
+        removeStaleFiles();
+        this.current.write(new File(this.root, MANIFEST));
+        LOGGER.info("Exported [{}] files in [{}]ms: [{}] fetched, [{}] unchanged on the server, [{}] written, "
+                + "[{}] failed", this.exports.size(), System.currentTimeMillis() - start, this.fetched.get(),
+                this.unchanged.get(), this.written.get(), this.failures.get());
+        return this.failures.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.executor.shutdownNow();
+        this.client.close();
+    }
+
+    /**
+     * Exports a file, unless it is already being exported
+     *
+     * @param path      the path of the file, relative to the base address
+     * @param fixedName the name of the file in the bundle, or null to name it after its content
+     * @return the file, once exported
+     */
+    private Future<ExportedFile> submit(final String path, final String fixedName) {
+        final Future<ExportedFile> existing = this.exports.get(path);
+        if (existing != null) {
+            return existing;
+        }
+
+        final FutureTask<ExportedFile> task = new FutureTask<>(new Callable<ExportedFile>() {
+            @Override
+            public ExportedFile call() throws Exception {
+                return exportFile(path, fixedName);
+            }
+        });
+        final Future<ExportedFile> raced = this.exports.putIfAbsent(path, task);
+        if (raced != null) {
+            return raced;
+        }
+        this.executor.execute(task);
+        return task;
+    }
+
+    /**
+     * @param file a file being exported
+     * @return the file, or null if it couldn't be exported
+     * @throws InterruptedException interrupted while waiting
+     */
+    private ExportedFile await(final Future<ExportedFile> file) throws InterruptedException {
+        try {
+            return file.get();
+        } catch (final ExecutionException e) {
+            // already counted and logged
+            return null;
+        }
+    }
+
+    /**
+     * Fetches a file and writes it to the bundle, if it has changed. Stylesheets are held back, since their name
+     * depends on the names of the files they reference.
+     *
+     * @param path      the path of the file
+     * @param fixedName the name of the file in the bundle, or null to name it after its content
+     * @return the file
+     * @throws IOException unable to fetch or write the file
+     */
+    private ExportedFile exportFile(final String path, final String fixedName) throws IOException {
+        try {
+            final boolean stylesheet = isStylesheet(path);
+            final BundleManifest.Entry known = this.previous.get(path);
+            final boolean reusable = !stylesheet && known != null && new File(this.root, known.getFileName()).exists()
+                    && (fixedName == null || fixedName.equals(known.getFileName()));
+
+            final Response response = get(path, reusable ? known : null);
+            if (response.body == null) {
+                this.unchanged.incrementAndGet();
+                this.current.put(known);
+                return new ExportedFile(path, known.getFileName(), null);
+            }
+
+            if (stylesheet) {
+                return new ExportedFile(path, null, response.body);
+            }
+
+            final String sha1 = sha1(response.body);
+            final String fileName = fixedName != null ? fixedName : getHashedName(path, sha1);
+            if (fixedName == null) {
+                writeIfAbsent(fileName, response.body);
+            } else {
+                writeIfChanged(fileName, response.body);
+            }
+            this.current.put(new BundleManifest.Entry(path, fileName, sha1, response.etag, response.lastModified));
+            return new ExportedFile(path, fileName, null);
+        } catch (final IOException e) {
+            this.failures.incrementAndGet();
+            LOGGER.warn("Unable to export [{}]: {}", path, e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Rewrites the references of a stylesheet to the names of the files in the bundle, and writes it under a name
+     * carrying the hash of the result
+     *
+     * @param stylesheet the stylesheet, as fetched
+     * @throws IOException          unable to write the stylesheet
+     * @throws InterruptedException interrupted while waiting for the files it references
+     */
+    private void writeStylesheet(final ExportedFile stylesheet) throws IOException, InterruptedException {
+        final String css = new String(stylesheet.body, ENCODING);
+        final Matcher matcher = RipHomePage.CSS_URL.matcher(css);
+        final StringBuffer rewritten = new StringBuffer(css.length() + 256);
+        while (matcher.find()) {
+            final String reference = getReference(matcher);
+            final Future<ExportedFile> future = isExportable(reference)
+                    ? this.exports.get(resolve(stylesheet.path, reference)) : null;
+            final ExportedFile file = future == null ? null : await(future);
+            final String replacement = file == null ? matcher.group()
+                    : "url('" + replaceFileName(reference, file.fileName) + "')";
+            matcher.appendReplacement(rewritten, Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(rewritten);
+
+        final byte[] body = rewritten.toString().getBytes(ENCODING);
+        final String sha1 = sha1(body);
+        stylesheet.fileName = getHashedName(stylesheet.path, sha1);
+        writeIfAbsent(stylesheet.fileName, body);
+        this.current.put(new BundleManifest.Entry(stylesheet.path, stylesheet.fileName, sha1, null, null));
+    }
+
+    /**
+     * @param stylesheet the stylesheet
+     * @return the references it makes to other files
+     * @throws IOException unable to decode the stylesheet
+     */
+    private List<String> getCssReferences(final ExportedFile stylesheet) throws IOException {
+        final List<String> references = new ArrayList<>(32);
+        final Matcher matcher = RipHomePage.CSS_URL.matcher(new String(stylesheet.body, ENCODING));
+        while (matcher.find()) {
+            final String reference = getReference(matcher);
+            if (isExportable(reference)) {
+                references.add(reference);
+            }
+        }
+        return references;
+    }
+
+    /**
+     * Fetches a file, a few times if need be
+     *
+     * @param path  the path of the file
+     * @param known the file as last exported, to only fetch it if it has changed, or null
+     * @return the response, with no body if the file hasn't changed
+     * @throws IOException unable to fetch the file
+     */
+    private Response get(final String path, final BundleManifest.Entry known) throws IOException {
+        IOException failure = null;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            final HttpGet get = new HttpGet(this.baseUrl + path);
+            if (known != null && known.getEtag() != null) {
+                get.setHeader("If-None-Match", known.getEtag());
+            }
+            if (known != null && known.getLastModified() != null) {
+                get.setHeader("If-Modified-Since", known.getLastModified());
+            }
+
+            try (CloseableHttpResponse response = this.client.execute(get)) {
+                final int status = response.getStatusLine().getStatusCode();
+                if (status == HttpStatus.SC_NOT_MODIFIED && known != null) {
+                    EntityUtils.consume(response.getEntity());
+                    return new Response(null, null, null);
+                }
+                if (status == HttpStatus.SC_OK) {
+                    this.fetched.incrementAndGet();
+                    return new Response(EntityUtils.toByteArray(response.getEntity()),
+                            getHeader(response, "ETag"), getHeader(response, "Last-Modified"));
+                }
+
+                EntityUtils.consume(response.getEntity());
+                failure = new IOException("Server returned " + status);
+                if (status < HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+                    break;
+                }
+            } catch (final IOException e) {
+                failure = e;
+            }
+
+            LOGGER.debug("Attempt [{}] at fetching [{}] failed", attempt, path);
+            pause(RETRY_PAUSE * attempt);
+        }
+        throw failure;
+    }
+
+    /**
+     * Removes the files of the last export that are no longer part of the bundle
+     */
+    private void removeStaleFiles() {
+        final Set<String> fileNames = new HashSet<>();
+        for (final BundleManifest.Entry entry : this.current.getEntries()) {
+            fileNames.add(entry.getFileName());
+        }
+
+        for (final BundleManifest.Entry entry : this.previous.getEntries()) {
+            if (!fileNames.contains(entry.getFileName())) {
+                final File stale = new File(this.root, entry.getFileName());
+                if (stale.exists() && !stale.delete()) {
+                    LOGGER.warn("Unable to delete [{}]", stale);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a file named after its content, unless it is already there
+     *
+     * @param fileName the name of the file
+     * @param body     the content
+     * @throws IOException unable to write the file
+     */
+    private void writeIfAbsent(final String fileName, final byte[] body) throws IOException {
+        final File file = new File(this.root, fileName);
+        if (!file.exists()) {
+            write(file, body);
+        }
+    }
+
+    /**
+     * Writes a file, unless its content is already the same
+     *
+     * @param fileName the name of the file
+     * @param body     the content
+     * @throws IOException unable to write the file
+     */
+    private void writeIfChanged(final String fileName, final byte[] body) throws IOException {
+        final File file = new File(this.root, fileName);
+        if (!file.exists() || file.length() != body.length
+                || !Arrays.equals(FileUtils.readFileToByteArray(file), body)) {
+            write(file, body);
+        }
+    }
+
+    /**
+     * Writes a file, through a temporary file so that the bundle never holds half a file
+     *
+     * @param file the file
+     * @param body the content
+     * @throws IOException unable to write the file
+     */
+    private void write(final File file, final byte[] body) throws IOException {
+        final File temporary = new File(file.getPath() + ".part");
+        FileUtils.writeByteArrayToFile(temporary, body);
+        if (file.exists()) {
+            FileUtils.forceDelete(file);
+        }
+        FileUtils.moveFile(temporary, file);
+        this.written.incrementAndGet();
+    }
+
+    /**
+     * @param link an element of the page
+     * @return the attribute holding the reference to the file
+     */
+    private static String getLinkAttribute(final Element link) {
+        return link.hasAttr("src") && !link.attr("src").isEmpty() ? "src" : "href";
+    }
+
+    /**
+     * @param matcher a matcher on a CSS url()
+     * @return the reference, without any quotes
+     */
+    private static String getReference(final Matcher matcher) {
+        return matcher.group(1).replace("\"", "").trim();
+    }
+
+    /**
+     * @param reference a reference made by a stylesheet
+     * @return true if the reference is to a file of the site
+     */
+    private static boolean isExportable(final String reference) {
+        return !reference.contains("#") && isLocal(reference);
+    }
+
+    /**
+     * @param path a path
+     * @return true if the path is relative to the site, rather than elsewhere or inline
+     */
+    private static boolean isLocal(final String path) {
+        return !path.isEmpty() && !path.startsWith("//") && !path.startsWith("data:") && !path.contains("://");
+    }
+
+    /**
+     * @param path the path of a file
+     * @return true if the file is a stylesheet
+     */
+    private static boolean isStylesheet(final String path) {
+        return stripQuery(path).endsWith(CSS_SUFFIX);
+    }
+
+    /**
+     * @param stylesheetPath the path of the stylesheet
+     * @param reference      the reference it makes
+     * @return the path of the file referenced, relative to the base address
+     */
+    static String resolve(final String stylesheetPath, final String reference) {
+        return stripLeadingSlash(URI.create("/" + stripQuery(stylesheetPath)).resolve(reference.replace(" ", "%20"))
+                .toString().replace("%20", " "));
+    }
+
+    /**
+     * @param path the path of a file
+     * @param sha1 the hash of its content
+     * @return the name of the file in the bundle, e.g. css/step.1a2b3c4d5e.css
+     */
+    static String getHashedName(final String path, final String sha1) {
+        final String name = stripQuery(path);
+        final int lastSlash = name.lastIndexOf('/');
+        final int extension = name.lastIndexOf('.');
+        final String hash = sha1.substring(0, HASH_LENGTH);
+        if (extension <= lastSlash) {
+            return name + '.' + hash;
+        }
+        return name.substring(0, extension) + '.' + hash + name.substring(extension);
+    }
+
+    /**
+     * @param reference the reference made by a stylesheet
+     * @param fileName  the name of the file in the bundle
+     * @return the reference, pointing at the file in the bundle
+     */
+    private static String replaceFileName(final String reference, final String fileName) {
+        final String path = stripQuery(reference);
+        return path.substring(0, path.lastIndexOf('/') + 1) + fileName.substring(fileName.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * @param path a path
+     * @return the path without any query
+     */
+    private static String stripQuery(final String path) {
+        final int query = path.indexOf('?');
+        return query == -1 ? path : path.substring(0, query);
+    }
+
+    /**
+     * @param path a path
+     * @return the path without any leading slash
+     */
+    private static String stripLeadingSlash(final String path) {
+        return path.startsWith("/") ? path.substring(1) : path;
+    }
+
+    /**
+     * @param response the response
+     * @param name     the name of the header
+     * @return the value of the header, or null
+     */
+    private static String getHeader(final CloseableHttpResponse response, final String name) {
+        return response.getFirstHeader(name) == null ? null : response.getFirstHeader(name).getValue();
+    }
+
+    /**
+     * @param body some content
+     * @return the hex SHA-1 of the content
+     */
+    private static String sha1(final byte[] body) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(body);
+            final StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (final byte b : digest) {
+                hex.append(Character.forDigit(b >> 4 & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    /**
+     * @param millis the time to pause for
+     */
+    private static void pause(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A response from the server
+     */
+    private static final class Response {
+        private final byte[] body;
+        private final String etag;
+        private final String lastModified;
+
+        /**
+         * @param body         the content, or null if it hasn't changed
+         * @param etag         the ETag header
+         * @param lastModified the Last-Modified header
+         */
+        private Response(final byte[] body, final String etag, final String lastModified) {
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * A file of the bundle
+     */
+    private static final class ExportedFile {
+        private final String path;
+        private final byte[] body;
+        private volatile String fileName;
+
+        /**
+         * @param path     the path the file was exported from
+         * @param fileName the name of the file in the bundle, null for a stylesheet until it has been written
+         * @param body     the content of a stylesheet still to be written, null otherwise
+         */
+        private ExportedFile(final String path, final String fileName, final byte[] body) {
+            this.path = path;
+            this.fileName = fileName;
+            this.body = body;
+        }
+    }
+}
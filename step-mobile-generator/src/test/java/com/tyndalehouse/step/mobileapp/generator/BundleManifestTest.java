@@ -0,0 +1,81 @@
+package com.tyndalehouse.step.mobileapp.generator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the manifest of an exported bundle
+ *
+ * @author chrisburrell
+ */
+public class BundleManifestTest {
+    private File file;
+
+    /**
+     * Picks a file for the manifest
+     *
+     * @throws IOException unable to create the file
+     */
+    @Before
+    public void setUp() throws IOException {
+        this.file = File.createTempFile("bundle-manifest", ".txt");
+    }
+
+    /**
+     * Removes the manifest
+     */
+    @After
+    public void tearDown() {
+        this.file.delete();
+    }
+
+    /**
+     * Entries are read back as they were written, missing validators included
+     *
+     * @throws IOException unable to write the manifest
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        final BundleManifest manifest = new BundleManifest();
+        manifest.put(new BundleManifest.Entry("js/step.min.js?v=2", "js/step.min.0123456789.js",
+                "0123456789abcdef", "\"etag\"", "Mon, 19 Oct 2026 10:00:00 GMT"));
+        manifest.put(new BundleManifest.Entry("css/step.css", "css/step.abcdef0123.css", "abcdef0123456789",
+                null, ""));
+        manifest.write(this.file);
+
+        final BundleManifest read = BundleManifest.read(this.file);
+        final Iterator<BundleManifest.Entry> entries = read.getEntries().iterator();
+        final BundleManifest.Entry css = entries.next();
+        assertEquals("css/step.css", css.getPath());
+        assertEquals("css/step.abcdef0123.css", css.getFileName());
+        assertEquals("abcdef0123456789", css.getSha1());
+        assertNull(css.getEtag());
+        assertNull(css.getLastModified());
+
+        final BundleManifest.Entry js = entries.next();
+        assertEquals("js/step.min.js?v=2", js.getPath());
+        assertEquals("js/step.min.0123456789.js", js.getFileName());
+        assertEquals("\"etag\"", js.getEtag());
+        assertEquals("Mon, 19 Oct 2026 10:00:00 GMT", js.getLastModified());
+        assertFalse(entries.hasNext());
+    }
+
+    /**
+     * A manifest that doesn't exist yet is empty, so that everything gets exported
+     */
+    @Test
+    public void testMissingManifest() {
+        assertTrue(this.file.delete());
+        assertTrue(BundleManifest.read(this.file).getEntries().isEmpty());
+    }
+}
@@ -0,0 +1,34 @@
+package com.tyndalehouse.step.mobileapp.generator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the naming of the files of an exported bundle
+ *
+ * @author chrisburrell
+ */
+public class StaticBundleExporterTest {
+    private static final String SHA1 = "0123456789abcdef0123456789abcdef01234567";
+
+    /**
+     * Files are named after a prefix of the hash of their content, before their extension
+     */
+    @Test
+    public void testHashedName() {
+        assertEquals("css/step.0123456789.css", StaticBundleExporter.getHashedName("css/step.css?v=1", SHA1));
+        assertEquals("fonts/glyphs.0123456789", StaticBundleExporter.getHashedName("fonts/glyphs", SHA1));
+        assertEquals("lib.d/font.0123456789", StaticBundleExporter.getHashedName("lib.d/font", SHA1));
+    }
+
+    /**
+     * References made by stylesheets are resolved against the stylesheet
+     */
+    @Test
+    public void testResolve() {
+        assertEquals("css/images/icon.png", StaticBundleExporter.resolve("css/step.css?v=1", "images/icon.png"));
+        assertEquals("images/my icon.png", StaticBundleExporter.resolve("css/step.css", "../images/my icon.png"));
+        assertEquals("fonts/a.woff", StaticBundleExporter.resolve("css/step.css", "/fonts/a.woff"));
+    }
+}
@@ -0,0 +1,120 @@
+package com.tyndalehouse.step.server;
+
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.catalina.valves.ValveBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the server responsive under overload. Only so many requests are processed at once, a bounded number of others
+ * wait a short while for their turn, and anything beyond that is turned away straight away with a 503 and a
+ * Retry-After header, rather than piling up in the connector until every request times out.
+ * <p/>
+ * A request holds its permit until the servlet returns, so requests that go asynchronous only count for the time
+ * spent on a worker thread.
+ * <p/>
+ * The webapp limits some of its own endpoints further in the same way, see RequestAdmission.Limiter in step-web. The
+ * server doesn't depend on the webapp's modules, so the two can't share code: changes to one should be made to both.
+ */
+public class LoadSheddingValve extends ValveBase {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadSheddingValve.class);
+    private static final int LOG_EVERY = 100;
+    private final Semaphore permits;
+    private final int maxWaiting;
+    private final long maxWaitMs;
+    private final String retryAfterSeconds;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param maxActive         the number of requests processed at once
+     * @param maxWaiting        the number of requests waiting for their turn
+     * @param maxWaitMs         how long a request waits for its turn before being turned away
+     * @param retryAfterSeconds the delay suggested to clients that are turned away
+     */
+    public LoadSheddingValve(final int maxActive, final int maxWaiting, final long maxWaitMs,
+                             final int retryAfterSeconds) {
+        super(true);
+        this.permits = new Semaphore(Math.max(1, maxActive), true);
+        this.maxWaiting = maxWaiting;
+        this.maxWaitMs = maxWaitMs;
+        this.retryAfterSeconds = Integer.toString(retryAfterSeconds);
+    }
+
+    @Override
+    public void invoke(final Request request, final Response response) throws IOException, ServletException {
+        if (!acquire()) {
+            reject(response);
+            return;
+        }
+
+        try {
+            getNext().invoke(request, response);
+        } finally {
+            this.permits.release();
+        }
+    }
+
+    /**
+     * @return true if the request can go ahead
+     */
+    private boolean acquire() {
+        if (this.permits.tryAcquire()) {
+            return true;
+        }
+
+        if (this.waiting.incrementAndGet() > this.maxWaiting) {
+            this.waiting.decrementAndGet();
+            return false;
+        }
+
+        try {
+            return this.permits.tryAcquire(this.maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            this.waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * @param response the response to the request being turned away
+     * @throws IOException unable to write the response
+     */
+    private void reject(final Response response) throws IOException {
+        final long count = this.rejected.incrementAndGet();
+        if (count % LOG_EVERY == 1) {
+            LOGGER.warn("Server overloaded, [{}] requests turned away so far", count);
+        }
+
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader("Retry-After", this.retryAfterSeconds);
+        response.setHeader("Connection", "close");
+        response.setContentType("text/plain");
+        response.getWriter().write("Server busy, please try again shortly");
+    }
+
+    /**
+     * @return the number of requests waiting for their turn
+     */
+    public int getWaiting() {
+        return this.waiting.get();
+    }
+
+    /**
+     * @return the number of requests turned away since the server started
+     */
+    public long getRejected() {
+        return this.rejected.get();
+    }
+}
@@ -1,8 +1,12 @@
 package com.tyndalehouse.step.server;
 
+import org.apache.catalina.Context;
 import org.apache.catalina.LifecycleException;
 import org.apache.catalina.connector.Connector;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.core.StandardThreadExecutor;
 import org.apache.catalina.startup.Tomcat;
+import org.apache.coyote.AbstractProtocol;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,6 +50,7 @@ public class STEPTomcatServer {
     private final int stepPort;
     private final String contextPath;
     private final String browserUrl;
+    private final ServerConfiguration configuration = ServerConfiguration.load();
     private InetAddress listeningAddress;
     private ResourceBundle setupMessages = null;
     private ResourceBundle errorMessages = null;
@@ -317,6 +322,7 @@ public class STEPTomcatServer {
     private Tomcat start() throws Exception {
         final Tomcat tomcat = new Tomcat();
         tomcat.setPort(this.stepPort);
+        configureConnector(tomcat);
 
         try (Socket c = new Socket()) {
             c.connect(socket, MAX_WAIT_TO_TEST_PORT_IN_USE_MS);
@@ -328,7 +334,7 @@ public class STEPTomcatServer {
             //timed-out, so need to deploy app
             try {
                 final String absolutePath = new File(this.warPath).getAbsolutePath();
-                tomcat.addWebapp("", absolutePath);
+                configureWebapp(tomcat, tomcat.addWebapp("", absolutePath));
                 LOGGER.debug("Starting tomcat with path [{}] on port [{}]", absolutePath, this.stepPort);
                 tomcat.start();
 
@@ -356,6 +362,102 @@ public class STEPTomcatServer {
         return null;
     }
 
+    /**
+     * Sets up the connector from the server settings, with its own bounded pool of worker threads
+     *
+     * @param tomcat the server
+     */
+    private void configureConnector(final Tomcat tomcat) {
+        final ServerConfiguration config = this.configuration;
+        final StandardThreadExecutor executor = new StandardThreadExecutor();
+        executor.setName("step-executor");
+        executor.setNamePrefix("step-exec-");
+        executor.setMaxThreads(config.getInt("server.maxThreads", 200));
+        executor.setMinSpareThreads(config.getInt("server.minSpareThreads", 10));
+        executor.setMaxIdleTime(config.getInt("server.maxIdleTime", 60000));
+        executor.setMaxQueueSize(config.getInt("server.maxQueueSize", 400));
+        tomcat.getService().addExecutor(executor);
+
+        final Connector connector = new Connector(config.getString("server.protocol"));
+        connector.setPort(this.stepPort);
+        connector.setURIEncoding("UTF-8");
+        for (final String property : new String[]{"address", "connectionTimeout", "keepAliveTimeout",
+                "maxKeepAliveRequests", "maxConnections", "acceptorThreadCount", "acceptCount", "compression",
+                "compressionMinSize", "compressableMimeType"}) {
+            final String value = config.getString("server." + property);
+            if (!value.isEmpty() && !connector.setProperty(property, value)) {
+                LOGGER.warn("Connector does not support [{}]", property);
+            }
+        }
+        if (connector.getProtocolHandler() instanceof AbstractProtocol) {
+            ((AbstractProtocol) connector.getProtocolHandler()).setExecutor(executor);
+        }
+        tomcat.getService().addConnector(connector);
+        tomcat.setConnector(connector);
+
+        addLoadSheddingValve(tomcat, executor.getMaxThreads());
+
+        LOGGER.info("Connector [{}] on port [{}], with [{}] threads and a queue of [{}]",
+                connector.getProtocolHandlerClassName(), this.stepPort, executor.getMaxThreads(),
+                executor.getMaxQueueSize());
+    }
+
+    /**
+     * Limits the requests processed at once. Requests waiting for their turn hold on to a worker thread, as do
+     * requests being turned away, so the active and waiting requests are kept well below the number of threads.
+     * Otherwise requests would pile up in the executor's queue, and past that have their connection dropped, rather
+     * than be turned away with a 503.
+     *
+     * @param tomcat     the server
+     * @param maxThreads the number of worker threads
+     */
+    private void addLoadSheddingValve(final Tomcat tomcat, final int maxThreads) {
+        final ServerConfiguration config = this.configuration;
+        final int spareThreads = Math.max(1, maxThreads / 10);
+        final int configuredActive = config.getInt("server.maxActiveRequests", 0);
+        int maxActive = configuredActive > 0 ? configuredActive : maxThreads / 2;
+        if (maxActive > maxThreads - spareThreads) {
+            maxActive = Math.max(1, maxThreads - spareThreads);
+            LOGGER.warn("server.maxActiveRequests [{}] leaves no threads to turn requests away, using [{}]",
+                    configuredActive, maxActive);
+        }
+
+        final int configuredWaiting = config.getInt("server.maxWaitingRequests", 60);
+        final int maxWaiting = Math.max(0, Math.min(configuredWaiting, maxThreads - spareThreads - maxActive));
+        if (maxWaiting < configuredWaiting) {
+            LOGGER.warn("server.maxWaitingRequests [{}] leaves no threads to turn requests away, using [{}]",
+                    configuredWaiting, maxWaiting);
+        }
+
+        tomcat.getEngine().getPipeline().addValve(new LoadSheddingValve(maxActive, maxWaiting,
+                config.getInt("server.maxWaitMs", 5000),
+                config.getInt("server.retryAfterSeconds", 5)));
+        LOGGER.info("Processing [{}] requests at once, with up to [{}] waiting", maxActive, maxWaiting);
+    }
+
+    /**
+     * Sets up the caching of static files, on the server and in browsers
+     *
+     * @param tomcat the server
+     * @param webapp the STEP web application
+     */
+    private void configureWebapp(final Tomcat tomcat, final Context webapp) {
+        final ServerConfiguration config = this.configuration;
+        if (!config.getBoolean("server.staticCache.enabled", true)) {
+            return;
+        }
+
+        if (webapp instanceof StandardContext) {
+            final StandardContext context = (StandardContext) webapp;
+            context.setCachingAllowed(true);
+            context.setCacheMaxSize(config.getInt("server.staticCache.maxSizeKb", 20480));
+            context.setCacheTTL(config.getInt("server.staticCache.ttlMs", 60000));
+        }
+        tomcat.getHost().getPipeline().addValve(new StaticResourceCacheValve(
+                config.getString("server.staticCache.extensions"),
+                config.getInt("server.staticCache.maxAgeSeconds", 86400)));
+    }
+
     /**
      * Stops the embedded Tomcat server.
      */
@@ -0,0 +1,113 @@
+package com.tyndalehouse.step.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * The settings of the embedded server, i.e. its connector, thread pool, overload behaviour and caching. The defaults
+ * come from step.server.properties on the classpath, and can be overridden in turn by ~/.step/step.server.properties,
+ * by the file named by the step.server.config system property and by system properties of the same name prefixed
+ * with "step.", e.g. -Dstep.server.maxThreads=400.
+ */
+public class ServerConfiguration {
+    public static final String CONFIG_FILE = "step.server.properties";
+    public static final String CONFIG_PROPERTY = "step.server.config";
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServerConfiguration.class);
+    private static final String SYSTEM_PREFIX = "step.";
+    private final Properties properties;
+
+    /**
+     * @param properties the settings
+     */
+    ServerConfiguration(final Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * @return the settings, read from all the places they can be set
+     */
+    public static ServerConfiguration load() {
+        final Properties properties = new Properties();
+        try (InputStream defaults = ServerConfiguration.class.getClassLoader().getResourceAsStream(CONFIG_FILE)) {
+            if (defaults != null) {
+                properties.load(defaults);
+            }
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to read the default server settings", e);
+        }
+
+        loadFile(properties, new File(new File(System.getProperty("user.home"), ".step"), CONFIG_FILE));
+        final String configFile = System.getProperty(CONFIG_PROPERTY);
+        if (configFile != null) {
+            loadFile(properties, new File(configFile));
+        }
+
+        for (final String name : properties.stringPropertyNames()) {
+            final String override = System.getProperty(SYSTEM_PREFIX + name);
+            if (override != null) {
+                properties.setProperty(name, override);
+            }
+        }
+        return new ServerConfiguration(properties);
+    }
+
+    /**
+     * @param properties the settings so far
+     * @param file       a file overriding some of the settings, if it exists
+     */
+    private static void loadFile(final Properties properties, final File file) {
+        if (!file.isFile()) {
+            return;
+        }
+
+        try (InputStream overrides = new FileInputStream(file)) {
+            properties.load(overrides);
+            LOGGER.info("Read server settings from [{}]", file.getAbsolutePath());
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to read server settings from [{}]", file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * @param name the name of the setting
+     * @return the value, or an empty string if it isn't set
+     */
+    public String getString(final String name) {
+        return this.properties.getProperty(name, "").trim();
+    }
+
+    /**
+     * @param name         the name of the setting
+     * @param defaultValue the value if it isn't set, or isn't a number
+     * @return the value
+     */
+    public int getInt(final String name, final int defaultValue) {
+        final String value = getString(name);
+        if (value.isEmpty()) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value);
+        } catch (final NumberFormatException e) {
+            LOGGER.warn("Setting [{}] should be a number but is [{}]", name, value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @param name         the name of the setting
+     * @param defaultValue the value if it isn't set
+     * @return the value
+     */
+    public boolean getBoolean(final String name, final boolean defaultValue) {
+        final String value = getString(name);
+        return value.isEmpty() ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
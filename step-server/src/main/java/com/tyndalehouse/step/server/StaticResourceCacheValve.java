@@ -0,0 +1,58 @@
+package com.tyndalehouse.step.server;
+
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.catalina.valves.ValveBase;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Lets browsers keep the static files of the site, i.e. scripts, stylesheets, images and fonts, for a while rather
+ * than asking for them on every page. The header is set before the request is processed, so that anything serving
+ * the file itself can still override it.
+ */
+public class StaticResourceCacheValve extends ValveBase {
+    private final Set<String> extensions = new HashSet<>();
+    private final String cacheControl;
+
+    /**
+     * @param extensions    the extensions of the static files, separated by commas
+     * @param maxAgeSeconds how long browsers can keep the files for
+     */
+    public StaticResourceCacheValve(final String extensions, final int maxAgeSeconds) {
+        super(true);
+        for (final String extension : extensions.split(",")) {
+            final String trimmed = extension.trim().toLowerCase(Locale.ENGLISH);
+            if (!trimmed.isEmpty()) {
+                this.extensions.add(trimmed);
+            }
+        }
+        this.cacheControl = "public, max-age=" + maxAgeSeconds;
+    }
+
+    @Override
+    public void invoke(final Request request, final Response response) throws IOException, ServletException {
+        if ("GET".equals(request.getMethod()) && isStatic(request.getDecodedRequestURI())) {
+            response.setHeader("Cache-Control", this.cacheControl);
+        }
+        getNext().invoke(request, response);
+    }
+
+    /**
+     * @param uri the path of the request
+     * @return true if the path is to a static file
+     */
+    private boolean isStatic(final String uri) {
+        if (uri == null) {
+            return false;
+        }
+
+        final int dot = uri.lastIndexOf('.');
+        return dot > uri.lastIndexOf('/')
+                && this.extensions.contains(uri.substring(dot + 1).toLowerCase(Locale.ENGLISH));
+    }
+}
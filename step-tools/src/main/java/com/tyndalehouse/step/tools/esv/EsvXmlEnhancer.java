@@ -44,19 +44,36 @@ import org.crosswire.jsword.versification.Testament;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.*;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Result;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -64,7 +81,8 @@ import static com.tyndalehouse.step.core.utils.StringUtils.*;
 import static org.apache.commons.lang3.StringUtils.join;
 
 /**
- * The Class EsvXmlEnhancer.
+ * The Class EsvXmlEnhancer. By default, the ESV is enhanced one book at a time, with several books on the go at once,
+ * so that neither the time taken nor the memory required grows with the whole of the text.
  */
 @SuppressWarnings("all")
 public class EsvXmlEnhancer {
@@ -73,6 +91,7 @@ public class EsvXmlEnhancer {
     static final Pattern PUNCTUATION = Pattern.compile("[\\-—,.;*:'\\[\\]!\"`?’‘()-]+");
     private static final Pattern STRONGS_SPLITTING = Pattern.compile("<(\\d+)[a-z]?>");
     private static final Book ESV = Books.installed().getBook("ESV");
+    private static final String UTF_8 = "UTF-8";
     private final File tagging;
     private final File esvText;
     private String currentVerse;
@@ -81,17 +100,31 @@ public class EsvXmlEnhancer {
     private File outputPath;
     private String lastBook = "";
     private int runCode;
+    private int verses;
+    private final int threads;
 
     /**
-     * Instantiates a new esv xml enhancer.
+     * Instantiates a new esv xml enhancer, enhancing as many books at once as there are processors.
      *
      * @param tagging the tagging
      * @param esvText the esv text
      */
     public EsvXmlEnhancer(final File tagging, final File esvText, File outputPath) {
+        this(tagging, esvText, outputPath, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Instantiates a new esv xml enhancer.
+     *
+     * @param tagging the tagging
+     * @param esvText the esv text
+     * @param threads the number of books enhanced at once, or 0 to enhance the whole document in one go
+     */
+    public EsvXmlEnhancer(final File tagging, final File esvText, File outputPath, final int threads) {
         this.tagging = tagging;
         this.esvText = esvText;
         this.outputPath = outputPath;
+        this.threads = threads;
     }
 
     /**
@@ -108,17 +141,31 @@ public class EsvXmlEnhancer {
             new File(outputPath.getParent()).mkdirs();
         }
 
-        int ret = new EsvXmlEnhancer(tagging, esvText, outputPath).go();
+        final EsvXmlEnhancer enhancer = args.length > 3
+                ? new EsvXmlEnhancer(tagging, esvText, outputPath, Integer.parseInt(args[3]))
+                : new EsvXmlEnhancer(tagging, esvText, outputPath);
+        int ret = enhancer.go();
         System.exit(ret);
     }
 
     private int go() throws Exception {
-        applyToText(parseTagging());
+        if (this.threads > 0) {
+            applyByBook(parseTagging());
+        } else {
+            applyToText(parseTagging());
+        }
         LOGGER.info("Done!");
         return this.runCode;
     }
 
-    private MultiMap<String, Tagging, Deque<Tagging>> parseTagging() throws Exception {
+    /**
+     * Reads, cleans up and indexes the tagging. The tagging is used up as the text is enhanced, so each enhancement
+     * needs tagging of its own.
+     *
+     * @return the tagging of each verse
+     * @throws Exception unable to read the tagging
+     */
+    MultiMap<String, Tagging, Deque<Tagging>> parseTagging() throws Exception {
         final long start = System.currentTimeMillis();
         final List<Tagging> rawTagging = readTagging();
         LOGGER.info("Cleaning up tagging");
@@ -131,7 +178,7 @@ public class EsvXmlEnhancer {
         return indexTagging;
     }
 
-    private void applyToText(final MultiMap<String, Tagging, Deque<Tagging>> indexTagging) throws Exception {
+    void applyToText(final MultiMap<String, Tagging, Deque<Tagging>> indexTagging) throws Exception {
         final Document esv = readESVDoc();
         try {
             traverse(esv.getDocumentElement(), indexTagging);
@@ -146,12 +193,174 @@ public class EsvXmlEnhancer {
     }
 
     private void writeDoc(final Document esv) throws Exception {
+        transform(esv, new StreamResult(this.outputPath), false);
+    }
+
+    /**
+     * Enhances the text one book at a time, several books at once. Books are read in turn from the ESV, and written
+     * out in the same order, with no more than two books per thread held in memory. Each book is parsed and
+     * serialized on its own, in the same way as it would be as part of the whole document, so the output is the
+     * same as that of {@link #applyToText(MultiMap)}.
+     * <p/>
+     * The tagging of each verse is only ever used by the book the verse belongs to, so books can share the index.
+     *
+     * @param indexTagging the tagging of each verse
+     * @throws Exception unable to read, enhance or write the text
+     */
+    void applyByBook(final MultiMap<String, Tagging, Deque<Tagging>> indexTagging) throws Exception {
+        final long start = System.currentTimeMillis();
+        final File enhancedBooks = File.createTempFile("esv-books", ".xml");
+        final List<Long> bookLengths = new ArrayList<Long>(66);
+        final Deque<Future<EnhancedBook>> pending = new ArrayDeque<Future<EnhancedBook>>();
+        final ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+        final OsisBookSplitter splitter = new OsisBookSplitter(new BufferedReader(new InputStreamReader(
+                new FileInputStream(this.esvText), UTF_8)));
+        OutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(enhancedBooks));
+            String book;
+            while ((book = splitter.nextBook()) != null) {
+                if (pending.size() >= this.threads * 2) {
+                    writeBook(pending.removeFirst().get(), out, bookLengths);
+                }
+
+                final String bookText = book;
+                pending.add(executor.submit(new Callable<EnhancedBook>() {
+                    @Override
+                    public EnhancedBook call() throws Exception {
+                        return enhanceBook(bookText, indexTagging);
+                    }
+                }));
+            }
+
+            while (!pending.isEmpty()) {
+                writeBook(pending.removeFirst().get(), out, bookLengths);
+            }
+            out.close();
+            out = null;
+
+            writeDoc(splitter.getSkeleton(), enhancedBooks, bookLengths);
+        } finally {
+            executor.shutdownNow();
+            splitter.close();
+            if (out != null) {
+                out.close();
+            }
+            if (!enhancedBooks.delete()) {
+                LOGGER.warn("Unable to delete [{}]", enhancedBooks);
+            }
+        }
+        LOGGER.info("Enhanced [{}] books in [{}]ms", bookLengths.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Enhances a single book, keeping track of the verse and tagging state of that book only
+     *
+     * @param book         the text of the book
+     * @param indexTagging the tagging of each verse
+     * @return the enhanced book
+     * @throws Exception unable to enhance the book
+     */
+    private EnhancedBook enhanceBook(final String book, final MultiMap<String, Tagging, Deque<Tagging>> indexTagging)
+            throws Exception {
+        final long start = System.currentTimeMillis();
+        final EsvXmlEnhancer worker = new EsvXmlEnhancer(this.tagging, this.esvText, this.outputPath, 0);
+        final Element bookElement = newDocumentBuilder().parse(new InputSource(new StringReader(book)))
+                .getDocumentElement();
+        try {
+            worker.traverse(bookElement, indexTagging);
+        } catch (final AbortTagException abort) {
+            LOGGER.warn("Aborted [{}]...", bookElement.getAttribute("osisID"));
+            worker.runCode = -1;
+        }
+
+        final StringWriter enhanced = new StringWriter(book.length() * 2);
+        transform(bookElement, new StreamResult(enhanced), true);
+        return new EnhancedBook(bookElement.getAttribute("osisID"), enhanced.toString(), worker.runCode,
+                worker.verses, book.length(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Appends an enhanced book to the books written so far
+     *
+     * @param book        the enhanced book
+     * @param out         the books written so far
+     * @param bookLengths the length in bytes of each book written so far
+     * @throws IOException unable to write the book
+     */
+    private void writeBook(final EnhancedBook book, final OutputStream out, final List<Long> bookLengths)
+            throws IOException {
+        final byte[] bytes = book.xml.getBytes(UTF_8);
+        out.write(bytes);
+        bookLengths.add((long) bytes.length);
+        if (book.runCode != 0) {
+            this.runCode = book.runCode;
+        }
+
+        LOGGER.info("Enhanced [{}]: [{}] verses, [{}] characters in [{}]ms, i.e. [{}] verses/s", new Object[]{
+                book.name, book.verses, book.characters, book.millis,
+                book.millis == 0 ? book.verses : book.verses * 1000L / book.millis});
+    }
+
+    /**
+     * Writes the document, putting the enhanced books back in the place of the placeholders of the skeleton
+     *
+     * @param skeleton      the document without its books
+     * @param enhancedBooks the file holding the enhanced books, one after the other
+     * @param bookLengths   the length in bytes of each book
+     * @throws Exception unable to write the document
+     */
+    private void writeDoc(final String skeleton, final File enhancedBooks, final List<Long> bookLengths)
+            throws Exception {
+        final StringWriter serialized = new StringWriter(skeleton.length() + 128);
+        transform(newDocumentBuilder().parse(new InputSource(new StringReader(skeleton))),
+                new StreamResult(serialized), false);
+        final String[] parts = serialized.toString().split("<" + OsisBookSplitter.PLACEHOLDER + "/>", -1);
+        if (parts.length != bookLengths.size() + 1) {
+            throw new IllegalStateException(String.format("Expected [%d] books, but found [%d] placeholders",
+                    bookLengths.size(), parts.length - 1));
+        }
+
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(this.outputPath));
+        final InputStream books = new BufferedInputStream(new FileInputStream(enhancedBooks));
+        try {
+            final byte[] buffer = new byte[65536];
+            for (int ii = 0; ii < parts.length; ii++) {
+                out.write(parts[ii].getBytes(UTF_8));
+                if (ii < bookLengths.size()) {
+                    long remaining = bookLengths.get(ii);
+                    while (remaining > 0) {
+                        final int read = books.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                        if (read == -1) {
+                            throw new IOException("Enhanced books are shorter than expected");
+                        }
+                        out.write(buffer, 0, read);
+                        remaining -= read;
+                    }
+                }
+            }
+        } finally {
+            books.close();
+            out.close();
+        }
+    }
+
+    /**
+     * Serializes a document, or part of it, always in the same way
+     *
+     * @param node               the document, or an element of it
+     * @param result             the result
+     * @param omitXmlDeclaration true to leave out the XML declaration, i.e. when serializing an element
+     * @throws Exception unable to serialize the node
+     */
+    private static void transform(final Node node, final Result result, final boolean omitXmlDeclaration)
+            throws Exception {
         final TransformerFactory factory = TransformerFactory.newInstance();
         final Transformer transformer = factory.newTransformer();
-        final DOMSource source = new DOMSource(esv);
-        final StreamResult result = new StreamResult(this.outputPath);
-        transformer.transform(source, result);
-
+        if (omitXmlDeclaration) {
+            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        }
+        transformer.transform(new DOMSource(node), result);
     }
 
     private void traverse(final Element esv, final MultiMap<String, Tagging, Deque<Tagging>> indexTagging)
@@ -162,6 +371,7 @@ public class EsvXmlEnhancer {
         if ("verse".equals(esv.getNodeName())) {
             this.currentVerse = esv.getAttribute("osisID");
             this.error = false;
+            this.verses++;
             // limit processing up until
             // if ("Gen.22.15".equals(this.currentVerse)) {
             // throw new AbortTagException();
@@ -887,16 +1097,21 @@ public class EsvXmlEnhancer {
     private Document readESVDoc() throws ParserConfigurationException, SAXException, IOException {
         final long start = System.currentTimeMillis();
 
-        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-
-        final DocumentBuilder newDocumentBuilder = factory.newDocumentBuilder();
-
-        final Document esv = newDocumentBuilder.parse(this.esvText);
+        final Document esv = newDocumentBuilder().parse(this.esvText);
 
         LOGGER.info("Took [{}]ms to read ESV into Document", System.currentTimeMillis() - start);
         return esv;
     }
 
+    /**
+     * @return a new document builder, since they can't be shared between threads
+     * @throws ParserConfigurationException unable to create the builder
+     */
+    private static DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
+        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        return factory.newDocumentBuilder();
+    }
+
     private void cleanupTagging(final List<Tagging> rawTagging) throws Exception {
         for (final Tagging t : rawTagging) {
             removePunctuation(t);
@@ -1052,6 +1267,36 @@ public class EsvXmlEnhancer {
         return tags;
     }
 
+    /**
+     * A book once enhanced, along with how long it took
+     */
+    private static final class EnhancedBook {
+        private final String name;
+        private final String xml;
+        private final int runCode;
+        private final int verses;
+        private final int characters;
+        private final long millis;
+
+        /**
+         * @param name       the name of the book
+         * @param xml        the enhanced book
+         * @param runCode    the outcome of the enhancement, 0 if all went well
+         * @param verses     the number of verses in the book
+         * @param characters the number of characters in the original book
+         * @param millis     the time taken to enhance the book
+         */
+        private EnhancedBook(final String name, final String xml, final int runCode, final int verses,
+                             final int characters, final long millis) {
+            this.name = name;
+            this.xml = xml;
+            this.runCode = runCode;
+            this.verses = verses;
+            this.characters = characters;
+            this.millis = millis;
+        }
+    }
+
     class Remainder {
         int positionInSourceText = 0;
         String sourceText;
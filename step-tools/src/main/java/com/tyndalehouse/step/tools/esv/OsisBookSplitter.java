@@ -0,0 +1,172 @@
+package com.tyndalehouse.step.tools.esv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.regex.Pattern;
+
+/**
+ * Reads an OSIS document one book at a time, without ever holding more than a book in memory. Each book is handed
+ * out as the text of its own element, which can be parsed on its own. Everything outside the books, i.e. the header
+ * and the elements wrapping the books, makes up the skeleton of the document, in which each book is replaced by a
+ * {@link #PLACEHOLDER} element.
+ *
+ * @author chrisburrell
+ */
+class OsisBookSplitter implements Closeable {
+    static final String PLACEHOLDER = "step-book";
+    private static final Pattern BOOK_DIV = Pattern.compile("^<div\\s[^>]*\\btype\\s*=\\s*([\"'])book\\1");
+    private static final String DIV = "div";
+    private static final String COMMENT_START = "<!--";
+    private static final String CDATA_START = "<![CDATA[";
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+    private final Reader reader;
+    private final StringBuilder skeleton = new StringBuilder(4096);
+    private boolean started;
+
+    /**
+     * @param reader the reader of the OSIS document
+     */
+    OsisBookSplitter(final Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @return the text of the next book, or null once all books have been read
+     * @throws IOException unable to read the document
+     */
+    String nextBook() throws IOException {
+        StringBuilder book = null;
+        int depth = 0;
+        int c;
+        while ((c = read()) != -1) {
+            if (c != '<') {
+                append(book, (char) c);
+                continue;
+            }
+
+            final String markup = readMarkup();
+            if (book == null) {
+                if (BOOK_DIV.matcher(markup).find() && !isEmptyElement(markup)) {
+                    book = new StringBuilder(256 * 1024);
+                    book.append(markup);
+                    this.skeleton.append('<').append(PLACEHOLDER).append("/>");
+                    depth = 1;
+                } else {
+                    this.skeleton.append(markup);
+                }
+                continue;
+            }
+
+            book.append(markup);
+            if (markup.startsWith("</") && isDiv(markup, 2)) {
+                if (--depth == 0) {
+                    return book.toString();
+                }
+            } else if (isDiv(markup, 1) && !isEmptyElement(markup)) {
+                depth++;
+            }
+        }
+
+        if (book != null) {
+            throw new IOException("Document ends within a book");
+        }
+        return null;
+    }
+
+    /**
+     * @return the document without its books, complete once {@link #nextBook()} has returned null
+     */
+    String getSkeleton() {
+        return this.skeleton.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+
+    /**
+     * @param book the book being read, or null if outside of any book
+     * @param c    the character to add to the book, or the skeleton
+     */
+    private void append(final StringBuilder book, final char c) {
+        if (book != null) {
+            book.append(c);
+        } else {
+            this.skeleton.append(c);
+        }
+    }
+
+    /**
+     * Reads a tag, a comment, a processing instruction or a CDATA section, the opening bracket having been read
+     *
+     * @return the markup
+     * @throws IOException unable to read the document
+     */
+    private String readMarkup() throws IOException {
+        final StringBuilder markup = new StringBuilder(64);
+        markup.append('<');
+        String end = null;
+        char quote = 0;
+        int c;
+        while ((c = read()) != -1) {
+            markup.append((char) c);
+            if (end == null && COMMENT_START.contentEquals(markup)) {
+                end = "-->";
+            } else if (end == null && CDATA_START.contentEquals(markup)) {
+                end = "]]>";
+            } else if (end != null) {
+                if (c == '>' && markup.length() >= COMMENT_START.length() + end.length()
+                        && markup.lastIndexOf(end) == markup.length() - end.length()) {
+                    break;
+                }
+            } else if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = (char) c;
+            } else if (c == '>') {
+                break;
+            }
+        }
+        return markup.toString();
+    }
+
+    /**
+     * @return the next character of the document, skipping any byte order mark at the very start
+     * @throws IOException unable to read the document
+     */
+    private int read() throws IOException {
+        final int c = this.reader.read();
+        if (!this.started) {
+            this.started = true;
+            if (c == BYTE_ORDER_MARK) {
+                return this.reader.read();
+            }
+        }
+        return c;
+    }
+
+    /**
+     * @param markup a tag
+     * @param start  the position of the name of the element, i.e. 1 for a start tag and 2 for an end tag
+     * @return true if the tag is a div, as opposed to e.g. a divineName
+     */
+    private static boolean isDiv(final String markup, final int start) {
+        if (!markup.startsWith(DIV, start) || markup.length() <= start + DIV.length()) {
+            return false;
+        }
+        final char c = markup.charAt(start + DIV.length());
+        return c == '>' || c == '/' || Character.isWhitespace(c);
+    }
+
+    /**
+     * @param markup a tag
+     * @return true if the tag closes itself
+     */
+    private static boolean isEmptyElement(final String markup) {
+        return markup.endsWith("/>");
+    }
+}
@@ -32,12 +32,20 @@
  ******************************************************************************/
 package com.tyndalehouse.step.tools.esv;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.util.Deque;
+import java.util.LinkedList;
+
+import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 
+import com.tyndalehouse.step.tools.MultiMap;
+
 /**
  * The Class EsvXmlEnhancerTest.
  */
@@ -100,6 +108,68 @@ public class EsvXmlEnhancerTest {
                 "you that you have brought"));
     }
 
+    /**
+     * Enhancing book by book tags the real text in the same way as enhancing the whole document
+     */
+    @Test
+    public void testByBookSameAsWholeDocument() throws Exception {
+        final File esv = File.createTempFile("esv", ".xml");
+        final File tagging = File.createTempFile("tagging", ".txt");
+        final File whole = File.createTempFile("whole", ".xml");
+        final File byBook = File.createTempFile("byBook", ".xml");
+        try {
+            FileUtils.copyURLToFile(getClass().getResource("/esv2011-part.xml"), esv);
+            FileUtils.copyURLToFile(getClass().getResource("/esv-tagging-part.txt"), tagging);
+
+            final EsvXmlEnhancer wholeEnhancer = new EsvXmlEnhancer(tagging, esv, whole, 0);
+            wholeEnhancer.applyToText(wholeEnhancer.parseTagging());
+            final EsvXmlEnhancer byBookEnhancer = new EsvXmlEnhancer(tagging, esv, byBook, 2);
+            byBookEnhancer.applyByBook(byBookEnhancer.parseTagging());
+
+            final String enhanced = FileUtils.readFileToString(whole, "UTF-8");
+            assertTrue(enhanced.contains("lemma=\"strong:H0"));
+            assertEquals(enhanced, FileUtils.readFileToString(byBook, "UTF-8"));
+        } finally {
+            esv.delete();
+            tagging.delete();
+            whole.delete();
+            byBook.delete();
+        }
+    }
+
+    /**
+     * Markup that looks like the start of a book, in comments and CDATA, is left where it is
+     */
+    @Test
+    public void testByBookKeepsMarkup() throws Exception {
+        final File esv = File.createTempFile("esv", ".xml");
+        final File whole = File.createTempFile("whole", ".xml");
+        final File byBook = File.createTempFile("byBook", ".xml");
+        try {
+            FileUtils.writeStringToFile(esv, "\uFEFF<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<osis xmlns=\"http://www.bibletechnologies.net/2003/OSIS/namespace\"><osisText osisIDWork=\"ESV\">"
+                    + "<header><work osisWork=\"ESV\"/></header>\n"
+                    + "<div type=\"book\" osisID=\"Gen\"><chapter osisID=\"Gen.1\"><div type=\"section\">"
+                    + "<title canonical=\"false\">The Creation &amp; the World</title>"
+                    + "<verse osisID=\"Gen.1.1\">In the beginning, <divineName>God</divineName> created "
+                    + "<note><![CDATA[a <div> note]]></note></verse></div><div type=\"x-empty\"/></chapter></div>\n"
+                    + "<!-- <div type=\"book\"> -->\n"
+                    + "<div type='book' osisID=\"Exod\"><chapter osisID=\"Exod.1\">"
+                    + "<verse osisID=\"Exod.1.1\">These are the names — \u05D0</verse></chapter></div>\n"
+                    + "</osisText></osis>\n", "UTF-8");
+
+            final MultiMap<String, Tagging, Deque<Tagging>> noTagging = new MultiMap<String, Tagging, Deque<Tagging>>(
+                    LinkedList.class);
+            new EsvXmlEnhancer(null, esv, whole, 0).applyToText(noTagging);
+            new EsvXmlEnhancer(null, esv, byBook, 2).applyByBook(noTagging);
+            assertArrayEquals(FileUtils.readFileToByteArray(whole), FileUtils.readFileToByteArray(byBook));
+        } finally {
+            esv.delete();
+            whole.delete();
+            byBook.delete();
+        }
+    }
+
     @Test
     public void testPattern() {
         assertEquals(" so for the", EsvXmlEnhancer.PUNCTUATION.matcher("— so for the").replaceAll(""));
@@ -33,11 +33,14 @@
 package com.tyndalehouse.step.guice;
 
 import com.tyndalehouse.step.core.utils.StringUtils;
+import com.tyndalehouse.step.rest.framework.CrawlerSnapshotCache;
+import com.tyndalehouse.step.rest.framework.CrawlerSnapshotGenerator;
 
 import static com.tyndalehouse.step.core.utils.StringUtils.isBlank;
 
 import java.io.IOException;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -45,15 +48,33 @@ import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 /**
- * Intercepts and works out whether JSword has been installed with modules...
+ * Serves the snapshots of hash bang URLs to crawlers, i.e. the requests carrying an _escaped_fragment_ parameter,
+ * and the snapshot pages themselves. Snapshots are served from the {@link CrawlerSnapshotCache}, and only rendered
+ * when they are missing or out of date.
  * 
  * @author chrisburrell
  * 
  */
 @Singleton
 public class HashBangFragmentFilter implements Filter {
+    private static final String SNAPSHOTS_PATH = "/snapshots/";
+    private final CrawlerSnapshotCache snapshots;
+    private final CrawlerSnapshotGenerator generator;
+
+    /**
+     * @param snapshots the cache of snapshots
+     * @param generator the generator of snapshots, started by the first crawler
+     */
+    @Inject
+    public HashBangFragmentFilter(final CrawlerSnapshotCache snapshots, final CrawlerSnapshotGenerator generator) {
+        this.snapshots = snapshots;
+        this.generator = generator;
+    }
+
     @Override
     public void init(final FilterConfig filterConfig) throws ServletException {
         // nothing to record
@@ -62,6 +83,26 @@ public class HashBangFragmentFilter implements Filter {
     @Override
     public void doFilter(final ServletRequest request, final ServletResponse response, final FilterChain chain)
             throws IOException, ServletException {
+        if (!(request instanceof HttpServletRequest)) {
+            continueAsNormal(request, response, chain);
+            return;
+        }
+
+        final HttpServletRequest httpRequest = (HttpServletRequest) request;
+        final HttpServletResponse httpResponse = (HttpServletResponse) response;
+        final String servletPath = httpRequest.getServletPath();
+        if (servletPath != null && servletPath.startsWith(SNAPSHOTS_PATH)) {
+            // a snapshot page requested directly
+            final String query = httpRequest.getQueryString();
+            final String snapshotPath = servletPath.substring(1) + (query == null ? "" : '?' + query);
+            serveSnapshot(httpRequest, httpResponse, snapshotPath, new CrawlerSnapshotCache.Renderer() {
+                @Override
+                public void render(final HttpServletResponse capture) throws IOException, ServletException {
+                    chain.doFilter(request, capture);
+                }
+            });
+            return;
+        }
 
         final String parameter = request.getParameter("_escaped_fragment_");
         if (isBlank(parameter)) {
@@ -69,43 +110,78 @@ public class HashBangFragmentFilter implements Filter {
             return;
         }
 
-        final String[] split = parameter.split("=");
-        if (split.length < 1) {
+        final String snapshotPath = getSnapshotPath(parameter);
+        if (snapshotPath == null) {
             continueAsNormal(request, response, chain);
             return;
         }
 
+        serveSnapshot(httpRequest, httpResponse, snapshotPath, new CrawlerSnapshotCache.Renderer() {
+            @Override
+            public void render(final HttpServletResponse capture) throws IOException, ServletException {
+                request.getRequestDispatcher(snapshotPath).forward(request, capture);
+            }
+        });
+    }
+
+    /**
+     * Serves the snapshot from the cache, making sure snapshots are being generated ahead of time
+     *
+     * @param request the request
+     * @param response the response
+     * @param snapshotPath the path of the snapshot page, including the query string
+     * @param renderer renders the snapshot page, if it isn't in the cache
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws ServletException the servlet exception
+     */
+    private void serveSnapshot(final HttpServletRequest request, final HttpServletResponse response,
+            final String snapshotPath, final CrawlerSnapshotCache.Renderer renderer) throws IOException,
+            ServletException {
+        this.generator.start(request);
+        this.snapshots.serve(request, response,
+                CrawlerSnapshotCache.getKey(snapshotPath, request.getLocale().getLanguage()), renderer);
+    }
+
+    /**
+     * Works out the snapshot page from the fragment
+     *
+     * @param parameter the escaped fragment
+     * @return the path of the snapshot page, including the query string, or null if the fragment has no snapshot
+     */
+    private String getSnapshotPath(final String parameter) {
+        final String[] split = parameter.split("=");
         if ("lexicon".equals(split[0])) {
-            request.getRequestDispatcher("snapshots/definition.jsp?strong=" + split[2]).forward(request,
-                    response);
-        } else if(parameter.indexOf("__/") != -1) {
-            //then we're looking at a passage...
-            String[] parts = parameter.split("__/");
-
-            StringBuilder sb = new StringBuilder(128);
-
-            int passageId = 0;
-            sb.append("snapshots/passage.jsp?");
-            for(int ii = 0; ii < parts.length; ii++) {
-                String[] passageParts = parts[ii].split("/");
-                if(StringUtils.isBlank(parts[ii]) || passageParts.length < 4) {
-                    continue;
-                }
+            return split.length < 3 ? null : String.format(CrawlerSnapshotGenerator.DEFINITION_SNAPSHOT, split[2]);
+        }
 
-                boolean wasPassage = appendPassageArgs( sb, passageId, passageParts);
-                if(!wasPassage) {
-                    appendSearchArgs(sb, passageId, passageParts);
-                }
+        if (parameter.indexOf("__/") == -1) {
+            return null;
+        }
 
-                if(ii < parts.length - 1) {
-                    sb.append('&');
-                }
-                passageId++;
+        //then we're looking at a passage...
+        String[] parts = parameter.split("__/");
+
+        StringBuilder sb = new StringBuilder(128);
+
+        int passageId = 0;
+        sb.append("snapshots/passage.jsp?");
+        for(int ii = 0; ii < parts.length; ii++) {
+            String[] passageParts = parts[ii].split("/");
+            if(StringUtils.isBlank(parts[ii]) || passageParts.length < 4) {
+                continue;
             }
-            request.getRequestDispatcher(sb.toString()).forward(request, response);
-        }
 
-        continueAsNormal(request, response, chain);
+            boolean wasPassage = appendPassageArgs( sb, passageId, passageParts);
+            if(!wasPassage) {
+                appendSearchArgs(sb, passageId, passageParts);
+            }
+
+            if(ii < parts.length - 1) {
+                sb.append('&');
+            }
+            passageId++;
+        }
+        return sb.toString();
     }
 
     /**
@@ -0,0 +1,61 @@
+package com.tyndalehouse.step.guice;
+
+import com.tyndalehouse.step.core.utils.RequestTrace;
+import com.tyndalehouse.step.rest.framework.SlowRequestRecorder;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+
+/**
+ * Traces each request, handing the trace over to the recorder once the request is complete, so that slow requests
+ * can be looked at after the event.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class SlowRequestFilter implements Filter {
+    private final SlowRequestRecorder recorder;
+
+    /**
+     * @param recorder the recorder of slow requests
+     */
+    @Inject
+    public SlowRequestFilter(final SlowRequestRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    @Override
+    public void init(final FilterConfig filterConfig) throws ServletException {
+        // no config
+    }
+
+    @Override
+    public void doFilter(final ServletRequest request, final ServletResponse response, final FilterChain chain)
+            throws IOException, ServletException {
+        if (!this.recorder.isEnabled() || !(request instanceof HttpServletRequest)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        final HttpServletRequest httpRequest = (HttpServletRequest) request;
+        RequestTrace.begin(httpRequest.getRequestURI(), httpRequest.getQueryString());
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            this.recorder.record(RequestTrace.end());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        // nothing to destroy
+    }
+}
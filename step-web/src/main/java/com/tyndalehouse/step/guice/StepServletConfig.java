@@ -34,6 +34,7 @@ package com.tyndalehouse.step.guice;
 
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import com.google.inject.OutOfScopeException;
 import com.google.inject.Provider;
 import com.google.inject.ProvisionException;
 import com.google.inject.servlet.GuiceServletContextListener;
@@ -42,13 +43,18 @@ import com.tyndalehouse.step.core.data.EntityManager;
 import com.tyndalehouse.step.core.data.create.Loader;
 import com.tyndalehouse.step.core.guice.StepCoreModule;
 import com.tyndalehouse.step.core.models.ClientSession;
+import com.tyndalehouse.step.core.service.impl.PassageCacheWarmUp;
+import com.tyndalehouse.step.core.utils.RenderingLocale;
 import com.tyndalehouse.step.rest.controllers.ImageController;
 import com.tyndalehouse.step.rest.controllers.IndexRedirect;
 import com.tyndalehouse.step.rest.controllers.InternationalJsonController;
+import com.tyndalehouse.step.rest.controllers.MetricsController;
+import com.tyndalehouse.step.rest.controllers.SlowRequestController;
 import com.tyndalehouse.step.rest.controllers.SearchPageController;
 import com.tyndalehouse.step.rest.controllers.SetupPageController;
 import com.tyndalehouse.step.rest.controllers.SiteMapController;
 import com.tyndalehouse.step.rest.framework.FrontController;
+import com.yammer.metrics.guice.InstrumentationModule;
 import org.crosswire.common.util.CWProject;
 import org.crosswire.common.util.Reporter;
 import org.crosswire.common.util.ReporterEvent;
@@ -93,25 +99,20 @@ public class StepServletConfig extends GuiceServletContextListener {
                         serve("/").with(SearchPageController.class);
                         serve("/international/interactive.js").with(InternationalJsonController.class);
                         serve("/config.jsp").with(SetupPageController.class);
-//                        if (Boolean.getBoolean("metrics.enabled")) {
-//                            serve("/metrics/*").with(AdminServlet.class);
-//                        }
+                        serve("/metrics").with(MetricsController.class);
+                        serve("/slow-requests").with(SlowRequestController.class);
                         serve("/sitemap*").with(SiteMapController.class);
                         serve("/SITEMAP*").with(SiteMapController.class);
                         // filters
                         filter("/index.jsp", "/").through(SetupRedirectFilter.class);
-                        filter("*_escaped_fragment_*", "/").through(HashBangFragmentFilter.class);
+                        filter("*_escaped_fragment_*", "/", "/snapshots/*").through(HashBangFragmentFilter.class);
                         filter("/external/*").through(ExternalPoweredByFilter.class);
+                        filter("/rest/*", "/search*", "/").through(SlowRequestFilter.class);
                     }
                 };
 
-//                if (Boolean.getBoolean("metrics.enabled")) {
-//                    this.injector = Guice.createInjector(new StepCoreModule(), new StepWebModule(),
-//                            new InstrumentationModule(), servletModule);
-//                } else {
                 this.injector = Guice.createInjector(new StepCoreModule(), new StepWebModule(),
-                        servletModule);
-//                }
+                        new InstrumentationModule(), servletModule);
             }
         }
         return this.injector;
@@ -140,6 +141,9 @@ public class StepServletConfig extends GuiceServletContextListener {
             getInjector().getInstance(Loader.class).init();
         }
 
+        // the modules are in place by now, unless the set-up has yet to install them
+        getInjector().getInstance(PassageCacheWarmUp.class).start();
+
     }
 
     /**
@@ -174,9 +178,14 @@ public class StepServletConfig extends GuiceServletContextListener {
 
             @Override
             public Locale getUserLocale() {
+                final Locale renderingLocale = RenderingLocale.get();
+                if (renderingLocale != null) {
+                    return renderingLocale;
+                }
+
                 try {
                     return provider.get().getLocale();
-                } catch (final ProvisionException ex) {
+                } catch (final ProvisionException | OutOfScopeException ex) {
                     return Locale.ENGLISH;
                 }
             }
@@ -35,7 +35,7 @@ package com.tyndalehouse.step.rest.controllers;
 import static com.tyndalehouse.step.core.utils.StringUtils.isNotBlank;
 
 import java.io.IOException;
-import java.util.*;
+import java.util.Locale;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
@@ -46,29 +46,27 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import com.tyndalehouse.step.core.models.ClientSession;
-import org.codehaus.jackson.map.ObjectMapper;
-
-import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.utils.language.ContemporaryLanguageUtils;
 import com.tyndalehouse.step.rest.framework.FrontController;
-import com.tyndalehouse.step.rest.framework.JsonResourceBundle;
-import org.crosswire.common.xml.TransformingSAXEventProvider;
+import com.tyndalehouse.step.rest.framework.LocaleBundleStore;
 
 /**
- * Serves the images by downloading them from a remote source if they do not already exist.
+ * Serves the messages of the UI, in the language of the user. Requests that carry the language and the version
+ * of STEP can be cached by the browser for good, since the messages only change with a new release.
  *
  * @author chrisburrell
  */
 @Singleton
 public class InternationalJsonController extends HttpServlet {
     private static final long serialVersionUID = 1721159652548642069L;
-    private static final Map<Locale, String> BUNDLES = new HashMap<Locale, String>();
-    private final ObjectMapper objectMapper;
+    private static final long ONE_YEAR_IN_SECONDS = 31536000L;
+    private final LocaleBundleStore bundleStore;
     private final Provider<ClientSession> clientSessionProvider;
 
     @Inject
-    public InternationalJsonController(final Provider<ObjectMapper> objectMapperProvider, final Provider<ClientSession> clientSessionProvider) {
+    public InternationalJsonController(final LocaleBundleStore bundleStore, final Provider<ClientSession> clientSessionProvider) {
+        this.bundleStore = bundleStore;
         this.clientSessionProvider = clientSessionProvider;
-        this.objectMapper = objectMapperProvider.get();
     }
     
     @Override
@@ -80,46 +78,31 @@ public class InternationalJsonController extends HttpServlet {
         
         final String langParameter = req.getParameter("lang");
         if (isNotBlank(langParameter)) {
-            locale = new Locale(langParameter);
+            locale = ContemporaryLanguageUtils.getLocaleFromTag(langParameter);
         } else {
             locale = clientSessionProvider.get().getLocale();
         }
-        String qualifiedResponse = BUNDLES.get(locale);
-        if (qualifiedResponse == null) {
-            qualifiedResponse = readBundle(locale, "HtmlBundle", "InteractiveBundle");
-            BUNDLES.put(locale, qualifiedResponse);
-        }
 
         response.setCharacterEncoding(FrontController.UTF_8_ENCODING);
         response.setLocale(locale);
         response.setContentType("application/json");
-        response.getOutputStream().write(qualifiedResponse.getBytes(FrontController.UTF_8_ENCODING));
+        if (isVersioned(req, langParameter)) {
+            response.setHeader("Cache-Control", "public, max-age=" + ONE_YEAR_IN_SECONDS);
+        } else {
+            response.setHeader("Cache-Control", "no-cache");
+        }
+        this.bundleStore.write(req, response, this.bundleStore.get(locale));
         response.flushBuffer();
-        response.getOutputStream().close();
     }
 
     /**
-     * Read bundle.
-     *
-     * @param locale the locale
-     * @return the string
+     * @param req           the request
+     * @param langParameter the language asked for
+     * @return true if the URL names both the language and the release, so that its content never changes
      */
-    private String readBundle(final Locale locale, final String... bundleNames) {
-        List<ResourceBundle> bundles = new ArrayList<ResourceBundle>(bundleNames.length);
-        for (String b : bundleNames) {
-            bundles.add(ResourceBundle.getBundle(b, locale));
-        }
-
-        final JsonResourceBundle jsonResourceBundle = new JsonResourceBundle(bundles);
-        String jsonResponse;
-
-        try {
-            jsonResponse = objectMapper.writeValueAsString(jsonResourceBundle);
-        } catch (final IOException e) {
-            throw new StepInternalException("Unable to read messages", e);
-        }
-
-        return "var __s = " + jsonResponse;
+    private boolean isVersioned(final HttpServletRequest req, final String langParameter) {
+        return isNotBlank(langParameter) && isNotBlank(req.getParameter("step.version"))
+                && !Boolean.getBoolean("step.development");
     }
 
     /**
@@ -128,7 +111,7 @@ public class InternationalJsonController extends HttpServlet {
     public void resetCache() {
         //double check that we are actually in dev mode as well
         if(Boolean.TRUE.equals(Boolean.getBoolean("step.development"))) {
-            BUNDLES.clear();
+            this.bundleStore.rebuild();
         }
     }
 }
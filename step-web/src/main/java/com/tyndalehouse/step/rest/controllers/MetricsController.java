@@ -0,0 +1,168 @@
+package com.tyndalehouse.step.rest.controllers;
+
+import com.tyndalehouse.step.rest.framework.FrontController;
+import com.tyndalehouse.step.rest.framework.RequestUtils;
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Histogram;
+import com.yammer.metrics.core.Metered;
+import com.yammer.metrics.core.Metric;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.stats.Snapshot;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Exposes all the timers, counters and gauges in a plain text format, one sample per line, which can be scraped by
+ * most monitoring tools. The page is only served if enabled (app.metrics.enabled), and only to requests coming from
+ * the local machine, forwarded requests included.
+ * <p/>
+ * Each line takes the form: step_[kind]_[field]{group="...",type="...",name="...",scope="..."} value
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class MetricsController extends HttpServlet {
+    private static final long serialVersionUID = -2860935069004325717L;
+    private final transient MetricsRegistry registry;
+    private final boolean enabled;
+
+    /**
+     * @param registry the registry holding all the metrics
+     * @param enabled  true to serve the metrics
+     */
+    @Inject
+    public MetricsController(final MetricsRegistry registry, @Named("app.metrics.enabled") final boolean enabled) {
+        this.registry = registry;
+        this.enabled = enabled;
+    }
+
+    @Override
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!this.enabled) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        if (!RequestUtils.isLocalRequest(request)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        final StringBuilder sb = new StringBuilder(16 * 1024);
+        for (final SortedMap<MetricName, Metric> group : this.registry.groupedMetrics().values()) {
+            for (final Map.Entry<MetricName, Metric> entry : group.entrySet()) {
+                appendMetric(sb, entry.getKey(), entry.getValue());
+            }
+        }
+
+        final byte[] output = sb.toString().getBytes(FrontController.UTF_8_ENCODING);
+        response.setCharacterEncoding(FrontController.UTF_8_ENCODING);
+        response.setContentType("text/plain");
+        response.setHeader("Cache-Control", "no-cache");
+        response.setContentLength(output.length);
+        response.getOutputStream().write(output);
+    }
+
+    /**
+     * Outputs all the samples of a single metric
+     *
+     * @param sb     the output
+     * @param name   the name of the metric
+     * @param metric the metric
+     */
+    void appendMetric(final StringBuilder sb, final MetricName name, final Metric metric) {
+        final String labels = getLabels(name);
+        if (metric instanceof Timer) {
+            final Timer timer = (Timer) metric;
+            final Snapshot snapshot = timer.getSnapshot();
+            appendSample(sb, "step_timer_count", labels, timer.count());
+            appendSample(sb, "step_timer_rate_1m", labels, timer.oneMinuteRate());
+            appendSample(sb, "step_timer_mean_ms", labels, timer.mean());
+            appendSample(sb, "step_timer_max_ms", labels, timer.max());
+            appendSample(sb, "step_timer_p50_ms", labels, snapshot.getMedian());
+            appendSample(sb, "step_timer_p95_ms", labels, snapshot.get95thPercentile());
+            appendSample(sb, "step_timer_p99_ms", labels, snapshot.get99thPercentile());
+        } else if (metric instanceof Histogram) {
+            final Histogram histogram = (Histogram) metric;
+            final Snapshot snapshot = histogram.getSnapshot();
+            appendSample(sb, "step_histogram_count", labels, histogram.count());
+            appendSample(sb, "step_histogram_mean", labels, histogram.mean());
+            appendSample(sb, "step_histogram_max", labels, histogram.max());
+            appendSample(sb, "step_histogram_p95", labels, snapshot.get95thPercentile());
+        } else if (metric instanceof Metered) {
+            final Metered meter = (Metered) metric;
+            appendSample(sb, "step_meter_count", labels, meter.count());
+            appendSample(sb, "step_meter_rate_1m", labels, meter.oneMinuteRate());
+        } else if (metric instanceof Counter) {
+            appendSample(sb, "step_counter", labels, ((Counter) metric).count());
+        } else if (metric instanceof Gauge) {
+            final Object value = ((Gauge<?>) metric).value();
+            if (value instanceof Number) {
+                appendSample(sb, "step_gauge", labels, ((Number) value).doubleValue());
+            }
+        }
+    }
+
+    /**
+     * @param name the name of the metric
+     * @return the labels identifying the metric
+     */
+    private String getLabels(final MetricName name) {
+        final StringBuilder labels = new StringBuilder(64);
+        labels.append('{');
+        appendLabel(labels, "group", name.getGroup());
+        appendLabel(labels, "type", name.getType());
+        appendLabel(labels, "name", name.getName());
+        if (name.hasScope()) {
+            appendLabel(labels, "scope", name.getScope());
+        }
+        labels.setCharAt(labels.length() - 1, '}');
+        return labels.toString();
+    }
+
+    /**
+     * @param labels the labels so far
+     * @param label  the label name
+     * @param value  the value, which gets its quotes and backslashes escaped
+     */
+    private void appendLabel(final StringBuilder labels, final String label, final String value) {
+        labels.append(label).append("=\"");
+        if (value != null) {
+            labels.append(value.replace("\\", "\\\\").replace("\"", "\\\""));
+        }
+        labels.append("\",");
+    }
+
+    /**
+     * @param sb     the output
+     * @param sample the name of the sample
+     * @param labels the labels
+     * @param value  the value
+     */
+    private void appendSample(final StringBuilder sb, final String sample, final String labels, final double value) {
+        sb.append(sample).append(labels).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * @param sb     the output
+     * @param sample the name of the sample
+     * @param labels the labels
+     * @param value  the value
+     */
+    private void appendSample(final StringBuilder sb, final String sample, final String labels, final long value) {
+        sb.append(sample).append(labels).append(' ').append(value).append('\n');
+    }
+}
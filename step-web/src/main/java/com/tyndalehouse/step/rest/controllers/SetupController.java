@@ -53,6 +53,7 @@ import com.google.inject.servlet.RequestScoped;
 import com.tyndalehouse.step.core.data.create.Loader;
 import com.tyndalehouse.step.core.models.ClientSession;
 import com.tyndalehouse.step.core.service.BibleInformationService;
+import com.tyndalehouse.step.core.service.impl.PassageCacheWarmUp;
 import com.tyndalehouse.step.core.utils.StringUtils;
 
 /**
@@ -68,6 +69,7 @@ public class SetupController {
     private final Loader loader;
     private final Provider<ClientSession> sessionProvider;
     private final InternationalJsonController internationalJsonController;
+    private final PassageCacheWarmUp passageCacheWarmUp;
 
     /**
      * creates the controller
@@ -75,13 +77,16 @@ public class SetupController {
      * @param bibleInformationService the service that allows access to biblical material
      * @param loader service which is able to load the data into the database
      * @param sessionProvider the provider of the user session
+     * @param passageCacheWarmUp renders the popular passages once the modules are installed
      */
     @Inject
     public SetupController(final BibleInformationService bibleInformationService, 
                             final Loader loader,
                             final InternationalJsonController internationalJsonController,
-                            final Provider<ClientSession> sessionProvider) {
+                            final Provider<ClientSession> sessionProvider,
+                            final PassageCacheWarmUp passageCacheWarmUp) {
         this.internationalJsonController = internationalJsonController;
+        this.passageCacheWarmUp = passageCacheWarmUp;
         notNull(bibleInformationService, "No bible information service was provided",
                 CONTROLLER_INITIALISATION_ERROR);
         notNull(loader, "No loader module was provided", CONTROLLER_INITIALISATION_ERROR);
@@ -99,6 +104,7 @@ public class SetupController {
     public void installFirstTime() {
         validateSession(this.sessionProvider);
         this.loader.init();
+        this.passageCacheWarmUp.start();
     }
 
     /**
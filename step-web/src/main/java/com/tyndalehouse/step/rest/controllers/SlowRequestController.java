@@ -0,0 +1,75 @@
+package com.tyndalehouse.step.rest.controllers;
+
+import com.tyndalehouse.step.core.utils.RequestTrace;
+import com.tyndalehouse.step.rest.framework.FrontController;
+import com.tyndalehouse.step.rest.framework.RequestUtils;
+import com.tyndalehouse.step.rest.framework.SlowRequestRecorder;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Outputs the traces of the most recent slow requests, most recent first. Only requests coming from the local machine,
+ * forwarded requests included, are answered. The number of traces can be restricted with the 'limit' parameter.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class SlowRequestController extends HttpServlet {
+    private static final long serialVersionUID = 4169846935283473914L;
+    private final transient SlowRequestRecorder recorder;
+
+    /**
+     * @param recorder the recorder holding the slow requests
+     */
+    @Inject
+    public SlowRequestController(final SlowRequestRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    @Override
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!RequestUtils.isLocalRequest(request)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        final List<RequestTrace> traces = this.recorder.getRecentTraces();
+        final int limit = getLimit(request.getParameter("limit"), traces.size());
+        final StringBuilder sb = new StringBuilder(4096);
+        for (int ii = 0; ii < limit; ii++) {
+            sb.append(SlowRequestRecorder.format(traces.get(ii))).append('\n');
+        }
+
+        final byte[] output = sb.toString().getBytes(FrontController.UTF_8_ENCODING);
+        response.setCharacterEncoding(FrontController.UTF_8_ENCODING);
+        response.setContentType("text/plain");
+        response.setHeader("Cache-Control", "no-cache");
+        response.setContentLength(output.length);
+        response.getOutputStream().write(output);
+    }
+
+    /**
+     * @param limit     the limit requested
+     * @param available the number of traces available
+     * @return the number of traces to output
+     */
+    private int getLimit(final String limit, final int available) {
+        if (limit == null) {
+            return available;
+        }
+
+        try {
+            return Math.max(0, Math.min(Integer.parseInt(limit), available));
+        } catch (final NumberFormatException e) {
+            return available;
+        }
+    }
+}
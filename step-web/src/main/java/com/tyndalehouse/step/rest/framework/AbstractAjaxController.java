@@ -6,6 +6,7 @@ import com.tyndalehouse.step.core.exceptions.TranslatedException;
 import com.tyndalehouse.step.core.exceptions.ValidationException;
 import com.tyndalehouse.step.core.models.ClientSession;
 import com.tyndalehouse.step.core.service.AppManagerService;
+import com.tyndalehouse.step.core.utils.RequestTrace;
 import org.codehaus.jackson.JsonGenerationException;
 import org.codehaus.jackson.map.JsonMappingException;
 import org.codehaus.jackson.map.ObjectMapper;
@@ -33,29 +34,45 @@ public abstract class AbstractAjaxController extends HttpServlet {
     private final transient ClientErrorResolver errorResolver;
     private final AppManagerService appManagerService;
     private final Provider<ClientSession> clientSessionProvider;
+    private final transient ResponseCompressor responseCompressor;
 
     public AbstractAjaxController(final AppManagerService appManagerService,
                                   final Provider<ClientSession> clientSessionProvider,
                                   final ClientErrorResolver errorResolver,
-                                  final Provider<ObjectMapper> objectMapperProvider) {
+                                  final Provider<ObjectMapper> objectMapperProvider,
+                                  final ResponseCompressor responseCompressor) {
         this.appManagerService = appManagerService;
         this.clientSessionProvider = clientSessionProvider;
         this.errorResolver = errorResolver;
         this.jsonMapper = objectMapperProvider.get();
+        this.responseCompressor = responseCompressor;
     }
 
     @Override
     protected void doGet(final HttpServletRequest request, final HttpServletResponse response) {
         // CHECKSTYLE:ON
+        RequestTrace.Span span = RequestTrace.span("controller", null);
         try {
-            Object returnVal = executeRestMethod(request);
-            byte[] jsonEncoded = getEncodedJsonResponse(returnVal);
+            final Object returnVal = executeRestMethod(request);
+            span.stop();
+
+            span = RequestTrace.span("serialize", null);
+            final byte[] jsonEncoded = getEncodedJsonResponse(returnVal);
+            span.stop();
+
+            span = RequestTrace.span("write", null);
             setupHeaders(response, jsonEncoded.length);
-            response.getOutputStream().write(jsonEncoded);
+            this.responseCompressor.write(request, response, getCompressionKey(request), jsonEncoded);
+        } catch (final AdmissionRejectedException e) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", Integer.toString(e.getRetryAfterSeconds()));
+            handleError(response, e, request);
             // CHECKSTYLE:OFF We allow catching errors here, since we are at the top of the structure
         } catch (final Exception e) {
             // CHECKSTYLE:ON
             handleError(response, e, request);
+        } finally {
+            span.stop();
         }
     }
 
@@ -68,7 +85,9 @@ public abstract class AbstractAjaxController extends HttpServlet {
         Object returnVal;
         try {
             returnVal = invokeMethod(request);
-
+        } catch (final AdmissionRejectedException e) {
+            // turned away before running, so answered as such rather than as the result of the method
+            throw e;
             // CHECKSTYLE:OFF
         } catch (final Exception e) {
             LOGGER.warn(e.getMessage());
@@ -80,6 +99,19 @@ public abstract class AbstractAjaxController extends HttpServlet {
 
     protected abstract Object invokeMethod(HttpServletRequest request) throws Exception;
 
+    /**
+     * Only GET requests are repeatable, so only those have their compressed form kept
+     *
+     * @param request the request
+     * @return the key under which to keep the compressed response, or null if it shouldn't be kept
+     */
+    String getCompressionKey(final HttpServletRequest request) {
+        if (!"GET".equals(request.getMethod())) {
+            return null;
+        }
+        return request.getRequestURI() + '#' + this.clientSessionProvider.get().getLocale().getLanguage();
+    }
+
     /**
      * We attempt here to rethrow the exception that caused the invocation target exception, so that we can handle it
      * nicely for the user
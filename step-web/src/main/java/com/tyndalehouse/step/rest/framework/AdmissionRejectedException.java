@@ -0,0 +1,28 @@
+package com.tyndalehouse.step.rest.framework;
+
+import com.tyndalehouse.step.core.exceptions.TranslatedException;
+
+/**
+ * Raised when a request is turned away because too many requests of the same kind are already running or waiting.
+ *
+ * @author chrisburrell
+ */
+public class AdmissionRejectedException extends TranslatedException {
+    private static final long serialVersionUID = 4137822810294711763L;
+    private final int retryAfterSeconds;
+
+    /**
+     * @param retryAfterSeconds the delay after which the client may try again
+     */
+    public AdmissionRejectedException(final int retryAfterSeconds) {
+        super("error_server_busy");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * @return the delay after which the client may try again
+     */
+    public int getRetryAfterSeconds() {
+        return this.retryAfterSeconds;
+    }
+}
@@ -0,0 +1,823 @@
+package com.tyndalehouse.step.rest.framework;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.utils.IOUtils;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
+import org.crosswire.jsword.book.BooksEvent;
+import org.crosswire.jsword.book.Books;
+import org.crosswire.jsword.book.BooksListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Keeps the pages rendered for crawlers (i.e. the snapshots of the hash bang URLs), gzipped, so that they can be
+ * served as static bytes. All snapshots are written to the STEP home directory, and the most recently used ones are
+ * also kept in memory. Snapshots carry an ETag and a Last-Modified date, so that crawlers coming back to a page
+ * they have seen before are told it has not changed.
+ * <p/>
+ * Snapshots are keyed on the parameters the snapshot pages understand, so that a client can't fill the disk by
+ * adding parameters of its own, and the directory is capped in size, the snapshots rendered longest ago being
+ * deleted first. All snapshots are deleted whenever a module is installed or removed.
+ * <p/>
+ * Only a few snapshots are rendered at any one time, on threads of the lowest priority. Crawlers asking for
+ * more are told to come back later, rather than taking rendering capacity away from users. The
+ * {@link CrawlerSnapshotGenerator} has a permit of its own, so that it neither holds crawlers back nor is held back
+ * by them.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class CrawlerSnapshotCache implements BooksListener {
+    public static final String GENERATOR_HEADER = "X-Step-Snapshot-Generator";
+    private static final Logger LOGGER = LoggerFactory.getLogger(CrawlerSnapshotCache.class);
+    private static final String SNAPSHOT_DIRECTORY = "crawler-snapshots";
+    private static final String SNAPSHOT_SUFFIX = ".html.gz";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final Pattern SNAPSHOT_PAGE = Pattern.compile("snapshots/[a-zA-Z]+\\.jsp");
+    private static final Pattern SNAPSHOT_PARAMETER = Pattern.compile(
+            "(version|reference|querySyntax|context|pageNumber|pageSize)[0-9]?|strong|morph|sh");
+    private static final int MAX_KEY_LENGTH = 1024;
+    private static final int DISK_TRIM_PERCENT = 90;
+    private static final String CONTENT_TYPE = "text/html; charset=UTF-8";
+    private static final String UTF_8 = "UTF-8";
+    private static final int RETRY_AFTER_SECONDS = 30;
+    private static final long MILLIS_PER_HOUR = 3600000L;
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final Counter MEMORY_HITS = Metrics.newCounter(CrawlerSnapshotCache.class, "memory-hits");
+    private static final Counter DISK_HITS = Metrics.newCounter(CrawlerSnapshotCache.class, "disk-hits");
+    private static final Counter NOT_MODIFIED = Metrics.newCounter(CrawlerSnapshotCache.class, "not-modified");
+    private static final Counter RENDERS = Metrics.newCounter(CrawlerSnapshotCache.class, "renders");
+    private static final Counter REJECTED = Metrics.newCounter(CrawlerSnapshotCache.class, "rejected");
+    private static final Counter EVICTED = Metrics.newCounter(CrawlerSnapshotCache.class, "evicted-from-disk");
+    private final File directory;
+    private final long maxBytes;
+    private final long maxDiskBytes;
+    private final long maxAge;
+    private final Semaphore renders;
+    private final Semaphore generatorRenders = new Semaphore(1);
+    private final String generatorToken = UUID.randomUUID().toString();
+    private final Map<String, Snapshot> snapshots = new LinkedHashMap<String, Snapshot>(16, 0.75f, true);
+    private final Object diskLock = new Object();
+    private long bytes;
+    private long diskBytes;
+
+    /**
+     * @param appHome     the home of the application, in which the snapshots are kept
+     * @param maxBytes     the number of gzipped bytes of snapshots kept in memory
+     * @param maxDiskBytes the number of gzipped bytes of snapshots kept on disk
+     * @param maxAgeHours  the number of hours after which a snapshot is rendered again
+     * @param maxRenders   the number of snapshots that can be rendered at the same time for crawlers
+     */
+    @Inject
+    public CrawlerSnapshotCache(@Named("app.home") final String appHome,
+                                @Named("app.crawler.snapshots.maxBytes") final long maxBytes,
+                                @Named("app.crawler.snapshots.maxDiskBytes") final long maxDiskBytes,
+                                @Named("app.crawler.snapshots.maxAgeHours") final int maxAgeHours,
+                                @Named("app.crawler.snapshots.maxRenders") final int maxRenders) {
+        this(getSnapshotDirectory(appHome), maxBytes, maxDiskBytes, maxAgeHours * MILLIS_PER_HOUR, maxRenders);
+        Books.installed().addBooksListener(this);
+    }
+
+    /**
+     * @param directory    the directory the snapshots are written to, or null to keep them in memory only
+     * @param maxBytes     the number of gzipped bytes of snapshots kept in memory
+     * @param maxDiskBytes the number of gzipped bytes of snapshots kept on disk
+     * @param maxAge       the number of milliseconds after which a snapshot is rendered again
+     * @param maxRenders   the number of snapshots that can be rendered at the same time for crawlers
+     */
+    CrawlerSnapshotCache(final File directory, final long maxBytes, final long maxDiskBytes, final long maxAge,
+                         final int maxRenders) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.maxDiskBytes = maxDiskBytes;
+        this.maxAge = maxAge;
+        this.renders = new Semaphore(Math.max(1, maxRenders));
+        measureDirectory();
+    }
+
+    @Override
+    public void bookAdded(final BooksEvent ev) {
+        clear();
+    }
+
+    @Override
+    public void bookRemoved(final BooksEvent ev) {
+        clear();
+    }
+
+    /**
+     * @return the value of the {@link #GENERATOR_HEADER} that identifies requests made by the
+     *         {@link CrawlerSnapshotGenerator}, which only it knows
+     */
+    String getGeneratorToken() {
+        return this.generatorToken;
+    }
+
+    /**
+     * Renders the pages of snapshots
+     */
+    public interface Renderer {
+        /**
+         * Renders the page of the snapshot
+         *
+         * @param response the response the page is to be written to
+         * @throws IOException      unable to write the page
+         * @throws ServletException unable to render the page
+         */
+        void render(HttpServletResponse response) throws IOException, ServletException;
+    }
+
+    /**
+     * Works out the key of a snapshot from the parameters the snapshot pages understand, in a set order, so that
+     * other parameters, or the same ones encoded differently, don't each make for a snapshot of their own.
+     *
+     * @param snapshotPath the path of the page rendering the snapshot, including its query string
+     * @param language     the language the page is rendered in
+     * @return the key of the snapshot, or null if the path isn't that of a snapshot page, or is too long to be kept
+     */
+    public static String getKey(final String snapshotPath, final String language) {
+        final int queryStart = snapshotPath.indexOf('?');
+        final String page = queryStart == -1 ? snapshotPath : snapshotPath.substring(0, queryStart);
+        if (!SNAPSHOT_PAGE.matcher(page).matches()) {
+            return null;
+        }
+
+        final Map<String, String> parameters = new TreeMap<String, String>();
+        if (queryStart != -1) {
+            for (final String parameter : snapshotPath.substring(queryStart + 1).split("&")) {
+                final int equals = parameter.indexOf('=');
+                final String name = equals == -1 ? parameter : parameter.substring(0, equals);
+                if (!SNAPSHOT_PARAMETER.matcher(name).matches() || parameters.containsKey(name)) {
+                    continue;
+                }
+
+                final String value = decode(equals == -1 ? "" : parameter.substring(equals + 1));
+                if (value == null) {
+                    return null;
+                }
+                if (!value.isEmpty()) {
+                    parameters.put(name, value);
+                }
+            }
+        }
+
+        final StringBuilder key = new StringBuilder(page.length() + 64);
+        key.append(page);
+        char separator = '?';
+        for (final Map.Entry<String, String> parameter : parameters.entrySet()) {
+            key.append(separator).append(parameter.getKey()).append('=').append(encode(parameter.getValue()));
+            separator = '&';
+        }
+        key.append('|').append(language == null ? "" : language.toLowerCase(Locale.ENGLISH));
+        return key.length() > MAX_KEY_LENGTH ? null : key.toString();
+    }
+
+    /**
+     * @param value the value of a parameter, as found in the query string
+     * @return the decoded value, or null if it isn't validly encoded
+     */
+    private static String decode(final String value) {
+        try {
+            return URLDecoder.decode(value, UTF_8);
+        } catch (final IllegalArgumentException e) {
+            LOGGER.trace("Invalid parameter in snapshot path", e);
+            return null;
+        } catch (final UnsupportedEncodingException e) {
+            throw new StepInternalException("Unable to decode snapshot path", e);
+        }
+    }
+
+    /**
+     * @param value the value of a parameter
+     * @return the value, encoded for the query string
+     */
+    private static String encode(final String value) {
+        try {
+            return URLEncoder.encode(value, UTF_8);
+        } catch (final UnsupportedEncodingException e) {
+            throw new StepInternalException("Unable to encode snapshot path", e);
+        }
+    }
+
+    /**
+     * @param key the key of the snapshot
+     * @return true if the snapshot exists and does not need rendering again
+     */
+    public boolean isFresh(final String key) {
+        return key != null && get(key) != null;
+    }
+
+    /**
+     * Serves a snapshot, rendering it first if needed.
+     *
+     * @param request  the request
+     * @param response the response
+     * @param key      the key of the snapshot, or null to render the page without keeping it
+     * @param renderer renders the page of the snapshot, if there is no fresh one
+     * @throws IOException      unable to write the snapshot
+     * @throws ServletException unable to render the snapshot
+     */
+    public void serve(final HttpServletRequest request, final HttpServletResponse response, final String key,
+                      final Renderer renderer) throws IOException, ServletException {
+        Snapshot snapshot = key == null ? null : get(key);
+        if (snapshot == null) {
+            final boolean generator = this.generatorToken.equals(request.getHeader(GENERATOR_HEADER));
+            snapshot = render(response, key, renderer, generator ? this.generatorRenders : this.renders);
+            if (snapshot == null) {
+                // the response has been dealt with already
+                return;
+            }
+        }
+        write(request, response, snapshot);
+    }
+
+    /**
+     * Renders the snapshot, unless too many are being rendered already, in which case the client is asked to come
+     * back later.
+     *
+     * @param response the response
+     * @param key      the key of the snapshot, or null to render the page without keeping it
+     * @param renderer renders the page
+     * @param permits  the permits to render with
+     * @return the snapshot, or null if it could not be rendered, or is not to be kept
+     * @throws IOException      unable to write the response
+     * @throws ServletException unable to render the page
+     */
+    private Snapshot render(final HttpServletResponse response, final String key, final Renderer renderer,
+                            final Semaphore permits) throws IOException, ServletException {
+        if (!permits.tryAcquire()) {
+            REJECTED.inc();
+            response.setHeader("Retry-After", Integer.toString(RETRY_AFTER_SECONDS));
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return null;
+        }
+
+        final Thread current = Thread.currentThread();
+        final int priority = current.getPriority();
+        current.setPriority(Thread.MIN_PRIORITY);
+        try {
+            // rendered by someone else while we were waiting?
+            final Snapshot rendered = key == null ? null : get(key);
+            if (rendered != null) {
+                return rendered;
+            }
+
+            RENDERS.inc();
+            final CapturingResponse capture = new CapturingResponse(response);
+            renderer.render(capture);
+            final byte[] page = capture.getBytes();
+            if (key == null || capture.getStatus() != HttpServletResponse.SC_OK) {
+                // not something we want to keep, so pass it through as it is
+                if (!response.isCommitted()) {
+                    response.getOutputStream().write(page);
+                }
+                return null;
+            }
+            return put(key, page);
+        } finally {
+            current.setPriority(priority);
+            permits.release();
+        }
+    }
+
+    /**
+     * Writes the snapshot, or tells the client it already has it
+     *
+     * @param request  the request
+     * @param response the response
+     * @param snapshot the snapshot
+     * @throws IOException unable to write the snapshot
+     */
+    private void write(final HttpServletRequest request, final HttpServletResponse response,
+                       final Snapshot snapshot) throws IOException {
+        response.setHeader("ETag", snapshot.getEtag());
+        response.setDateHeader("Last-Modified", snapshot.getLastModified());
+        response.setHeader("Cache-Control", "public, max-age=" + this.maxAge / MILLIS_PER_SECOND);
+        response.addHeader("Vary", "Accept-Encoding");
+        if (isNotModified(request, snapshot)) {
+            NOT_MODIFIED.inc();
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setContentType(CONTENT_TYPE);
+        final byte[] payload;
+        if (ResponseCompressor.acceptsGzip(request.getHeader("Accept-Encoding"))) {
+            response.setHeader("Content-Encoding", ResponseCompressor.GZIP);
+            payload = snapshot.getCompressed();
+        } else {
+            payload = gunzip(snapshot.getCompressed());
+        }
+        response.setContentLength(payload.length);
+        response.getOutputStream().write(payload);
+    }
+
+    /**
+     * @param request  the request
+     * @param snapshot the snapshot
+     * @return true if the client's copy of the snapshot is current
+     */
+    static boolean isNotModified(final HttpServletRequest request, final Snapshot snapshot) {
+        final String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (final String etag : ifNoneMatch.split(",")) {
+                final String trimmed = etag.trim();
+                if ("*".equals(trimmed) || snapshot.getEtag().equals(trimmed)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        final long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        } catch (final IllegalArgumentException e) {
+            LOGGER.trace("Invalid If-Modified-Since header", e);
+            return false;
+        }
+        return ifModifiedSince != -1
+                && snapshot.getLastModified() / MILLIS_PER_SECOND <= ifModifiedSince / MILLIS_PER_SECOND;
+    }
+
+    /**
+     * @param key the key of the snapshot
+     * @return the snapshot, from memory or disk, or null if there is no fresh one
+     */
+    Snapshot get(final String key) {
+        Snapshot snapshot;
+        synchronized (this.snapshots) {
+            snapshot = this.snapshots.get(key);
+        }
+
+        if (snapshot != null) {
+            if (isCurrent(snapshot.getLastModified())) {
+                MEMORY_HITS.inc();
+                return snapshot;
+            }
+            return null;
+        }
+
+        snapshot = read(key);
+        if (snapshot == null) {
+            return null;
+        }
+
+        DISK_HITS.inc();
+        keep(key, snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Keeps a newly rendered page
+     *
+     * @param key  the key of the snapshot
+     * @param page the page
+     * @return the snapshot
+     */
+    Snapshot put(final String key, final byte[] page) {
+        final Snapshot snapshot = new Snapshot(ResponseCompressor.gzip(page), System.currentTimeMillis());
+        keep(key, snapshot);
+        writeSnapshot(key, snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Keeps the snapshot in memory, letting go of the least recently used ones if there are too many
+     *
+     * @param key      the key of the snapshot
+     * @param snapshot the snapshot
+     */
+    private void keep(final String key, final Snapshot snapshot) {
+        synchronized (this.snapshots) {
+            final Snapshot previous = this.snapshots.put(key, snapshot);
+            if (previous != null) {
+                this.bytes -= previous.getCompressed().length;
+            }
+            this.bytes += snapshot.getCompressed().length;
+
+            final Iterator<Snapshot> eldest = this.snapshots.values().iterator();
+            while (this.bytes > this.maxBytes && eldest.hasNext()) {
+                this.bytes -= eldest.next().getCompressed().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * @param lastModified the time the snapshot was rendered
+     * @return true if the snapshot does not need rendering again
+     */
+    private boolean isCurrent(final long lastModified) {
+        return System.currentTimeMillis() - lastModified < this.maxAge;
+    }
+
+    /**
+     * @param key the key of the snapshot
+     * @return the snapshot written to disk, or null if there is no fresh one
+     */
+    private Snapshot read(final String key) {
+        if (this.directory == null) {
+            return null;
+        }
+
+        final File file = getFile(key);
+        final long lastModified = file.lastModified();
+        if (lastModified == 0 || !isCurrent(lastModified)) {
+            return null;
+        }
+
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            return new Snapshot(readFully(in, (int) file.length()), lastModified);
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to read snapshot [{}]", file);
+            LOGGER.trace("Unable to read snapshot", e);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Writes the snapshot to disk, through a temporary file so that other threads never read half a snapshot, then
+     * deletes the snapshots rendered longest ago if there are too many bytes of them
+     *
+     * @param key      the key of the snapshot
+     * @param snapshot the snapshot
+     */
+    private void writeSnapshot(final String key, final Snapshot snapshot) {
+        if (this.directory == null) {
+            return;
+        }
+
+        final File file = getFile(key);
+        final File temporary = new File(file.getPath() + "." + Thread.currentThread().getId() + TEMPORARY_SUFFIX);
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(temporary);
+            out.write(snapshot.getCompressed());
+            out.close();
+            out = null;
+
+            synchronized (this.diskLock) {
+                final long previousLength = file.length();
+                if (!temporary.setLastModified(snapshot.getLastModified())
+                        || file.exists() && !file.delete() || !temporary.renameTo(file)) {
+                    LOGGER.warn("Unable to replace snapshot [{}]", file);
+                    temporary.delete();
+                    this.diskBytes -= previousLength - file.length();
+                    return;
+                }
+
+                this.diskBytes += file.length() - previousLength;
+                if (this.diskBytes > this.maxDiskBytes) {
+                    trimDirectory();
+                }
+            }
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to write snapshot [{}]", file);
+            LOGGER.trace("Unable to write snapshot", e);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Works out the number of bytes of snapshots on disk, deleting what is left of snapshots that were being written
+     * when the server was last stopped
+     */
+    private void measureDirectory() {
+        if (this.directory == null) {
+            return;
+        }
+
+        synchronized (this.diskLock) {
+            this.diskBytes = 0;
+            for (final File file : listFiles()) {
+                if (file.getName().endsWith(SNAPSHOT_SUFFIX)) {
+                    this.diskBytes += file.length();
+                } else if (file.getName().endsWith(TEMPORARY_SUFFIX)) {
+                    deleteFile(file);
+                }
+            }
+
+            if (this.diskBytes > this.maxDiskBytes) {
+                trimDirectory();
+            }
+        }
+    }
+
+    /**
+     * Deletes the snapshots rendered longest ago, until the directory is comfortably below its maximum size, so that
+     * this doesn't happen again on the very next write. Must be called holding the disk lock.
+     */
+    private void trimDirectory() {
+        final File[] files = listFiles();
+        final Map<File, Long> renderedAt = new HashMap<File, Long>(files.length * 2);
+        for (final File file : files) {
+            renderedAt.put(file, file.lastModified());
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(final File o1, final File o2) {
+                return renderedAt.get(o1).compareTo(renderedAt.get(o2));
+            }
+        });
+
+        final long target = this.maxDiskBytes / 100 * DISK_TRIM_PERCENT;
+        for (int ii = 0; ii < files.length && this.diskBytes > target; ii++) {
+            final File file = files[ii];
+            if (!file.getName().endsWith(SNAPSHOT_SUFFIX)) {
+                continue;
+            }
+
+            final long length = file.length();
+            if (deleteFile(file)) {
+                this.diskBytes -= length;
+                EVICTED.inc();
+            }
+        }
+    }
+
+    /**
+     * Deletes all snapshots, from memory and disk, as they may have been rendered from a module that has changed
+     */
+    void clear() {
+        synchronized (this.snapshots) {
+            this.snapshots.clear();
+            this.bytes = 0;
+        }
+
+        if (this.directory == null) {
+            return;
+        }
+
+        synchronized (this.diskLock) {
+            for (final File file : listFiles()) {
+                if (file.getName().endsWith(SNAPSHOT_SUFFIX)) {
+                    final long length = file.length();
+                    if (deleteFile(file)) {
+                        this.diskBytes -= length;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the files in the snapshot directory
+     */
+    private File[] listFiles() {
+        final File[] files = this.directory.listFiles();
+        return files == null ? new File[0] : files;
+    }
+
+    /**
+     * @param file the file to delete
+     * @return true if the file was deleted
+     */
+    private static boolean deleteFile(final File file) {
+        if (!file.delete()) {
+            LOGGER.warn("Unable to delete [{}]", file);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param key the key of the snapshot
+     * @return the file the snapshot is written to
+     */
+    private File getFile(final String key) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(UTF_8));
+            final StringBuilder name = new StringBuilder(digest.length * 2 + SNAPSHOT_SUFFIX.length());
+            for (final byte b : digest) {
+                name.append(Character.forDigit(b >> 4 & 0xF, 16));
+                name.append(Character.forDigit(b & 0xF, 16));
+            }
+            name.append(SNAPSHOT_SUFFIX);
+            return new File(this.directory, name.toString());
+        } catch (final NoSuchAlgorithmException e) {
+            throw new StepInternalException("Unable to hash snapshot key", e);
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to hash snapshot key", e);
+        }
+    }
+
+    /**
+     * @param compressed the gzipped page
+     * @return the page
+     * @throws IOException unable to inflate the page
+     */
+    static byte[] gunzip(final byte[] compressed) throws IOException {
+        InputStream in = null;
+        try {
+            in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+            return readFully(in, compressed.length * 4);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * @param in           the stream
+     * @param expectedSize the expected number of bytes
+     * @return all the bytes of the stream
+     * @throws IOException unable to read the stream
+     */
+    private static byte[] readFully(final InputStream in, final int expectedSize) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(expectedSize, 32));
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param appHome the home of the application
+     * @return the directory the snapshots are written to
+     */
+    private static File getSnapshotDirectory(final String appHome) {
+        final File directory = IOUtils.getHomeDirectory(appHome, SNAPSHOT_DIRECTORY);
+        if (directory == null) {
+            throw new StepInternalException("Unable to create " + SNAPSHOT_DIRECTORY);
+        }
+        return directory;
+    }
+
+    /**
+     * A gzipped snapshot, along with its ETag and the time it was rendered
+     */
+    static final class Snapshot {
+        private final byte[] compressed;
+        private final long lastModified;
+        private final String etag;
+
+        /**
+         * @param compressed   the gzipped page
+         * @param lastModified the time the page was rendered
+         */
+        Snapshot(final byte[] compressed, final long lastModified) {
+            this.compressed = compressed;
+            this.lastModified = lastModified;
+
+            final CRC32 crc = new CRC32();
+            crc.update(compressed);
+            this.etag = "\"" + Long.toHexString(crc.getValue()) + '-' + Integer.toHexString(compressed.length) + "\"";
+        }
+
+        /**
+         * @return the gzipped page
+         */
+        byte[] getCompressed() {
+            return this.compressed;
+        }
+
+        /**
+         * @return the time the page was rendered
+         */
+        long getLastModified() {
+            return this.lastModified;
+        }
+
+        /**
+         * @return the ETag of the page
+         */
+        String getEtag() {
+            return this.etag;
+        }
+    }
+
+    /**
+     * Captures the page being rendered rather than sending it, leaving the status and headers to the response
+     */
+    private static final class CapturingResponse extends HttpServletResponseWrapper {
+        private final ByteArrayOutputStream captured = new ByteArrayOutputStream(16 * 1024);
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+
+        /**
+         * @param response the response
+         */
+        CapturingResponse(final HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (this.outputStream == null) {
+                this.outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(final int b) {
+                        CapturingResponse.this.captured.write(b);
+                    }
+
+                    @Override
+                    public void write(final byte[] b, final int off, final int len) {
+                        CapturingResponse.this.captured.write(b, off, len);
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return true;
+                    }
+
+                    @Override
+                    public void setWriteListener(final WriteListener writeListener) {
+                        throw new UnsupportedOperationException("Snapshots are rendered synchronously");
+                    }
+                };
+            }
+            return this.outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (this.writer == null) {
+                this.writer = new PrintWriter(new OutputStreamWriter(this.captured, UTF_8));
+            }
+            return this.writer;
+        }
+
+        @Override
+        public void setContentLength(final int len) {
+            // the length is that of the snapshot, once written
+        }
+
+        @Override
+        public void setContentLengthLong(final long len) {
+            // the length is that of the snapshot, once written
+        }
+
+        @Override
+        public void flushBuffer() {
+            if (this.writer != null) {
+                this.writer.flush();
+            }
+        }
+
+        @Override
+        public void resetBuffer() {
+            flushBuffer();
+            this.captured.reset();
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            resetBuffer();
+        }
+
+        /**
+         * @return the bytes of the page
+         */
+        byte[] getBytes() {
+            flushBuffer();
+            return this.captured.toByteArray();
+        }
+    }
+}
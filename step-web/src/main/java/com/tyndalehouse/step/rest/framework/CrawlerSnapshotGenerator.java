@@ -0,0 +1,240 @@
+package com.tyndalehouse.step.rest.framework;
+
+import com.tyndalehouse.step.core.data.EntityIndexReader;
+import com.tyndalehouse.step.core.data.EntityManager;
+import com.tyndalehouse.step.core.utils.IOUtils;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.tyndalehouse.step.core.service.helpers.OriginalWordUtils.STRONG_NUMBER_FIELD;
+
+/**
+ * Renders the crawler snapshots of every lexicon entry ahead of time, so that crawlers find them ready. Passages have
+ * no snapshot page of their own, so their snapshots are not rendered ahead of time. Snapshots can only be rendered by the container, so they are requested
+ * from this very server, one at a time, with a pause in between, and only those that are missing or out of date.
+ * The generator's requests carry a header only it knows, so that they are rendered with a permit of their own rather
+ * than taking one away from the crawlers.
+ * <p/>
+ * The generation starts once the first crawler has come by, since that is when we find out the address to request
+ * the snapshots from, and is then repeated at regular intervals.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class CrawlerSnapshotGenerator {
+    public static final String DEFINITION_SNAPSHOT = "snapshots/definition.jsp?strong=%s";
+    private static final Logger LOGGER = LoggerFactory.getLogger(CrawlerSnapshotGenerator.class);
+    private static final int MAX_FAILURES = 3;
+    private static final int TIMEOUT = 60000;
+    private static final long BUSY_PAUSE = 30000;
+    private final CrawlerSnapshotCache snapshots;
+    private final EntityManager entityManager;
+    private final boolean enabled;
+    private final long intervalHours;
+    private final long pauseMillis;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final ScheduledExecutorService generator;
+    private volatile String baseUrl;
+
+    /**
+     * @param snapshots     the cache of snapshots
+     * @param entityManager the entity manager, giving the lexicon entries
+     * @param enabled       true to render the snapshots ahead of time
+     * @param intervalHours the number of hours between two runs
+     * @param pauseMillis   the pause between two renders
+     */
+    @Inject
+    public CrawlerSnapshotGenerator(final CrawlerSnapshotCache snapshots,
+                                    final EntityManager entityManager,
+                                    @Named("app.crawler.pregenerate.enabled") final boolean enabled,
+                                    @Named("app.crawler.pregenerate.intervalHours") final int intervalHours,
+                                    @Named("app.crawler.pregenerate.pauseMs") final long pauseMillis) {
+        this.snapshots = snapshots;
+        this.entityManager = entityManager;
+        this.enabled = enabled;
+        this.intervalHours = Math.max(1, intervalHours);
+        this.pauseMillis = pauseMillis;
+        this.generator = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "crawler-snapshot-generator");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Starts generating the snapshots, unless this has already been done. Snapshots are requested from the address
+     * and port the request came in on, over the loopback interface.
+     *
+     * @param request a request for a snapshot
+     */
+    public void start(final HttpServletRequest request) {
+        if (!this.enabled || !this.started.compareAndSet(false, true)) {
+            return;
+        }
+
+        this.baseUrl = String.format("%s://127.0.0.1:%d%s/", request.getScheme(), request.getLocalPort(),
+                request.getContextPath());
+        LOGGER.info("Generating crawler snapshots from [{}] every [{}] hours", this.baseUrl, this.intervalHours);
+        this.generator.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                generate();
+            }
+        }, 0, this.intervalHours, TimeUnit.HOURS);
+    }
+
+    /**
+     * Renders all the snapshots that are missing or out of date
+     */
+    private void generate() {
+        final long start = System.currentTimeMillis();
+        int rendered = 0;
+        try {
+            rendered += generate(getDefinitionSnapshots());
+            // CHECKSTYLE:OFF
+        } catch (final Exception e) {
+            // CHECKSTYLE:ON
+            // keep going on the next run
+            LOGGER.error("Unable to generate crawler snapshots", e);
+        }
+        LOGGER.info("Rendered [{}] crawler snapshots in [{}]ms", rendered, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Renders the snapshots of a kind, giving up if the first few fail
+     *
+     * @param snapshotPaths the paths of the snapshots
+     * @return the number of snapshots rendered
+     */
+    private int generate(final List<String> snapshotPaths) {
+        final String language = Locale.getDefault().getLanguage();
+        int rendered = 0;
+        int failures = 0;
+        for (final String path : snapshotPaths) {
+            if (Thread.currentThread().isInterrupted()) {
+                return rendered;
+            }
+
+            if (this.snapshots.isFresh(CrawlerSnapshotCache.getKey(path, language))) {
+                continue;
+            }
+
+            if (request(path)) {
+                rendered++;
+            } else if (rendered == 0 && ++failures >= MAX_FAILURES) {
+                LOGGER.warn("Unable to render snapshots such as [{}], skipping the others", path);
+                return rendered;
+            }
+            pause(this.pauseMillis);
+        }
+        return rendered;
+    }
+
+    /**
+     * Requests a snapshot, so that it gets rendered and kept, waiting a while if the server is busy
+     *
+     * @param path the path of the snapshot
+     * @return true if the snapshot was rendered
+     */
+    private boolean request(final String path) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            HttpURLConnection connection = null;
+            InputStream in = null;
+            try {
+                connection = (HttpURLConnection) new URL(this.baseUrl + path).openConnection();
+                connection.setConnectTimeout(TIMEOUT);
+                connection.setReadTimeout(TIMEOUT);
+                connection.setRequestProperty(CrawlerSnapshotCache.GENERATOR_HEADER,
+                        this.snapshots.getGeneratorToken());
+                final int status = connection.getResponseCode();
+                if (status == HttpURLConnection.HTTP_UNAVAILABLE) {
+                    pause(BUSY_PAUSE);
+                    continue;
+                }
+                if (status != HttpURLConnection.HTTP_OK) {
+                    LOGGER.debug("Snapshot [{}] returned [{}]", path, status);
+                    return false;
+                }
+
+                in = connection.getInputStream();
+                final byte[] buffer = new byte[8192];
+                while (in.read(buffer) != -1) {
+                    // the snapshot has been kept on the way out, we don't need it
+                }
+                return true;
+            } catch (final IOException e) {
+                LOGGER.debug("Unable to request snapshot [{}]", path);
+                LOGGER.trace("Unable to request snapshot", e);
+                return false;
+            } finally {
+                IOUtils.closeQuietly(in);
+                if (connection != null) {
+                    connection.disconnect();
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the paths of the snapshots of every lexicon entry
+     * @throws IOException unable to read the lexicon
+     */
+    List<String> getDefinitionSnapshots() throws IOException {
+        final List<String> paths = new ArrayList<String>(16384);
+        final EntityIndexReader definitions = this.entityManager.getReader("definition");
+        final IndexReader reader = definitions.getIndexReader();
+        if (reader == null) {
+            return paths;
+        }
+
+        final TermEnum terms = reader.terms(new Term(STRONG_NUMBER_FIELD, ""));
+        try {
+            do {
+                final Term term = terms.term();
+                if (term == null || !STRONG_NUMBER_FIELD.equals(term.field())) {
+                    break;
+                }
+                paths.add(String.format(DEFINITION_SNAPSHOT, term.text()));
+            } while (terms.next());
+        } finally {
+            terms.close();
+        }
+        return paths;
+    }
+
+    /**
+     * @param millis the time to pause for
+     */
+    private static void pause(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
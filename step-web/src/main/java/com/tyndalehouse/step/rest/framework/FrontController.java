@@ -70,6 +70,7 @@ public class FrontController extends AbstractAjaxController {
     private static final long serialVersionUID = 7898656504631346047L;
     private static final String CONTROLLER_SUFFIX = "Controller";
     private final transient Injector guiceInjector;
+    private final transient RequestAdmission admission;
 
     private final transient Map<String, Method> methodNames = new HashMap<String, Method>();
     private final transient Map<String, Object> controllers = new HashMap<String, Object>();
@@ -81,15 +82,20 @@ public class FrontController extends AbstractAjaxController {
      * @param guiceInjector         the injector used to call the relevant controllers
      * @param errorResolver         the error resolver is the object that helps us translate errors for the client
      * @param clientSessionProvider the client session provider
+     * @param responseCompressor    compresses the responses for clients that accept it
+     * @param admission             holds back expensive requests when too many are running
      */
     @Inject
     public FrontController(final Injector guiceInjector,
                            final AppManagerService appManagerService,
                            final ClientErrorResolver errorResolver,
                            final Provider<ClientSession> clientSessionProvider,
-                           final Provider<ObjectMapper> objectMapperProvider) {
-        super(appManagerService, clientSessionProvider, errorResolver, objectMapperProvider);
+                           final Provider<ObjectMapper> objectMapperProvider,
+                           final ResponseCompressor responseCompressor,
+                           final RequestAdmission admission) {
+        super(appManagerService, clientSessionProvider, errorResolver, objectMapperProvider, responseCompressor);
         this.guiceInjector = guiceInjector;
+        this.admission = admission;
     }
 
     /**
@@ -100,7 +106,12 @@ public class FrontController extends AbstractAjaxController {
     @Override
     protected Object invokeMethod(HttpServletRequest servletRequest) throws Exception {
         StepRequest sr = new StepRequest(servletRequest, UTF_8_ENCODING);
-        return invokeMethodWithStepRequest(sr);
+        final RequestAdmission.Permit permit = this.admission.admit(sr);
+        try {
+            return invokeMethodWithStepRequest(sr);
+        } finally {
+            permit.release();
+        }
     }
 
     /**
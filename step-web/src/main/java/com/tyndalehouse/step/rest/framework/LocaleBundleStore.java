@@ -0,0 +1,306 @@
+package com.tyndalehouse.step.rest.framework;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.utils.StringUtils;
+import com.tyndalehouse.step.core.utils.language.ContemporaryLanguageUtils;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the messages of the UI for each language, as the bytes of the script defining them, along with their gzipped
+ * form and an ETag derived from their content. The bundles of all the available languages are built up front, and
+ * bundles with the same content share the same bytes. Other locales get the bundle of the closest available language,
+ * so that the locales asked for by users, which could be anything, never cause a bundle to be built.
+ * <p/>
+ * In development, the bundles can be rebuilt, in which case the new set replaces the old one in one go.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class LocaleBundleStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocaleBundleStore.class);
+    private static final String[] BUNDLE_NAMES = new String[]{"HtmlBundle", "InteractiveBundle"};
+    private static final String SCRIPT_PREFIX = "var __s = ";
+    private static final String GZIP_ETAG_SUFFIX = "-gz";
+    private static final int MAX_OTHER_LOCALES = 256;
+    private static final Counter BUILDS = Metrics.newCounter(LocaleBundleStore.class, "builds");
+    private static final Counter NOT_MODIFIED = Metrics.newCounter(LocaleBundleStore.class, "not-modified");
+    private final ObjectMapper objectMapper;
+    private final List<Locale> availableLocales;
+    private volatile Bundles bundles;
+
+    /**
+     * @param languageCodes        the languages of the UI, separated by commas
+     * @param objectMapperProvider the provider of the mapper writing the messages out
+     */
+    @Inject
+    public LocaleBundleStore(@Named("app.languages.available") final String languageCodes,
+                             final Provider<ObjectMapper> objectMapperProvider) {
+        this.objectMapper = objectMapperProvider.get();
+        this.availableLocales = new ArrayList<Locale>();
+        if (StringUtils.isNotBlank(languageCodes)) {
+            for (final String code : StringUtils.split(languageCodes, ",")) {
+                this.availableLocales.add(ContemporaryLanguageUtils.getLocaleFromTag(code.trim()));
+            }
+        }
+        this.bundles = build();
+    }
+
+    /**
+     * @param locale the locale
+     * @return the bundle for the locale
+     */
+    public LocaleBundle get(final Locale locale) {
+        final Locale available = getClosestAvailable(locale);
+        final Bundles current = this.bundles;
+        final LocaleBundle bundle = current.byLocale.get(available);
+        if (bundle != null) {
+            return bundle;
+        }
+        return current.add(available, createBundle(available));
+    }
+
+    /**
+     * @param locale the locale asked for
+     * @return the available locale matching the language and country, or else the language only, or else any
+     * country of the language, or else English, or the locale itself if no languages are configured
+     */
+    Locale getClosestAvailable(final Locale locale) {
+        if (this.availableLocales.isEmpty()) {
+            return locale;
+        }
+
+        Locale sameLanguage = null;
+        Locale english = null;
+        for (final Locale available : this.availableLocales) {
+            if (available.getLanguage().equals(locale.getLanguage())) {
+                if (available.getCountry().equals(locale.getCountry())) {
+                    return available;
+                }
+                if (sameLanguage == null || available.getCountry().isEmpty()) {
+                    sameLanguage = available;
+                }
+            } else if (english == null && Locale.ENGLISH.getLanguage().equals(available.getLanguage())) {
+                english = available;
+            }
+        }
+
+        if (sameLanguage != null) {
+            return sameLanguage;
+        }
+        return english != null ? english : this.availableLocales.get(0);
+    }
+
+    /**
+     * Builds all the bundles again, replacing the current ones once they're all built
+     */
+    public void rebuild() {
+        ResourceBundle.clearCache();
+        this.bundles = build();
+    }
+
+    /**
+     * Writes the bundle, or tells the client it already has it. The caller is expected to have set the caching
+     * headers.
+     *
+     * @param request  the request
+     * @param response the response
+     * @param bundle   the bundle
+     * @throws IOException unable to write the bundle
+     */
+    public void write(final HttpServletRequest request, final HttpServletResponse response,
+                      final LocaleBundle bundle) throws IOException {
+        final boolean gzip = ResponseCompressor.acceptsGzip(request.getHeader("Accept-Encoding"));
+        final String etag = gzip ? bundle.getGzipEtag() : bundle.getEtag();
+        response.addHeader("Vary", "Accept-Encoding");
+        response.setHeader("ETag", etag);
+        if (isNotModified(request.getHeader("If-None-Match"), bundle)) {
+            NOT_MODIFIED.inc();
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        final byte[] payload;
+        if (gzip) {
+            response.setHeader("Content-Encoding", ResponseCompressor.GZIP);
+            payload = bundle.getCompressed();
+        } else {
+            payload = bundle.getBytes();
+        }
+        response.setContentLength(payload.length);
+        response.getOutputStream().write(payload);
+    }
+
+    /**
+     * @param ifNoneMatch the If-None-Match header
+     * @param bundle      the bundle
+     * @return true if the client already has the bundle, in either encoding
+     */
+    static boolean isNotModified(final String ifNoneMatch, final LocaleBundle bundle) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        for (final String etag : ifNoneMatch.split(",")) {
+            final String trimmed = etag.trim();
+            if (bundle.getEtag().equals(trimmed) || bundle.getGzipEtag().equals(trimmed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the bundles of all the available languages
+     */
+    private Bundles build() {
+        final long start = System.currentTimeMillis();
+        final Bundles built = new Bundles();
+        for (final Locale locale : this.availableLocales) {
+            built.add(locale, createBundle(locale));
+        }
+        LOGGER.info("Built [{}] distinct UI bundles for [{}] languages in [{}]ms", new Object[]{
+                built.byEtag.size(), this.availableLocales.size(), System.currentTimeMillis() - start});
+        return built;
+    }
+
+    /**
+     * @param locale the locale
+     * @return the bundle of messages for the locale
+     */
+    LocaleBundle createBundle(final Locale locale) {
+        BUILDS.inc();
+        final List<ResourceBundle> resourceBundles = new ArrayList<ResourceBundle>(BUNDLE_NAMES.length);
+        for (final String name : BUNDLE_NAMES) {
+            resourceBundles.add(ResourceBundle.getBundle(name, locale));
+        }
+
+        try {
+            final String script = SCRIPT_PREFIX
+                    + this.objectMapper.writeValueAsString(new JsonResourceBundle(resourceBundles));
+            return new LocaleBundle(script.getBytes(FrontController.UTF_8_ENCODING));
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to read messages", e);
+        }
+    }
+
+    /**
+     * One set of bundles, found by locale, and by content so that the same bytes are only ever kept once
+     */
+    private static final class Bundles {
+        private final Map<Locale, LocaleBundle> byLocale = new ConcurrentHashMap<Locale, LocaleBundle>();
+        private final Map<String, LocaleBundle> byEtag = new HashMap<String, LocaleBundle>();
+
+        /**
+         * @param locale the locale
+         * @param bundle the bundle that has just been built for it
+         * @return the bundle to use for the locale, i.e. an existing one if it has the same content
+         */
+        private LocaleBundle add(final Locale locale, final LocaleBundle bundle) {
+            final LocaleBundle shared;
+            synchronized (this.byEtag) {
+                final LocaleBundle existing = this.byEtag.get(bundle.getEtag());
+                if (existing != null) {
+                    shared = existing;
+                } else {
+                    this.byEtag.put(bundle.getEtag(), bundle);
+                    shared = bundle;
+                }
+            }
+
+            // only without configured languages do locales come straight from the user, so we don't keep an
+            // unbounded number of them
+            if (this.byLocale.size() < MAX_OTHER_LOCALES) {
+                this.byLocale.put(locale, shared);
+            }
+            return shared;
+        }
+    }
+
+    /**
+     * The messages for a locale, ready to be sent
+     */
+    public static final class LocaleBundle {
+        private final byte[] bytes;
+        private final byte[] compressed;
+        private final String etag;
+        private final String gzipEtag;
+
+        /**
+         * @param bytes the UTF-8 bytes of the script defining the messages
+         */
+        LocaleBundle(final byte[] bytes) {
+            this.bytes = bytes;
+            this.compressed = ResponseCompressor.gzip(bytes);
+            final String hash = hash(bytes);
+            this.etag = '"' + hash + '"';
+            this.gzipEtag = '"' + hash + GZIP_ETAG_SUFFIX + '"';
+        }
+
+        /**
+         * @param content the content
+         * @return the hex SHA-1 of the content
+         */
+        private static String hash(final byte[] content) {
+            try {
+                final byte[] digest = MessageDigest.getInstance("SHA-1").digest(content);
+                final StringBuilder hex = new StringBuilder(digest.length * 2);
+                for (final byte b : digest) {
+                    hex.append(Character.forDigit(b >> 4 & 0xF, 16));
+                    hex.append(Character.forDigit(b & 0xF, 16));
+                }
+                return hex.toString();
+            } catch (final NoSuchAlgorithmException e) {
+                throw new StepInternalException("Unable to hash messages", e);
+            }
+        }
+
+        /**
+         * @return the UTF-8 bytes of the script
+         */
+        public byte[] getBytes() {
+            return this.bytes;
+        }
+
+        /**
+         * @return the gzipped bytes of the script
+         */
+        public byte[] getCompressed() {
+            return this.compressed;
+        }
+
+        /**
+         * @return the ETag of the script
+         */
+        public String getEtag() {
+            return this.etag;
+        }
+
+        /**
+         * @return the ETag of the gzipped script
+         */
+        public String getGzipEtag() {
+            return this.gzipEtag;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.tyndalehouse.step.rest.framework;
+
+import com.tyndalehouse.step.core.utils.StringUtils;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides whether a REST request can run now, so that a burst of expensive requests, such as searches or word
+ * statistics over the whole Bible, cannot take all the threads away from the cheap requests users are waiting on.
+ * Endpoints, named controller/method as in the URL, fall in one of three classes:
+ * <ul>
+ * <li>interactive endpoints, e.g. suggestions and chapters, always run straight away</li>
+ * <li>expensive endpoints each have their own small number of requests running at once</li>
+ * <li>all other endpoints share a larger number of requests running at once</li>
+ * </ul>
+ * Requests that can't run straight away wait a bounded time in a bounded queue, and are turned away with an
+ * {@link AdmissionRejectedException} if the queue is full or their time is up. Passage requests for a whole book, i.e.
+ * whose reference (the second argument) has no chapter or verse number, count as expensive.
+ * <p/>
+ * The number of requests running, waiting and turned away for each class and expensive endpoint is kept in the
+ * metrics, under the scope of the endpoint.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class RequestAdmission {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestAdmission.class);
+    private static final String NORMAL = "normal";
+    private static final String WHOLE_BOOK_SUFFIX = "#book";
+    private static final char LIMIT_SEPARATOR = ':';
+    private static final Permit ADMITTED = new Permit(null);
+    private final boolean enabled;
+    private final Set<String> interactive;
+    private final Set<String> wholeBook;
+    private final Map<String, Limiter> expensive = new HashMap<>();
+    private final Limiter normal;
+    private final int retryAfterSeconds;
+
+    /**
+     * @param enabled                  false to let every request run straight away
+     * @param interactiveEndpoints     the endpoints that always run straight away, separated by commas
+     * @param expensiveEndpoints       the expensive endpoints, separated by commas, each optionally followed by
+     *                                 :limit to override the number of requests running at once
+     * @param wholeBookEndpoints       the passage endpoints that count as expensive when asked for a whole book
+     * @param expensiveMaxConcurrent   the number of requests to an expensive endpoint running at once
+     * @param expensiveMaxQueued       the number of requests to an expensive endpoint waiting to run
+     * @param expensiveMaxWaitMs       how long a request to an expensive endpoint waits before being turned away
+     * @param normalMaxConcurrent      the number of other requests running at once
+     * @param normalMaxQueued          the number of other requests waiting to run
+     * @param normalMaxWaitMs          how long another request waits before being turned away
+     * @param retryAfterSeconds        the delay suggested to clients that are turned away
+     */
+    @Inject
+    public RequestAdmission(@Named("app.admission.enabled") final boolean enabled,
+                            @Named("app.admission.interactive.endpoints") final String interactiveEndpoints,
+                            @Named("app.admission.expensive.endpoints") final String expensiveEndpoints,
+                            @Named("app.admission.wholeBook.endpoints") final String wholeBookEndpoints,
+                            @Named("app.admission.expensive.maxConcurrent") final int expensiveMaxConcurrent,
+                            @Named("app.admission.expensive.maxQueued") final int expensiveMaxQueued,
+                            @Named("app.admission.expensive.maxWaitMs") final long expensiveMaxWaitMs,
+                            @Named("app.admission.normal.maxConcurrent") final int normalMaxConcurrent,
+                            @Named("app.admission.normal.maxQueued") final int normalMaxQueued,
+                            @Named("app.admission.normal.maxWaitMs") final long normalMaxWaitMs,
+                            @Named("app.admission.retryAfterSeconds") final int retryAfterSeconds) {
+        this.enabled = enabled;
+        this.interactive = split(interactiveEndpoints);
+        this.wholeBook = split(wholeBookEndpoints);
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.normal = new Limiter(NORMAL, normalMaxConcurrent, normalMaxQueued, normalMaxWaitMs);
+
+        for (final String endpoint : split(expensiveEndpoints)) {
+            final int separator = endpoint.indexOf(LIMIT_SEPARATOR);
+            final String name = separator == -1 ? endpoint : endpoint.substring(0, separator);
+            final int maxConcurrent = separator == -1 ? expensiveMaxConcurrent
+                    : Integer.parseInt(endpoint.substring(separator + 1).trim());
+            this.expensive.put(name, new Limiter(name, maxConcurrent, expensiveMaxQueued, expensiveMaxWaitMs));
+        }
+        for (final String endpoint : this.wholeBook) {
+            final String name = endpoint + WHOLE_BOOK_SUFFIX;
+            this.expensive.put(name, new Limiter(name, expensiveMaxConcurrent, expensiveMaxQueued,
+                    expensiveMaxWaitMs));
+        }
+    }
+
+    /**
+     * Waits, if need be, until the request can run
+     *
+     * @param request the request
+     * @return the permit to run, to be released once the request has run
+     * @throws AdmissionRejectedException if the request is turned away
+     */
+    public Permit admit(final StepRequest request) {
+        if (!this.enabled) {
+            return ADMITTED;
+        }
+
+        final Limiter limiter = getLimiter(request);
+        if (limiter == null) {
+            return ADMITTED;
+        }
+
+        if (!limiter.acquire()) {
+            throw new AdmissionRejectedException(this.retryAfterSeconds);
+        }
+        return new Permit(limiter);
+    }
+
+    /**
+     * @param request the request
+     * @return the limiter of the request, or null if it always runs straight away
+     */
+    Limiter getLimiter(final StepRequest request) {
+        final String endpoint = request.getControllerName() + '/' + request.getMethodName();
+        if (this.wholeBook.contains(endpoint) && isWholeBook(request.getArgs())) {
+            return this.expensive.get(endpoint + WHOLE_BOOK_SUFFIX);
+        }
+
+        if (this.interactive.contains(endpoint)) {
+            return null;
+        }
+
+        final Limiter limiter = this.expensive.get(endpoint);
+        return limiter != null ? limiter : this.normal;
+    }
+
+    /**
+     * @param args the arguments of a passage request, the reference being the second one
+     * @return true if the reference is to a whole book
+     */
+    static boolean isWholeBook(final String[] args) {
+        if (args == null || args.length < 2 || StringUtils.isBlank(args[1])) {
+            return false;
+        }
+
+        // a number anywhere but at the start is a chapter or verse, e.g. 1Cor.1 as opposed to 1Cor
+        final String reference = args[1];
+        for (int ii = 1; ii < reference.length(); ii++) {
+            if (Character.isDigit(reference.charAt(ii)) && !Character.isDigit(reference.charAt(ii - 1))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param endpoints endpoints separated by commas
+     * @return the endpoints
+     */
+    private static Set<String> split(final String endpoints) {
+        final Set<String> split = new HashSet<>();
+        if (StringUtils.isBlank(endpoints)) {
+            return split;
+        }
+
+        for (final String endpoint : endpoints.split(",")) {
+            if (StringUtils.isNotBlank(endpoint)) {
+                split.add(endpoint.trim());
+            }
+        }
+        return split;
+    }
+
+    /**
+     * The permit of a request to run
+     */
+    public static final class Permit {
+        private final Limiter limiter;
+
+        /**
+         * @param limiter the limiter the permit was taken from, or null
+         */
+        private Permit(final Limiter limiter) {
+            this.limiter = limiter;
+        }
+
+        /**
+         * Lets another request run
+         */
+        public void release() {
+            if (this.limiter != null) {
+                this.limiter.release();
+            }
+        }
+    }
+
+    /**
+     * Limits the number of requests of one kind running and waiting at once. This works in the same way as the
+     * LoadSheddingValve of the embedded server, which limits all requests before they reach the webapp, but can't
+     * share this class as the server doesn't depend on STEP's own modules. Changes to one should be made to both.
+     * <p/>
+     * The gauges of a limiter replace those of any earlier limiter of the same name, so that they report the
+     * limiter in use rather than the first one created.
+     */
+    static final class Limiter {
+        private final String name;
+        private final Semaphore running;
+        private final int maxQueued;
+        private final long maxWaitMs;
+        private final AtomicInteger queued = new AtomicInteger();
+        private final Counter rejected;
+
+        /**
+         * @param name          the name of the endpoint or class
+         * @param maxConcurrent the number of requests running at once
+         * @param maxQueued     the number of requests waiting
+         * @param maxWaitMs     how long a request waits
+         */
+        Limiter(final String name, final int maxConcurrent, final int maxQueued, final long maxWaitMs) {
+            this.name = name;
+            this.running = new Semaphore(Math.max(1, maxConcurrent), true);
+            this.maxQueued = maxQueued;
+            this.maxWaitMs = maxWaitMs;
+            this.rejected = Metrics.newCounter(RequestAdmission.class, "rejected", name);
+            replaceGauge("queued", name, new Gauge<Integer>() {
+                @Override
+                public Integer value() {
+                    return Limiter.this.queued.get();
+                }
+            });
+            replaceGauge("available", name, new Gauge<Integer>() {
+                @Override
+                public Integer value() {
+                    return Limiter.this.running.availablePermits();
+                }
+            });
+        }
+
+        /**
+         * Registers a gauge, in the place of any gauge already registered under the same name, which the metrics
+         * would otherwise keep
+         *
+         * @param metric the name of the metric
+         * @param scope  the name of the endpoint or class
+         * @param gauge  the gauge
+         */
+        private static void replaceGauge(final String metric, final String scope, final Gauge<Integer> gauge) {
+            Metrics.defaultRegistry().removeMetric(RequestAdmission.class, metric, scope);
+            Metrics.newGauge(RequestAdmission.class, metric, scope, gauge);
+        }
+
+        /**
+         * @return true if the request can run, false if it is turned away
+         */
+        boolean acquire() {
+            if (this.running.tryAcquire()) {
+                return true;
+            }
+
+            if (this.queued.incrementAndGet() > this.maxQueued) {
+                this.queued.decrementAndGet();
+                reject();
+                return false;
+            }
+
+            try {
+                if (this.running.tryAcquire(this.maxWaitMs, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+                reject();
+                return false;
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                reject();
+                return false;
+            } finally {
+                this.queued.decrementAndGet();
+            }
+        }
+
+        /**
+         * Lets another request run
+         */
+        void release() {
+            this.running.release();
+        }
+
+        /**
+         * Counts a request turned away
+         */
+        private void reject() {
+            this.rejected.inc();
+            LOGGER.debug("Turned away request to [{}], [{}] waiting", this.name, this.queued.get());
+        }
+
+        /**
+         * @return the number of requests waiting
+         */
+        int getQueued() {
+            return this.queued.get();
+        }
+    }
+}
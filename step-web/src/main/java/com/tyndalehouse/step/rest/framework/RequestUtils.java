@@ -4,8 +4,10 @@ import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.util.regex.Pattern;
 
 import javax.inject.Provider;
+import javax.servlet.http.HttpServletRequest;
 
 import com.tyndalehouse.step.core.utils.StringUtils;
 import org.slf4j.Logger;
@@ -22,6 +24,12 @@ import com.tyndalehouse.step.core.models.ClientSession;
  */
 public final class RequestUtils {
     private static final Logger LOGGER = LoggerFactory.getLogger(RequestUtils.class);
+    private static final String FORWARDED_HEADER = "Forwarded";
+    private static final String FORWARDED_FOR_HEADER = "X-Forwarded-For";
+    private static final String REAL_IP_HEADER = "X-Real-IP";
+    private static final Pattern IPV4_LITERAL = Pattern.compile(
+            "((25[0-5]|2[0-4][0-9]|1[0-9][0-9]|[1-9]?[0-9])\\.){3}(25[0-5]|2[0-4][0-9]|1[0-9][0-9]|[1-9]?[0-9])");
+    private static final Pattern IPV6_LITERAL = Pattern.compile("\\[?[0-9a-fA-F]*:[0-9a-fA-F:.]*(%[0-9a-zA-Z]+)?]?");
 
     /**
      * preventing instantiation
@@ -75,4 +83,59 @@ public final class RequestUtils {
         }
 
     }
+
+    /**
+     * A request forwarded by a reverse proxy on this machine comes from the loopback address, so the addresses the
+     * proxy forwarded the request for must be local as well.
+     *
+     * @param request the request
+     * @return true if the request is coming from this machine, directly or through a local proxy
+     */
+    public static boolean isLocalRequest(final HttpServletRequest request) {
+        if (!isLoopback(request.getRemoteAddr()) || request.getHeader(FORWARDED_HEADER) != null) {
+            return false;
+        }
+
+        final String realIp = request.getHeader(REAL_IP_HEADER);
+        if (realIp != null && !isLoopback(realIp.trim())) {
+            return false;
+        }
+
+        final String forwardedFor = request.getHeader(FORWARDED_FOR_HEADER);
+        if (forwardedFor != null) {
+            for (final String address : forwardedFor.split(",")) {
+                if (!isLoopback(address.trim())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Only IP addresses are considered, since addresses in headers come from the client: host names, such as
+     * localhost, are not loopback addresses, and are never looked up.
+     *
+     * @param remoteAddress the address of the client
+     * @return true if the request is coming from this machine
+     */
+    public static boolean isLoopback(final String remoteAddress) {
+        if (remoteAddress == null || !isAddressLiteral(remoteAddress)) {
+            return false;
+        }
+
+        try {
+            return InetAddress.getByName(remoteAddress).isLoopbackAddress();
+        } catch (final UnknownHostException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param address the address
+     * @return true if the address is an IPv4 or IPv6 address, which can be parsed without a DNS lookup
+     */
+    static boolean isAddressLiteral(final String address) {
+        return IPV4_LITERAL.matcher(address).matches() || IPV6_LITERAL.matcher(address).matches();
+    }
 }
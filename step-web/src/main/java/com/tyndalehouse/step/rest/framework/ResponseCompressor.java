@@ -0,0 +1,215 @@
+package com.tyndalehouse.step.rest.framework;
+
+import com.tyndalehouse.step.core.exceptions.StepInternalException;
+import com.tyndalehouse.step.core.utils.IOUtils;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Negotiates the Accept-Encoding of a request and gzips JSON payloads that are large enough to benefit from it.
+ * <p/>
+ * Compressed forms are kept against the results key of the request (i.e. the request URI and language), alongside
+ * the raw bytes they were produced from. A subsequent request producing the very same bytes is then served the
+ * previously compressed form rather than compressing the payload again.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class ResponseCompressor {
+    static final String GZIP = "gzip";
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResponseCompressor.class);
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final int BUFFER_RATIO = 4;
+    private static final Counter CACHE_HITS = Metrics.newCounter(ResponseCompressor.class, "cache-hits");
+    private static final Counter CACHE_MISSES = Metrics.newCounter(ResponseCompressor.class, "cache-misses");
+    private final boolean enabled;
+    private final int minSize;
+    private final Map<String, CompressedEntry> compressedEntries;
+
+    /**
+     * @param enabled   true to compress responses at all
+     * @param minSize   the size in bytes under which we don't bother compressing
+     * @param cacheSize the number of compressed responses we keep around, 0 to keep none
+     */
+    @Inject
+    public ResponseCompressor(@Named("app.compression.enabled") final boolean enabled,
+                              @Named("app.compression.minSize") final int minSize,
+                              @Named("app.compression.cacheSize") final int cacheSize) {
+        this.enabled = enabled;
+        this.minSize = minSize;
+        this.compressedEntries = new LinkedHashMap<String, CompressedEntry>(16, 0.75f, true) {
+            private static final long serialVersionUID = -1398624150862537839L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, CompressedEntry> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Writes the payload to the response, compressing it if the client accepts it and the payload is big enough.
+     * Headers other than the ones relating to the encoding are expected to have been set up by the caller.
+     *
+     * @param request  the request, used to find out which encodings are accepted
+     * @param response the response
+     * @param cacheKey the key under which the compressed form is kept, or null if the response should not be kept
+     * @param payload  the uncompressed payload
+     * @throws IOException unable to write to the response
+     */
+    public void write(final HttpServletRequest request, final HttpServletResponse response,
+                      final String cacheKey, final byte[] payload) throws IOException {
+        response.addHeader("Vary", ACCEPT_ENCODING);
+        if (!shouldCompress(request, payload)) {
+            response.setContentLength(payload.length);
+            response.getOutputStream().write(payload);
+            return;
+        }
+
+        final byte[] compressed = getCompressed(cacheKey, payload);
+        response.setHeader("Content-Encoding", GZIP);
+        response.setContentLength(compressed.length);
+        response.getOutputStream().write(compressed);
+    }
+
+    /**
+     * @param request the request
+     * @param payload the payload that would be sent
+     * @return true if the payload should be sent compressed
+     */
+    boolean shouldCompress(final HttpServletRequest request, final byte[] payload) {
+        return this.enabled && payload.length >= this.minSize && acceptsGzip(request.getHeader(ACCEPT_ENCODING));
+    }
+
+    /**
+     * @param acceptEncoding the value of the Accept-Encoding header
+     * @return true if gzip (or any encoding) is accepted with a non-zero quality
+     */
+    static boolean acceptsGzip(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+
+        for (final String encoding : acceptEncoding.split(",")) {
+            final String[] parts = encoding.trim().split(";");
+            final String name = parts[0].trim();
+            if (GZIP.equalsIgnoreCase(name) || "*".equals(name)) {
+                return !hasZeroQuality(parts);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param parts the name of the encoding, followed by its parameters
+     * @return true if the client has explicitly refused the encoding with q=0
+     */
+    private static boolean hasZeroQuality(final String[] parts) {
+        for (int ii = 1; ii < parts.length; ii++) {
+            final String param = parts[ii].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Float.parseFloat(param.substring(2)) <= 0;
+                } catch (final NumberFormatException e) {
+                    LOGGER.trace("Invalid quality value [{}]", param);
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Retrieves the compressed form of the payload, either from the entries we've kept, or by compressing it.
+     *
+     * @param cacheKey the key to the kept compressed form, may be null
+     * @param payload  the payload
+     * @return the compressed bytes
+     */
+    byte[] getCompressed(final String cacheKey, final byte[] payload) {
+        if (cacheKey == null) {
+            return gzip(payload);
+        }
+
+        CompressedEntry entry;
+        synchronized (this.compressedEntries) {
+            entry = this.compressedEntries.get(cacheKey);
+        }
+
+        if (entry != null && Arrays.equals(entry.getRaw(), payload)) {
+            CACHE_HITS.inc();
+            return entry.getCompressed();
+        }
+
+        CACHE_MISSES.inc();
+        entry = new CompressedEntry(payload, gzip(payload));
+        synchronized (this.compressedEntries) {
+            this.compressedEntries.put(cacheKey, entry);
+        }
+        return entry.getCompressed();
+    }
+
+    /**
+     * @param payload the bytes to compress
+     * @return the gzipped form of the payload
+     */
+    static byte[] gzip(final byte[] payload) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / BUFFER_RATIO + 32);
+        GZIPOutputStream gzip = null;
+        try {
+            gzip = new GZIPOutputStream(out);
+            gzip.write(payload);
+            gzip.finish();
+        } catch (final IOException e) {
+            throw new StepInternalException("Unable to compress response", e);
+        } finally {
+            IOUtils.closeQuietly(gzip);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * A raw payload along with its compressed form
+     */
+    private static final class CompressedEntry {
+        private final byte[] raw;
+        private final byte[] compressed;
+
+        /**
+         * @param raw        the raw payload
+         * @param compressed the compressed payload
+         */
+        CompressedEntry(final byte[] raw, final byte[] compressed) {
+            this.raw = raw;
+            this.compressed = compressed;
+        }
+
+        /**
+         * @return the raw payload
+         */
+        byte[] getRaw() {
+            return this.raw;
+        }
+
+        /**
+         * @return the compressed payload
+         */
+        byte[] getCompressed() {
+            return this.compressed;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.tyndalehouse.step.rest.framework;
+
+import com.tyndalehouse.step.core.utils.IOUtils;
+import com.tyndalehouse.step.core.utils.RequestTrace;
+import com.tyndalehouse.step.core.utils.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Keeps the traces of the requests that took longer than a given threshold. The last few traces are kept in memory,
+ * and all of them are appended to a file, which is rolled over once it gets too big.
+ *
+ * @author chrisburrell
+ */
+@Singleton
+public class SlowRequestRecorder {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SlowRequestRecorder.class);
+    private static final String DATE_FORMAT = "yyyy-MM-dd HH:mm:ss.SSS";
+    private final long thresholdMillis;
+    private final RequestTrace[] traces;
+    private final File traceFile;
+    private final long maxFileSize;
+    private final int maxFiles;
+    private int next;
+    private int count;
+
+    /**
+     * @param appHome         the home of the application, in which the trace file is kept
+     * @param thresholdMillis the time in milliseconds above which a request is recorded, negative to record none
+     * @param bufferSize      the number of traces kept in memory
+     * @param fileName        the name of the trace file, blank to only keep traces in memory
+     * @param maxFileSize     the size in bytes above which the trace file is rolled over
+     * @param maxFiles        the number of rolled over files to keep
+     */
+    @Inject
+    public SlowRequestRecorder(@Named("app.home") final String appHome,
+                               @Named("app.trace.thresholdMs") final long thresholdMillis,
+                               @Named("app.trace.bufferSize") final int bufferSize,
+                               @Named("app.trace.file") final String fileName,
+                               @Named("app.trace.maxFileSize") final long maxFileSize,
+                               @Named("app.trace.maxFiles") final int maxFiles) {
+        this(thresholdMillis, bufferSize, getTraceFile(appHome, fileName), maxFileSize, maxFiles);
+    }
+
+    /**
+     * @param thresholdMillis the time in milliseconds above which a request is recorded, negative to record none
+     * @param bufferSize      the number of traces kept in memory
+     * @param traceFile       the trace file, null to only keep traces in memory
+     * @param maxFileSize     the size in bytes above which the trace file is rolled over
+     * @param maxFiles        the number of rolled over files to keep
+     */
+    SlowRequestRecorder(final long thresholdMillis, final int bufferSize, final File traceFile,
+                        final long maxFileSize, final int maxFiles) {
+        this.thresholdMillis = thresholdMillis;
+        this.traces = new RequestTrace[Math.max(bufferSize, 1)];
+        this.traceFile = traceFile;
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = maxFiles;
+    }
+
+    /**
+     * @param appHome  the home of the application
+     * @param fileName the name of the trace file
+     * @return the trace file, or null if none is configured
+     */
+    private static File getTraceFile(final String appHome, final String fileName) {
+        if (StringUtils.isBlank(fileName)) {
+            return null;
+        }
+
+        return IOUtils.getHomeFile(appHome, fileName);
+    }
+
+    /**
+     * @return true if requests should be traced at all
+     */
+    public boolean isEnabled() {
+        return this.thresholdMillis >= 0;
+    }
+
+    /**
+     * Records the trace, if the request was slow enough
+     *
+     * @param trace the trace of the request, may be null
+     */
+    public void record(final RequestTrace trace) {
+        if (trace == null || !isEnabled() || trace.getDurationMillis() < this.thresholdMillis) {
+            return;
+        }
+
+        synchronized (this.traces) {
+            this.traces[this.next] = trace;
+            this.next = (this.next + 1) % this.traces.length;
+            this.count = Math.min(this.count + 1, this.traces.length);
+        }
+
+        if (this.traceFile != null) {
+            writeToFile(format(trace));
+        }
+    }
+
+    /**
+     * @return the traces kept in memory, most recent first
+     */
+    public List<RequestTrace> getRecentTraces() {
+        synchronized (this.traces) {
+            final List<RequestTrace> recent = new ArrayList<RequestTrace>(this.count);
+            for (int ii = 1; ii <= this.count; ii++) {
+                recent.add(this.traces[(this.next - ii + this.traces.length) % this.traces.length]);
+            }
+            return recent;
+        }
+    }
+
+    /**
+     * Formats a trace, with a header line for the request, followed by a line per span, indented by depth
+     *
+     * @param trace the trace
+     * @return the formatted trace
+     */
+    public static String format(final RequestTrace trace) {
+        final StringBuilder sb = new StringBuilder(256);
+        sb.append(new SimpleDateFormat(DATE_FORMAT, Locale.ENGLISH).format(new Date(trace.getStartTime())))
+                .append(' ').append(trace.getDurationMillis()).append("ms ").append(trace.getRequest());
+        if (StringUtils.isNotBlank(trace.getArguments())) {
+            sb.append(" [").append(trace.getArguments()).append(']');
+        }
+        sb.append('\n');
+
+        for (final RequestTrace.Span span : trace.getSpans()) {
+            sb.append("    ");
+            for (int ii = 0; ii < span.getDepth(); ii++) {
+                sb.append("  ");
+            }
+            sb.append(String.format(Locale.ENGLISH, "+%.1fms %.1fms %s", span.getOffsetMillis(),
+                    span.getDurationMillis(), span.getStage()));
+            if (span.getDetail() != null) {
+                sb.append(" [").append(span.getDetail()).append(']');
+            }
+            sb.append('\n');
+        }
+        if (trace.getDroppedSpans() > 0) {
+            sb.append("    ... ").append(trace.getDroppedSpans()).append(" more spans\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Appends the trace to the file, rolling it over first if need be
+     *
+     * @param formattedTrace the formatted trace
+     */
+    private synchronized void writeToFile(final String formattedTrace) {
+        OutputStream out = null;
+        try {
+            final byte[] bytes = formattedTrace.getBytes(FrontController.UTF_8_ENCODING);
+            if (this.traceFile.length() + bytes.length > this.maxFileSize) {
+                rollOver();
+            }
+
+            out = new FileOutputStream(this.traceFile, true);
+            out.write(bytes);
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to write slow request trace to [{}]", this.traceFile, e);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Rolls the trace file over, shifting trace.log.1 to trace.log.2, etc. and dropping the oldest file.
+     */
+    private void rollOver() {
+        final File oldest = getRolledFile(this.maxFiles);
+        if (oldest.exists() && !oldest.delete()) {
+            LOGGER.warn("Unable to delete [{}]", oldest);
+        }
+
+        for (int ii = this.maxFiles - 1; ii >= 1; ii--) {
+            final File rolled = getRolledFile(ii);
+            if (rolled.exists() && !rolled.renameTo(getRolledFile(ii + 1))) {
+                LOGGER.warn("Unable to roll over [{}]", rolled);
+            }
+        }
+
+        if (this.maxFiles > 0) {
+            if (!this.traceFile.renameTo(getRolledFile(1))) {
+                LOGGER.warn("Unable to roll over [{}]", this.traceFile);
+            }
+        } else if (!this.traceFile.delete()) {
+            LOGGER.warn("Unable to delete [{}]", this.traceFile);
+        }
+    }
+
+    /**
+     * @param index the index of the rolled over file
+     * @return the rolled over file
+     */
+    File getRolledFile(final int index) {
+        return new File(this.traceFile.getPath() + '.' + index);
+    }
+}
@@ -85,6 +85,7 @@ var SearchDisplayView = DisplayView.extend({
             var passageHtml = results;
             if (!this.options.partRendered) {
                 passageHtml = this._doSpecificSearchRequirements(query, results, this.model.get("masterVersion"));
+                this._addMasterVersionOnlyNotice(passageHtml);
                 step.util.ui.emptyOffDomAndPopulate(this.$el, passageHtml);
             }
 
@@ -331,6 +332,18 @@ var SearchDisplayView = DisplayView.extend({
         var notApplicable = $("<span>").addClass("notApplicable").html(message);
         results.append(notApplicable);
     },
+    /**
+     * Warns that only the master version was searched, when searching all versions would have taken too long
+     * @param results the all-encompassing results object
+     * @private
+     */
+    _addMasterVersionOnlyNotice: function (results) {
+        if (!this.model.get("masterVersionOnly")) {
+            return;
+        }
+        var message = sprintf(__s.search_master_version_only, "<em>" + this.model.get("masterVersion") + "</em>");
+        results.prepend($("<span>").addClass("notApplicable").html(message));
+    },
     getVerseRow: function (table, contentGenerator, item) {
         var newRow = $("<div>").addClass("searchResultRow");
         var contentCell = $("<div>").addClass("searchResultRow");
@@ -117,6 +117,24 @@
                         userFunction(data);
                     }
                 }
+            }).fail(function (jqXHR) {
+                //the server turns requests away when it is too busy to run them
+                step.util.outstandingRequests--;
+                step.util.refreshWaitStatus();
+                if (errorHandler) {
+                    errorHandler();
+                }
+
+                if (jqXHR.status == 503) {
+                    var contentType = jqXHR.getResponseHeader("Content-Type") || "";
+                    var message = contentType.indexOf("application/json") == 0 ?
+                        $.parseJSON(jqXHR.responseText).errorMessage : jqXHR.responseText;
+                    if (passageId != undefined) {
+                        step.util.raiseInfo(message, level, passageId);
+                    } else {
+                        step.util.raiseError(message);
+                    }
+                }
             });
         },
 
@@ -0,0 +1,155 @@
+package com.tyndalehouse.step.rest.framework;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the keeping of crawler snapshots, and the conditional requests for them
+ *
+ * @author chrisburrell
+ */
+public class CrawlerSnapshotCacheTest {
+    private static final long HOUR = 3600000L;
+    private static final long DISK = 1000000L;
+    private File directory;
+
+    /**
+     * Creates an empty directory for the snapshots
+     */
+    @Before
+    public void setUp() throws IOException {
+        this.directory = File.createTempFile("snapshots", "");
+        assertTrue(this.directory.delete() && this.directory.mkdir());
+    }
+
+    /**
+     * Removes the snapshots
+     */
+    @After
+    public void tearDown() {
+        final File[] files = this.directory.listFiles();
+        if (files != null) {
+            for (final File f : files) {
+                f.delete();
+            }
+        }
+        this.directory.delete();
+    }
+
+    /**
+     * Snapshots are kept gzipped, and found again from disk once they've been let go of in memory
+     */
+    @Test
+    public void testSnapshotIsKept() throws IOException {
+        final CrawlerSnapshotCache cache = new CrawlerSnapshotCache(this.directory, 0, DISK, HOUR, 1);
+        final byte[] page = "<h2>In the beginning</h2>".getBytes("UTF-8");
+        final CrawlerSnapshotCache.Snapshot snapshot = cache.put("key", page);
+        assertArrayEquals(page, CrawlerSnapshotCache.gunzip(snapshot.getCompressed()));
+
+        // nothing is kept in memory, so this comes from disk
+        final CrawlerSnapshotCache.Snapshot read = cache.get("key");
+        assertNotNull(read);
+        assertArrayEquals(snapshot.getCompressed(), read.getCompressed());
+        assertEquals(snapshot.getEtag(), read.getEtag());
+        assertNull(cache.get("other"));
+    }
+
+    /**
+     * Snapshots are kept in memory up to the configured number of bytes
+     */
+    @Test
+    public void testSnapshotInMemory() throws IOException {
+        final CrawlerSnapshotCache cache = new CrawlerSnapshotCache(null, 1000, DISK, HOUR, 1);
+        final CrawlerSnapshotCache.Snapshot snapshot = cache.put("key", "page".getBytes("UTF-8"));
+        assertSame(snapshot, cache.get("key"));
+    }
+
+    /**
+     * Out of date snapshots are rendered again
+     */
+    @Test
+    public void testOutOfDateSnapshot() throws IOException {
+        final CrawlerSnapshotCache cache = new CrawlerSnapshotCache(this.directory, 1000, DISK, -1, 1);
+        cache.put("key", "page".getBytes("UTF-8"));
+        assertFalse(cache.isFresh("key"));
+    }
+
+    /**
+     * Keys only carry the parameters the snapshot pages understand, in a set order
+     */
+    @Test
+    public void testKeyIsNormalised() {
+        final String key = CrawlerSnapshotCache.getKey("snapshots/passage.jsp?version0=ESV&reference0=Gen.1", "en");
+        assertEquals("snapshots/passage.jsp?reference0=Gen.1&version0=ESV|en", key);
+        assertEquals(key, CrawlerSnapshotCache.getKey(
+                "snapshots/passage.jsp?reference0=Gen%2E1&junk=1&version0=ESV&version0=KJV&utm=2", "EN"));
+        assertNull(CrawlerSnapshotCache.getKey("snapshots/../WEB-INF/web.xml?strong=G0001", "en"));
+        assertNull(CrawlerSnapshotCache.getKey("snapshots/definition.jsp?strong=%zz", "en"));
+    }
+
+    /**
+     * The snapshots rendered longest ago are deleted once there are too many bytes of them on disk
+     */
+    @Test
+    public void testDiskIsBounded() throws IOException {
+        final byte[] page = new byte[1000];
+        new Random(1).nextBytes(page);
+        final CrawlerSnapshotCache cache = new CrawlerSnapshotCache(this.directory, 0, 2500, HOUR, 1);
+        cache.put("first", page);
+        cache.put("second", page);
+        assertTrue(cache.isFresh("first"));
+        for (final File f : this.directory.listFiles()) {
+            assertTrue(f.setLastModified(System.currentTimeMillis() - HOUR / 2));
+        }
+
+        cache.put("third", page);
+        assertEquals(2, this.directory.listFiles().length);
+        assertTrue(cache.isFresh("third"));
+
+        cache.clear();
+        assertEquals(0, this.directory.listFiles().length);
+        assertFalse(cache.isFresh("third"));
+    }
+
+    /**
+     * The client's copy is current if the ETag matches, or if it's no older than the snapshot
+     */
+    @Test
+    public void testNotModified() {
+        final CrawlerSnapshotCache.Snapshot snapshot = new CrawlerSnapshotCache.Snapshot(new byte[]{1, 2, 3},
+                1000000L);
+
+        final HttpServletRequest matching = mock(HttpServletRequest.class);
+        when(matching.getHeader("If-None-Match")).thenReturn("\"other\", " + snapshot.getEtag());
+        assertTrue(CrawlerSnapshotCache.isNotModified(matching, snapshot));
+
+        final HttpServletRequest different = mock(HttpServletRequest.class);
+        when(different.getHeader("If-None-Match")).thenReturn("\"other\"");
+        when(different.getDateHeader("If-Modified-Since")).thenReturn(2000000L);
+        assertFalse(CrawlerSnapshotCache.isNotModified(different, snapshot));
+
+        final HttpServletRequest since = mock(HttpServletRequest.class);
+        when(since.getDateHeader("If-Modified-Since")).thenReturn(1000000L);
+        assertTrue(CrawlerSnapshotCache.isNotModified(since, snapshot));
+
+        final HttpServletRequest older = mock(HttpServletRequest.class);
+        when(older.getDateHeader("If-Modified-Since")).thenReturn(999000L);
+        assertFalse(CrawlerSnapshotCache.isNotModified(older, snapshot));
+    }
+}
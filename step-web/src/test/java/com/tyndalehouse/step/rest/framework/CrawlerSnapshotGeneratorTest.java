@@ -0,0 +1,69 @@
+package com.tyndalehouse.step.rest.framework;
+
+import com.tyndalehouse.step.core.data.EntityIndexReader;
+import com.tyndalehouse.step.core.data.EntityManager;
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static com.tyndalehouse.step.core.service.helpers.OriginalWordUtils.STRONG_NUMBER_FIELD;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the snapshots rendered ahead of time
+ *
+ * @author chrisburrell
+ */
+public class CrawlerSnapshotGeneratorTest {
+    private static final File WEBAPP = new File("src/main/webapp");
+
+    /**
+     * Every snapshot rendered ahead of time is a page of the web application
+     *
+     * @throws IOException unable to build the lexicon
+     */
+    @Test
+    public void testSnapshotPagesExist() throws IOException {
+        final List<String> paths = getGenerator("G0001", "H0001").getDefinitionSnapshots();
+
+        assertEquals(2, paths.size());
+        for (final String path : paths) {
+            final String page = path.substring(0, path.indexOf('?'));
+            assertTrue(page + " does not exist", new File(WEBAPP, page).isFile());
+        }
+    }
+
+    /**
+     * @param strongNumbers the strong numbers in the lexicon
+     * @return a generator rendering the snapshots of the lexicon entries
+     * @throws IOException unable to build the lexicon
+     */
+    private static CrawlerSnapshotGenerator getGenerator(final String... strongNumbers) throws IOException {
+        final RAMDirectory directory = new RAMDirectory();
+        final IndexWriter writer = new IndexWriter(directory, new WhitespaceAnalyzer(), true,
+                IndexWriter.MaxFieldLength.UNLIMITED);
+        for (final String strongNumber : strongNumbers) {
+            final Document doc = new Document();
+            doc.add(new Field(STRONG_NUMBER_FIELD, strongNumber, Field.Store.YES, Field.Index.NOT_ANALYZED));
+            writer.addDocument(doc);
+        }
+        writer.close();
+
+        final EntityIndexReader definitions = mock(EntityIndexReader.class);
+        when(definitions.getIndexReader()).thenReturn(IndexReader.open(directory, true));
+        final EntityManager entityManager = mock(EntityManager.class);
+        when(entityManager.getReader("definition")).thenReturn(definitions);
+        return new CrawlerSnapshotGenerator(null, entityManager, false, 24, 0);
+    }
+}
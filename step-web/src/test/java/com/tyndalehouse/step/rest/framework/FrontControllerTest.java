@@ -107,7 +107,8 @@ public class FrontControllerTest {
         when(this.objectMapper.get()).thenReturn(mockMapper);
         
         this.fcUnderTest = new FrontController(this.guiceInjector, mock(AppManagerService.class), this.errorResolver,
-                this.clientSessionProvider, objectMapper);
+                this.clientSessionProvider, objectMapper, new ResponseCompressor(true, 1024, 0),
+                new RequestAdmission(false, "", "", "", 1, 0, 0, 1, 0, 0, 1));
     }
 
     /**
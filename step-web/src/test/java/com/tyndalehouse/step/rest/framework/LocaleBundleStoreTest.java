@@ -0,0 +1,87 @@
+package com.tyndalehouse.step.rest.framework;
+
+import com.tyndalehouse.step.core.utils.language.ContemporaryLanguageUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the store of the UI's messages
+ *
+ * @author chrisburrell
+ */
+public class LocaleBundleStoreTest {
+    private LocaleBundleStore store;
+
+    /**
+     * Builds the messages for English and French
+     */
+    @Before
+    public void setUp() {
+        this.store = new LocaleBundleStore("en,fr", new ObjectMapperProvider());
+    }
+
+    /**
+     * Locales with the same messages share the same bundle
+     */
+    @Test
+    public void testSameBytesAreShared() throws Exception {
+        final LocaleBundleStore.LocaleBundle english = this.store.get(Locale.ENGLISH);
+        assertSame(english, this.store.get(new Locale("en")));
+        assertSame(english, this.store.get(new Locale("en", "GB")));
+        assertNotSame(english, this.store.get(Locale.FRENCH));
+        assertTrue(new String(english.getBytes(), FrontController.UTF_8_ENCODING).startsWith("var __s = "));
+        assertArrayEquals(english.getBytes(), CrawlerSnapshotCache.gunzip(english.getCompressed()));
+    }
+
+    /**
+     * Locales asked for are served the bundle of the closest available language, without building new ones
+     */
+    @Test
+    public void testClosestAvailableLanguage() {
+        final LocaleBundleStore chinese = new LocaleBundleStore("en,zh,zh-TW", new ObjectMapperProvider());
+        assertEquals(new Locale("zh", "TW"), chinese.getClosestAvailable(new Locale("zh", "TW")));
+        assertEquals(new Locale("zh"), chinese.getClosestAvailable(new Locale("zh", "CN")));
+        assertEquals(Locale.ENGLISH, chinese.getClosestAvailable(Locale.UK));
+        assertEquals(Locale.ENGLISH, chinese.getClosestAvailable(new Locale("xx", "YY")));
+        assertEquals(Locale.ENGLISH, chinese.getClosestAvailable(ContemporaryLanguageUtils.getLocaleFromTag("-")));
+
+        final LocaleBundleStore.LocaleBundle english = this.store.get(Locale.ENGLISH);
+        assertSame(english, this.store.get(new Locale("xx", "YY")));
+        assertSame(english, this.store.get(ContemporaryLanguageUtils.getLocaleFromTag("_")));
+        assertSame(this.store.get(Locale.FRENCH), this.store.get(Locale.CANADA_FRENCH));
+    }
+
+    /**
+     * Rebuilding replaces the bundles, without changing their content
+     */
+    @Test
+    public void testRebuild() {
+        final LocaleBundleStore.LocaleBundle english = this.store.get(Locale.ENGLISH);
+        this.store.rebuild();
+        final LocaleBundleStore.LocaleBundle rebuilt = this.store.get(Locale.ENGLISH);
+        assertNotSame(english, rebuilt);
+        assertTrue(english.getEtag().equals(rebuilt.getEtag()));
+    }
+
+    /**
+     * The client's copy is current if it has either encoding of the bundle
+     */
+    @Test
+    public void testNotModified() {
+        final LocaleBundleStore.LocaleBundle english = this.store.get(Locale.ENGLISH);
+        assertTrue(LocaleBundleStore.isNotModified(english.getEtag(), english));
+        assertTrue(LocaleBundleStore.isNotModified("\"other\", " + english.getGzipEtag(), english));
+        assertFalse(LocaleBundleStore.isNotModified("\"other\"", english));
+        assertFalse(LocaleBundleStore.isNotModified(null, english));
+        assertFalse(english.getEtag().equals(english.getGzipEtag()));
+    }
+}
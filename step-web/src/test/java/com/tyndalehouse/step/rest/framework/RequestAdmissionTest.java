@@ -0,0 +1,143 @@
+package com.tyndalehouse.step.rest.framework;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricName;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the admission control of REST requests
+ *
+ * @author chrisburrell
+ */
+public class RequestAdmissionTest {
+    private RequestAdmission admission;
+
+    /**
+     * One search and one stats request at a time, nothing waiting for the stats
+     */
+    @Before
+    public void setUp() {
+        this.admission = new RequestAdmission(true, "search/suggest,bible/getBibleText",
+                "search/masterSearch:1,analysis/analyseStats", "bible/getBibleText", 1, 0, 0, 2, 0, 0, 5);
+    }
+
+    /**
+     * Endpoints go to the limiter of their class
+     */
+    @Test
+    public void testClasses() {
+        assertNull(this.admission.getLimiter(request("search", "suggest", "Gen")));
+        assertNull(this.admission.getLimiter(request("bible", "getBibleText", "ESV", "Gen.1")));
+
+        final RequestAdmission.Limiter wholeBook = this.admission.getLimiter(
+                request("bible", "getBibleText", "ESV", "Gen"));
+        final RequestAdmission.Limiter search = this.admission.getLimiter(request("search", "masterSearch", "x"));
+        final RequestAdmission.Limiter normal = this.admission.getLimiter(request("bible", "getModules", "x"));
+        assertNotSame(wholeBook, search);
+        assertNotSame(search, normal);
+        assertSame(normal, this.admission.getLimiter(request("notes", "get")));
+    }
+
+    /**
+     * References without a chapter are whole books
+     */
+    @Test
+    public void testWholeBook() {
+        assertTrue(RequestAdmission.isWholeBook(new String[]{"ESV", "Gen"}));
+        assertTrue(RequestAdmission.isWholeBook(new String[]{"ESV", "1Cor"}));
+        assertTrue(RequestAdmission.isWholeBook(new String[]{"ESV", "Song of Songs"}));
+        assertFalse(RequestAdmission.isWholeBook(new String[]{"ESV", "1Cor.13"}));
+        assertFalse(RequestAdmission.isWholeBook(new String[]{"ESV", "Gen 1:1"}));
+        assertFalse(RequestAdmission.isWholeBook(new String[]{"ESV"}));
+    }
+
+    /**
+     * A request beyond the limit, with no room to wait, is turned away straight away
+     */
+    @Test
+    public void testRejectedWhenFull() {
+        final RequestAdmission.Permit permit = this.admission.admit(request("analysis", "analyseStats"));
+        try {
+            this.admission.admit(request("analysis", "analyseStats"));
+            fail("Second request should have been turned away");
+        } catch (final AdmissionRejectedException e) {
+            assertTrue(e.getRetryAfterSeconds() == 5);
+        }
+
+        // cheap requests still run
+        this.admission.admit(request("search", "suggest", "a")).release();
+        permit.release();
+        this.admission.admit(request("analysis", "analyseStats")).release();
+    }
+
+    /**
+     * A waiting request runs as soon as the running one finishes
+     */
+    @Test
+    public void testWaitsForItsTurn() throws Exception {
+        final RequestAdmission queueing = new RequestAdmission(true, "", "analysis/analyseStats", "", 1, 1, 5000,
+                1, 0, 0, 5);
+        final RequestAdmission.Permit permit = queueing.admit(request("analysis", "analyseStats"));
+        final RequestAdmission.Limiter limiter = queueing.getLimiter(request("analysis", "analyseStats"));
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicBoolean admitted = new AtomicBoolean();
+        final Thread waiting = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                queueing.admit(request("analysis", "analyseStats")).release();
+                admitted.set(true);
+                done.countDown();
+            }
+        });
+        waiting.start();
+
+        while (limiter.getQueued() == 0) {
+            Thread.sleep(5);
+        }
+        permit.release();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(admitted.get());
+    }
+
+    /**
+     * The gauges report the limiters of the latest instance, not those of the first one created
+     */
+    @Test
+    public void testGaugesFollowLatestInstance() {
+        new RequestAdmission(true, "", "gauge/first", "", 1, 0, 0, 1, 0, 0, 5);
+        final RequestAdmission latest = new RequestAdmission(true, "", "gauge/first", "", 3, 0, 0, 1, 0, 0, 5);
+        final RequestAdmission.Permit permit = latest.admit(request("gauge", "first"));
+        try {
+            final Gauge<?> available = (Gauge<?>) Metrics.defaultRegistry().allMetrics().get(
+                    new MetricName(RequestAdmission.class, "available", "gauge/first"));
+            assertEquals(2, available.value());
+        } finally {
+            permit.release();
+        }
+    }
+
+    /**
+     * @param controller the controller
+     * @param method     the method
+     * @param args       the arguments
+     * @return the request
+     */
+    private static StepRequest request(final String controller, final String method, final String... args) {
+        return new StepRequest(controller + "/" + method, controller, method, args);
+    }
+}
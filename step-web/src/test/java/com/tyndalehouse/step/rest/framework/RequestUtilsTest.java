@@ -0,0 +1,60 @@
+package com.tyndalehouse.step.rest.framework;
+
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the utilities dealing with requests
+ *
+ * @author chrisburrell
+ */
+public class RequestUtilsTest {
+    /**
+     * Only loopback IP addresses are loopback, host names never are
+     */
+    @Test
+    public void testLoopback() {
+        assertTrue(RequestUtils.isLoopback("127.0.0.1"));
+        assertTrue(RequestUtils.isLoopback("::1"));
+        assertTrue(RequestUtils.isLoopback("[0:0:0:0:0:0:0:1]"));
+        assertFalse(RequestUtils.isLoopback("10.0.0.1"));
+        assertFalse(RequestUtils.isLoopback("localhost"));
+        assertFalse(RequestUtils.isLoopback("loopback.example.com"));
+        assertFalse(RequestUtils.isLoopback("256.0.0.1"));
+        assertFalse(RequestUtils.isLoopback(""));
+        assertFalse(RequestUtils.isLoopback(null));
+    }
+
+    /**
+     * A request forwarded by a local proxy is local only if it was forwarded for local addresses
+     */
+    @Test
+    public void testLocalRequest() {
+        assertTrue(RequestUtils.isLocalRequest(request("127.0.0.1", null, null)));
+        assertTrue(RequestUtils.isLocalRequest(request("127.0.0.1", "::1", "127.0.0.1, ::1")));
+        assertFalse(RequestUtils.isLocalRequest(request("10.0.0.1", null, null)));
+        assertFalse(RequestUtils.isLocalRequest(request("127.0.0.1", "localhost", null)));
+        assertFalse(RequestUtils.isLocalRequest(request("127.0.0.1", null, "127.0.0.1, 10.0.0.1")));
+    }
+
+    /**
+     * @param remoteAddress the address the request comes from
+     * @param realIp        the X-Real-IP header
+     * @param forwardedFor  the X-Forwarded-For header
+     * @return the request
+     */
+    private static HttpServletRequest request(final String remoteAddress, final String realIp,
+                                              final String forwardedFor) {
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getRemoteAddr()).thenReturn(remoteAddress);
+        when(request.getHeader("X-Real-IP")).thenReturn(realIp);
+        when(request.getHeader("X-Forwarded-For")).thenReturn(forwardedFor);
+        return request;
+    }
+}
@@ -0,0 +1,68 @@
+package com.tyndalehouse.step.rest.framework;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the negotiation and compression of responses
+ *
+ * @author chrisburrell
+ */
+public class ResponseCompressorTest {
+    /**
+     * Various forms of the Accept-Encoding header
+     */
+    @Test
+    public void testAcceptsGzip() {
+        assertFalse(ResponseCompressor.acceptsGzip(null));
+        assertFalse(ResponseCompressor.acceptsGzip("identity"));
+        assertFalse(ResponseCompressor.acceptsGzip("deflate, gzip;q=0"));
+        assertTrue(ResponseCompressor.acceptsGzip("gzip"));
+        assertTrue(ResponseCompressor.acceptsGzip("deflate, GZIP;q=0.8"));
+        assertTrue(ResponseCompressor.acceptsGzip("*"));
+    }
+
+    /**
+     * Compressed forms should be re-used only when the payload is identical
+     */
+    @Test
+    public void testCompressedFormIsKept() throws IOException {
+        final ResponseCompressor compressor = new ResponseCompressor(true, 0, 10);
+        final byte[] payload = "{\"value\":\"In the beginning\"}".getBytes("UTF-8");
+
+        final byte[] first = compressor.getCompressed("key", payload);
+        assertSame(first, compressor.getCompressed("key", payload.clone()));
+        assertArrayEquals(payload, gunzip(first));
+
+        final byte[] changed = "{\"value\":\"was the Word\"}".getBytes("UTF-8");
+        final byte[] second = compressor.getCompressed("key", changed);
+        assertNotSame(first, second);
+        assertArrayEquals(changed, gunzip(second));
+    }
+
+    /**
+     * @param compressed the compressed bytes
+     * @return the uncompressed bytes
+     */
+    private byte[] gunzip(final byte[] compressed) throws IOException {
+        final GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,115 @@
+package com.tyndalehouse.step.rest.framework;
+
+import com.tyndalehouse.step.core.utils.RequestTrace;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the recording of slow requests
+ *
+ * @author chrisburrell
+ */
+public class SlowRequestRecorderTest {
+    /**
+     * Only the last few traces are kept, most recent first
+     */
+    @Test
+    public void testRingBufferKeepsMostRecent() {
+        final SlowRequestRecorder recorder = new SlowRequestRecorder(0, 2, null, 0, 0);
+        recorder.record(trace("/rest/first"));
+        recorder.record(trace("/rest/second"));
+        recorder.record(trace("/rest/third"));
+
+        final List<RequestTrace> traces = recorder.getRecentTraces();
+        assertEquals(2, traces.size());
+        assertEquals("/rest/third", traces.get(0).getRequest());
+        assertEquals("/rest/second", traces.get(1).getRequest());
+    }
+
+    /**
+     * Spans are nested and reported with their details
+     */
+    @Test
+    public void testSpansAreNested() {
+        RequestTrace.begin("/rest/search/masterSearch", "q=love");
+        final RequestTrace.Span outer = RequestTrace.span("search", "text");
+        RequestTrace.span("query", "love").stop();
+        outer.stop();
+        final RequestTrace trace = RequestTrace.end();
+
+        assertFalse(RequestTrace.isActive());
+        assertEquals(2, trace.getSpans().size());
+        assertEquals(0, trace.getSpans().get(0).getDepth());
+        assertEquals(1, trace.getSpans().get(1).getDepth());
+
+        final String formatted = SlowRequestRecorder.format(trace);
+        assertTrue(formatted.contains("/rest/search/masterSearch [q=love]"));
+        assertTrue(formatted.contains("search [text]"));
+        assertTrue(formatted.contains("query [love]"));
+    }
+
+    /**
+     * Spans beyond the limit are counted rather than kept, and stopping a span in a finally block keeps the nesting
+     * right when the stage fails
+     */
+    @Test
+    public void testSpansAreCapped() {
+        RequestTrace.begin("/rest/search/masterSearch", null);
+        final RequestTrace.Span failing = RequestTrace.span("controller", null);
+        try {
+            for (int ii = 0; ii < RequestTrace.MAX_SPANS + 10; ii++) {
+                RequestTrace.span("query", ii).stop();
+            }
+            throw new IllegalStateException();
+        } catch (final IllegalStateException e) {
+            assertTrue(RequestTrace.isActive());
+        } finally {
+            failing.stop();
+        }
+        final RequestTrace trace = RequestTrace.end();
+
+        assertEquals(RequestTrace.MAX_SPANS, trace.getSpans().size());
+        assertEquals(11, trace.getDroppedSpans());
+        assertEquals(1, trace.getSpans().get(1).getDepth());
+        assertTrue(trace.getSpans().get(0).getDurationMillis() >= 0);
+        assertTrue(SlowRequestRecorder.format(trace).contains("... 11 more spans"));
+    }
+
+    /**
+     * Requests under the threshold are not kept, and the file is rolled over once it gets too big
+     */
+    @Test
+    public void testThresholdAndRollOver() throws IOException {
+        final File traceFile = File.createTempFile("slow-requests", ".log");
+        final SlowRequestRecorder recorder = new SlowRequestRecorder(0, 10, traceFile, 1, 1);
+        try {
+            new SlowRequestRecorder(Long.MAX_VALUE, 10, traceFile, 1, 1).record(trace("/rest/fast"));
+            assertEquals(0, traceFile.length());
+
+            recorder.record(trace("/rest/first"));
+            recorder.record(trace("/rest/second"));
+            assertTrue(traceFile.length() > 0);
+            assertTrue(recorder.getRolledFile(1).exists());
+            assertFalse(recorder.getRolledFile(2).exists());
+        } finally {
+            traceFile.delete();
+            recorder.getRolledFile(1).delete();
+        }
+    }
+
+    /**
+     * @param request the request
+     * @return a finished trace for the request
+     */
+    private RequestTrace trace(final String request) {
+        RequestTrace.begin(request, null);
+        return RequestTrace.end();
+    }
+}